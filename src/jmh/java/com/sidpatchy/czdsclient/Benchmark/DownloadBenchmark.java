@@ -0,0 +1,71 @@
+package com.sidpatchy.czdsclient.Benchmark;
+
+import com.sidpatchy.czdsclient.IO.CZDSClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the copy loop of a single download at different buffer sizes. Divide the zone size by the average time to
+ * get the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DownloadBenchmark {
+    @Param({"1024"})
+    public int zoneSizeMiB;
+
+    @Param({"8", "64", "256", "1024"})
+    public int bufferSizeKiB;
+
+    private ZoneServer server;
+    private CZDSClient client;
+    private Path downloadDirectory;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new ZoneServer(Map.of("bench", SyntheticZone.get("bench", zoneSizeMiB)));
+        client = new CZDSClient("benchmark", "benchmark", server.getBaseUrl(), server.getBaseUrl());
+        client.getConnectionManager().getFileDownloader().setBufferSize(bufferSizeKiB * 1024);
+        downloadDirectory = Files.createTempDirectory("czds-bench-download");
+        url = server.getBaseUrl() + "/czds/downloads/bench.zone";
+    }
+
+    @Benchmark
+    public File download() throws Exception {
+        return client.getConnectionManager().downloadFile(url, downloadDirectory.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        deleteRecursively(downloadDirectory);
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
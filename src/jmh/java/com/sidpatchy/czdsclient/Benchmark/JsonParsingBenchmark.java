@@ -0,0 +1,79 @@
+package com.sidpatchy.czdsclient.Benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.AuthResponse;
+import com.sidpatchy.czdsclient.Bean.ZoneState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the deserialization of API responses and the zone state file with the shared ObjectMapper.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonParsingBenchmark {
+    private static final TypeReference<Map<String, ZoneState>> STATE_TYPE = new TypeReference<>() {};
+
+    @Param({"1500"})
+    public int zones;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] links;
+    private byte[] authResponse;
+    private byte[] state;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> urls = new ArrayList<>();
+        Map<String, ZoneState> states = new TreeMap<>();
+        for (int i = 0; i < zones; i++) {
+            String tld = "tld" + i;
+            urls.add("https://czds-download-api.icann.org/czds/downloads/" + tld + ".zone");
+
+            ZoneState zoneState = new ZoneState();
+            zoneState.setEtag("\"" + Integer.toHexString(tld.hashCode()) + "\"");
+            zoneState.setLastModified("Wed, 21 Oct 2015 07:28:00 GMT");
+            zoneState.setSize(1L << 20);
+            states.put(tld, zoneState);
+        }
+
+        links = objectMapper.writeValueAsBytes(urls);
+        authResponse = objectMapper.writeValueAsBytes(Map.of("accessToken", "x".repeat(1024), "message", "Authentication Successful"));
+        state = objectMapper.writeValueAsBytes(states);
+    }
+
+    @Benchmark
+    public String[] linksAsArray() throws IOException {
+        return objectMapper.readValue(links, String[].class);
+    }
+
+    @Benchmark
+    public List<?> linksAsList() throws IOException {
+        return objectMapper.readValue(links, List.class);
+    }
+
+    @Benchmark
+    public AuthResponse authResponse() throws IOException {
+        return objectMapper.readValue(authResponse, AuthResponse.class);
+    }
+
+    @Benchmark
+    public Map<String, ZoneState> zoneState() throws IOException {
+        return objectMapper.readValue(state, STATE_TYPE);
+    }
+}
@@ -0,0 +1,78 @@
+package com.sidpatchy.czdsclient.Benchmark;
+
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import com.sidpatchy.czdsclient.IO.CZDSClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a sync of several zones, sequentially and with parallel downloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SyncBenchmark {
+    @Param({"256"})
+    public int zoneSizeMiB;
+
+    @Param({"8"})
+    public int zones;
+
+    @Param({"1", "4"})
+    public int concurrency;
+
+    private ZoneServer server;
+    private CZDSClient client;
+    private Path downloadDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Every zone is served from the same file; only the client-side work per zone matters here
+        File zone = SyntheticZone.get("bench", zoneSizeMiB);
+        Map<String, File> files = new LinkedHashMap<>();
+        for (int i = 0; i < zones; i++) {
+            files.put("zone" + i, zone);
+        }
+
+        server = new ZoneServer(files);
+        client = new CZDSClient("benchmark", "benchmark", server.getBaseUrl(), server.getBaseUrl());
+        downloadDirectory = Files.createTempDirectory("czds-bench-sync");
+        client.getDownloader().setDownloadPath(downloadDirectory.toString());
+        client.getDownloader().setConcurrency(concurrency);
+    }
+
+    @Benchmark
+    public List<ZoneDownloadResult> sync() {
+        List<ZoneDownloadResult> results = client.getDownloader().downloadAllApprovedZoneFiles().join();
+        for (ZoneDownloadResult result : results) {
+            if (!result.isSuccessful()) {
+                throw new IllegalStateException("Failed to download the '." + result.getTld() + "' zone", result.getError());
+            }
+        }
+        return results;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+        DownloadBenchmark.deleteRecursively(downloadDirectory);
+    }
+}
@@ -0,0 +1,110 @@
+package com.sidpatchy.czdsclient.Benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates gzipped zone files that look like the ones served by CZDS: a SOA record followed by delegations with two
+ * or three NS records each and the occasional DS record, with random owner names.
+ * <p>
+ * The files are generated from a fixed seed, so the same parameters always produce the same file, and cached in the
+ * temporary directory, as generating several GiB takes a while. Delete {@code czds-bench} in the temporary directory to
+ * regenerate them.
+ */
+final class SyntheticZone {
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789-".toCharArray();
+
+    private SyntheticZone() {
+    }
+
+    /**
+     * Returns a synthetic zone file of the given compressed size, generating it if it is not cached yet.
+     *
+     * @param tld the TLD of the zone
+     * @param sizeMiB the size of the gzipped file in MiB
+     * @return the gzipped zone file.
+     * @throws IOException If the file cannot be written.
+     */
+    static File get(String tld, int sizeMiB) throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "czds-bench");
+        File file = new File(directory, tld + "-" + sizeMiB + "MiB.zone.gz");
+        if (file.isFile()) {
+            return file;
+        }
+
+        Files.createDirectories(directory.toPath());
+        File partFile = new File(directory, file.getName() + ".part");
+        generate(partFile, tld, (long) sizeMiB << 20);
+        Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private static void generate(File file, String tld, long compressedSize) throws IOException {
+        Random random = new Random(31L * tld.hashCode() + compressedSize);
+        StringBuilder name = new StringBuilder();
+
+        try (CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(file));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(new FastGZIPOutputStream(counter), StandardCharsets.US_ASCII), 1 << 16)) {
+            writer.write(tld + ".\t86400\tin\tsoa\ta.nic." + tld + ". noc.nic." + tld + ". 1700000000 1800 300 864000 86400\n");
+            while (counter.count < compressedSize) {
+                name.setLength(0);
+                int length = 3 + random.nextInt(14);
+                for (int i = 0; i < length; i++) {
+                    name.append(ALPHABET[random.nextInt(i == 0 || i == length - 1 ? 36 : ALPHABET.length)]);
+                }
+                String owner = name + "." + tld + ".";
+                int host = random.nextInt(100_000);
+                int servers = 2 + random.nextInt(2);
+                for (int i = 1; i <= servers; i++) {
+                    writer.write(owner + "\t172800\tin\tns\tns" + i + ".host" + host + ".net.\n");
+                }
+                if (random.nextInt(10) == 0) {
+                    writer.write(owner + "\t86400\tin\tds\t" + random.nextInt(65536) + " 13 2 "
+                            + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()) + "\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Compresses at the fastest level, which is what generating several GiB needs most.
+     */
+    private static final class FastGZIPOutputStream extends GZIPOutputStream {
+        private FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, 1 << 16);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.sidpatchy.czdsclient.Benchmark;
+
+import com.sidpatchy.czdsclient.Parser.DomainExtractor;
+import com.sidpatchy.czdsclient.Parser.ParallelZoneProcessor;
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the processing of a downloaded zone file: hashing it, parsing it sequentially and in parallel, and
+ * extracting its domains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ZoneProcessingBenchmark {
+    @Param({"256"})
+    public int zoneSizeMiB;
+
+    private File zone;
+
+    @Setup
+    public void setUp() throws IOException {
+        zone = SyntheticZone.get("bench", zoneSizeMiB);
+    }
+
+    @Benchmark
+    public byte[] sha256() throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[1 << 20];
+        try (InputStream inputStream = new FileInputStream(zone)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    @Benchmark
+    public long parseSequential() throws IOException {
+        try (ZoneFileParser parser = ZoneFileParser.open(zone)) {
+            return parser.parse(record -> {
+            });
+        }
+    }
+
+    @Benchmark
+    public long parseParallel() throws IOException {
+        return new ParallelZoneProcessor().count(new FileInputStream(zone));
+    }
+
+    @Benchmark
+    public long extractDomains() throws IOException {
+        try (ZoneFileParser parser = ZoneFileParser.open(zone)) {
+            return DomainExtractor.extract(parser, (buffer, offset, length) -> {
+            });
+        }
+    }
+}
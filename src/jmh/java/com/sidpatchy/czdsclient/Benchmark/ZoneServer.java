@@ -0,0 +1,95 @@
+package com.sidpatchy.czdsclient.Benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process stand-in for the CZDS API on the loopback interface, so benchmarks measure the client rather than the
+ * network. It accepts any login and serves the given zone files from disk.
+ */
+final class ZoneServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, File> zones;
+
+    /**
+     * Starts a server on a free port.
+     *
+     * @param zones the zone files to serve, by TLD
+     * @throws IOException If the server cannot be started.
+     */
+    ZoneServer(Map<String, File> zones) throws IOException {
+        this.zones = zones;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/authenticate/", exchange ->
+                send(exchange, "{\"accessToken\":\"benchmark\",\"message\":\"Authentication Successful\"}"));
+        server.createContext("/czds/downloads/links", exchange -> {
+            StringJoiner links = new StringJoiner(",", "[", "]");
+            for (String tld : zones.keySet()) {
+                links.add("\"" + getBaseUrl() + "/czds/downloads/" + tld + ".zone\"");
+            }
+            send(exchange, links.toString());
+        });
+        server.createContext("/czds/downloads/", this::sendZone);
+        server.start();
+    }
+
+    /**
+     * Returns the URL to use as both the authentication and the API endpoint.
+     *
+     * @return the base URL.
+     */
+    String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private void sendZone(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        File zone = zones.get(path.substring(path.lastIndexOf('/') + 1).replace(".zone", ""));
+        if (zone == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().add("Content-Length", Long.toString(zone.length()));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, zone.length());
+        try (OutputStream body = exchange.getResponseBody()) {
+            Files.copy(zone.toPath(), body);
+        }
+    }
+
+    private static void send(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
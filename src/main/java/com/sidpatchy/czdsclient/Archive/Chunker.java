@@ -0,0 +1,103 @@
+package com.sidpatchy.czdsclient.Archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a stream into content-defined chunks with a gear rolling hash, so an insertion or deletion only changes the
+ * chunks around it and the chunk boundaries of the rest of the stream stay where they were. Two snapshots of a zone
+ * that differ in a few thousand records therefore share all but a few thousand chunks. Zone files change all over, as
+ * records are sorted by name, so chunks are kept small: a chunk holds about a hundred records.
+ * <p>
+ * A chunk ends where the top bits of the hash of its last 64 bytes are all zero, but never before the minimum size and
+ * always at the maximum size. The gear table is derived from a fixed seed: changing it, or the sizes, moves every
+ * boundary and stops new snapshots from sharing chunks with old ones.
+ */
+class Chunker {
+    static final int MIN_SIZE = 2 * 1024;
+    static final int MAX_SIZE = 64 * 1024;
+    /** 12 bits for an average of 4 KiB past the minimum size. */
+    private static final long MASK = 0xFFFL << 52;
+    private static final int WINDOW = 64;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x435A44534745415CL;
+        for (int i = 0; i < GEAR.length; i++) {
+            // SplitMix64, spelled out so the table never depends on the JDK
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[2 * MAX_SIZE];
+    private int start;
+    private int end;
+    private boolean eof;
+
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next chunk.
+     *
+     * @param chunk the array to copy the chunk into, at least {@link #MAX_SIZE} long
+     * @return the length of the chunk, or -1 at the end of the stream.
+     * @throws IOException If the stream cannot be read.
+     */
+    int next(byte[] chunk) throws IOException {
+        fill();
+        int available = end - start;
+        if (available == 0) {
+            return -1;
+        }
+
+        int length = cut(Math.min(available, MAX_SIZE));
+        System.arraycopy(buffer, start, chunk, 0, length);
+        start += length;
+        return length;
+    }
+
+    /**
+     * Finds the end of the chunk at the start of the buffer.
+     */
+    private int cut(int limit) {
+        if (limit <= MIN_SIZE) {
+            return limit;
+        }
+
+        long hash = 0;
+        for (int i = MIN_SIZE - WINDOW; i < limit; i++) {
+            hash = (hash << 1) + GEAR[buffer[start + i] & 0xFF];
+            if (i >= MIN_SIZE && (hash & MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Tops the buffer up to at least {@link #MAX_SIZE} bytes, unless the stream ends first.
+     */
+    private void fill() throws IOException {
+        if (eof || end - start >= MAX_SIZE) {
+            return;
+        }
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+        while (end < buffer.length) {
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read == -1) {
+                eof = true;
+                return;
+            }
+            end += read;
+        }
+    }
+}
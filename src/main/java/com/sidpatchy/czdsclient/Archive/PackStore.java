@@ -0,0 +1,582 @@
+package com.sidpatchy.czdsclient.Archive;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores chunks by their SHA-256 hash, each chunk once, appended to pack files of a few hundred MiB rather than one file
+ * per chunk, which would mean millions of tiny files.
+ * <p>
+ * File layout, all numbers big-endian:
+ * <pre>
+ * packs/NNNNNNNN.pack  magic "CZDSPACK", version, then for every chunk:
+ *                      hash, codec, raw length, stored length, stored bytes
+ * chunks.idx           magic "CZDSCIDX", version, then for every chunk:
+ *                      hash, pack, offset of the stored bytes, codec, raw length, stored length
+ * </pre>
+ * The index is loaded into memory when the store is opened, at about 150 bytes per chunk. It is only a cache of the
+ * packs: a chunk is appended to its pack before its index entry, and entries missing after a crash are recovered by
+ * scanning the end of the packs.
+ * <p>
+ * Reads may run concurrently with each other; appends and compaction are exclusive.
+ */
+class PackStore implements AutoCloseable {
+    private static final long PACK_MAGIC = 0x435A44535041434BL; // "CZDSPACK"
+    private static final long INDEX_MAGIC = 0x435A445343494458L; // "CZDSCIDX"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 12;
+    private static final int HASH_SIZE = 32;
+    private static final int PACK_ENTRY_HEADER_SIZE = HASH_SIZE + 1 + 4 + 4;
+    private static final int INDEX_ENTRY_SIZE = HASH_SIZE + 4 + 8 + 1 + 4 + 4;
+    static final byte STORED = 0;
+    static final byte DEFLATED = 1;
+
+    private final Logger logger = LogManager.getLogger(PackStore.class);
+    private final Path packDirectory;
+    private final Path indexFile;
+    private final Map<ChunkId, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel indexWriter;
+    private FileChannel packWriter;
+    private int packId;
+    private volatile long packSize = 256L * 1024 * 1024;
+
+    PackStore(Path root) throws IOException {
+        this.packDirectory = root.resolve("packs");
+        this.indexFile = root.resolve("chunks.idx");
+        Files.createDirectories(packDirectory);
+
+        Map<Integer, Long> covered = loadIndex();
+        for (int id : listPacks()) {
+            recoverPack(id, covered.getOrDefault(id, (long) FILE_HEADER_SIZE));
+            packId = Math.max(packId, id);
+        }
+        openPackWriter(packId == 0 ? 1 : packId);
+    }
+
+    /**
+     * Reads the index file, dropping a partly written entry at its end, and returns how far into each pack the index
+     * reaches.
+     */
+    private Map<Integer, Long> loadIndex() throws IOException {
+        Map<Integer, Long> covered = new HashMap<>();
+        indexWriter = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (indexWriter.size() < FILE_HEADER_SIZE) {
+            writeFileHeader(indexWriter, INDEX_MAGIC);
+            return covered;
+        }
+        checkFileHeader(indexWriter, INDEX_MAGIC, indexFile);
+
+        long entries = (indexWriter.size() - FILE_HEADER_SIZE) / INDEX_ENTRY_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 4096);
+        long position = FILE_HEADER_SIZE;
+        long end = FILE_HEADER_SIZE + entries * INDEX_ENTRY_SIZE;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            readFully(indexWriter, buffer, position);
+            buffer.flip();
+            position += buffer.limit();
+            while (buffer.hasRemaining()) {
+                byte[] hash = new byte[HASH_SIZE];
+                buffer.get(hash);
+                Location location = new Location(buffer.getInt(), buffer.getLong(), buffer.get(), buffer.getInt(), buffer.getInt());
+                index.put(new ChunkId(hash), location);
+                covered.merge(location.pack, location.offset + location.storedLength, Math::max);
+            }
+        }
+
+        if (indexWriter.size() != end) {
+            logger.warn("Dropping a partly written entry at the end of " + indexFile);
+            indexWriter.truncate(end);
+        }
+        return covered;
+    }
+
+    /**
+     * Indexes the chunks at the end of a pack that are missing from the index, and cuts off a chunk that was only
+     * partly written.
+     */
+    private void recoverPack(int id, long from) throws IOException {
+        Path file = packFile(id);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < FILE_HEADER_SIZE) {
+                writeFileHeader(channel, PACK_MAGIC);
+                return;
+            }
+            checkFileHeader(channel, PACK_MAGIC, file);
+
+            long position = from;
+            ByteBuffer header = ByteBuffer.allocate(PACK_ENTRY_HEADER_SIZE);
+            int recovered = 0;
+            while (position + PACK_ENTRY_HEADER_SIZE <= channel.size()) {
+                header.clear();
+                readFully(channel, header, position);
+                header.flip();
+                byte[] hash = new byte[HASH_SIZE];
+                header.get(hash);
+                byte codec = header.get();
+                int rawLength = header.getInt();
+                int storedLength = header.getInt();
+                long offset = position + PACK_ENTRY_HEADER_SIZE;
+                if (offset + storedLength > channel.size()) {
+                    break;
+                }
+                Location location = new Location(id, offset, codec, rawLength, storedLength);
+                index.put(new ChunkId(hash), location);
+                appendIndexEntry(hash, location);
+                position = offset + storedLength;
+                recovered++;
+            }
+
+            if (recovered > 0) {
+                logger.warn("Recovered " + recovered + " chunks missing from the index of " + file);
+            }
+            if (position < channel.size()) {
+                logger.warn("Dropping a partly written chunk at the end of " + file);
+                channel.truncate(position);
+            }
+        }
+    }
+
+    boolean contains(byte[] hash) {
+        return index.containsKey(new ChunkId(hash));
+    }
+
+    /**
+     * Compresses a chunk for storage, unless compression does not make it smaller.
+     *
+     * @param data the chunk
+     * @param length the length of the chunk
+     * @param level the Deflater level, 0 to store the chunk as it is
+     * @return the codec in the first byte, followed by the stored bytes.
+     */
+    static byte[] encode(byte[] data, int length, int level) {
+        if (level > 0) {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                byte[] encoded = new byte[length + 1];
+                encoded[0] = DEFLATED;
+                int size = 1;
+                while (!deflater.finished() && size < encoded.length) {
+                    size += deflater.deflate(encoded, size, encoded.length - size);
+                }
+                if (deflater.finished()) {
+                    return Arrays.copyOf(encoded, size);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        byte[] encoded = new byte[length + 1];
+        encoded[0] = STORED;
+        System.arraycopy(data, 0, encoded, 1, length);
+        return encoded;
+    }
+
+    /**
+     * Appends a chunk unless it is already stored.
+     *
+     * @param hash the SHA-256 hash of the chunk
+     * @param rawLength the length of the chunk
+     * @param encoded the chunk as returned by {@link #encode}
+     * @return true if the chunk was new.
+     */
+    boolean put(byte[] hash, int rawLength, byte[] encoded) throws IOException {
+        ChunkId id = new ChunkId(hash);
+        lock.writeLock().lock();
+        try {
+            if (index.containsKey(id)) {
+                return false;
+            }
+            append(id, encoded[0], rawLength, ByteBuffer.wrap(encoded, 1, encoded.length - 1));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a chunk to the current pack and then to the index, starting a new pack when the current one is full.
+     */
+    private void append(ChunkId id, byte codec, int rawLength, ByteBuffer stored) throws IOException {
+        if (packWriter.size() >= packSize) {
+            packWriter.force(false);
+            packWriter.close();
+            openPackWriter(packId + 1);
+        }
+
+        int storedLength = stored.remaining();
+        long position = packWriter.size();
+        ByteBuffer header = ByteBuffer.allocate(PACK_ENTRY_HEADER_SIZE);
+        header.put(id.hash).put(codec).putInt(rawLength).putInt(storedLength).flip();
+        writeFully(packWriter, new ByteBuffer[]{header, stored}, position);
+
+        Location location = new Location(packId, position + PACK_ENTRY_HEADER_SIZE, codec, rawLength, storedLength);
+        appendIndexEntry(id.hash, location);
+        index.put(id, location);
+    }
+
+    private void appendIndexEntry(byte[] hash, Location location) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        entry.put(hash).putInt(location.pack).putLong(location.offset).put(location.codec)
+                .putInt(location.rawLength).putInt(location.storedLength).flip();
+        writeFully(indexWriter, new ByteBuffer[]{entry}, indexWriter.size());
+    }
+
+    /**
+     * Reads and decompresses a chunk.
+     *
+     * @param hash the SHA-256 hash of the chunk
+     * @return the chunk.
+     * @throws IOException If the chunk is missing or corrupt.
+     */
+    byte[] get(byte[] hash) throws IOException {
+        lock.readLock().lock();
+        try {
+            Location location = index.get(new ChunkId(hash));
+            if (location == null) {
+                throw new IOException("Missing chunk " + HexFormat.of().formatHex(hash));
+            }
+            ByteBuffer stored = ByteBuffer.allocate(location.storedLength);
+            readFully(getReader(location.pack), stored, location.offset);
+            return decode(location, stored.array());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static byte[] decode(Location location, byte[] stored) throws IOException {
+        if (location.codec == STORED) {
+            return stored;
+        }
+        if (location.codec != DEFLATED) {
+            throw new IOException("Unknown chunk codec " + location.codec);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(stored);
+            byte[] raw = new byte[location.rawLength];
+            int size = 0;
+            while (size < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, size, raw.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != raw.length) {
+                throw new IOException("Corrupt chunk: expected " + raw.length + " bytes, inflated " + size);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt chunk", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Moves the chunks still in use out of packs that are mostly unused, then deletes those packs. The pack being
+     * written to is left alone. Blocks reads and writes while it runs.
+     *
+     * @param live the hashes of the chunks still referenced by a snapshot
+     * @return the number of bytes freed.
+     */
+    long compact(Set<ChunkId> live) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, long[]> usage = new TreeMap<>();
+            for (Map.Entry<ChunkId, Location> entry : index.entrySet()) {
+                long[] bytes = usage.computeIfAbsent(entry.getValue().pack, id -> new long[2]);
+                bytes[0] += entry.getValue().storedLength;
+                if (live.contains(entry.getKey())) {
+                    bytes[1] += entry.getValue().storedLength;
+                }
+            }
+
+            List<Integer> sparse = new ArrayList<>();
+            for (int id : listPacks()) {
+                long[] bytes = usage.getOrDefault(id, new long[2]);
+                if (id != packId && bytes[1] * 2 <= bytes[0]) {
+                    sparse.add(id);
+                }
+            }
+            if (sparse.isEmpty()) {
+                return 0;
+            }
+
+            long freed = 0;
+            for (int id : sparse) {
+                freed += Files.size(packFile(id));
+            }
+            for (Map.Entry<ChunkId, Location> entry : new ArrayList<>(index.entrySet())) {
+                Location location = entry.getValue();
+                if (!sparse.contains(location.pack)) {
+                    continue;
+                }
+                if (live.contains(entry.getKey())) {
+                    ByteBuffer stored = ByteBuffer.allocate(location.storedLength);
+                    readFully(getReader(location.pack), stored, location.offset);
+                    stored.flip();
+                    append(entry.getKey(), location.codec, location.rawLength, stored);
+                    freed -= PACK_ENTRY_HEADER_SIZE + location.storedLength;
+                } else {
+                    index.remove(entry.getKey());
+                }
+            }
+            packWriter.force(false);
+            rewriteIndex();
+
+            for (int id : sparse) {
+                FileChannel reader = readers.remove(id);
+                if (reader != null) {
+                    reader.close();
+                }
+                Files.delete(packFile(id));
+            }
+            return freed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the index file with one holding exactly the chunks in memory, dropping the entries of deleted packs. The
+     * entries are written in the order of the packs, as appending would, so recovery only ever needs to scan the ends of
+     * the packs.
+     */
+    private void rewriteIndex() throws IOException {
+        List<Map.Entry<ChunkId, Location>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingInt((Map.Entry<ChunkId, Location> entry) -> entry.getValue().pack)
+                .thenComparingLong(entry -> entry.getValue().offset));
+
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFileHeader(channel, INDEX_MAGIC);
+            ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 4096);
+            for (Map.Entry<ChunkId, Location> entry : entries) {
+                if (buffer.remaining() < INDEX_ENTRY_SIZE) {
+                    buffer.flip();
+                    writeFully(channel, new ByteBuffer[]{buffer}, channel.size());
+                    buffer.clear();
+                }
+                Location location = entry.getValue();
+                buffer.put(entry.getKey().hash).putInt(location.pack).putLong(location.offset).put(location.codec)
+                        .putInt(location.rawLength).putInt(location.storedLength);
+            }
+            buffer.flip();
+            writeFully(channel, new ByteBuffer[]{buffer}, channel.size());
+            channel.force(false);
+        }
+
+        indexWriter.close();
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        indexWriter = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Flushes the packs and the index to disk, so snapshots written afterwards never refer to chunks lost in a crash.
+     */
+    void sync() throws IOException {
+        lock.writeLock().lock();
+        try {
+            packWriter.force(false);
+            indexWriter.force(false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int getChunkCount() {
+        return index.size();
+    }
+
+    /**
+     * Returns the combined size of the packs on disk.
+     */
+    long getSize() throws IOException {
+        long size = 0;
+        for (int id : listPacks()) {
+            size += Files.size(packFile(id));
+        }
+        return size;
+    }
+
+    long getPackSize() {
+        return packSize;
+    }
+
+    void setPackSize(long packSize) {
+        if (packSize < 1) {
+            throw new IllegalArgumentException("Pack size must be positive");
+        }
+        this.packSize = packSize;
+    }
+
+    private void openPackWriter(int id) throws IOException {
+        packId = id;
+        packWriter = FileChannel.open(packFile(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (packWriter.size() < FILE_HEADER_SIZE) {
+            writeFileHeader(packWriter, PACK_MAGIC);
+        }
+    }
+
+    private FileChannel getReader(int id) throws IOException {
+        FileChannel reader = readers.get(id);
+        if (reader == null) {
+            reader = FileChannel.open(packFile(id), StandardOpenOption.READ);
+            FileChannel existing = readers.putIfAbsent(id, reader);
+            if (existing != null) {
+                reader.close();
+                reader = existing;
+            }
+        }
+        return reader;
+    }
+
+    private List<Integer> listPacks() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(packDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".pack")) {
+                    try {
+                        ids.add(Integer.parseInt(name.substring(0, name.length() - ".pack".length())));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private Path packFile(int id) {
+        return packDirectory.resolve(String.format("%08d.pack", id));
+    }
+
+    private static void writeFileHeader(FileChannel channel, long magic) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putLong(magic).putInt(VERSION).flip();
+        channel.truncate(0);
+        writeFully(channel, new ByteBuffer[]{header}, 0);
+    }
+
+    private static void checkFileHeader(FileChannel channel, long magic, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getLong() != magic) {
+            throw new IOException(file + " is not part of a snapshot store");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of " + file);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer[] buffers, long position) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            packWriter.close();
+            indexWriter.close();
+            for (FileChannel reader : readers.values()) {
+                reader.close();
+            }
+            readers.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The SHA-256 hash of a chunk, usable as a map key.
+     */
+    static final class ChunkId {
+        private final byte[] hash;
+        private final int hashCode;
+
+        ChunkId(byte[] hash) {
+            this.hash = hash;
+            this.hashCode = Arrays.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ChunkId && Arrays.equals(hash, ((ChunkId) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Where a chunk is stored.
+     */
+    private static final class Location {
+        private final int pack;
+        private final long offset;
+        private final byte codec;
+        private final int rawLength;
+        private final int storedLength;
+
+        private Location(int pack, long offset, byte codec, int rawLength, int storedLength) {
+            this.pack = pack;
+            this.offset = offset;
+            this.codec = codec;
+            this.rawLength = rawLength;
+            this.storedLength = storedLength;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.sidpatchy.czdsclient.Archive;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * One day's copy of a zone in a {@link SnapshotStore}: the list of chunks that make up the uncompressed zone file.
+ * Opening a snapshot at an offset only reads the chunks from that offset on, so any part of any day's zone can be read
+ * without decompressing the rest of it.
+ */
+public class Snapshot {
+    private final SnapshotStore store;
+    private final String tld;
+    private final LocalDate date;
+    private final long createdAt;
+    private final byte[] digest;
+    private final byte[] chunkHashes;
+    private final long[] offsets;
+
+    Snapshot(SnapshotStore store, String tld, LocalDate date, long createdAt, byte[] digest, byte[] chunkHashes, long[] offsets) {
+        this.store = store;
+        this.tld = tld;
+        this.date = date;
+        this.createdAt = createdAt;
+        this.digest = digest;
+        this.chunkHashes = chunkHashes;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Opens the uncompressed zone file.
+     *
+     * @return a stream of the zone file.
+     */
+    public InputStream open() {
+        return open(0);
+    }
+
+    /**
+     * Opens the uncompressed zone file at an offset, reading only the chunks from the offset on.
+     *
+     * @param position the offset in the uncompressed zone file
+     * @return a stream of the zone file from the offset on.
+     * @throws IllegalArgumentException If the offset is negative or past the end of the zone file.
+     */
+    public InputStream open(long position) {
+        if (position < 0 || position > getSize()) {
+            throw new IllegalArgumentException("Offset " + position + " is outside the zone file of " + getSize() + " bytes");
+        }
+        return new SnapshotInputStream(this, store.getPackStore(), position);
+    }
+
+    /**
+     * Returns the index of the chunk holding a position, or the chunk count for the end of the file.
+     */
+    int findChunk(long position) {
+        int index = Arrays.binarySearch(offsets, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    long getChunkOffset(int index) {
+        return offsets[index];
+    }
+
+    byte[] getChunkHash(int index) {
+        return Arrays.copyOfRange(chunkHashes, index * 32, index * 32 + 32);
+    }
+
+    byte[] getDigestBytes() {
+        return digest;
+    }
+
+    public String getTld() {
+        return tld;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Returns when the snapshot was added to the store, in milliseconds since the epoch.
+     *
+     * @return the time the snapshot was added.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Returns the size of the uncompressed zone file.
+     *
+     * @return the size in bytes.
+     */
+    public long getSize() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Returns the SHA-256 digest of the uncompressed zone file.
+     *
+     * @return the digest in lowercase hexadecimal.
+     */
+    public String getDigest() {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    public int getChunkCount() {
+        return offsets.length - 1;
+    }
+}
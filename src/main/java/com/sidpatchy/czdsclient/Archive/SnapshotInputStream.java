@@ -0,0 +1,87 @@
+package com.sidpatchy.czdsclient.Archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reads a snapshot chunk by chunk, checking every chunk against its hash.
+ */
+class SnapshotInputStream extends InputStream {
+    private final Snapshot snapshot;
+    private final PackStore packs;
+    private final MessageDigest digest;
+    private int chunkIndex;
+    private byte[] chunk;
+    private int position;
+
+    SnapshotInputStream(Snapshot snapshot, PackStore packs, long offset) {
+        this.snapshot = snapshot;
+        this.packs = packs;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        this.chunkIndex = snapshot.findChunk(offset);
+        if (chunkIndex < snapshot.getChunkCount()) {
+            // The first chunk is read lazily; remember where in it to start
+            this.position = (int) (offset - snapshot.getChunkOffset(chunkIndex));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        return chunk[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int read = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return chunk == null ? 0 : chunk.length - position;
+    }
+
+    /**
+     * Moves on to the next chunk once the current one is used up.
+     *
+     * @return false at the end of the snapshot.
+     */
+    private boolean ensureChunk() throws IOException {
+        while (chunk == null || position == chunk.length) {
+            if (chunk != null) {
+                chunkIndex++;
+                position = 0;
+                chunk = null;
+            }
+            if (chunkIndex >= snapshot.getChunkCount()) {
+                return false;
+            }
+
+            byte[] hash = snapshot.getChunkHash(chunkIndex);
+            byte[] data = packs.get(hash);
+            if (!MessageDigest.isEqual(hash, digest.digest(data))) {
+                throw new IOException("Chunk " + chunkIndex + " of the '." + snapshot.getTld() + "' snapshot of "
+                        + snapshot.getDate() + " is corrupt");
+            }
+            chunk = data;
+        }
+        return true;
+    }
+}
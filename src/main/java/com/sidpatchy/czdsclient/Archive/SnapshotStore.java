@@ -0,0 +1,483 @@
+package com.sidpatchy.czdsclient.Archive;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps dated copies of zone files without storing each day in full.
+ * <p>
+ * Zones are stored uncompressed and split into content-defined chunks of about 6 KiB, and every chunk is stored only
+ * once, no matter how many days or zones contain it. Most of a zone is unchanged from one day to the next, so a new
+ * day costs little more than the chunks around the records that changed. Chunks are recompressed with Deflater;
+ * raising the level to 9 trades slower archiving for a smaller store.
+ * <p>
+ * A day's copy of a zone is a {@link Snapshot}, which can be read from any offset. Snapshots are kept per TLD and date:
+ * <pre>
+ * snapshots/&lt;tld&gt;/&lt;yyyy-MM-dd&gt;.snap  magic "CZDSSNAP", version, size, creation time, SHA-256 of the
+ *                                  zone, chunk count, then the hash and length of every chunk
+ * packs/, chunks.idx               the chunks, see {@link PackStore}
+ * </pre>
+ * Old snapshots are removed with {@link #prune}, after which {@link #compact} frees the space of the chunks no longer
+ * used. A store must only be opened by one process at a time; within the process, instances are safe for concurrent
+ * use.
+ */
+public class SnapshotStore implements AutoCloseable {
+    private static final long MAGIC = 0x435A4453534E4150L; // "CZDSSNAP"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".snap";
+
+    private final Logger logger = LogManager.getLogger(SnapshotStore.class);
+    private final Path snapshotDirectory;
+    private final PackStore packs;
+    // Adding snapshots share this lock; compaction takes it exclusively, so it never drops a chunk that a snapshot
+    // being added found already stored
+    private final ReadWriteLock maintenanceLock = new ReentrantReadWriteLock();
+    private volatile int compressionLevel = 6;
+    private volatile int retentionDays = 0;
+
+    /**
+     * Opens a snapshot store, creating it if the directory is empty.
+     *
+     * @param root the directory of the store
+     * @throws IOException If the store cannot be created or read.
+     */
+    public SnapshotStore(Path root) throws IOException {
+        this.snapshotDirectory = root.resolve("snapshots");
+        Files.createDirectories(snapshotDirectory);
+        this.packs = new PackStore(root);
+    }
+
+    /**
+     * Adds a downloaded zone file. Gzipped files are decompressed first, so unchanged records are shared between
+     * snapshots regardless of how the server compressed them.
+     *
+     * @param tld the TLD of the zone
+     * @param date the day the zone is from; replaces an earlier snapshot of the same day
+     * @param zoneFile the zone file, gzipped or not
+     * @return the new snapshot.
+     * @throws IOException If the file cannot be read or the store cannot be written.
+     */
+    public Snapshot add(String tld, LocalDate date, File zoneFile) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(zoneFile), 1 << 16)) {
+            in.mark(2);
+            boolean gzipped = in.read() == 0x1F && in.read() == 0x8B;
+            in.reset();
+            return add(tld, date, gzipped ? new GZIPInputStream(in, 1 << 16) : in);
+        }
+    }
+
+    /**
+     * Adds a zone read from a stream.
+     *
+     * @param tld the TLD of the zone
+     * @param date the day the zone is from; replaces an earlier snapshot of the same day
+     * @param zone the uncompressed zone file; not closed
+     * @return the new snapshot.
+     * @throws IOException If the stream cannot be read or the store cannot be written.
+     */
+    public Snapshot add(String tld, LocalDate date, InputStream zone) throws IOException {
+        MessageDigest zoneDigest = newDigest();
+        MessageDigest chunkDigest = newDigest();
+        Chunker chunker = new Chunker(zone);
+        byte[] chunk = new byte[Chunker.MAX_SIZE];
+        int level = compressionLevel;
+
+        ByteArrayList hashes = new ByteArrayList();
+        LongArrayList offsets = new LongArrayList();
+        offsets.add(0);
+        long size = 0;
+        int newChunks = 0;
+        long storedBytes = 0;
+
+        maintenanceLock.readLock().lock();
+        try {
+            int length;
+            while ((length = chunker.next(chunk)) != -1) {
+                zoneDigest.update(chunk, 0, length);
+                chunkDigest.update(chunk, 0, length);
+                byte[] hash = chunkDigest.digest();
+                if (!packs.contains(hash)) {
+                    byte[] encoded = PackStore.encode(chunk, length, level);
+                    if (packs.put(hash, length, encoded)) {
+                        newChunks++;
+                        storedBytes += encoded.length - 1;
+                    }
+                }
+                hashes.add(hash);
+                size += length;
+                offsets.add(size);
+            }
+            packs.sync();
+
+            Snapshot snapshot = new Snapshot(this, tld, date, System.currentTimeMillis(), zoneDigest.digest(), hashes.toArray(), offsets.toArray());
+            write(snapshot);
+            logger.info("Archived the '." + tld + "' zone of " + date + ": " + snapshot.getChunkCount() + " chunks of which "
+                    + newChunks + " new, " + storedBytes + " of " + size + " bytes stored");
+            return snapshot;
+        } finally {
+            maintenanceLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the snapshot of a zone as it was on a day: the snapshot of that day, or the latest before it if the zone
+     * was not archived that day, e.g. because it had not changed.
+     *
+     * @param tld the TLD of the zone
+     * @param date the day
+     * @return the snapshot, or null if the zone has no snapshot on or before the day.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public Snapshot getSnapshot(String tld, LocalDate date) throws IOException {
+        LocalDate latest = null;
+        for (LocalDate candidate : getDates(tld)) {
+            if (!candidate.isAfter(date)) {
+                latest = candidate;
+            }
+        }
+        return latest == null ? null : read(tld, latest);
+    }
+
+    /**
+     * Returns the days a zone has snapshots of.
+     *
+     * @param tld the TLD of the zone
+     * @return the days, oldest first.
+     * @throws IOException If the store cannot be read.
+     */
+    public List<LocalDate> getDates(String tld) throws IOException {
+        List<LocalDate> dates = new ArrayList<>();
+        for (String name : list(snapshotDirectory.resolve(tld))) {
+            if (name.endsWith(SUFFIX)) {
+                try {
+                    dates.add(LocalDate.parse(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (DateTimeParseException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        dates.sort(null);
+        return dates;
+    }
+
+    /**
+     * Returns the TLDs of the zones with snapshots.
+     *
+     * @return the TLDs, sorted.
+     * @throws IOException If the store cannot be read.
+     */
+    public List<String> getTlds() throws IOException {
+        List<String> tlds = list(snapshotDirectory);
+        tlds.sort(null);
+        return tlds;
+    }
+
+    /**
+     * Writes a snapshot back out as a gzipped zone file, checking it against the digest taken when it was added.
+     *
+     * @param snapshot the snapshot
+     * @param target the file to write
+     * @throws IOException If the snapshot cannot be read, is corrupt, or the file cannot be written.
+     */
+    public void export(Snapshot snapshot, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        MessageDigest digest = newDigest();
+        try (InputStream in = snapshot.open();
+             OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), 1 << 16)) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        if (!MessageDigest.isEqual(digest.digest(), snapshot.getDigestBytes())) {
+            Files.deleteIfExists(temp);
+            throw new IOException("The '." + snapshot.getTld() + "' snapshot of " + snapshot.getDate() + " does not match its digest");
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the snapshots from before a day. The latest snapshot of each zone on or before the day is kept, as it
+     * still describes the zone on that day. The chunks of removed snapshots stay on disk until {@link #compact}.
+     *
+     * @param before the first day to keep
+     * @return the number of snapshots removed.
+     * @throws IOException If the store cannot be written.
+     */
+    public int prune(LocalDate before) throws IOException {
+        int removed = 0;
+        for (String tld : getTlds()) {
+            List<LocalDate> dates = getDates(tld);
+            for (int i = 0; i + 1 < dates.size() && !dates.get(i + 1).isAfter(before); i++) {
+                Files.deleteIfExists(snapshotFile(tld, dates.get(i)));
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            logger.info("Removed " + removed + " snapshots from before " + before);
+        }
+        return removed;
+    }
+
+    /**
+     * Frees the space of chunks no longer used by any snapshot. Packs that are at least half unused are rewritten
+     * without their unused chunks; fuller packs are left alone, as rewriting them would cost more than it frees. Blocks
+     * adding snapshots, and reading them, while it runs.
+     *
+     * @return the number of bytes freed.
+     * @throws IOException If the store cannot be read or written.
+     */
+    public long compact() throws IOException {
+        maintenanceLock.writeLock().lock();
+        try {
+            Set<PackStore.ChunkId> live = new HashSet<>();
+            for (String tld : getTlds()) {
+                for (LocalDate date : getDates(tld)) {
+                    Snapshot snapshot = read(tld, date);
+                    for (int i = 0; i < snapshot.getChunkCount(); i++) {
+                        live.add(new PackStore.ChunkId(snapshot.getChunkHash(i)));
+                    }
+                }
+            }
+
+            long freed = packs.compact(live);
+            if (freed > 0) {
+                logger.info("Compacted the snapshot store, freeing " + freed + " bytes");
+            }
+            return freed;
+        } finally {
+            maintenanceLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the retention period, if one is set: prunes the snapshots older than the period and compacts the store
+     * if any were removed.
+     *
+     * @param today the current day
+     * @throws IOException If the store cannot be read or written.
+     */
+    public void applyRetention(LocalDate today) throws IOException {
+        if (retentionDays > 0 && prune(today.minusDays(retentionDays - 1)) > 0) {
+            compact();
+        }
+    }
+
+    private void write(Snapshot snapshot) throws IOException {
+        Path file = snapshotFile(snapshot.getTld(), snapshot.getDate());
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.getSize());
+            out.writeLong(snapshot.getCreatedAt());
+            out.write(snapshot.getDigestBytes());
+            out.writeInt(snapshot.getChunkCount());
+            for (int i = 0; i < snapshot.getChunkCount(); i++) {
+                out.write(snapshot.getChunkHash(i));
+                out.writeInt((int) (snapshot.getChunkOffset(i + 1) - snapshot.getChunkOffset(i)));
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Snapshot read(String tld, LocalDate date) throws IOException {
+        Path file = snapshotFile(tld, date);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of " + file);
+            }
+            long size = in.readLong();
+            long createdAt = in.readLong();
+            byte[] digest = new byte[32];
+            in.readFully(digest);
+            int count = in.readInt();
+
+            byte[] hashes = new byte[count * 32];
+            long[] offsets = new long[count + 1];
+            for (int i = 0; i < count; i++) {
+                in.readFully(hashes, i * 32, 32);
+                offsets[i + 1] = offsets[i] + in.readInt();
+            }
+            if (offsets[count] != size) {
+                throw new IOException(file + " is corrupt");
+            }
+            return new Snapshot(this, tld, date, createdAt, digest, hashes, offsets);
+        }
+    }
+
+    private Path snapshotFile(String tld, LocalDate date) {
+        return snapshotDirectory.resolve(tld).resolve(date + SUFFIX);
+    }
+
+    private static List<String> list(Path directory) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> names.add(file.getFileName().toString()));
+        } catch (NoSuchFileException e) {
+            // Nothing archived yet
+        }
+        return names;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    PackStore getPackStore() {
+        return packs;
+    }
+
+    /**
+     * Returns the number of distinct chunks stored.
+     *
+     * @return the chunk count.
+     */
+    public int getChunkCount() {
+        return packs.getChunkCount();
+    }
+
+    /**
+     * Returns the space the chunks take on disk, not counting the snapshot lists.
+     *
+     * @return the size in bytes.
+     * @throws IOException If the store cannot be read.
+     */
+    public long getStoredSize() throws IOException {
+        return packs.getSize();
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the Deflater level new chunks are compressed with, from 0 to store them uncompressed, which is fastest to
+     * add and read, to 9 for the smallest store. Defaults to 6.
+     *
+     * @param compressionLevel the compression level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public long getPackSize() {
+        return packs.getPackSize();
+    }
+
+    /**
+     * Sets the size at which a new pack file is started. Smaller packs are compacted sooner and at a lower cost, larger
+     * ones mean fewer files. Defaults to 256 MiB.
+     *
+     * @param packSize the pack size in bytes
+     */
+    public void setPackSize(long packSize) {
+        packs.setPackSize(packSize);
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    /**
+     * Sets how many days of snapshots {@link #applyRetention} keeps. Defaults to 0, which keeps every snapshot.
+     *
+     * @param retentionDays the number of days to keep
+     */
+    public void setRetentionDays(int retentionDays) {
+        if (retentionDays < 0) {
+            throw new IllegalArgumentException("Retention must not be negative");
+        }
+        this.retentionDays = retentionDays;
+    }
+
+    @Override
+    public void close() throws IOException {
+        packs.close();
+    }
+
+    /**
+     * A growable array of bytes, for the chunk hashes of a snapshot being added.
+     */
+    private static final class ByteArrayList {
+        private byte[] bytes = new byte[32 * 1024];
+        private int size;
+
+        void add(byte[] value) {
+            if (size + value.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + value.length));
+            }
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * A growable array of longs, for the chunk offsets of a snapshot being added.
+     */
+    private static final class LongArrayList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.sidpatchy.czdsclient.Bean;
+
+import java.io.File;
+
+public class FileDownload {
+    private final File file;
+    private final boolean notModified;
+    private final ZoneState state;
+
+    /**
+     * Constructs a FileDownload describing the outcome of a single file download.
+     *
+     * @param file the local file holding the downloaded content
+     * @param notModified true if the server reported the file unchanged and nothing was transferred
+     * @param state the validators, size and hash of the local file
+     */
+    public FileDownload(File file, boolean notModified, ZoneState state) {
+        this.file = file;
+        this.notModified = notModified;
+        this.state = state;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    public ZoneState getState() {
+        return state;
+    }
+}
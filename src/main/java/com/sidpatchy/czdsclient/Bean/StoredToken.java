@@ -0,0 +1,52 @@
+package com.sidpatchy.czdsclient.Bean;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class StoredToken {
+    @JsonProperty("username")
+    private String username;
+    @JsonProperty("accessToken")
+    private String accessToken;
+    @JsonProperty("expiresAt")
+    private long expiresAt;
+
+    public StoredToken() {
+    }
+
+    /**
+     * Constructs a StoredToken.
+     *
+     * @param username the user the token was issued to
+     * @param accessToken the token
+     * @param expiresAt when the token expires, in milliseconds since the epoch
+     */
+    public StoredToken(String username, String accessToken, long expiresAt) {
+        this.username = username;
+        this.accessToken = accessToken;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
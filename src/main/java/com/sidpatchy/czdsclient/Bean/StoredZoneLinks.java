@@ -0,0 +1,54 @@
+package com.sidpatchy.czdsclient.Bean;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+public class StoredZoneLinks {
+    @JsonProperty("username")
+    private String username;
+    @JsonProperty("fetchedAt")
+    private long fetchedAt;
+    @JsonProperty("links")
+    private List<String> links;
+
+    public StoredZoneLinks() {
+    }
+
+    /**
+     * Constructs a StoredZoneLinks.
+     *
+     * @param username the user the links were fetched for
+     * @param fetchedAt when the links were fetched, in milliseconds since the epoch
+     * @param links the zone download URLs
+     */
+    public StoredZoneLinks(String username, long fetchedAt, List<String> links) {
+        this.username = username;
+        this.fetchedAt = fetchedAt;
+        this.links = links;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public void setFetchedAt(long fetchedAt) {
+        this.fetchedAt = fetchedAt;
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    public void setLinks(List<String> links) {
+        this.links = links;
+    }
+}
@@ -0,0 +1,134 @@
+package com.sidpatchy.czdsclient.Bean;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The status of a daily sync window of a sync daemon and the outcome of its last run. Times are in milliseconds since
+ * the epoch, 0 if the window has not run yet. {@code failures} holds the error of every zone that failed in the last
+ * run; {@code error} is set if the run failed as a whole, e.g. because the zone links could not be fetched.
+ */
+public class SyncStatus {
+    @JsonProperty("window")
+    private String window;
+    @JsonProperty("zones")
+    private List<String> zones;
+    @JsonProperty("running")
+    private boolean running;
+    @JsonProperty("nextRunAt")
+    private long nextRunAt;
+    @JsonProperty("runs")
+    private int runs;
+    @JsonProperty("lastStartedAt")
+    private long lastStartedAt;
+    @JsonProperty("lastFinishedAt")
+    private long lastFinishedAt;
+    @JsonProperty("downloaded")
+    private int downloaded;
+    @JsonProperty("notModified")
+    private int notModified;
+    @JsonProperty("failed")
+    private int failed;
+    @JsonProperty("failures")
+    private Map<String, String> failures;
+    @JsonProperty("error")
+    private String error;
+
+    public String getWindow() {
+        return window;
+    }
+
+    public void setWindow(String window) {
+        this.window = window;
+    }
+
+    public List<String> getZones() {
+        return zones;
+    }
+
+    public void setZones(List<String> zones) {
+        this.zones = zones;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void setRunning(boolean running) {
+        this.running = running;
+    }
+
+    public long getNextRunAt() {
+        return nextRunAt;
+    }
+
+    public void setNextRunAt(long nextRunAt) {
+        this.nextRunAt = nextRunAt;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    public void setRuns(int runs) {
+        this.runs = runs;
+    }
+
+    public long getLastStartedAt() {
+        return lastStartedAt;
+    }
+
+    public void setLastStartedAt(long lastStartedAt) {
+        this.lastStartedAt = lastStartedAt;
+    }
+
+    public long getLastFinishedAt() {
+        return lastFinishedAt;
+    }
+
+    public void setLastFinishedAt(long lastFinishedAt) {
+        this.lastFinishedAt = lastFinishedAt;
+    }
+
+    public int getDownloaded() {
+        return downloaded;
+    }
+
+    public void setDownloaded(int downloaded) {
+        this.downloaded = downloaded;
+    }
+
+    public int getNotModified() {
+        return notModified;
+    }
+
+    public void setNotModified(int notModified) {
+        this.notModified = notModified;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public void setFailures(Map<String, String> failures) {
+        this.failures = failures;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,85 @@
+package com.sidpatchy.czdsclient.Bean;
+
+import java.io.File;
+
+public class ZoneDownloadResult {
+    public enum Status {
+        /** The zone was downloaded. */
+        DOWNLOADED,
+        /** The zone was unchanged since the last download, so the local copy was kept. */
+        NOT_MODIFIED,
+        /** The zone could not be downloaded. */
+        FAILED
+    }
+
+    private final Status status;
+    private final String tld;
+    private final String url;
+    private final File file;
+    private final Throwable error;
+
+    /**
+     * Constructs a ZoneDownloadResult for a single zone of a batch download.
+     *
+     * @param status the outcome of the download
+     * @param tld the TLD of the zone
+     * @param url the URL the zone was downloaded from
+     * @param file the local zone file, or null if the download failed
+     * @param error the error that caused the download to fail, or null if it succeeded
+     */
+    public ZoneDownloadResult(Status status, String tld, String url, File file, Throwable error) {
+        this.status = status;
+        this.tld = tld;
+        this.url = url;
+        this.file = file;
+        this.error = error;
+    }
+
+    public static ZoneDownloadResult success(String tld, String url, File file) {
+        return new ZoneDownloadResult(Status.DOWNLOADED, tld, url, file, null);
+    }
+
+    public static ZoneDownloadResult notModified(String tld, String url, File file) {
+        return new ZoneDownloadResult(Status.NOT_MODIFIED, tld, url, file, null);
+    }
+
+    public static ZoneDownloadResult failure(String tld, String url, Throwable error) {
+        return new ZoneDownloadResult(Status.FAILED, tld, url, null, error);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getTld() {
+        return tld;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return status != Status.FAILED;
+    }
+
+    @Override
+    public String toString() {
+        switch (status) {
+            case DOWNLOADED:
+                return tld + ": downloaded to " + file.getPath();
+            case NOT_MODIFIED:
+                return tld + ": unchanged, kept " + file.getPath();
+            default:
+                return tld + ": failed (" + error.getMessage() + ")";
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.sidpatchy.czdsclient.Bean;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A lease on a zone in a shared lease directory, held by the worker downloading it. Times are in milliseconds since
+ * the epoch; a released lease expires at 0, and {@code completedAt} is only set in the marker written once the zone is
+ * done.
+ */
+public class ZoneLease {
+    @JsonProperty("worker")
+    private String worker;
+    @JsonProperty("acquiredAt")
+    private long acquiredAt;
+    @JsonProperty("expiresAt")
+    private long expiresAt;
+    @JsonProperty("completedAt")
+    private long completedAt;
+
+    public ZoneLease() {
+    }
+
+    /**
+     * Constructs a ZoneLease.
+     *
+     * @param worker the ID of the worker holding the lease
+     * @param acquiredAt when the lease was acquired
+     * @param expiresAt when the lease expires unless it is renewed
+     */
+    public ZoneLease(String worker, long acquiredAt, long expiresAt) {
+        this.worker = worker;
+        this.acquiredAt = acquiredAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getWorker() {
+        return worker;
+    }
+
+    public void setWorker(String worker) {
+        this.worker = worker;
+    }
+
+    public long getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public void setAcquiredAt(long acquiredAt) {
+        this.acquiredAt = acquiredAt;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(long completedAt) {
+        this.completedAt = completedAt;
+    }
+}
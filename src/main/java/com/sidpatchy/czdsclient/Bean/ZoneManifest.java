@@ -0,0 +1,111 @@
+package com.sidpatchy.czdsclient.Bean;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The sidecar manifest written next to a downloaded zone file. It records the digest of the file along with the size
+ * and modification time the file had when it was hashed, so the file only needs hashing again if either changes.
+ * {@code uncompressedSize} is -1 unless the file was validated as a gzip file.
+ */
+public class ZoneManifest {
+    @JsonProperty("fileName")
+    private String fileName;
+    @JsonProperty("size")
+    private long size;
+    @JsonProperty("modifiedAt")
+    private long modifiedAt;
+    @JsonProperty("digestAlgorithm")
+    private String digestAlgorithm;
+    @JsonProperty("digest")
+    private String digest;
+    @JsonProperty("etag")
+    private String etag;
+    @JsonProperty("lastModified")
+    private String lastModified;
+    @JsonProperty("gzipVerified")
+    private boolean gzipVerified;
+    @JsonProperty("uncompressedSize")
+    private long uncompressedSize;
+    @JsonProperty("verifiedAt")
+    private long verifiedAt;
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    public void setModifiedAt(long modifiedAt) {
+        this.modifiedAt = modifiedAt;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public boolean isGzipVerified() {
+        return gzipVerified;
+    }
+
+    public void setGzipVerified(boolean gzipVerified) {
+        this.gzipVerified = gzipVerified;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public void setUncompressedSize(long uncompressedSize) {
+        this.uncompressedSize = uncompressedSize;
+    }
+
+    public long getVerifiedAt() {
+        return verifiedAt;
+    }
+
+    public void setVerifiedAt(long verifiedAt) {
+        this.verifiedAt = verifiedAt;
+    }
+}
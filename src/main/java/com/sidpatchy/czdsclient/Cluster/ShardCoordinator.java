@@ -0,0 +1,409 @@
+package com.sidpatchy.czdsclient.Cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.ZoneLease;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the zones of a sync between several workers, e.g. processes on different hosts, that share a directory.
+ * <p>
+ * A worker claims a zone by creating a lease file for it; whoever creates the file first downloads the zone, and the
+ * others move on to the next one. While a worker downloads a zone it renews the lease every third of the lease TTL; a
+ * worker that dies stops renewing, and once its lease expires the zone is taken over by the next worker that looks at
+ * it. A finished zone gets a done marker, so it is not downloaded again.
+ * <p>
+ * A lease file is never replaced or deleted. Every change to a lease, whether a renewal, a takeover or a release,
+ * writes its next generation instead: {@code com.lease.0}, {@code com.lease.1} and so on, the highest being the current
+ * one. Each generation is written under a temporary name and hard-linked into place, which fails if it already exists,
+ * so only one worker can succeed a given generation, and a worker only changes a lease whose current generation it has
+ * read. This makes every change atomic even on network file systems, where renaming a lease out of the way or reading
+ * and then replacing it would let two workers act on the same lease.
+ * <p>
+ * Each sync is a {@link Round} with its own subdirectory, named after the UTC date by default, so daily syncs start
+ * from a clean slate without anyone clearing the directory. The workers of one sync must agree on the round and their
+ * clocks must agree to well within the lease TTL.
+ */
+public class ShardCoordinator implements AutoCloseable {
+    private static final String LEASE_SUFFIX = ".lease";
+    private static final String DONE_SUFFIX = ".done";
+
+    /**
+     * The outcome of an attempt to claim a zone.
+     */
+    public enum Claim {
+        /** The zone was claimed and must now be downloaded, then completed or released. */
+        CLAIMED,
+        /** Another live worker holds the zone; look again later in case it dies. */
+        HELD,
+        /** The zone was already downloaded in this round. */
+        DONE
+    }
+
+    private final Logger logger = LogManager.getLogger(ShardCoordinator.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path directory;
+    private final String workerId;
+    private final Clock clock;
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "czds-lease-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Duration leaseTtl = Duration.ofMinutes(2);
+    private volatile Duration pollInterval = Duration.ofSeconds(15);
+
+    /**
+     * Constructs a ShardCoordinator with a worker ID made of the host name and process ID.
+     *
+     * @param directory the directory shared by all workers
+     */
+    public ShardCoordinator(Path directory) {
+        this(directory, getDefaultWorkerId());
+    }
+
+    /**
+     * Constructs a ShardCoordinator.
+     *
+     * @param directory the directory shared by all workers
+     * @param workerId an ID unique to this worker
+     */
+    public ShardCoordinator(Path directory, String workerId) {
+        this(directory, workerId, Clock.systemUTC());
+    }
+
+    ShardCoordinator(Path directory, String workerId, Clock clock) {
+        this.directory = directory;
+        this.workerId = workerId;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts the round of the current UTC date.
+     *
+     * @return the round.
+     */
+    public Round startRound() {
+        return startRound(LocalDate.now(clock.withZone(ZoneOffset.UTC)).toString());
+    }
+
+    /**
+     * Starts a named round, e.g. to run several syncs a day.
+     *
+     * @param name the name of the round, shared by all workers taking part in it
+     * @return the round.
+     */
+    public Round startRound(String name) {
+        Path roundDirectory = directory.resolve(name);
+        try {
+            Files.createDirectories(roundDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create the lease directory " + roundDirectory, e);
+        }
+        return new Round(roundDirectory);
+    }
+
+    private static String getDefaultWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public Duration getLeaseTtl() {
+        return leaseTtl;
+    }
+
+    /**
+     * Sets how long a lease stays valid without being renewed, i.e. how long the zones of a dead worker wait before
+     * they are taken over. Defaults to 2 minutes.
+     *
+     * @param leaseTtl the lease TTL
+     */
+    public void setLeaseTtl(Duration leaseTtl) {
+        if (leaseTtl.toMillis() < 3) {
+            throw new IllegalArgumentException("Lease TTL must be at least 3 milliseconds");
+        }
+        this.leaseTtl = leaseTtl;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Sets how often a worker that has nothing left to claim looks again at the zones held by other workers, to take
+     * them over if their worker died. Defaults to 15 seconds.
+     *
+     * @param pollInterval the poll interval
+     */
+    public void setPollInterval(Duration pollInterval) {
+        if (pollInterval.isNegative()) {
+            throw new IllegalArgumentException("Poll interval must not be negative");
+        }
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Stops renewing the leases this worker still holds, so they expire and other workers take the zones over.
+     */
+    @Override
+    public void close() {
+        heartbeats.shutdownNow();
+    }
+
+    /**
+     * The leases of one sync.
+     */
+    public class Round {
+        private final Path directory;
+        private final Map<String, HeldLease> held = new ConcurrentHashMap<>();
+        // The highest lease generation seen per zone; generations only grow, so reading starts there
+        private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+        private Round(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Tries to claim a zone. A claimed zone is renewed in the background until it is completed or released.
+         *
+         * @param tld the TLD of the zone
+         * @return whether the zone was claimed, is held by another worker or is already done.
+         * @throws UncheckedIOException If the lease directory cannot be written.
+         */
+        public Claim tryClaim(String tld) {
+            long now = clock.millis();
+            ZoneLease lease = new ZoneLease(workerId, now, now + leaseTtl.toMillis());
+            long generation = 0;
+            ZoneLease previous = null;
+            try {
+                if (Files.exists(directory.resolve(tld + DONE_SUFFIX))) {
+                    return Claim.DONE;
+                }
+                long current = findCurrentGeneration(tld);
+                if (current >= 0) {
+                    previous = read(leaseFile(tld, current));
+                    if (previous == null) {
+                        // Unreadable for now; look again later
+                        return Claim.HELD;
+                    }
+                    if (previous.getExpiresAt() > now && !previous.getWorker().equals(workerId)) {
+                        return Claim.HELD;
+                    }
+                    // Expired or released, or left behind by an earlier process with this worker's ID
+                    generation = current + 1;
+                }
+                if (!createLease(tld, generation, lease)) {
+                    // Another worker claimed or changed the lease since it was read
+                    return Claim.HELD;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to claim the '." + tld + "' zone", e);
+            }
+
+            if (previous != null && previous.getExpiresAt() != 0 && !previous.getWorker().equals(workerId)) {
+                logger.info("Taking over the '." + tld + "' zone from " + previous.getWorker() + ", whose lease expired");
+            }
+            HeldLease claim = new HeldLease(lease, generation);
+            held.put(tld, claim);
+            if (Files.exists(directory.resolve(tld + DONE_SUFFIX))) {
+                // The previous holder finished just before its lease was taken over
+                release(tld);
+                return Claim.DONE;
+            }
+            long renewMillis = Math.max(1, leaseTtl.toMillis() / 3);
+            synchronized (claim) {
+                claim.heartbeat = heartbeats.scheduleAtFixedRate(() -> renew(tld, claim), renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+            }
+            return Claim.CLAIMED;
+        }
+
+        /**
+         * Marks a claimed zone as done, so no worker downloads it again in this round, and drops its lease.
+         *
+         * @param tld the TLD of the zone
+         */
+        public void complete(String tld) {
+            ZoneLease marker = new ZoneLease(workerId, 0, 0);
+            marker.setCompletedAt(clock.millis());
+            try {
+                write(directory.resolve(tld + DONE_SUFFIX), marker);
+            } catch (IOException e) {
+                logger.warn("Unable to mark the '." + tld + "' zone as done, another worker may download it again: " + e.getMessage());
+            }
+            release(tld);
+        }
+
+        /**
+         * Drops the lease of a claimed zone without marking it as done, e.g. after its download failed, so another
+         * worker may try it.
+         *
+         * @param tld the TLD of the zone
+         */
+        public void release(String tld) {
+            HeldLease claim = held.remove(tld);
+            if (claim == null) {
+                return;
+            }
+            synchronized (claim) {
+                claim.stop();
+                // A lease that expires right away; if another worker has taken the zone over, its lease stays
+                ZoneLease released = new ZoneLease(workerId, claim.lease.getAcquiredAt(), 0);
+                try {
+                    createLease(tld, claim.generation + 1, released);
+                } catch (IOException e) {
+                    logger.warn("Unable to release the lease on the '." + tld + "' zone, it will expire instead: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Extends the lease of a zone this worker holds by writing its next generation, which fails if any other
+         * worker has changed the lease since, e.g. because this worker stalled for longer than the lease TTL and the
+         * zone was taken over.
+         */
+        private void renew(String tld, HeldLease claim) {
+            synchronized (claim) {
+                if (claim.stopped) {
+                    return;
+                }
+                ZoneLease renewed = new ZoneLease(workerId, claim.lease.getAcquiredAt(), clock.millis() + leaseTtl.toMillis());
+                try {
+                    if (createLease(tld, claim.generation + 1, renewed)) {
+                        claim.lease = renewed;
+                        claim.generation++;
+                        return;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Unable to renew the lease on the '." + tld + "' zone: " + e.getMessage());
+                    return;
+                }
+                ZoneLease current = read(leaseFile(tld, claim.generation + 1));
+                logger.warn("Lost the lease on the '." + tld + "' zone to " + (current == null ? "another worker" : current.getWorker()));
+                claim.stop();
+                held.remove(tld, claim);
+            }
+        }
+
+        /**
+         * Finds the current generation of a zone's lease by probing from the highest one seen so far.
+         *
+         * @return the generation, or -1 if the zone has no lease yet.
+         */
+        private long findCurrentGeneration(String tld) {
+            long generation = generations.getOrDefault(tld, -1L);
+            while (Files.exists(leaseFile(tld, generation + 1))) {
+                generation++;
+            }
+            if (generation >= 0) {
+                generations.merge(tld, generation, Math::max);
+            }
+            return generation;
+        }
+
+        /**
+         * Writes a generation of a lease, unless it already exists. The lease is written to a temporary file and
+         * hard-linked into place, so other workers never see a partial lease and only one of them can win.
+         */
+        private boolean createLease(String tld, long generation, ZoneLease lease) throws IOException {
+            Path file = leaseFile(tld, generation);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), lease);
+                Files.createLink(file, temp);
+                generations.merge(tld, generation, Math::max);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                return false;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private Path leaseFile(String tld, long generation) {
+            return directory.resolve(tld + LEASE_SUFFIX + "." + generation);
+        }
+
+        private ZoneLease read(Path file) {
+            try {
+                return objectMapper.readValue(file.toFile(), ZoneLease.class);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Replaces a file atomically, so readers see either the old or the new contents.
+         */
+        private void write(Path file, ZoneLease lease) throws IOException {
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), lease);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+    }
+
+    /**
+     * A lease this worker holds, and the generation it was last written as. Renewals and the release synchronize on
+     * it, so a heartbeat cannot renew a lease that was just released.
+     */
+    private static final class HeldLease {
+        private ZoneLease lease;
+        private long generation;
+        private ScheduledFuture<?> heartbeat;
+        private boolean stopped;
+
+        private HeldLease(ZoneLease lease, long generation) {
+            this.lease = lease;
+            this.generation = generation;
+        }
+
+        private void stop() {
+            stopped = true;
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
+        }
+    }
+}
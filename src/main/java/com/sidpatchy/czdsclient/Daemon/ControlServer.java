@@ -0,0 +1,201 @@
+package com.sidpatchy.czdsclient.Daemon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Metrics.PrometheusExporter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small HTTP endpoint to watch and control a {@link SyncDaemon}:
+ * <ul>
+ *     <li>{@code GET /status} returns the status of every sync window as JSON.</li>
+ *     <li>{@code GET /metrics} returns the client's metrics in the Prometheus text format, for scraping.</li>
+ *     <li>{@code POST /sync} starts every window now; {@code POST /sync?window=<name>} starts a single one.</li>
+ * </ul>
+ * Reading the status and the metrics is not authenticated, so the endpoint should only be bound to a loopback address.
+ * Starting a sync requires the server's token as {@code Authorization: Bearer <token>}; requests carrying an
+ * {@code Origin} header are refused as well, so a web page open in a browser on the same host cannot start one.
+ */
+public class ControlServer implements AutoCloseable {
+    private final Logger logger = LogManager.getLogger(ControlServer.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SyncDaemon daemon;
+    private final byte[] token;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "czds-control-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts a ControlServer.
+     *
+     * @param daemon the daemon to control
+     * @param address the address to listen on; port 0 picks a free port
+     * @param token the token {@code POST /sync} requires, see {@link #readOrCreateToken(Path)}
+     * @throws IOException If the server cannot be bound to the address.
+     */
+    public ControlServer(SyncDaemon daemon, InetSocketAddress address, String token) throws IOException {
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("Control token must not be blank");
+        }
+        this.daemon = daemon;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/status", exchange -> handle(exchange, "GET", this::status));
+        server.createContext("/metrics", exchange -> handle(exchange, "GET", this::metrics));
+        server.createContext("/sync", exchange -> handle(exchange, "POST", this::authorizedSync));
+        server.start();
+        logger.info("Control endpoint listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        send(exchange, 200, "application/json", objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(daemon.getStatus()));
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        String body = PrometheusExporter.format(daemon.getClient().getConnectionManager().getMetrics().snapshot());
+        send(exchange, 200, "text/plain; version=0.0.4", body);
+    }
+
+    /**
+     * Reads the token of the control endpoint from a file, or writes a new random one to it if it does not exist yet.
+     *
+     * @param file the token file
+     * @return the token.
+     * @throws IOException If the file cannot be read or written, or is empty.
+     */
+    public static String readOrCreateToken(Path file) throws IOException {
+        if (Files.exists(file)) {
+            String token = Files.readString(file, StandardCharsets.UTF_8).strip();
+            if (token.isEmpty()) {
+                throw new IOException("Control token file " + file + " is empty");
+            }
+            return token;
+        }
+
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        String token = HexFormat.of().formatHex(random);
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        // Temporary files are only readable by their owner
+        Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.writeString(tempFile, token + "\n", StandardCharsets.UTF_8);
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return token;
+    }
+
+    /**
+     * Starts a sync only if the request carries the token and does not come from a web page.
+     */
+    private void authorizedSync(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            send(exchange, 403, "application/json", objectMapper.writeValueAsString(Map.of("error", "Cross-origin requests are not allowed")));
+            return;
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("Bearer ")
+                || !MessageDigest.isEqual(authorization.substring(7).strip().getBytes(StandardCharsets.UTF_8), token)) {
+            exchange.getResponseHeaders().add("WWW-Authenticate", "Bearer");
+            send(exchange, 401, "application/json", objectMapper.writeValueAsString(Map.of("error", "Missing or invalid control token")));
+            return;
+        }
+        sync(exchange);
+    }
+
+    private void sync(HttpExchange exchange) throws IOException {
+        String window = getQueryParameter(exchange, "window");
+        List<String> windows = window == null ? daemon.getWindowNames() : List.of(window);
+        if (!daemon.getWindowNames().containsAll(windows)) {
+            send(exchange, 404, "application/json", objectMapper.writeValueAsString(Map.of("error", "Unknown sync window " + window)));
+            return;
+        }
+
+        for (String name : windows) {
+            daemon.syncNow(name);
+        }
+        send(exchange, 202, "application/json", objectMapper.writeValueAsString(Map.of("started", windows)));
+    }
+
+    /**
+     * Runs a handler if the request uses the expected method, and answers with an error otherwise or if it fails.
+     */
+    private void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals(method)) {
+                exchange.getResponseHeaders().add("Allow", method);
+                send(exchange, 405, "text/plain", "Method not allowed\n");
+                return;
+            }
+            handler.handle(exchange);
+        } catch (RuntimeException e) {
+            logger.error("Control request " + exchange.getRequestURI() + " failed", e);
+            send(exchange, 500, "text/plain", "Internal error\n");
+        }
+    }
+
+    private static String getQueryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Returns the address the server listens on, e.g. to learn the port picked for port 0.
+     *
+     * @return the bound address.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+}
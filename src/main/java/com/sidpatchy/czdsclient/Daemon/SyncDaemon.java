@@ -0,0 +1,353 @@
+package com.sidpatchy.czdsclient.Daemon;
+
+import com.sidpatchy.czdsclient.Bean.SyncStatus;
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import com.sidpatchy.czdsclient.IO.CZDSClient;
+import com.sidpatchy.czdsclient.Module.DownloadModule;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one client running and syncs zones on a daily schedule, instead of starting a new process for every sync.
+ * <p>
+ * The client, and with it the access token, the cached zone links and the warmed-up JIT, lives as long as the daemon,
+ * so a sync costs only the downloads themselves. Each {@link SyncWindow} runs once a day at its start time plus a
+ * random jitter. A window that is still running when its next start comes around is skipped for that day. The metrics
+ * of the client are exported after every run, and an optional {@link ControlServer} exposes the status, the metrics
+ * and a way to start a sync by hand on the loopback interface.
+ * <p>
+ * The daemon does not own the client: closing the daemon stops the schedule but leaves the client open.
+ */
+public class SyncDaemon implements AutoCloseable {
+    private final Logger logger = LogManager.getLogger(SyncDaemon.class);
+    private final CZDSClient client;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "czds-sync-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Window> windows = new LinkedHashMap<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile ZoneId zone = ZoneId.systemDefault();
+    private ControlServer controlServer;
+    private boolean started;
+
+    /**
+     * Constructs a SyncDaemon around a client. Configure the client, e.g. to download incrementally, before starting
+     * the daemon.
+     *
+     * @param client the client to sync with
+     */
+    public SyncDaemon(CZDSClient client) {
+        this(client, Clock.systemUTC());
+    }
+
+    SyncDaemon(CZDSClient client, Clock clock) {
+        this.client = client;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a daily sync window. Windows added after the daemon was started are scheduled right away.
+     *
+     * @param window the window
+     * @throws IllegalArgumentException If a window of the same name was already added.
+     */
+    public synchronized void addWindow(SyncWindow window) {
+        if (windows.containsKey(window.getName())) {
+            throw new IllegalArgumentException("Duplicate sync window " + window.getName());
+        }
+        Window state = new Window(window);
+        windows.put(window.getName(), state);
+        if (started) {
+            schedule(state);
+        }
+    }
+
+    /**
+     * Starts the schedule. The client logs in and fetches the zone links in the background right away, so
+     * configuration errors show up at startup rather than at the first sync.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        for (Window window : windows.values()) {
+            schedule(window);
+        }
+
+        client.getDownloader().getApprovedTLDs().whenComplete((tlds, e) -> {
+            if (e != null) {
+                logger.error("Unable to fetch the approved zones at startup: " + unwrap(e).getMessage());
+            } else {
+                logger.info("Sync daemon started with " + windows.size() + " windows and access to " + tlds.size() + " zones");
+            }
+        });
+    }
+
+    /**
+     * Starts a {@link ControlServer} for this daemon.
+     *
+     * @param address the address to listen on; use a loopback address, as reading the status is not authenticated
+     * @param token the token starting a sync requires
+     * @return the started server.
+     * @throws IOException If the server cannot be bound to the address.
+     */
+    public synchronized ControlServer startControlServer(InetSocketAddress address, String token) throws IOException {
+        if (controlServer != null) {
+            controlServer.close();
+        }
+        controlServer = new ControlServer(this, address, token);
+        return controlServer;
+    }
+
+    /**
+     * Runs a window now, outside its schedule. If the window is already running, its current run is returned instead.
+     *
+     * @param name the name of the window
+     * @return A CompletableFuture with the results of the run.
+     * @throws IllegalArgumentException If there is no window of that name.
+     */
+    public CompletableFuture<List<ZoneDownloadResult>> syncNow(String name) {
+        Window window;
+        synchronized (this) {
+            window = windows.get(name);
+        }
+        if (window == null) {
+            throw new IllegalArgumentException("Unknown sync window " + name);
+        }
+        return run(window);
+    }
+
+    /**
+     * Runs every window now, outside their schedules.
+     *
+     * @return A CompletableFuture that completes once every window has finished running.
+     */
+    public CompletableFuture<Void> syncAllNow() {
+        List<CompletableFuture<List<ZoneDownloadResult>>> runs = new ArrayList<>();
+        for (String name : getWindowNames()) {
+            runs.add(syncNow(name));
+        }
+        return CompletableFuture.allOf(runs.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Returns the status of every window, in the order the windows were added.
+     *
+     * @return the status of the windows.
+     */
+    public synchronized List<SyncStatus> getStatus() {
+        List<SyncStatus> statuses = new ArrayList<>();
+        for (Window window : windows.values()) {
+            statuses.add(window.getStatus());
+        }
+        return statuses;
+    }
+
+    public synchronized List<String> getWindowNames() {
+        return new ArrayList<>(windows.keySet());
+    }
+
+    /**
+     * Blocks until the daemon is closed, e.g. by a shutdown hook.
+     *
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public void awaitTermination() throws InterruptedException {
+        closed.await();
+    }
+
+    /**
+     * Stops the schedule and the control server. Runs in progress are not interrupted, but their results are no longer
+     * awaited.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (controlServer != null) {
+                controlServer.close();
+                controlServer = null;
+            }
+            for (Window window : windows.values()) {
+                if (window.next != null) {
+                    window.next.cancel(false);
+                }
+            }
+        }
+        scheduler.shutdownNow();
+        closed.countDown();
+    }
+
+    /**
+     * Schedules the next run of a window, at its next start plus a random share of its jitter.
+     */
+    private synchronized void schedule(Window window) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+
+        ZonedDateTime start = window.window.getNextStart(ZonedDateTime.now(clock.withZone(zone)));
+        long jitterMillis = window.window.getJitter().toMillis();
+        Instant runAt = start.toInstant().plusMillis(jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        long delay = Math.max(0, Duration.between(clock.instant(), runAt).toMillis());
+
+        window.nextRunAt = runAt;
+        window.next = scheduler.schedule(() -> {
+            schedule(window);
+            run(window);
+        }, delay, TimeUnit.MILLISECONDS);
+        logger.debug("Sync window " + window.window.getName() + " scheduled for " + runAt);
+    }
+
+    /**
+     * Runs a window unless it is already running.
+     */
+    private CompletableFuture<List<ZoneDownloadResult>> run(Window window) {
+        CompletableFuture<List<ZoneDownloadResult>> run;
+        synchronized (window) {
+            if (window.running != null) {
+                logger.warn("Sync window " + window.window.getName() + " is still running, not starting it again");
+                return window.running;
+            }
+            window.lastStartedAt = clock.millis();
+            window.runs++;
+
+            logger.info("Starting sync window " + window.window.getName());
+            DownloadModule downloader = client.getDownloader();
+            try {
+                run = window.window.getZones().isEmpty()
+                        ? downloader.downloadAllApprovedZoneFiles()
+                        : downloader.downloadZoneFiles(window.window.getZones());
+            } catch (RuntimeException e) {
+                run = CompletableFuture.failedFuture(e);
+            }
+            window.running = run;
+        }
+
+        return run.whenComplete((results, e) -> {
+            synchronized (window) {
+                window.running = null;
+                window.lastFinishedAt = clock.millis();
+                window.record(results, e == null ? null : unwrap(e));
+            }
+            if (e != null) {
+                logger.error("Sync window " + window.window.getName() + " failed: " + unwrap(e).getMessage());
+            } else {
+                logger.info("Finished sync window " + window.window.getName() + ": " + window.downloaded + " downloaded, "
+                        + window.notModified + " unchanged, " + window.failed + " failed");
+            }
+            client.getConnectionManager().getMetrics().export();
+        });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    public CZDSClient getClient() {
+        return client;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Sets the time zone the start times of the windows are given in. Defaults to the system time zone. Only affects
+     * runs scheduled after the change.
+     *
+     * @param zone the time zone
+     */
+    public void setZone(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * A window with its schedule and the outcome of its last run.
+     */
+    private static final class Window {
+        private final SyncWindow window;
+        private ScheduledFuture<?> next;
+        private volatile Instant nextRunAt;
+        private CompletableFuture<List<ZoneDownloadResult>> running;
+        private int runs;
+        private long lastStartedAt;
+        private long lastFinishedAt;
+        private int downloaded;
+        private int notModified;
+        private int failed;
+        private Map<String, String> failures = Map.of();
+        private String error;
+
+        private Window(SyncWindow window) {
+            this.window = window;
+        }
+
+        private void record(List<ZoneDownloadResult> results, Throwable e) {
+            downloaded = 0;
+            notModified = 0;
+            failed = 0;
+            failures = new TreeMap<>();
+            error = e == null ? null : String.valueOf(e.getMessage());
+            if (results == null) {
+                return;
+            }
+
+            for (ZoneDownloadResult result : results) {
+                switch (result.getStatus()) {
+                    case DOWNLOADED:
+                        downloaded++;
+                        break;
+                    case NOT_MODIFIED:
+                        notModified++;
+                        break;
+                    case FAILED:
+                        failed++;
+                        failures.put(result.getTld(), String.valueOf(result.getError().getMessage()));
+                        break;
+                }
+            }
+        }
+
+        private synchronized SyncStatus getStatus() {
+            SyncStatus status = new SyncStatus();
+            status.setWindow(window.getName());
+            status.setZones(window.getZones());
+            status.setRunning(running != null);
+            status.setNextRunAt(nextRunAt == null ? 0 : nextRunAt.toEpochMilli());
+            status.setRuns(runs);
+            status.setLastStartedAt(lastStartedAt);
+            status.setLastFinishedAt(lastFinishedAt);
+            status.setDownloaded(downloaded);
+            status.setNotModified(notModified);
+            status.setFailed(failed);
+            status.setFailures(failures);
+            status.setError(error);
+            return status;
+        }
+    }
+}
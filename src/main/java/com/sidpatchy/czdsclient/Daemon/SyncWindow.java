@@ -0,0 +1,106 @@
+package com.sidpatchy.czdsclient.Daemon;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A daily sync of a set of zones, started at a fixed local time plus a random delay of up to the jitter. Jitter spreads
+ * the load of many clients, or of several windows of one client, that would otherwise all start on the hour.
+ */
+public class SyncWindow {
+    private final String name;
+    private final List<String> zones;
+    private final LocalTime start;
+    private final Duration jitter;
+
+    /**
+     * Constructs a SyncWindow.
+     *
+     * @param name the name of the window, used to refer to it in the status and to trigger it by hand
+     * @param zones the TLDs and patterns of the zones to sync, see
+     *              {@link com.sidpatchy.czdsclient.Module.DownloadModule#downloadZoneFiles}; empty to sync every
+     *              approved zone
+     * @param start the time of day the sync starts at
+     * @param jitter the largest random delay added to the start, less than a day
+     */
+    public SyncWindow(String name, List<String> zones, LocalTime start, Duration jitter) {
+        if (jitter.isNegative() || jitter.compareTo(Duration.ofDays(1)) >= 0) {
+            throw new IllegalArgumentException("Jitter must be at least 0 and less than a day");
+        }
+        this.name = name;
+        this.zones = List.copyOf(zones);
+        this.start = start;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Parses a window given as {@code [zones=]HH:MM[+jitter]}, e.g. "02:00", "02:00+30" or "com,net=02:00+30", where
+     * the zones are a comma-separated list of TLDs and patterns and the jitter is in minutes. The specification doubles
+     * as the name of the window.
+     *
+     * @param spec the specification of the window
+     * @param defaultZones the zones to sync if the specification names none
+     * @return the window.
+     * @throws IllegalArgumentException If the specification is malformed.
+     */
+    public static SyncWindow parse(String spec, List<String> defaultZones) {
+        String time = spec.trim();
+        List<String> zones = defaultZones;
+        int equals = time.indexOf('=');
+        if (equals >= 0) {
+            zones = new ArrayList<>();
+            for (String zone : time.substring(0, equals).split(",")) {
+                if (!zone.isBlank()) {
+                    zones.add(zone.trim());
+                }
+            }
+            time = time.substring(equals + 1);
+        }
+
+        Duration jitter = Duration.ZERO;
+        int plus = time.indexOf('+');
+        try {
+            if (plus >= 0) {
+                jitter = Duration.ofMinutes(Long.parseLong(time.substring(plus + 1).trim()));
+                time = time.substring(0, plus);
+            }
+            return new SyncWindow(spec.trim(), zones, LocalTime.parse(time.trim()), jitter);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid sync window '" + spec + "', expected [zones=]HH:MM[+jitter minutes]", e);
+        }
+    }
+
+    /**
+     * Returns the first start of this window after the given time, not counting jitter.
+     *
+     * @param now the current time, in the time zone the window's start is given in
+     * @return the next start.
+     */
+    public ZonedDateTime getNextStart(ZonedDateTime now) {
+        ZonedDateTime next = now.with(start);
+        if (!next.isAfter(now)) {
+            next = now.plusDays(1).with(start);
+        }
+        return next;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getZones() {
+        return zones;
+    }
+
+    public LocalTime getStart() {
+        return start;
+    }
+
+    public Duration getJitter() {
+        return jitter;
+    }
+}
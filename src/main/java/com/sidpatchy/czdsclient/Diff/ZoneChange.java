@@ -0,0 +1,68 @@
+package com.sidpatchy.czdsclient.Diff;
+
+import java.util.List;
+
+/**
+ * A change to the records of one owner name between two snapshots of a zone.
+ * <p>
+ * Records are normalized to {@code "<type> <rdata>"} in lower case with single spaces, sorted, and without TTL, so
+ * reordering or reformatting records is not reported as a change.
+ */
+public class ZoneChange {
+    public enum Type {
+        /** The owner is new, e.g. a newly registered domain. */
+        ADDED,
+        /** The owner is gone, e.g. a dropped domain. */
+        REMOVED,
+        /** The owner exists in both snapshots with different records, e.g. changed nameservers. */
+        CHANGED
+    }
+
+    private final Type type;
+    private final String owner;
+    private final List<String> oldRecords;
+    private final List<String> newRecords;
+
+    /**
+     * Constructs a ZoneChange.
+     *
+     * @param type the kind of change
+     * @param owner the owner name, in lower case with a trailing dot
+     * @param oldRecords the records in the old snapshot, empty if the owner was added
+     * @param newRecords the records in the new snapshot, empty if the owner was removed
+     */
+    public ZoneChange(Type type, String owner, List<String> oldRecords, List<String> newRecords) {
+        this.type = type;
+        this.owner = owner;
+        this.oldRecords = oldRecords;
+        this.newRecords = newRecords;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public List<String> getOldRecords() {
+        return oldRecords;
+    }
+
+    public List<String> getNewRecords() {
+        return newRecords;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case ADDED:
+                return "+ " + owner + " " + newRecords;
+            case REMOVED:
+                return "- " + owner + " " + oldRecords;
+            default:
+                return "~ " + owner + " " + oldRecords + " -> " + newRecords;
+        }
+    }
+}
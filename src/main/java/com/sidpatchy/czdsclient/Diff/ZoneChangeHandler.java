@@ -0,0 +1,17 @@
+package com.sidpatchy.czdsclient.Diff;
+
+import java.io.IOException;
+
+/**
+ * Receives the changes found by {@link ZoneDiff}.
+ */
+@FunctionalInterface
+public interface ZoneChangeHandler {
+    /**
+     * Called once for every owner name that was added, removed or changed.
+     *
+     * @param change the change
+     * @throws IOException If the change cannot be handled, e.g. written; this aborts the diff.
+     */
+    void onChange(ZoneChange change) throws IOException;
+}
@@ -0,0 +1,336 @@
+package com.sidpatchy.czdsclient.Diff;
+
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+import com.sidpatchy.czdsclient.Parser.ZoneRecord;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Computes the changes between two snapshots of a zone, e.g. yesterday's and today's download of a TLD: added and
+ * removed owner names (newly registered and dropped domains) and owners whose records changed (e.g. new nameservers).
+ * <p>
+ * Zone files of large TLDs do not fit in memory, so the diff is a hash-partitioned join in two passes. First, both
+ * snapshots are streamed through {@link ZoneFileParser} concurrently; the records of every owner are normalized into a
+ * single line and written to one of several partition files chosen by a hash of the owner. Second, the partitions are
+ * compared one at a time: an owner always lands in the same partition of both snapshots, so only one pair of partitions
+ * is held in memory at once. The heap needed is roughly twice the inflated size of the zone divided by the number of
+ * partitions, and both passes read and write sequentially.
+ * <p>
+ * TTLs are ignored, and so are record types that change every day without a meaningful change to the zone (SOA and
+ * DNSSEC signatures by default, see {@link #setIgnoredTypes(Set)}). Changes are reported partition by partition, not
+ * in zone order.
+ */
+public class ZoneDiff {
+    /**
+     * The number of bytes of compressed zone per partition when the partition count is chosen automatically.
+     */
+    private static final long BYTES_PER_PARTITION = 16L * 1024 * 1024;
+    private static final int MAX_PARTITIONS = 1024;
+
+    private final Logger logger = LogManager.getLogger(ZoneDiff.class);
+    private final Executor executor;
+    private Set<String> ignoredTypes = Set.of("soa", "rrsig", "nsec", "nsec3", "nsec3param", "zonemd");
+    private Path tempDirectory;
+    private int partitions;
+
+    /**
+     * Constructs a ZoneDiff that reads the two snapshots on virtual threads.
+     */
+    public ZoneDiff() {
+        this(runnable -> Thread.ofVirtual().name("czds-zone-diff").start(runnable));
+    }
+
+    /**
+     * Constructs a ZoneDiff that reads the two snapshots on the given executor.
+     *
+     * @param executor the executor to partition the snapshots on
+     */
+    public ZoneDiff(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Compares two snapshots of a zone.
+     *
+     * @param oldZone the older snapshot, compressed or not
+     * @param newZone the newer snapshot, compressed or not
+     * @param handler the handler to receive the changes; called on the calling thread
+     * @return the number of changes of each type.
+     * @throws IOException If a snapshot cannot be read, is malformed, or the partition files cannot be written.
+     */
+    public Summary compare(File oldZone, File newZone, ZoneChangeHandler handler) throws IOException {
+        int partitionCount = partitions > 0 ? partitions : choosePartitions(Math.max(oldZone.length(), newZone.length()));
+        Path workDirectory = tempDirectory == null
+                ? Files.createTempDirectory("czds-diff")
+                : Files.createTempDirectory(tempDirectory, "czds-diff");
+        logger.debug("Comparing " + oldZone + " with " + newZone + " in " + partitionCount + " partitions");
+
+        try {
+            CompletableFuture<Void> oldPartitioned = CompletableFuture.runAsync(() ->
+                    partition(oldZone, workDirectory.resolve("old"), partitionCount), executor);
+            CompletableFuture<Void> newPartitioned = CompletableFuture.runAsync(() ->
+                    partition(newZone, workDirectory.resolve("new"), partitionCount), executor);
+            try {
+                CompletableFuture.allOf(oldPartitioned, newPartitioned).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw e;
+            }
+
+            Summary summary = new Summary();
+            for (int i = 0; i < partitionCount; i++) {
+                comparePartition(partitionFile(workDirectory.resolve("old"), i),
+                        partitionFile(workDirectory.resolve("new"), i), handler, summary);
+            }
+            return summary;
+        } finally {
+            deleteRecursively(workDirectory);
+        }
+    }
+
+    /**
+     * Streams a snapshot and writes one normalized line per owner to the partition of the owner. Every byte of the
+     * zone is carried as one char, so the partition files use ISO-8859-1, which maps all 256 byte values to themselves;
+     * zones are mostly ASCII, but names and TXT data may hold raw UTF-8 bytes.
+     */
+    private void partition(File zone, Path directory, int partitionCount) {
+        Writer[] writers = new Writer[partitionCount];
+        try (ZoneFileParser parser = ZoneFileParser.open(zone)) {
+            Files.createDirectories(directory);
+            for (int i = 0; i < partitionCount; i++) {
+                writers[i] = new BufferedWriter(new OutputStreamWriter(
+                        Files.newOutputStream(partitionFile(directory, i)), StandardCharsets.ISO_8859_1), 32 * 1024);
+            }
+
+            String owner = null;
+            List<String> records = new ArrayList<>();
+            StringBuilder builder = new StringBuilder();
+            while (parser.next()) {
+                ZoneRecord record = parser.getRecord();
+                if (ignoredTypes.contains(record.getType())) {
+                    continue;
+                }
+
+                String recordOwner = lowerCase(record.getOwnerBuffer(), record.getOwnerOffset(), record.getOwnerLength(), builder);
+                if (!recordOwner.equals(owner)) {
+                    writeOwner(writers, owner, records);
+                    owner = recordOwner;
+                    records.clear();
+                }
+                records.add(normalize(record, builder));
+            }
+            writeOwner(writers, owner, records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Writer writer : writers) {
+                try {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    logger.error("Unable to close partition file", e);
+                }
+            }
+        }
+    }
+
+    private void writeOwner(Writer[] writers, String owner, List<String> records) throws IOException {
+        if (owner == null || records.isEmpty()) {
+            return;
+        }
+        Writer writer = writers[partitionOf(owner, writers.length)];
+        writer.write(owner);
+        for (String record : records) {
+            writer.write('\t');
+            writer.write(record);
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Loads both partitions and reports the differences. Owners that appear on several lines, because their records
+     * are not adjacent in the zone file, are merged.
+     */
+    private void comparePartition(Path oldPartition, Path newPartition, ZoneChangeHandler handler, Summary summary)
+            throws IOException {
+        Map<String, List<String>> oldOwners = readPartition(oldPartition);
+        Map<String, List<String>> newOwners = readPartition(newPartition);
+
+        for (Map.Entry<String, List<String>> entry : newOwners.entrySet()) {
+            List<String> oldRecords = oldOwners.remove(entry.getKey());
+            if (oldRecords == null) {
+                summary.added++;
+                handler.onChange(new ZoneChange(ZoneChange.Type.ADDED, entry.getKey(), List.of(), entry.getValue()));
+            } else if (!oldRecords.equals(entry.getValue())) {
+                summary.changed++;
+                handler.onChange(new ZoneChange(ZoneChange.Type.CHANGED, entry.getKey(), oldRecords, entry.getValue()));
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : oldOwners.entrySet()) {
+            summary.removed++;
+            handler.onChange(new ZoneChange(ZoneChange.Type.REMOVED, entry.getKey(), entry.getValue(), List.of()));
+        }
+    }
+
+    private static Map<String, List<String>> readPartition(Path partition) throws IOException {
+        Map<String, List<String>> owners = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(partition, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                List<String> records = new ArrayList<>(Arrays.asList(fields).subList(1, fields.length));
+                owners.merge(fields[0], records, (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                });
+            }
+        }
+        for (List<String> records : owners.values()) {
+            Collections.sort(records);
+        }
+        return owners;
+    }
+
+    /**
+     * Normalizes a record to {@code "<type> <rdata>"} in lower case, with runs of whitespace collapsed to one space.
+     */
+    private static String normalize(ZoneRecord record, StringBuilder builder) {
+        builder.setLength(0);
+        builder.append(record.getType()).append(' ');
+        byte[] rdata = record.getRdataBuffer();
+        boolean space = false;
+        for (int i = record.getRdataOffset(), end = i + record.getRdataLength(); i < end; i++) {
+            char c = (char) (rdata[i] & 0xff);
+            if (c == ' ' || c == '\t') {
+                space = true;
+                continue;
+            }
+            if (space) {
+                builder.append(' ');
+                space = false;
+            }
+            builder.append(toLowerCase(c));
+        }
+        return builder.toString();
+    }
+
+    private static String lowerCase(byte[] buffer, int offset, int length, StringBuilder builder) {
+        builder.setLength(0);
+        for (int i = offset; i < offset + length; i++) {
+            builder.append(toLowerCase((char) (buffer[i] & 0xff)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Lowers the case of an ASCII letter only, as DNS names compare case-insensitively in ASCII alone. Bytes above
+     * 127 are parts of UTF-8 sequences, not Latin-1 letters, and are left alone.
+     */
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static int partitionOf(String owner, int partitionCount) {
+        int hash = owner.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), partitionCount);
+    }
+
+    private static int choosePartitions(long zoneSize) {
+        return (int) Math.min(MAX_PARTITIONS, Math.max(1, zoneSize / BYTES_PER_PARTITION));
+    }
+
+    private static Path partitionFile(Path directory, int partition) {
+        return directory.resolve(partition + ".part");
+    }
+
+    private void deleteRecursively(Path directory) {
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Unable to delete " + directory, e);
+        }
+    }
+
+    public Set<String> getIgnoredTypes() {
+        return ignoredTypes;
+    }
+
+    /**
+     * Sets the record types left out of the comparison, in lower case. Defaults to SOA and DNSSEC signature records,
+     * which change daily in every signed zone.
+     *
+     * @param ignoredTypes the record types to ignore
+     */
+    public void setIgnoredTypes(Set<String> ignoredTypes) {
+        this.ignoredTypes = Set.copyOf(ignoredTypes);
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Sets the directory for the partition files, which together take about as much space as both zones inflated.
+     * Defaults to the system temporary directory.
+     *
+     * @param tempDirectory the directory
+     */
+    public void setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Sets the number of partitions. More partitions need less heap but more open files while partitioning. Defaults
+     * to 0, which picks one partition per 16 MiB of compressed zone, up to 1024.
+     *
+     * @param partitions the number of partitions, or 0 to choose automatically
+     */
+    public void setPartitions(int partitions) {
+        if (partitions < 0) {
+            throw new IllegalArgumentException("Partitions must not be negative");
+        }
+        this.partitions = partitions;
+    }
+
+    /**
+     * The number of changes of each type found by a diff.
+     */
+    public static class Summary {
+        private long added;
+        private long removed;
+        private long changed;
+
+        public long getAdded() {
+            return added;
+        }
+
+        public long getRemoved() {
+            return removed;
+        }
+
+        public long getChanged() {
+            return changed;
+        }
+
+        @Override
+        public String toString() {
+            return added + " added, " + removed + " removed, " + changed + " changed";
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.sidpatchy.czdsclient.Export;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The footer entry of a block: where its columns are stored and the min/max statistics scans use to skip it.
+ */
+final class BlockInfo {
+    private static final int COLUMNS = Column.values().length;
+
+    final long[] offsets = new long[COLUMNS];
+    final int[] storedLengths = new int[COLUMNS];
+    final int[] rawLengths = new int[COLUMNS];
+    final byte[] codecs = new byte[COLUMNS];
+    int recordCount;
+    byte[] minOwner = new byte[0];
+    byte[] maxOwner = new byte[0];
+    long minTtl;
+    long maxTtl;
+    byte[] minRdata = new byte[0];
+    byte[] maxRdata = new byte[0];
+
+    /**
+     * Checks whether a value may occur in a column with the given bounds.
+     */
+    static boolean inRange(byte[] value, byte[] min, byte[] max) {
+        return Arrays.compareUnsigned(value, min) >= 0 && Arrays.compareUnsigned(value, max) <= 0;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(recordCount);
+        for (int i = 0; i < COLUMNS; i++) {
+            out.writeLong(offsets[i]);
+            out.writeInt(storedLengths[i]);
+            out.writeInt(rawLengths[i]);
+            out.writeByte(codecs[i]);
+        }
+        writeBytes(out, minOwner);
+        writeBytes(out, maxOwner);
+        out.writeLong(minTtl);
+        out.writeLong(maxTtl);
+        writeBytes(out, minRdata);
+        writeBytes(out, maxRdata);
+    }
+
+    static BlockInfo read(DataInputStream in) throws IOException {
+        BlockInfo block = new BlockInfo();
+        block.recordCount = in.readInt();
+        for (int i = 0; i < COLUMNS; i++) {
+            block.offsets[i] = in.readLong();
+            block.storedLengths[i] = in.readInt();
+            block.rawLengths[i] = in.readInt();
+            block.codecs[i] = in.readByte();
+        }
+        block.minOwner = readBytes(in);
+        block.maxOwner = readBytes(in);
+        block.minTtl = in.readLong();
+        block.maxTtl = in.readLong();
+        block.minRdata = readBytes(in);
+        block.maxRdata = readBytes(in);
+        return block;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed value; the stream must be over the footer in memory, so the length can be checked.
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Corrupt block statistics");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,17 @@
+package com.sidpatchy.czdsclient.Export;
+
+/**
+ * The columns of a columnar zone export, in the order they are stored in every block.
+ */
+public enum Column {
+    /** The owner name in lower case, e.g. "example.com."; length-prefixed, repeated owners stored once. */
+    OWNER,
+    /** The TTL in seconds, run-length encoded. */
+    TTL,
+    /** The class, e.g. "in"; dictionary-encoded. */
+    CLASS,
+    /** The record type, e.g. "ns"; dictionary-encoded. */
+    TYPE,
+    /** The record data, e.g. the nameserver of an NS record; dictionary-encoded, name server targets in lower case. */
+    RDATA
+}
@@ -0,0 +1,65 @@
+package com.sidpatchy.czdsclient.Export;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte array for building a column, with unsigned and zigzag-signed LEB128 varints.
+ */
+class ColumnBuffer {
+    private byte[] bytes;
+    private int size;
+
+    ColumnBuffer(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    void write(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    void write(byte[] b, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(b, offset, bytes, size, length);
+        size += length;
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    void writeSignedVarint(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a varint length followed by the bytes.
+     */
+    void writeBytes(byte[] b, int offset, int length) {
+        writeVarint(length);
+        write(b, offset, length);
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.sidpatchy.czdsclient.Export;
+
+import java.io.IOException;
+
+/**
+ * Reads the varints and length-prefixed byte strings of a decoded column.
+ */
+class ColumnCursor {
+    private final byte[] bytes;
+    private int position;
+
+    ColumnCursor(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= bytes.length) {
+                throw new IOException("Column ends in the middle of a value");
+            }
+            byte b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in column");
+    }
+
+    long readSignedVarint() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readLength() throws IOException {
+        long length = readVarint();
+        if (length > bytes.length - position) {
+            throw new IOException("Value of " + length + " bytes runs past the end of its column");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Moves past bytes that were read in place through {@link #array()} and {@link #position()}.
+     */
+    void skip(int length) {
+        position += length;
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int position() {
+        return position;
+    }
+}
@@ -0,0 +1,92 @@
+package com.sidpatchy.czdsclient.Export;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A decoded dictionary column of one block: the distinct values, pointing into the column's bytes, and the value ID of
+ * every record.
+ */
+final class ColumnDictionary {
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final String[] strings;
+    final int[] ids;
+
+    private ColumnDictionary(byte[] bytes, int[] offsets, int[] lengths, int[] ids) {
+        this.bytes = bytes;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.strings = new String[offsets.length];
+        this.ids = ids;
+    }
+
+    /**
+     * Decodes a column written by {@link ColumnarZoneWriter}: the number of values, the values, each prefixed with its
+     * length, then runs of equal IDs as pairs of run length and ID.
+     */
+    static ColumnDictionary decode(byte[] column, int recordCount) throws IOException {
+        ColumnCursor cursor = new ColumnCursor(column);
+        long size = cursor.readVarint();
+        if (size > column.length) {
+            throw new IOException("Dictionary of " + size + " values does not fit its column");
+        }
+        int[] offsets = new int[(int) size];
+        int[] lengths = new int[(int) size];
+        for (int i = 0; i < size; i++) {
+            lengths[i] = cursor.readLength();
+            offsets[i] = cursor.position();
+            cursor.skip(lengths[i]);
+        }
+
+        int[] ids = new int[recordCount];
+        int record = 0;
+        while (record < recordCount) {
+            long run = cursor.readVarint();
+            long id = cursor.readVarint();
+            if (run < 1 || run > recordCount - record || id >= size) {
+                throw new IOException("Corrupt dictionary column");
+            }
+            Arrays.fill(ids, record, record + (int) run, (int) id);
+            record += (int) run;
+        }
+        return new ColumnDictionary(column, offsets, lengths, ids);
+    }
+
+    /**
+     * Looks up the ID of a value.
+     *
+     * @return the ID, or -1 if the value does not occur in this block.
+     */
+    int find(byte[] value) {
+        for (int i = 0; i < offsets.length; i++) {
+            if (Arrays.equals(bytes, offsets[i], offsets[i] + lengths[i], value, 0, value.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String getString(int id) {
+        String string = strings[id];
+        if (string == null) {
+            string = new String(bytes, offsets[id], lengths[id], StandardCharsets.US_ASCII);
+            strings[id] = string;
+        }
+        return string;
+    }
+
+    byte[] getBuffer() {
+        return bytes;
+    }
+
+    int getOffset(int id) {
+        return offsets[id];
+    }
+
+    int getLength(int id) {
+        return lengths[id];
+    }
+}
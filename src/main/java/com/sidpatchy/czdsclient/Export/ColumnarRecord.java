@@ -0,0 +1,85 @@
+package com.sidpatchy.czdsclient.Export;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A record returned by a {@link ColumnarZoneReader} scan. The instance is reused for every record of the scan. Columns
+ * that were not selected with {@link ZoneQuery#columns(Column...)} return null, or -1 for the TTL.
+ */
+public class ColumnarRecord {
+    byte[] ownerBuffer;
+    int ownerOffset;
+    int ownerLength;
+    long ttl = -1;
+    String recordClass;
+    String type;
+    ColumnDictionary rdata;
+    int rdataId = -1;
+
+    /**
+     * Returns the owner name in lower case, e.g. "example.com.".
+     */
+    public String getOwner() {
+        return ownerBuffer == null ? null : new String(ownerBuffer, ownerOffset, ownerLength, StandardCharsets.US_ASCII);
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Returns the class of the record in lower case, e.g. "in".
+     */
+    public String getRecordClass() {
+        return recordClass;
+    }
+
+    /**
+     * Returns the type of the record in lower case, e.g. "ns".
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the record data. Values repeated within a block return the same String.
+     */
+    public String getRdata() {
+        return rdata == null ? null : rdata.getString(rdataId);
+    }
+
+    /**
+     * Returns the buffer holding the owner name, for reading it without allocating a String.
+     */
+    public byte[] getOwnerBuffer() {
+        return ownerBuffer;
+    }
+
+    public int getOwnerOffset() {
+        return ownerOffset;
+    }
+
+    public int getOwnerLength() {
+        return ownerLength;
+    }
+
+    /**
+     * Returns the buffer holding the record data, for reading it without allocating a String.
+     */
+    public byte[] getRdataBuffer() {
+        return rdata == null ? null : rdata.getBuffer();
+    }
+
+    public int getRdataOffset() {
+        return rdata == null ? -1 : rdata.getOffset(rdataId);
+    }
+
+    public int getRdataLength() {
+        return rdata == null ? -1 : rdata.getLength(rdataId);
+    }
+
+    @Override
+    public String toString() {
+        return getOwner() + " " + ttl + " " + recordClass + " " + type + " " + getRdata();
+    }
+}
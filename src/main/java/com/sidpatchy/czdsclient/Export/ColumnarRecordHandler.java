@@ -0,0 +1,15 @@
+package com.sidpatchy.czdsclient.Export;
+
+/**
+ * Receives the records matched by a {@link ColumnarZoneReader} scan.
+ */
+@FunctionalInterface
+public interface ColumnarRecordHandler {
+    /**
+     * Handles a single record. The record is reused for the next record once this method returns; copy the values
+     * to keep them.
+     *
+     * @param record the record
+     */
+    void onRecord(ColumnarRecord record);
+}
@@ -0,0 +1,313 @@
+package com.sidpatchy.czdsclient.Export;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Scans a file written by {@link ColumnarZoneWriter}.
+ * <p>
+ * Opening a file reads only its footer. A scan then checks every block against the query: blocks whose owner or record
+ * data range cannot contain the value searched for, or whose dictionaries do not contain the type or record data, are
+ * skipped without decoding the rest of their columns, and columns that are neither filtered on nor selected are never
+ * read. Finding the domains using a name server thus reads the type and record data columns and, for the blocks
+ * delegating to it, the owners.
+ * <p>
+ * Instances are safe for concurrent use.
+ */
+public class ColumnarZoneReader implements AutoCloseable {
+    private static final int TRAILER_SIZE = 2 * Long.BYTES;
+
+    private final Logger logger = LogManager.getLogger(ColumnarZoneReader.class);
+    private final File file;
+    private final FileChannel channel;
+    private final long recordCount;
+    private final List<BlockInfo> blocks;
+
+    private ColumnarZoneReader(File file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+
+        long size = channel.size();
+        if (size < Long.BYTES + Integer.BYTES + TRAILER_SIZE) {
+            throw new IOException("Not a columnar zone export");
+        }
+        ByteBuffer header = read(0, Long.BYTES + Integer.BYTES);
+        ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+        if (header.getLong() != ColumnarZoneWriter.MAGIC) {
+            throw new IOException("Not a columnar zone export");
+        }
+        int version = header.getInt();
+        if (version != ColumnarZoneWriter.VERSION) {
+            throw new IOException("Unsupported columnar zone export version " + version);
+        }
+        long footerOffset = trailer.getLong();
+        if (trailer.getLong() != ColumnarZoneWriter.MAGIC || footerOffset < header.capacity()
+                || footerOffset > size - TRAILER_SIZE || size - TRAILER_SIZE - footerOffset > Integer.MAX_VALUE) {
+            throw new IOException("Columnar zone export is truncated or corrupt");
+        }
+
+        ByteBuffer footer = read(footerOffset, (int) (size - TRAILER_SIZE - footerOffset));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+        this.recordCount = in.readLong();
+        int blockCount = in.readInt();
+        if (blockCount < 0 || blockCount > footer.capacity()) {
+            throw new IOException("Columnar zone export is truncated or corrupt");
+        }
+        List<BlockInfo> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            BlockInfo block = BlockInfo.read(in);
+            for (int column = 0; column < block.offsets.length; column++) {
+                if (block.offsets[column] < 0 || block.storedLengths[column] < 0 || block.rawLengths[column] < 0
+                        || block.offsets[column] + block.storedLengths[column] > footerOffset) {
+                    throw new IOException("Block " + i + " of the columnar zone export is corrupt");
+                }
+            }
+            blocks.add(block);
+        }
+        this.blocks = Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * Opens a columnar zone export.
+     *
+     * @param file the file
+     * @return the reader.
+     * @throws IOException If the file cannot be read or is not a columnar zone export.
+     */
+    public static ColumnarZoneReader open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ColumnarZoneReader(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Passes every record matching a query to a handler.
+     *
+     * @param query the filter and the columns to return
+     * @param handler the handler to receive the matching records
+     * @return the number of matching records.
+     * @throws IOException If the file cannot be read or is corrupt.
+     */
+    public long scan(ZoneQuery query, ColumnarRecordHandler handler) throws IOException {
+        Set<Column> columns = query.getColumns();
+        byte[] owner = query.getOwner();
+        byte[] type = query.getType() == null ? null : query.getType().getBytes(StandardCharsets.US_ASCII);
+        byte[] rdata = query.getRdata();
+
+        ColumnarRecord record = new ColumnarRecord();
+        long matches = 0;
+        int skipped = 0;
+        for (BlockInfo block : blocks) {
+            if ((owner != null && !BlockInfo.inRange(owner, block.minOwner, block.maxOwner))
+                    || (rdata != null && !BlockInfo.inRange(rdata, block.minRdata, block.maxRdata))) {
+                skipped++;
+                continue;
+            }
+
+            // Dictionary filters first: a value missing from the dictionary rules out the whole block
+            ColumnDictionary types = null;
+            int typeId = -1;
+            if (type != null || columns.contains(Column.TYPE)) {
+                types = ColumnDictionary.decode(readColumn(block, Column.TYPE), block.recordCount);
+                if (type != null && (typeId = types.find(type)) < 0) {
+                    skipped++;
+                    continue;
+                }
+            }
+            ColumnDictionary values = null;
+            int rdataId = -1;
+            if (rdata != null || columns.contains(Column.RDATA)) {
+                values = ColumnDictionary.decode(readColumn(block, Column.RDATA), block.recordCount);
+                if (rdata != null && (rdataId = values.find(rdata)) < 0) {
+                    skipped++;
+                    continue;
+                }
+            }
+
+            boolean[] selected = new boolean[block.recordCount];
+            int selectedCount = 0;
+            for (int i = 0; i < block.recordCount; i++) {
+                selected[i] = (typeId < 0 || types.ids[i] == typeId) && (rdataId < 0 || values.ids[i] == rdataId);
+                if (selected[i]) {
+                    selectedCount++;
+                }
+            }
+            if (selectedCount == 0) {
+                skipped++;
+                continue;
+            }
+
+            byte[] owners = null;
+            int[] ownerOffsets = null;
+            int[] ownerLengths = null;
+            if (owner != null || columns.contains(Column.OWNER)) {
+                owners = readColumn(block, Column.OWNER);
+                ownerOffsets = new int[block.recordCount];
+                ownerLengths = new int[block.recordCount];
+                decodeOwners(owners, ownerOffsets, ownerLengths);
+                if (owner != null) {
+                    for (int i = 0; i < block.recordCount; i++) {
+                        if (selected[i] && !Arrays.equals(owners, ownerOffsets[i], ownerOffsets[i] + ownerLengths[i], owner, 0, owner.length)) {
+                            selected[i] = false;
+                            selectedCount--;
+                        }
+                    }
+                    if (selectedCount == 0) {
+                        continue;
+                    }
+                }
+            }
+            long[] ttls = columns.contains(Column.TTL) ? decodeTtls(readColumn(block, Column.TTL), block.recordCount) : null;
+            ColumnDictionary classes = columns.contains(Column.CLASS)
+                    ? ColumnDictionary.decode(readColumn(block, Column.CLASS), block.recordCount)
+                    : null;
+
+            boolean withOwner = columns.contains(Column.OWNER);
+            boolean withType = columns.contains(Column.TYPE);
+            boolean withRdata = columns.contains(Column.RDATA);
+            record.ownerBuffer = withOwner ? owners : null;
+            record.rdata = withRdata ? values : null;
+            for (int i = 0; i < block.recordCount; i++) {
+                if (!selected[i]) {
+                    continue;
+                }
+                if (withOwner) {
+                    record.ownerOffset = ownerOffsets[i];
+                    record.ownerLength = ownerLengths[i];
+                }
+                record.ttl = ttls != null ? ttls[i] : -1;
+                record.recordClass = classes != null ? classes.getString(classes.ids[i]) : null;
+                record.type = withType ? types.getString(types.ids[i]) : null;
+                record.rdataId = withRdata ? values.ids[i] : -1;
+                handler.onRecord(record);
+                matches++;
+            }
+        }
+
+        if (skipped > 0) {
+            logger.debug("Skipped " + skipped + " of " + blocks.size() + " blocks of " + file);
+        }
+        return matches;
+    }
+
+    /**
+     * Resolves the owner of every record of a block; a zero length repeats the owner before it.
+     */
+    private static void decodeOwners(byte[] column, int[] offsets, int[] lengths) throws IOException {
+        ColumnCursor cursor = new ColumnCursor(column);
+        for (int i = 0; i < offsets.length; i++) {
+            int length = cursor.readLength();
+            if (length == 0 && i > 0) {
+                offsets[i] = offsets[i - 1];
+                lengths[i] = lengths[i - 1];
+            } else {
+                offsets[i] = cursor.position();
+                lengths[i] = length;
+                cursor.skip(length);
+            }
+        }
+    }
+
+    private static long[] decodeTtls(byte[] column, int recordCount) throws IOException {
+        ColumnCursor cursor = new ColumnCursor(column);
+        long[] ttls = new long[recordCount];
+        int record = 0;
+        while (record < recordCount) {
+            long run = cursor.readVarint();
+            long ttl = cursor.readSignedVarint();
+            if (run < 1 || run > recordCount - record) {
+                throw new IOException("Corrupt TTL column");
+            }
+            Arrays.fill(ttls, record, record + (int) run, ttl);
+            record += (int) run;
+        }
+        return ttls;
+    }
+
+    /**
+     * Reads and, if needed, inflates a column of a block.
+     */
+    private byte[] readColumn(BlockInfo block, Column column) throws IOException {
+        int index = column.ordinal();
+        ByteBuffer stored = read(block.offsets[index], block.storedLengths[index]);
+        if (block.codecs[index] == ColumnarZoneWriter.STORED) {
+            if (block.storedLengths[index] != block.rawLengths[index]) {
+                throw new IOException("Corrupt " + column + " column in " + file);
+            }
+            return stored.array();
+        }
+        if (block.codecs[index] != ColumnarZoneWriter.DEFLATED) {
+            throw new IOException("Unknown codec " + block.codecs[index] + " of " + column + " column in " + file);
+        }
+
+        byte[] raw = new byte[block.rawLengths[index]];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(stored.array());
+            int size = 0;
+            while (size < raw.length) {
+                int inflated = inflater.inflate(raw, size, raw.length - size);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != raw.length) {
+                throw new IOException("Corrupt " + column + " column in " + file);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt " + column + " column in " + file, e);
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,408 @@
+package com.sidpatchy.czdsclient.Export;
+
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+import com.sidpatchy.czdsclient.Parser.ZoneRecord;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the records of a zone in a compact binary columnar format, so queries such as "all domains using nameserver
+ * X" read a fraction of the file instead of inflating and parsing the whole zone. Read the file with
+ * {@link ColumnarZoneReader}.
+ * <p>
+ * Records are stored in blocks of 64K records, each column of a block separately, in the order of {@link Column}:
+ * <ul>
+ *     <li>Owner names are lower-cased and length-prefixed; a record with the same owner as the one before it stores
+ *     a zero length instead, so the NS, DS and RRSIG records of a domain share one copy of its name.</li>
+ *     <li>TTLs are stored as runs of equal values.</li>
+ *     <li>Classes, types and record data are dictionary-encoded per block: the distinct values of the block, then runs
+ *     of value IDs. A zone has few types and nameservers, so most records cost a byte or two per column, and a scan
+ *     that finds a value missing from a block's dictionary skips the rest of the block.</li>
+ * </ul>
+ * Each column of a block is compressed with Deflater unless that does not make it smaller. File layout, all numbers
+ * big-endian:
+ * <pre>
+ * header   magic "CZDSCOL1", version
+ * blocks   the columns of every block
+ * footer   record count, block count, then for every block its record count, the offset, stored length, raw length
+ *          and codec of every column, and the min/max owner, TTL and record data of the block
+ * trailer  offset of the footer, magic "CZDSCOL1"
+ * </pre>
+ * The file is written under a temporary name and moved into place when the writer is closed.
+ */
+public class ColumnarZoneWriter implements Closeable {
+    static final long MAGIC = 0x435A4453434F4C31L; // "CZDSCOL1"
+    static final int VERSION = 1;
+    static final byte STORED = 0;
+    static final byte DEFLATED = 1;
+    private static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final File file;
+    private final File partFile;
+    private final DataOutputStream out;
+    private final int blockSize;
+    private final List<BlockInfo> blocks = new ArrayList<>();
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private long position;
+    private long recordCount;
+    private boolean closed;
+
+    // The block being built
+    private final ColumnBuffer owners = new ColumnBuffer(1 << 20);
+    private final long[] ttls;
+    private final int[] classIds;
+    private final int[] typeIds;
+    private final int[] rdataIds;
+    private final Dictionary classes = new Dictionary();
+    private final Dictionary types = new Dictionary();
+    private final Dictionary rdata = new Dictionary();
+    private final ColumnBuffer column = new ColumnBuffer(1 << 20);
+    private byte[] owner = new byte[256];
+    private byte[] previousOwner = new byte[256];
+    private int previousOwnerLength = -1;
+    private byte[] value = new byte[256];
+    private int count;
+    private BlockInfo block = new BlockInfo();
+
+    /**
+     * Constructs a ColumnarZoneWriter with blocks of 64K records.
+     *
+     * @param file the file to write
+     * @throws IOException If the file cannot be created.
+     */
+    public ColumnarZoneWriter(File file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs a ColumnarZoneWriter.
+     *
+     * @param file the file to write
+     * @param blockSize the number of records per block; smaller blocks let scans skip more precisely, larger ones
+     *                  compress better
+     * @throws IOException If the file cannot be created.
+     */
+    public ColumnarZoneWriter(File file, int blockSize) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.file = file;
+        this.partFile = new File(file.getPath() + ".part");
+        this.blockSize = blockSize;
+        this.ttls = new long[blockSize];
+        this.classIds = new int[blockSize];
+        this.typeIds = new int[blockSize];
+        this.rdataIds = new int[blockSize];
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+        OutputStream stream = Files.newOutputStream(partFile.toPath());
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, 256 * 1024));
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        position = Long.BYTES + Integer.BYTES;
+    }
+
+    /**
+     * Exports a zone file, such as one written by {@code DownloadModule}.
+     *
+     * @param zoneFile the zone file, compressed or not
+     * @param target the columnar file to write
+     * @return the number of records exported.
+     * @throws IOException If the zone cannot be read or the export cannot be written.
+     */
+    public static long export(File zoneFile, File target) throws IOException {
+        try (ZoneFileParser parser = ZoneFileParser.open(zoneFile)) {
+            return export(parser, target);
+        }
+    }
+
+    /**
+     * Exports the remaining records of a parser.
+     *
+     * @param parser the parser to read the records from
+     * @param target the columnar file to write
+     * @return the number of records exported.
+     * @throws IOException If the zone cannot be read or the export cannot be written.
+     */
+    public static long export(ZoneFileParser parser, File target) throws IOException {
+        ColumnarZoneWriter writer = new ColumnarZoneWriter(target);
+        try {
+            while (parser.next()) {
+                writer.write(parser.getRecord());
+            }
+            writer.close();
+            return writer.getRecordCount();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param record the record
+     * @throws IOException If a full block cannot be written.
+     */
+    public void write(ZoneRecord record) throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+
+        int ownerLength = record.getOwnerLength();
+        owner = lowerCase(record.getOwnerBuffer(), record.getOwnerOffset(), ownerLength, owner);
+        if (count > 0 && Arrays.equals(owner, 0, ownerLength, previousOwner, 0, previousOwnerLength)) {
+            owners.writeVarint(0);
+        } else {
+            owners.writeBytes(owner, 0, ownerLength);
+            if (count == 0 || Arrays.compareUnsigned(owner, 0, ownerLength, block.minOwner, 0, block.minOwner.length) < 0) {
+                block.minOwner = Arrays.copyOf(owner, ownerLength);
+            }
+            if (count == 0 || Arrays.compareUnsigned(owner, 0, ownerLength, block.maxOwner, 0, block.maxOwner.length) > 0) {
+                block.maxOwner = Arrays.copyOf(owner, ownerLength);
+            }
+            byte[] swap = previousOwner;
+            previousOwner = owner;
+            owner = swap;
+            previousOwnerLength = ownerLength;
+        }
+
+        long ttl = record.getTtl();
+        ttls[count] = ttl;
+        block.minTtl = count == 0 ? ttl : Math.min(block.minTtl, ttl);
+        block.maxTtl = count == 0 ? ttl : Math.max(block.maxTtl, ttl);
+
+        classIds[count] = classes.getId(record.getRecordClass());
+        typeIds[count] = types.getId(record.getType());
+
+        int rdataLength = record.getRdataLength();
+        byte[] rdataBytes;
+        int rdataOffset;
+        if (record.getType() == "ns") {
+            // Name server targets are names, and matched regardless of case like owners
+            value = lowerCase(record.getRdataBuffer(), record.getRdataOffset(), rdataLength, value);
+            rdataBytes = value;
+            rdataOffset = 0;
+        } else {
+            rdataBytes = record.getRdataBuffer();
+            rdataOffset = record.getRdataOffset();
+        }
+        rdataIds[count] = rdata.getId(new String(rdataBytes, rdataOffset, rdataLength, StandardCharsets.US_ASCII));
+        if (count == 0 || Arrays.compareUnsigned(rdataBytes, rdataOffset, rdataOffset + rdataLength, block.minRdata, 0, block.minRdata.length) < 0) {
+            block.minRdata = Arrays.copyOfRange(rdataBytes, rdataOffset, rdataOffset + rdataLength);
+        }
+        if (count == 0 || Arrays.compareUnsigned(rdataBytes, rdataOffset, rdataOffset + rdataLength, block.maxRdata, 0, block.maxRdata.length) > 0) {
+            block.maxRdata = Arrays.copyOfRange(rdataBytes, rdataOffset, rdataOffset + rdataLength);
+        }
+
+        count++;
+        recordCount++;
+        if (count == blockSize) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Writes the block being built, column by column, and starts the next one.
+     */
+    private void flushBlock() throws IOException {
+        block.recordCount = count;
+        writeColumn(Column.OWNER, owners);
+
+        column.reset();
+        for (int i = 0; i < count; ) {
+            int run = 1;
+            while (i + run < count && ttls[i + run] == ttls[i]) {
+                run++;
+            }
+            column.writeVarint(run);
+            column.writeSignedVarint(ttls[i]);
+            i += run;
+        }
+        writeColumn(Column.TTL, column);
+
+        writeDictionaryColumn(Column.CLASS, classes, classIds);
+        writeDictionaryColumn(Column.TYPE, types, typeIds);
+        writeDictionaryColumn(Column.RDATA, rdata, rdataIds);
+
+        blocks.add(block);
+        block = new BlockInfo();
+        owners.reset();
+        classes.clear();
+        types.clear();
+        rdata.clear();
+        previousOwnerLength = -1;
+        count = 0;
+    }
+
+    private void writeDictionaryColumn(Column type, Dictionary dictionary, int[] ids) throws IOException {
+        column.reset();
+        column.writeVarint(dictionary.values.size());
+        for (byte[] entry : dictionary.values) {
+            column.writeBytes(entry, 0, entry.length);
+        }
+        for (int i = 0; i < count; ) {
+            int run = 1;
+            while (i + run < count && ids[i + run] == ids[i]) {
+                run++;
+            }
+            column.writeVarint(run);
+            column.writeVarint(ids[i]);
+            i += run;
+        }
+        writeColumn(type, column);
+    }
+
+    /**
+     * Writes a column of the current block, compressed if that makes it smaller.
+     */
+    private void writeColumn(Column type, ColumnBuffer raw) throws IOException {
+        byte[] stored = raw.array();
+        int storedLength = raw.size();
+        byte codec = STORED;
+
+        if (compressionLevel > 0 && raw.size() > 0) {
+            Deflater deflater = new Deflater(compressionLevel, true);
+            try {
+                deflater.setInput(raw.array(), 0, raw.size());
+                deflater.finish();
+                byte[] compressed = new byte[raw.size()];
+                int size = 0;
+                while (!deflater.finished() && size < compressed.length) {
+                    size += deflater.deflate(compressed, size, compressed.length - size);
+                }
+                if (deflater.finished() && size < raw.size()) {
+                    stored = compressed;
+                    storedLength = size;
+                    codec = DEFLATED;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        int index = type.ordinal();
+        block.offsets[index] = position;
+        block.storedLengths[index] = storedLength;
+        block.rawLengths[index] = raw.size();
+        block.codecs[index] = codec;
+        out.write(stored, 0, storedLength);
+        position += storedLength;
+    }
+
+    private static byte[] lowerCase(byte[] buffer, int offset, int length, byte[] target) {
+        if (target.length < length) {
+            target = new byte[Math.max(length, target.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[offset + i];
+            target[i] = b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+        return target;
+    }
+
+    /**
+     * Writes the last block and the footer, and moves the file into place.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (count > 0) {
+            flushBlock();
+        }
+        closed = true;
+
+        long footerOffset = position;
+        out.writeLong(recordCount);
+        out.writeInt(blocks.size());
+        for (BlockInfo info : blocks) {
+            info.write(out);
+        }
+        out.writeLong(footerOffset);
+        out.writeLong(MAGIC);
+        out.close();
+        Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Discards the file being written, e.g. after reading the zone failed.
+     */
+    public void abort() {
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            // The file is deleted anyway
+        }
+        partFile.delete();
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the Deflater level the columns of the following blocks are compressed with, from 0 to store them
+     * uncompressed, which is fastest to scan, to 9 for the smallest file. Defaults to 1.
+     *
+     * @param compressionLevel the compression level
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * The distinct values of a dictionary column in the block being built, in the order they first occurred.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<byte[]> values = new ArrayList<>();
+
+        int getId(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value.getBytes(StandardCharsets.US_ASCII));
+            }
+            return id;
+        }
+
+        void clear() {
+            ids.clear();
+            values.clear();
+        }
+    }
+}
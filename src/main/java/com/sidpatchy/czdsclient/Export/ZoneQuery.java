@@ -0,0 +1,102 @@
+package com.sidpatchy.czdsclient.Export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The filter and projection of a {@link ColumnarZoneReader} scan. All conditions must match; a query without
+ * conditions matches every record.
+ */
+public class ZoneQuery {
+    private byte[] owner;
+    private String type;
+    private byte[] rdata;
+    private Set<Column> columns = EnumSet.allOf(Column.class);
+
+    /**
+     * Matches records of a single owner name, regardless of case.
+     *
+     * @param owner the owner name, with or without the trailing dot
+     * @return this query.
+     */
+    public ZoneQuery owner(String owner) {
+        this.owner = toName(owner);
+        return this;
+    }
+
+    /**
+     * Matches records of a type, e.g. "ns".
+     *
+     * @param type the record type, regardless of case
+     * @return this query.
+     */
+    public ZoneQuery type(String type) {
+        this.type = type.toLowerCase(Locale.ROOT);
+        return this;
+    }
+
+    /**
+     * Matches records with exactly this record data. Name server targets are stored in lower case, other record data
+     * as it appears in the zone file.
+     *
+     * @param rdata the record data
+     * @return this query.
+     */
+    public ZoneQuery rdata(String rdata) {
+        this.rdata = rdata.getBytes(StandardCharsets.US_ASCII);
+        return this;
+    }
+
+    /**
+     * Matches the NS records delegating to a name server, i.e. the domains using it.
+     *
+     * @param nameserver the name server, with or without the trailing dot
+     * @return this query.
+     */
+    public ZoneQuery nameserver(String nameserver) {
+        this.type = "ns";
+        this.rdata = toName(nameserver);
+        return this;
+    }
+
+    /**
+     * Limits the columns read for every matching record. Columns only used by the filter are read either way, but
+     * not decoded for records that are not needed. Defaults to all columns.
+     *
+     * @param columns the columns to return
+     * @return this query.
+     */
+    public ZoneQuery columns(Column... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("A query needs at least one column");
+        }
+        this.columns = EnumSet.of(columns[0], columns);
+        return this;
+    }
+
+    private static byte[] toName(String name) {
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        if (!lowerCase.endsWith(".")) {
+            lowerCase += ".";
+        }
+        return lowerCase.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    byte[] getOwner() {
+        return owner;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    byte[] getRdata() {
+        return rdata;
+    }
+
+    Set<Column> getColumns() {
+        return columns;
+    }
+}
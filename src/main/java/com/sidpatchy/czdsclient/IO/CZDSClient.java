@@ -2,8 +2,16 @@ package com.sidpatchy.czdsclient.IO;
 
 import com.sidpatchy.czdsclient.Module.DownloadModule;
 
-public class CZDSClient {
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+public class CZDSClient implements AutoCloseable {
+
+    public static final String DEFAULT_AUTHENTICATION_ENDPOINT = "https://account-api.icann.org";
+    public static final String DEFAULT_ENDPOINT = "https://czds-api.icann.org";
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
     private final HttpConnectionManager connectionManager;
     private final DownloadModule downloadModule;
 
@@ -20,12 +28,12 @@ public class CZDSClient {
      * @param password the password to be used for authentication
      */
     public CZDSClient(String username, String password) {
-        this(username, password, "https://account-api.icann.org", "https://czds-api.icann.org");
+        this(username, password, DEFAULT_AUTHENTICATION_ENDPOINT, DEFAULT_ENDPOINT);
     }
 
     /**
      * Constructs a CZDSClient with the specified username, password,
-     * base authentication endpoint, and base endpoint.
+     * base authentication endpoint, and base endpoint. Requests run on virtual threads.
      *
      * @param username the username to be used for authentication
      * @param password the password to be used for authentication
@@ -33,17 +41,67 @@ public class CZDSClient {
      * @param baseEndpoint the base URL for the main CZDS API endpoint
      */
     public CZDSClient(String username, String password, String baseAuthenticationEndpoint, String baseEndpoint) {
+        this(username, password, baseAuthenticationEndpoint, baseEndpoint, 0);
+    }
+
+    /**
+     * Constructs a CZDSClient whose requests run on a fixed pool of platform threads.
+     *
+     * @param username the username to be used for authentication
+     * @param password the password to be used for authentication
+     * @param baseAuthenticationEndpoint the base URL for the authentication endpoint
+     * @param baseEndpoint the base URL for the main CZDS API endpoint
+     * @param threadPoolSize the number of platform threads, or 0 to run each request on its own virtual thread
+     */
+    public CZDSClient(String username, String password, String baseAuthenticationEndpoint, String baseEndpoint, int threadPoolSize) {
+        this(username, password, baseAuthenticationEndpoint, baseEndpoint, createExecutor(threadPoolSize), true);
+    }
+
+    /**
+     * Constructs a CZDSClient whose requests run on the given executor. The executor remains owned by the caller
+     * and is not shut down by {@link #close()}.
+     *
+     * @param username the username to be used for authentication
+     * @param password the password to be used for authentication
+     * @param baseAuthenticationEndpoint the base URL for the authentication endpoint
+     * @param baseEndpoint the base URL for the main CZDS API endpoint
+     * @param executor the executor that requests are run on
+     */
+    public CZDSClient(String username, String password, String baseAuthenticationEndpoint, String baseEndpoint, ExecutorService executor) {
+        this(username, password, baseAuthenticationEndpoint, baseEndpoint, executor, false);
+    }
+
+    private CZDSClient(String username, String password, String baseAuthenticationEndpoint, String baseEndpoint, ExecutorService executor, boolean ownsExecutor) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+
         this.username = username;
         this.password = password;
 
         this.baseAuthenticationEndpoint = baseAuthenticationEndpoint;
         this.baseEndpoint = baseEndpoint;
 
-        this.connectionManager = new HttpConnectionManager(username, password, baseAuthenticationEndpoint, baseEndpoint);
+        this.connectionManager = new HttpConnectionManager(username, password, baseAuthenticationEndpoint, baseEndpoint, executor);
 
         this.downloadModule = new DownloadModule(connectionManager, baseEndpoint);
     }
 
+    /**
+     * Creates the executor used by a CZDSClient that owns its own threads.
+     *
+     * @param threadPoolSize the number of platform threads, or 0 for a virtual-thread-per-task executor
+     * @return the new executor.
+     */
+    private static ExecutorService createExecutor(int threadPoolSize) {
+        if (threadPoolSize < 0) {
+            throw new IllegalArgumentException("Thread pool size must not be negative.");
+        }
+        if (threadPoolSize == 0) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(threadPoolSize);
+    }
+
     /**
      * Returns the DownloadModule instance associated with this CZDSClient.
      *
@@ -62,4 +120,27 @@ public class CZDSClient {
     public HttpConnectionManager getConnectionManager() {
         return connectionManager;
     }
+
+    /**
+     * Returns the executor that this client's requests run on.
+     *
+     * @return the shared executor.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Shuts down this client's HttpClient and the executor it owns. Requests already in flight are allowed to finish;
+     * new requests are rejected. Executors passed in by the caller are left untouched. The metrics are exported one
+     * last time first, so short-lived processes still leave their metrics behind.
+     */
+    @Override
+    public void close() {
+        connectionManager.getMetrics().export();
+        connectionManager.getHttpClient().shutdown();
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
 }
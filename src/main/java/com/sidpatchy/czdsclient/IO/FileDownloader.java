@@ -0,0 +1,1008 @@
+package com.sidpatchy.czdsclient.IO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.FileDownload;
+import com.sidpatchy.czdsclient.Bean.ZoneManifest;
+import com.sidpatchy.czdsclient.Bean.ZoneState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipException;
+
+/**
+ * Downloads files to disk for an {@link HttpConnectionManager}.
+ * <p>
+ * Every download is written to a {@code .part} file next to its destination and only renamed into place once it is
+ * complete, so an interrupted download never leaves a truncated file behind. The ETag and Last-Modified of the file
+ * being downloaded are checkpointed next to the {@code .part} file; if the transfer breaks off, it is resumed with a
+ * {@code Range} request from the last byte that reached the disk, both within the same call and in later runs.
+ * <p>
+ * Large files can optionally be downloaded in segments: when the server advertises {@code Accept-Ranges: bytes}, the
+ * file is split into byte ranges that are fetched over parallel connections and written straight to their position in
+ * a preallocated file.
+ * <p>
+ * Every download is hashed while it streams to disk, SHA-256 by default, and its length is checked against the
+ * {@code Content-Length} the server announced. Gzip validation can be switched on to also inflate the file on the way
+ * through and check the CRC32 and size in its trailer, so a corrupt file is caught by the download rather than by
+ * whatever reads it next. The result is recorded in a {@code .manifest.json} file next to each download, which
+ * {@link #verify(File)} trusts for as long as the file keeps the size and modification time it was hashed with.
+ * <p>
+ * An optional bandwidth limit caps the combined rate of all transfers of the downloader, see
+ * {@link #setBandwidthLimit(long)}.
+ */
+public class FileDownloader {
+    private static final String PART_SUFFIX = ".part";
+    private static final String CHECKPOINT_SUFFIX = ".part.json";
+    private static final String MANIFEST_SUFFIX = ".manifest.json";
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private final Logger logger = LogManager.getLogger(FileDownloader.class);
+    private final HttpConnectionManager connectionManager;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ProgressReporter progressReporter = new ProgressReporter();
+    private int maxResumeAttempts = 3;
+    private int bufferSize = 1024 * 1024;
+    private int segments = 1;
+    private long minSegmentSize = 64L * 1024 * 1024;
+    private volatile String digestAlgorithm = "SHA-256";
+    private volatile boolean verifyGzip = false;
+    private volatile RateLimiter bandwidthLimiter;
+
+    /**
+     * Constructs a FileDownloader that sends its requests through the given connection manager.
+     *
+     * @param connectionManager the connection manager used to send authenticated requests
+     */
+    FileDownloader(HttpConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Asynchronously downloads a file unless it is unchanged since the download described by {@code previous}.
+     * If an earlier attempt left a partial file behind, the download resumes where it stopped.
+     *
+     * @param downloadURL The URL from which to download the file.
+     * @param outputDirectoryPath The directory path where the downloaded file will be saved.
+     * @param previous The state of the previous download of this file, or null to download unconditionally.
+     * @return A CompletableFuture that will contain the outcome of the download.
+     */
+    public CompletableFuture<FileDownload> download(String downloadURL, String outputDirectoryPath, ZoneState previous) {
+        URI uri = URI.create(downloadURL);
+        File outputFile = getOutputFile(uri, outputDirectoryPath);
+        ZoneState validators = previous != null && outputFile.isFile() && outputFile.length() == previous.getSize()
+                ? previous
+                : null;
+
+        // A resumable single-stream partial is cheaper to finish than to throw away for a segmented download
+        if (segments > 1 && getResumeValidator(outputFile) == null) {
+            return downloadSegmented(uri, outputFile, validators);
+        }
+        return attempt(uri, outputFile, validators, 0);
+    }
+
+    /**
+     * Downloads a file in {@link #getSegments()} parallel byte ranges. A HEAD request is sent first to learn the size
+     * of the file and whether the server supports ranges; files too small for two segments of
+     * {@link #getMinSegmentSize()} bytes, files of unknown size, and servers that do not support ranges, fall back to a
+     * single-stream download. So does a segmented download that fails, so at worst the
+     * segmented attempt costs the bytes it already transferred.
+     *
+     * @param uri The URI of the file to download.
+     * @param outputFile The file to download to.
+     * @param validators The state of the previous complete download, or null.
+     * @return A CompletableFuture that will contain the outcome of the download.
+     */
+    private CompletableFuture<FileDownload> downloadSegmented(URI uri, File outputFile, ZoneState validators) {
+        return connectionManager.sendAuthorized(uri, "HEAD", request -> addConditionalHeaders(request, validators), HttpResponse.BodyHandlers.discarding())
+                .thenCompose(head -> {
+                    HttpHeaders headers = head.headers();
+                    int status = head.statusCode();
+                    if (status == HttpURLConnection.HTTP_NOT_MODIFIED
+                            || (status == HttpURLConnection.HTTP_OK && isUnchanged(headers, validators))) {
+                        discardPartial(outputFile);
+                        logger.info(outputFile.getName() + " is unchanged, skipping download.");
+                        return CompletableFuture.completedFuture(new FileDownload(outputFile, true, validators));
+                    }
+
+                    long fileLength = headers.firstValueAsLong("Content-Length").orElse(-1);
+                    String validator = getStrongValidator(headers);
+                    boolean acceptsRanges = headers.allValues("Accept-Ranges").stream().anyMatch(value -> value.contains("bytes"));
+                    // An empty file has no last byte to preallocate, and a file too small for two segments gains nothing
+                    if (status != HttpURLConnection.HTTP_OK || !acceptsRanges || validator == null
+                            || fileLength <= 0 || fileLength / 2 < minSegmentSize) {
+                        return attempt(uri, outputFile, validators, 0);
+                    }
+
+                    return new SegmentedDownload(uri, outputFile, headers, fileLength, validator).start()
+                            .exceptionallyCompose(e -> {
+                                Throwable cause = HttpConnectionManager.unwrap(e);
+                                if (!canFallBack(cause)) {
+                                    return CompletableFuture.failedFuture(cause);
+                                }
+                                logger.warn("Segmented download of " + outputFile.getName() + " failed, falling back to a single stream: " + cause.getMessage());
+                                discardPartial(outputFile);
+                                return attempt(uri, outputFile, validators, 0);
+                            });
+                });
+    }
+
+    /**
+     * Checks whether a failed segmented download is worth trying again as a single stream: I/O errors and timeouts
+     * of a segment, and error statuses of a range request, may well not affect a plain download. Rejected credentials
+     * would fail the single stream just the same.
+     *
+     * @param cause The error the segmented download failed with.
+     * @return true if the single-stream download should be attempted.
+     */
+    private static boolean canFallBack(Throwable cause) {
+        if (cause instanceof UncheckedIOException || cause instanceof IOException) {
+            return true;
+        }
+        if (cause instanceof HttpStatusException) {
+            int status = ((HttpStatusException) cause).getStatusCode();
+            return status != HttpURLConnection.HTTP_UNAUTHORIZED && status != HttpURLConnection.HTTP_FORBIDDEN;
+        }
+        return false;
+    }
+
+    /**
+     * Makes one attempt at a download, resuming from the partial file if there is one. Attempts that break off
+     * because of an I/O error or the read timeout of the connection manager are retried until
+     * {@link #getMaxResumeAttempts()} is reached.
+     *
+     * @param uri The URI of the file to download.
+     * @param outputFile The file to download to.
+     * @param validators The state of the previous complete download, used to make the request conditional, or null.
+     * @param attempt The number of attempts made so far.
+     * @return A CompletableFuture that will contain the outcome of the download.
+     */
+    private CompletableFuture<FileDownload> attempt(URI uri, File outputFile, ZoneState validators, int attempt) {
+        File partFile = getPartFile(outputFile);
+        String resumeValidator = getResumeValidator(outputFile);
+        if (resumeValidator == null) {
+            // A partial file we cannot tie to a version of the file is useless, start over
+            discardPartial(outputFile);
+        }
+        long offset = partFile.length();
+
+        return connectionManager.sendAuthorized(uri, "GET", request -> {
+                    addConditionalHeaders(request, validators);
+                    if (offset > 0) {
+                        request.header("Range", "bytes=" + offset + "-");
+                        request.header("If-Range", resumeValidator);
+                    }
+                }, connectionManager.ofInputStream())
+                .thenApplyAsync(response -> handleResponse(response, outputFile, validators, offset), connectionManager.getExecutor())
+                .exceptionallyCompose(e -> {
+                    Throwable cause = HttpConnectionManager.unwrap(e);
+                    // A broken or stalled connection, including a body that hit the read timeout, is worth resuming
+                    if ((cause instanceof UncheckedIOException || cause instanceof IOException) && attempt < maxResumeAttempts) {
+                        logger.warn("Download of " + outputFile.getName() + " was interrupted, resuming from byte "
+                                + getPartFile(outputFile).length() + ": " + cause.getMessage());
+                        return attempt(uri, outputFile, validators, attempt + 1);
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                });
+    }
+
+    /**
+     * Makes a request conditional on the file having changed since the previous download.
+     *
+     * @param request The request to add the headers to.
+     * @param validators The state of the previous complete download, or null.
+     */
+    private static void addConditionalHeaders(HttpRequest.Builder request, ZoneState validators) {
+        if (validators != null && validators.getEtag() != null) {
+            request.header("If-None-Match", validators.getEtag());
+        }
+        if (validators != null && validators.getLastModified() != null) {
+            request.header("If-Modified-Since", validators.getLastModified());
+        }
+    }
+
+    /**
+     * Handles the response to a download request according to its status.
+     *
+     * @param response The download response, with its body not yet consumed.
+     * @param outputFile The file to download to.
+     * @param validators The state of the previous complete download, or null.
+     * @param offset The number of bytes already in the partial file.
+     * @return The outcome of the download.
+     */
+    private FileDownload handleResponse(HttpResponse<InputStream> response, File outputFile, ZoneState validators, long offset) {
+        int status = response.statusCode();
+
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED
+                || (status == HttpURLConnection.HTTP_OK && isUnchanged(response.headers(), validators))) {
+            HttpConnectionManager.closeQuietly(response);
+            discardPartial(outputFile);
+            logger.info(outputFile.getName() + " is unchanged, skipping download.");
+            return new FileDownload(outputFile, true, validators);
+        }
+
+        if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+            HttpConnectionManager.closeQuietly(response);
+            discardPartial(outputFile);
+            throw new UncheckedIOException(new IOException("Server rejected the resume offset " + offset + ", restarting download"));
+        }
+
+        if (status == HTTP_PARTIAL_CONTENT) {
+            return writeToFile(response, outputFile, offset);
+        }
+        if (status == HttpURLConnection.HTTP_OK) {
+            if (offset > 0) {
+                logger.info(outputFile.getName() + " changed on the server since the partial download, restarting.");
+            }
+            return writeToFile(response, outputFile, 0);
+        }
+
+        HttpConnectionManager.closeQuietly(response);
+        throw new HttpStatusException(status);
+    }
+
+    /**
+     * Checks whether a full download response describes the same file as the previous download. Some servers
+     * ignore conditional headers, so the validators of the response are compared as well.
+     *
+     * @param headers The headers of the download response.
+     * @param validators The state of the previous download, or null.
+     * @return true if the file is unchanged and its body does not need to be read.
+     */
+    private static boolean isUnchanged(HttpHeaders headers, ZoneState validators) {
+        if (validators == null || validators.getEtag() == null) {
+            return false;
+        }
+
+        String etag = headers.firstValue("ETag").orElse(null);
+        long length = headers.firstValueAsLong("Content-Length").orElse(-1);
+        return validators.getEtag().equals(etag) && length == validators.getSize();
+    }
+
+    /**
+     * Writes the body of a download response to the partial file, hashing the whole file on the way through, and
+     * moves the partial file into place once the transfer is complete.
+     *
+     * @param response The response to write out.
+     * @param outputFile The file to download to.
+     * @param offset The offset the response body starts at; 0 for a full response.
+     * @return The outcome of the download, including the new validators, size and digest of the file.
+     */
+    private FileDownload writeToFile(HttpResponse<InputStream> response, File outputFile, long offset) {
+        File partFile = getPartFile(outputFile);
+        HttpHeaders headers = response.headers();
+
+        long fileLength;
+        if (offset > 0) {
+            long[] contentRange = parseContentRange(headers);
+            if (contentRange == null || contentRange[0] != offset) {
+                HttpConnectionManager.closeQuietly(response);
+                discardPartial(outputFile);
+                throw new UncheckedIOException(new IOException("Server answered the resume request with an unexpected range, restarting download"));
+            }
+            fileLength = contentRange[1];
+            logger.info("Resuming " + outputFile.getName() + " from byte " + offset);
+        } else {
+            fileLength = headers.firstValueAsLong("Content-Length").orElse(-1);
+            writeCheckpoint(outputFile, headers);
+        }
+
+        if (fileLength == -1) {
+            logger.warn("File size is unknown. Progress will be shown without a percentage.");
+        }
+
+        MessageDigest digest = newDigest();
+        ProgressReporter.Transfer transfer = progressReporter.start(outputFile.getName(), offset, fileLength);
+        try (GzipValidator gzip = verifyGzip ? new GzipValidator() : null) {
+            long totalBytesRead;
+            try (InputStream inputStream = response.body();
+                 FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+                if (offset > 0) {
+                    replay(partFile, offset, digest, gzip);
+                } else {
+                    channel.truncate(0);
+                }
+
+                AtomicLong position = new AtomicLong(offset);
+                copy(inputStream, channel, position, fileLength >= 0 ? fileLength : Long.MAX_VALUE, digest, gzip, transfer);
+
+                totalBytesRead = position.get();
+                if (fileLength >= 0 && totalBytesRead != fileLength) {
+                    throw new IOException("Connection closed after " + totalBytesRead + " of " + fileLength + " bytes");
+                }
+                if (gzip != null) {
+                    gzip.finish();
+                }
+                channel.force(false);
+            }
+
+            // Only move the part file once it is flushed and closed
+            Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(getCheckpointFile(outputFile).toPath());
+
+            logger.info("Download of " + outputFile.getName() + " completed successfully (" + transfer.describeRate() + ").");
+
+            ZoneState state = newState(headers, totalBytesRead, digest);
+            writeManifest(outputFile, state, gzip);
+            return new FileDownload(outputFile, false, state);
+        } catch (ZipException e) {
+            // The bytes on disk are corrupt, so resuming from them would never succeed
+            discardPartial(outputFile);
+            logger.error("Download of " + outputFile.getName() + " is not a valid gzip file: " + e.getMessage());
+            throw new UncheckedIOException("File download failed", e);
+        } catch (IOException e) {
+            logger.error("Error during file download", e);
+            throw new UncheckedIOException("File download failed", e);
+        } finally {
+            transfer.finish();
+        }
+    }
+
+    /**
+     * Copies a response body into a file channel. The body is read in chunks of up to {@link #getBufferSize()} bytes,
+     * and each chunk is handed to the channel as a single positional write, so a multi-gigabyte transfer costs a
+     * few thousand write calls rather than millions. Bytes read before a failure are still written, so resuming never
+     * refetches them.
+     *
+     * @param inputStream The response body.
+     * @param channel The channel to write to.
+     * @param position The position to write at; advanced as bytes reach the channel, so it is accurate even if the
+     *                 copy fails part way.
+     * @param end The position to stop at, exclusive; Long.MAX_VALUE to copy until the end of the body.
+     * @param digest The digest to update with the copied bytes, or null.
+     * @param gzip The validator to feed the copied bytes to, or null.
+     * @param transfer The transfer to report progress to.
+     * @throws IOException If reading the body or writing the channel fails.
+     * @throws ZipException If the copied bytes are not valid gzip data; the offending chunk is not written.
+     */
+    private void copy(InputStream inputStream, FileChannel channel, AtomicLong position, long end, MessageDigest digest,
+                      GzipValidator gzip, ProgressReporter.Transfer transfer) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        RateLimiter bandwidthLimiter = this.bandwidthLimiter;
+
+        boolean endOfStream = false;
+        while (!endOfStream && position.get() < end) {
+            // Fill the buffer before writing; if the connection breaks, keep what was read so far
+            int length = (int) Math.min(buffer.length, end - position.get());
+            int bytesRead = 0;
+            IOException failure = null;
+            try {
+                while (bytesRead < length) {
+                    int read = inputStream.read(buffer, bytesRead, length - bytesRead);
+                    if (read == -1) {
+                        endOfStream = true;
+                        break;
+                    }
+                    bytesRead += read;
+                    if (bandwidthLimiter != null) {
+                        // Not reading holds the connection's flow control window shut, which slows the sender down
+                        bandwidthLimiter.acquire(read);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+
+            if (digest != null) {
+                digest.update(buffer, 0, bytesRead);
+            }
+            if (gzip != null) {
+                gzip.update(buffer, 0, bytesRead);
+            }
+            byteBuffer.clear().limit(bytesRead);
+            long writePosition = position.get();
+            while (byteBuffer.hasRemaining()) {
+                writePosition += channel.write(byteBuffer, writePosition);
+            }
+            position.set(writePosition);
+            transfer.add(bytesRead);
+            connectionManager.getMetrics().addDownloadedBytes(bytesRead);
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code Content-Range} header of a partial response.
+     *
+     * @param headers The headers of the partial response.
+     * @return The first byte of the range and the complete length of the file (-1 if unknown), or null if the header
+     *         is missing or malformed.
+     */
+    private static long[] parseContentRange(HttpHeaders headers) {
+        String contentRange = headers.firstValue("Content-Range").orElse(null);
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return null;
+        }
+
+        try {
+            int dash = contentRange.indexOf('-');
+            int slash = contentRange.indexOf('/');
+            long start = Long.parseLong(contentRange.substring("bytes ".length(), dash).trim());
+            String total = contentRange.substring(slash + 1).trim();
+            return new long[] {start, total.equals("*") ? -1 : Long.parseLong(total)};
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Feeds the bytes already in the partial file to the digest and gzip validator, so they cover the whole file.
+     *
+     * @param file The partial file.
+     * @param length The number of bytes to read.
+     * @param digest The digest to update.
+     * @param gzip The validator to update, or null.
+     * @throws IOException If the partial file cannot be read.
+     * @throws ZipException If the bytes are not valid gzip data.
+     */
+    private void replay(File file, long length, MessageDigest digest, GzipValidator gzip) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            byte[] buffer = new byte[bufferSize];
+            long remaining = length;
+            int bytesRead;
+            while (remaining > 0 && (bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                digest.update(buffer, 0, bytesRead);
+                if (gzip != null) {
+                    gzip.update(buffer, 0, bytesRead);
+                }
+                remaining -= bytesRead;
+            }
+        }
+    }
+
+    /**
+     * Builds the state of a completed download.
+     *
+     * @param headers The headers the file was served with.
+     * @param size The size of the file.
+     * @param digest The digest of the file's contents.
+     * @return The state of the download.
+     */
+    private static ZoneState newState(HttpHeaders headers, long size, MessageDigest digest) {
+        ZoneState state = new ZoneState();
+        state.setEtag(headers.firstValue("ETag").orElse(null));
+        state.setLastModified(headers.firstValue("Last-Modified").orElse(null));
+        state.setSize(size);
+        state.setDigestAlgorithm(digest.getAlgorithm());
+        state.setDigest(HexFormat.of().formatHex(digest.digest()));
+        if (state.getDigestAlgorithm().equals("SHA-256")) {
+            state.setSha256(state.getDigest());
+        }
+        return state;
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the manifest of a downloaded file, hashing the file only if it has no manifest yet or was modified since
+     * its manifest was written. With gzip validation enabled, a file that was hashed without it is validated as well.
+     * A fresh manifest is written for every file that had to be hashed.
+     *
+     * @param file The downloaded file.
+     * @return The manifest describing the file.
+     * @throws IOException If the file cannot be read.
+     * @throws ZipException If gzip validation is enabled and the file is not a valid gzip file.
+     */
+    public ZoneManifest verify(File file) throws IOException {
+        ZoneManifest manifest = readManifest(file);
+        if (manifest != null && manifest.getSize() == file.length() && manifest.getModifiedAt() == file.lastModified()
+                && digestAlgorithm.equals(manifest.getDigestAlgorithm()) && (!verifyGzip || manifest.isGzipVerified())) {
+            logger.debug(file.getName() + " matches its manifest, skipping verification");
+            return manifest;
+        }
+
+        logger.info("Verifying " + file.getName());
+        MessageDigest digest = newDigest();
+        try (GzipValidator gzip = verifyGzip ? new GzipValidator() : null) {
+            replay(file, file.length(), digest, gzip);
+            if (gzip != null) {
+                gzip.finish();
+            }
+
+            ZoneState state = new ZoneState();
+            if (manifest != null) {
+                state.setEtag(manifest.getEtag());
+                state.setLastModified(manifest.getLastModified());
+            }
+            state.setSize(file.length());
+            state.setDigestAlgorithm(digest.getAlgorithm());
+            state.setDigest(HexFormat.of().formatHex(digest.digest()));
+            return writeManifest(file, state, gzip);
+        }
+    }
+
+    /**
+     * Reads the manifest written next to a downloaded file.
+     *
+     * @param file The downloaded file.
+     * @return The manifest, or null if there is none or it cannot be read.
+     */
+    public ZoneManifest readManifest(File file) {
+        File manifestFile = getManifestFile(file);
+        if (!manifestFile.isFile()) {
+            return null;
+        }
+
+        try {
+            return objectMapper.readValue(manifestFile, ZoneManifest.class);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable manifest " + manifestFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records the size, modification time and digest of a complete file next to it. The manifest is written to a
+     * temporary file first and then moved into place, so readers never see a partial manifest.
+     *
+     * @param file The complete file.
+     * @param state The state of the file.
+     * @param gzip The validator the file passed, or null if it was not validated.
+     * @return The manifest.
+     */
+    private ZoneManifest writeManifest(File file, ZoneState state, GzipValidator gzip) {
+        ZoneManifest manifest = new ZoneManifest();
+        manifest.setFileName(file.getName());
+        manifest.setSize(state.getSize());
+        manifest.setModifiedAt(file.lastModified());
+        manifest.setDigestAlgorithm(state.getDigestAlgorithm());
+        manifest.setDigest(state.getDigest());
+        manifest.setEtag(state.getEtag());
+        manifest.setLastModified(state.getLastModified());
+        manifest.setGzipVerified(gzip != null);
+        manifest.setUncompressedSize(gzip != null ? gzip.getUncompressedSize() : -1);
+        manifest.setVerifiedAt(System.currentTimeMillis());
+
+        File manifestFile = getManifestFile(file);
+        File tempFile = new File(manifestFile.getPath() + ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tempFile, manifest);
+            Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to write the manifest of " + file.getName() + ", it will be hashed again when verified: " + e.getMessage());
+            tempFile.delete();
+        }
+        return manifest;
+    }
+
+    /**
+     * Records the validators of a download that is starting from scratch, so it can be resumed later.
+     *
+     * @param outputFile The file being downloaded.
+     * @param headers The headers of the full response.
+     */
+    private void writeCheckpoint(File outputFile, HttpHeaders headers) {
+        ZoneState checkpoint = new ZoneState();
+        checkpoint.setEtag(headers.firstValue("ETag").orElse(null));
+        checkpoint.setLastModified(headers.firstValue("Last-Modified").orElse(null));
+        checkpoint.setSize(headers.firstValueAsLong("Content-Length").orElse(-1));
+
+        try {
+            objectMapper.writeValue(getCheckpointFile(outputFile), checkpoint);
+        } catch (IOException e) {
+            logger.warn("Failed to write download checkpoint for " + outputFile.getName() + ", it will not be resumable: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the validator to send as {@code If-Range} when resuming the partial download of a file.
+     *
+     * @param outputFile The file being downloaded.
+     * @return The validator, or null if there is no partial download or it cannot safely be resumed.
+     */
+    private String getResumeValidator(File outputFile) {
+        File checkpointFile = getCheckpointFile(outputFile);
+        if (getPartFile(outputFile).length() == 0 || !checkpointFile.isFile()) {
+            return null;
+        }
+
+        try {
+            ZoneState checkpoint = objectMapper.readValue(checkpointFile, ZoneState.class);
+            return getStrongValidator(checkpoint.getEtag(), checkpoint.getLastModified());
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable download checkpoint " + checkpointFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String getStrongValidator(HttpHeaders headers) {
+        return getStrongValidator(headers.firstValue("ETag").orElse(null), headers.firstValue("Last-Modified").orElse(null));
+    }
+
+    /**
+     * Picks the validator to send as {@code If-Range}. Only strong ETags may be used there, so Last-Modified is used
+     * when there is no ETag or only a weak one.
+     *
+     * @param etag The ETag of the file, or null.
+     * @param lastModified The Last-Modified date of the file, or null.
+     * @return The validator, or null if there is none.
+     */
+    private static String getStrongValidator(String etag, String lastModified) {
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Deletes the partial file and checkpoint of a download.
+     *
+     * @param outputFile The file being downloaded.
+     */
+    private void discardPartial(File outputFile) {
+        try {
+            Files.deleteIfExists(getPartFile(outputFile).toPath());
+            Files.deleteIfExists(getCheckpointFile(outputFile).toPath());
+        } catch (IOException e) {
+            logger.warn("Failed to delete partial download of " + outputFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the local file a download is saved to, creating the output directory if needed.
+     *
+     * @param uri The URI the file is downloaded from, used to name the file.
+     * @param outputDirectoryPath The directory path where the downloaded file will be saved.
+     * @return The local file.
+     */
+    private static File getOutputFile(URI uri, String outputDirectoryPath) {
+        // Extract the file name from the URL
+        String fileName = new File(uri.getPath()).getName() + ".gz";
+
+        // Combine the output directory and file name
+        File outputDirectory = new File(outputDirectoryPath);
+        if (!outputDirectory.exists()) {
+            outputDirectory.mkdirs(); // Create the directory if it doesn't exist
+        }
+        return new File(outputDirectory, fileName);
+    }
+
+    private static File getPartFile(File outputFile) {
+        return new File(outputFile.getPath() + PART_SUFFIX);
+    }
+
+    private static File getCheckpointFile(File outputFile) {
+        return new File(outputFile.getPath() + CHECKPOINT_SUFFIX);
+    }
+
+    private static File getManifestFile(File outputFile) {
+        return new File(outputFile.getPath() + MANIFEST_SUFFIX);
+    }
+
+    public int getMaxResumeAttempts() {
+        return maxResumeAttempts;
+    }
+
+    /**
+     * Sets how many times an interrupted download is resumed within a single call before giving up. The partial
+     * file is kept either way, so a later call picks up where the last attempt stopped.
+     *
+     * @param maxResumeAttempts the number of resume attempts, 0 to disable resuming within a call
+     */
+    public void setMaxResumeAttempts(int maxResumeAttempts) {
+        if (maxResumeAttempts < 0) {
+            throw new IllegalArgumentException("Resume attempts must not be negative.");
+        }
+        this.maxResumeAttempts = maxResumeAttempts;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the buffer each download is copied through. Every filled buffer is written to disk in a single
+     * call, so larger buffers mean fewer system calls on large files.
+     *
+     * @param bufferSize the buffer size in bytes
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1 byte.");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    public Duration getProgressInterval() {
+        return progressReporter.getInterval();
+    }
+
+    /**
+     * Sets how often the progress of running downloads is logged.
+     *
+     * @param progressInterval the interval between progress reports, or {@link Duration#ZERO} to disable them
+     */
+    public void setProgressInterval(Duration progressInterval) {
+        if (progressInterval.isNegative()) {
+            throw new IllegalArgumentException("Progress interval must not be negative.");
+        }
+        progressReporter.setInterval(progressInterval);
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * Sets the number of parallel connections used to download a single large file. Only files of at least twice
+     * {@link #getMinSegmentSize()} bytes, served by a server that supports byte ranges, are segmented.
+     *
+     * @param segments the number of segments per file, 1 to disable segmented downloads
+     */
+    public void setSegments(int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("Segments must be at least 1.");
+        }
+        this.segments = segments;
+    }
+
+    public long getMinSegmentSize() {
+        return minSegmentSize;
+    }
+
+    /**
+     * Sets the smallest segment a file is split into. Files too small for two segments of this size are downloaded
+     * in a single stream.
+     *
+     * @param minSegmentSize the minimum segment size in bytes
+     */
+    public void setMinSegmentSize(long minSegmentSize) {
+        if (minSegmentSize < 0) {
+            throw new IllegalArgumentException("Minimum segment size must not be negative.");
+        }
+        this.minSegmentSize = minSegmentSize;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * Sets the algorithm downloads are hashed with. Defaults to SHA-256.
+     *
+     * @param digestAlgorithm the name of a {@link MessageDigest} algorithm, e.g. "SHA-512"
+     */
+    public void setDigestAlgorithm(String digestAlgorithm) {
+        try {
+            MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown digest algorithm " + digestAlgorithm, e);
+        }
+        this.digestAlgorithm = digestAlgorithm;
+    }
+
+    public boolean isVerifyGzip() {
+        return verifyGzip;
+    }
+
+    /**
+     * Sets whether downloads are validated as gzip files while they stream to disk. Each file is inflated on the way
+     * through and the CRC32 and size of its data are checked against its trailer; a file that fails is deleted and
+     * downloaded again from scratch. Disabled by default, as inflating costs CPU time on every download.
+     *
+     * @param verifyGzip true to validate downloads as gzip files
+     */
+    public void setVerifyGzip(boolean verifyGzip) {
+        this.verifyGzip = verifyGzip;
+    }
+
+    /**
+     * Returns the bandwidth limit shared by all transfers.
+     *
+     * @return the limit in bytes per second, or 0 if unlimited.
+     */
+    public long getBandwidthLimit() {
+        RateLimiter bandwidthLimiter = this.bandwidthLimiter;
+        return bandwidthLimiter == null ? 0 : (long) bandwidthLimiter.getPermitsPerSecond();
+    }
+
+    /**
+     * Caps the combined transfer rate of all downloads, however many run at once, e.g. to leave room on the uplink
+     * during business hours. Transfers take turns on a token bucket holding up to one second worth of bytes, so
+     * short bursts may exceed the cap but the average rate does not.
+     *
+     * @param bytesPerSecond the limit in bytes per second, or 0 for no limit
+     */
+    public void setBandwidthLimit(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bandwidth limit must not be negative.");
+        }
+        this.bandwidthLimiter = bytesPerSecond == 0 ? null
+                : new RateLimiter(bytesPerSecond, (int) Math.min(Integer.MAX_VALUE, bytesPerSecond));
+    }
+
+    /**
+     * A single segmented download: splits the file into byte ranges, fetches them concurrently into a preallocated
+     * part file with positional writes, then verifies and hashes the assembled file before moving it into place.
+     */
+    private class SegmentedDownload {
+        private final URI uri;
+        private final File outputFile;
+        private final File partFile;
+        private final HttpHeaders headers;
+        private final long fileLength;
+        private final String validator;
+        private final ProgressReporter.Transfer transfer;
+        private FileChannel channel;
+
+        SegmentedDownload(URI uri, File outputFile, HttpHeaders headers, long fileLength, String validator) {
+            this.uri = uri;
+            this.outputFile = outputFile;
+            this.partFile = getPartFile(outputFile);
+            this.headers = headers;
+            this.fileLength = fileLength;
+            this.validator = validator;
+            this.transfer = progressReporter.start(outputFile.getName(), 0, fileLength);
+        }
+
+        /**
+         * Preallocates the part file and starts fetching every segment.
+         *
+         * @return A CompletableFuture that will contain the outcome of the download.
+         */
+        CompletableFuture<FileDownload> start() {
+            try {
+                channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                // Writing the last byte makes the file its full size up front, without writing the bytes in between
+                channel.write(ByteBuffer.wrap(new byte[1]), fileLength - 1);
+            } catch (IOException e) {
+                closeChannel();
+                transfer.finish();
+                return CompletableFuture.failedFuture(new UncheckedIOException(e));
+            }
+
+            int count = (int) Math.max(1, Math.min(segments, fileLength / Math.max(1, minSegmentSize)));
+            long segmentLength = (fileLength + count - 1) / count;
+            logger.info("Downloading " + outputFile.getName() + " in " + count + " segments");
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (long start = 0; start < fileLength; start += segmentLength) {
+                futures.add(fetchSegment(start, Math.min(start + segmentLength, fileLength) - 1, 0));
+            }
+
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .thenApplyAsync(v -> complete(), connectionManager.getExecutor())
+                    .whenComplete((download, e) -> {
+                        closeChannel();
+                        transfer.finish();
+                    });
+        }
+
+        /**
+         * Fetches the byte range {@code [start, end]} and writes it to its position in the part file. If the transfer
+         * breaks off, the rest of the range is requested again, up to {@link #getMaxResumeAttempts()} times.
+         *
+         * @param start The first byte of the range.
+         * @param end The last byte of the range, inclusive.
+         * @param attempt The number of attempts made so far for this segment.
+         * @return A CompletableFuture that completes once the whole range has been written.
+         */
+        private CompletableFuture<Void> fetchSegment(long start, long end, int attempt) {
+            return connectionManager.sendAuthorized(uri, "GET", request -> {
+                        request.header("Range", "bytes=" + start + "-" + end);
+                        request.header("If-Range", validator);
+                    }, connectionManager.ofInputStream())
+                    .thenApplyAsync(response -> writeSegment(response, start, end), connectionManager.getExecutor())
+                    .thenCompose(position -> {
+                        if (position > end) {
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        if (attempt >= maxResumeAttempts) {
+                            return CompletableFuture.<Void>failedFuture(new UncheckedIOException(
+                                    new IOException("Segment " + start + "-" + end + " of " + outputFile.getName() + " ended at byte " + position)));
+                        }
+                        logger.warn("Segment " + start + "-" + end + " of " + outputFile.getName() + " was interrupted, resuming from byte " + position);
+                        return fetchSegment(position, end, attempt + 1);
+                    });
+        }
+
+        /**
+         * Writes a partial response to its position in the part file.
+         *
+         * @param response The partial response.
+         * @param start The first byte of the requested range.
+         * @param end The last byte of the requested range, inclusive.
+         * @return The position after the last byte written; {@code end + 1} if the whole range was written.
+         */
+        private long writeSegment(HttpResponse<InputStream> response, long start, long end) {
+            if (response.statusCode() != HTTP_PARTIAL_CONTENT) {
+                HttpConnectionManager.closeQuietly(response);
+                if (response.statusCode() == HttpURLConnection.HTTP_OK) {
+                    throw new UncheckedIOException(new IOException(outputFile.getName() + " changed on the server during the segmented download"));
+                }
+                throw new HttpStatusException(response.statusCode());
+            }
+
+            long[] contentRange = parseContentRange(response.headers());
+            if (contentRange == null || contentRange[0] != start || contentRange[1] != fileLength) {
+                HttpConnectionManager.closeQuietly(response);
+                throw new UncheckedIOException(new IOException("Server answered segment " + start + "-" + end + " with an unexpected range"));
+            }
+
+            AtomicLong position = new AtomicLong(start);
+            try (InputStream inputStream = response.body()) {
+                copy(inputStream, channel, position, end + 1, null, null, transfer);
+            } catch (IOException e) {
+                logger.debug("Segment " + start + "-" + end + " of " + outputFile.getName() + " broke off: " + e.getMessage());
+            }
+            return position.get();
+        }
+
+        /**
+         * Verifies the assembled length, hashes the file and moves it into place. Segments arrive out of order, so the
+         * digest and gzip validation cannot run inline; both are computed in a single read of the assembled file.
+         *
+         * @return The outcome of the download.
+         */
+        private FileDownload complete() {
+            try {
+                if (transfer.getTransferred() != fileLength || channel.size() != fileLength) {
+                    throw new IOException("Assembled " + transfer.getTransferred() + " of " + fileLength + " bytes");
+                }
+                channel.force(false);
+
+                MessageDigest digest = newDigest();
+                try (GzipValidator gzip = verifyGzip ? new GzipValidator() : null) {
+                    replay(partFile, fileLength, digest, gzip);
+                    if (gzip != null) {
+                        gzip.finish();
+                    }
+
+                    // Moving a file that is still open fails on Windows
+                    closeChannel();
+                    Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    logger.info("Download of " + outputFile.getName() + " completed successfully (" + transfer.describeRate() + ").");
+                    ZoneState state = newState(headers, fileLength, digest);
+                    writeManifest(outputFile, state, gzip);
+                    return new FileDownload(outputFile, false, state);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("File download failed", e);
+            }
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.debug("Failed to close " + partFile + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
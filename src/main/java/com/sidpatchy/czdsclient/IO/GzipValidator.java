@@ -0,0 +1,241 @@
+package com.sidpatchy.czdsclient.IO;
+
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Checks that a stream of bytes is a complete, intact gzip file while it is being written elsewhere, so a corrupt or
+ * truncated download is caught without reading the file a second time.
+ * <p>
+ * Bytes are pushed in as they arrive, in chunks of any size. Each member is inflated and the CRC32 and length of its
+ * uncompressed data are compared against the member's trailer; files made of several concatenated members are
+ * supported. The inflated data itself is discarded.
+ */
+public class GzipValidator implements AutoCloseable {
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private enum State { HEADER, EXTRA_LENGTH, EXTRA, NAME, COMMENT, HEADER_CRC, DATA, TRAILER, END }
+
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] output = new byte[64 * 1024];
+    private final byte[] field = new byte[10];
+    private State state = State.HEADER;
+    private int fieldLength;
+    private int flags;
+    private int extraRemaining;
+    private long memberSize;
+    private long uncompressedSize;
+    private int members;
+
+    /**
+     * Validates the next chunk of the file.
+     *
+     * @param buffer the buffer holding the chunk
+     * @param offset the offset of the chunk in the buffer
+     * @param length the length of the chunk
+     * @throws ZipException If the chunk is not valid gzip data, or completes a member whose trailer does not match.
+     */
+    public void update(byte[] buffer, int offset, int length) throws ZipException {
+        int end = offset + length;
+        while (offset < end) {
+            if (state == State.DATA) {
+                offset = inflate(buffer, offset, end);
+            } else {
+                update(buffer[offset++] & 0xff);
+            }
+        }
+    }
+
+    /**
+     * Checks that the file ended on a member boundary, i.e. that it was not truncated.
+     *
+     * @throws ZipException If the file is empty or ends part way through a member.
+     */
+    public void finish() throws ZipException {
+        if (state != State.END) {
+            throw new ZipException(members == 0 && state == State.HEADER && fieldLength == 0
+                    ? "Not a gzip file: no data"
+                    : "Truncated gzip file: member " + (members + 1) + " is incomplete");
+        }
+    }
+
+    /**
+     * Handles a single byte of a header or trailer.
+     */
+    private void update(int b) throws ZipException {
+        if (state == State.END) {
+            // Another member follows
+            state = State.HEADER;
+            fieldLength = 0;
+        }
+
+        switch (state) {
+            case HEADER:
+                field[fieldLength++] = (byte) b;
+                if (fieldLength == 10) {
+                    if ((field[0] & 0xff) != 0x1f || (field[1] & 0xff) != 0x8b) {
+                        throw new ZipException(members == 0 ? "Not a gzip file" : "Trailing garbage after gzip member " + members);
+                    }
+                    if (field[2] != 8) {
+                        throw new ZipException("Unsupported gzip compression method " + field[2]);
+                    }
+                    flags = field[3] & (FHCRC | FEXTRA | FNAME | FCOMMENT);
+                    fieldLength = 0;
+                    nextHeaderField();
+                }
+                break;
+            case EXTRA_LENGTH:
+                field[fieldLength++] = (byte) b;
+                if (fieldLength == 2) {
+                    extraRemaining = (field[0] & 0xff) | (field[1] & 0xff) << 8;
+                    fieldLength = 0;
+                    state = State.EXTRA;
+                    if (extraRemaining == 0) {
+                        flags &= ~FEXTRA;
+                        nextHeaderField();
+                    }
+                }
+                break;
+            case EXTRA:
+                if (--extraRemaining == 0) {
+                    flags &= ~FEXTRA;
+                    nextHeaderField();
+                }
+                break;
+            case NAME:
+                if (b == 0) {
+                    flags &= ~FNAME;
+                    nextHeaderField();
+                }
+                break;
+            case COMMENT:
+                if (b == 0) {
+                    flags &= ~FCOMMENT;
+                    nextHeaderField();
+                }
+                break;
+            case HEADER_CRC:
+                if (++fieldLength == 2) {
+                    fieldLength = 0;
+                    startData();
+                }
+                break;
+            case TRAILER:
+                field[fieldLength++] = (byte) b;
+                if (fieldLength == 8) {
+                    checkTrailer();
+                }
+                break;
+            default:
+                throw new IllegalStateException(state.name());
+        }
+    }
+
+    /**
+     * Moves on to the next optional header field that is present, in the order they appear in the header, or to the
+     * compressed data. The flag of each field is cleared once the field has been read.
+     */
+    private void nextHeaderField() {
+        if ((flags & FEXTRA) != 0) {
+            state = State.EXTRA_LENGTH;
+        } else if ((flags & FNAME) != 0) {
+            state = State.NAME;
+        } else if ((flags & FCOMMENT) != 0) {
+            state = State.COMMENT;
+        } else if ((flags & FHCRC) != 0) {
+            state = State.HEADER_CRC;
+        } else {
+            startData();
+        }
+    }
+
+    private void startData() {
+        inflater.reset();
+        crc.reset();
+        memberSize = 0;
+        state = State.DATA;
+    }
+
+    /**
+     * Inflates as much of the chunk as belongs to the current member.
+     *
+     * @return The offset of the first byte after the member's compressed data, or {@code end} if it continues.
+     */
+    private int inflate(byte[] buffer, int offset, int end) throws ZipException {
+        inflater.setInput(buffer, offset, end - offset);
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(output);
+                if (inflated > 0) {
+                    crc.update(output, 0, inflated);
+                    memberSize += inflated;
+                } else if (inflater.needsInput()) {
+                    return end;
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Invalid gzip data: preset dictionary");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid gzip data in member " + (members + 1) + ": " + e.getMessage());
+        }
+
+        state = State.TRAILER;
+        fieldLength = 0;
+        return end - inflater.getRemaining();
+    }
+
+    private void checkTrailer() throws ZipException {
+        long expectedCrc = readInt(0);
+        long expectedSize = readInt(4);
+        members++;
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("CRC32 mismatch in gzip member " + members + ": expected "
+                    + Long.toHexString(expectedCrc) + ", got " + Long.toHexString(crc.getValue()));
+        }
+        // ISIZE holds the uncompressed size modulo 2^32
+        if (expectedSize != (memberSize & 0xffffffffL)) {
+            throw new ZipException("Size mismatch in gzip member " + members + ": expected " + expectedSize
+                    + " bytes modulo 2^32, got " + memberSize);
+        }
+        uncompressedSize += memberSize;
+        fieldLength = 0;
+        state = State.END;
+    }
+
+    private long readInt(int offset) {
+        return (field[offset] & 0xffL) | (field[offset + 1] & 0xffL) << 8
+                | (field[offset + 2] & 0xffL) << 16 | (field[offset + 3] & 0xffL) << 24;
+    }
+
+    /**
+     * Returns the total size of the uncompressed data of all complete members.
+     *
+     * @return the uncompressed size in bytes.
+     */
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    /**
+     * Returns the number of complete members validated so far.
+     *
+     * @return the number of members.
+     */
+    public int getMembers() {
+        return members;
+    }
+
+    /**
+     * Releases the native memory held by the inflater.
+     */
+    @Override
+    public void close() {
+        inflater.end();
+    }
+}
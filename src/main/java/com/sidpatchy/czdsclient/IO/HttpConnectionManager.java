@@ -2,30 +2,51 @@ package com.sidpatchy.czdsclient.IO;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sidpatchy.czdsclient.Bean.AuthResponse;
+import com.sidpatchy.czdsclient.Bean.FileDownload;
+import com.sidpatchy.czdsclient.Bean.ZoneState;
+import com.sidpatchy.czdsclient.Metrics.ClientMetrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class HttpConnectionManager {
 
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(10);
+
     private final Logger logger = LogManager.getLogger();
-    private String token;
+    private final TokenManager tokenManager;
     private final String username;
     private final String password;
     private final String baseAuthenticationEndpoint;
     private final String baseEndpoint;
     private final ObjectMapper objectMapper;
+    private final Executor executor;
+    private final HttpClient httpClient;
+    private FileDownloader fileDownloader;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private volatile RetryPolicy retryPolicy = RetryPolicy.defaults();
+    private volatile RateLimiter rateLimiter = RateLimiter.unlimited();
+    private volatile Duration readTimeout = READ_TIMEOUT;
 
     /**
-     * Constructs an instance of HttpConnectionManager with the provided parameters.
+     * Constructs an instance of HttpConnectionManager with the provided parameters. Requests run on the common
+     * ForkJoinPool.
      *
      * @param username the username to be used for authentication
      * @param password the password to be used for authentication
@@ -33,12 +54,59 @@ public class HttpConnectionManager {
      * @param baseEndpoint the base URL for the main API endpoint
      */
     public HttpConnectionManager(String username, String password, String baseAuthenticationEndpoint, String baseEndpoint) {
+        this(username, password, baseAuthenticationEndpoint, baseEndpoint, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an instance of HttpConnectionManager that runs all of its requests on the given executor.
+     * The executor is shared, not owned; its lifecycle is managed by the caller (normally {@link CZDSClient}).
+     *
+     * @param username the username to be used for authentication
+     * @param password the password to be used for authentication
+     * @param baseAuthenticationEndpoint the base URL for the authentication endpoint
+     * @param baseEndpoint the base URL for the main API endpoint
+     * @param executor the executor that requests are run on
+     */
+    public HttpConnectionManager(String username, String password, String baseAuthenticationEndpoint, String baseEndpoint, Executor executor) {
+        this(username, password, baseAuthenticationEndpoint, baseEndpoint, executor, newHttpClient(executor));
+    }
+
+    /**
+     * Constructs an instance of HttpConnectionManager that sends its requests through the given HttpClient. This
+     * allows the transport to be swapped out, e.g. for one with a proxy, custom TLS settings or a stub server.
+     *
+     * @param username the username to be used for authentication
+     * @param password the password to be used for authentication
+     * @param baseAuthenticationEndpoint the base URL for the authentication endpoint
+     * @param baseEndpoint the base URL for the main API endpoint
+     * @param executor the executor that blocking work, such as writing downloads to disk, is run on
+     * @param httpClient the HttpClient that requests are sent through
+     */
+    public HttpConnectionManager(String username, String password, String baseAuthenticationEndpoint, String baseEndpoint, Executor executor, HttpClient httpClient) {
+        this.executor = executor;
+        this.httpClient = httpClient;
         this.username = username;
         this.password = password;
         this.baseAuthenticationEndpoint = baseAuthenticationEndpoint;
         this.baseEndpoint = baseEndpoint;
         this.objectMapper = new ObjectMapper(); // Customize the ObjectMapper instance if needed
-        this.token = null;
+        this.tokenManager = new TokenManager(username, this::login);
+    }
+
+    /**
+     * Creates the default HttpClient. It prefers HTTP/2, so concurrent requests to the same host are multiplexed
+     * over a single pooled connection, and falls back to HTTP/1.1 with keep-alive where HTTP/2 is unavailable.
+     *
+     * @param executor the executor the client dispatches its asynchronous work on
+     * @return the new HttpClient.
+     */
+    public static HttpClient newHttpClient(Executor executor) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executor)
+                .build();
     }
 
     /**
@@ -48,66 +116,89 @@ public class HttpConnectionManager {
      * @throws Exception If an error occurs while attempting to authenticate or if the authentication fails.
      */
     public void authenticate() throws Exception {
-        if (token != null) {
-            return;
+        try {
+            authenticateAsync().join();
+        } catch (CompletionException e) {
+            throw unwrapException(e);
         }
+    }
 
-        URL url = new URI(baseAuthenticationEndpoint + "/api/authenticate/").toURL();
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setDoOutput(true);
+    /**
+     * Asynchronously authenticates the user, unless a valid token is already held. Concurrent callers share a single
+     * login, see {@link TokenManager}.
+     *
+     * @return A CompletableFuture that, when completed, will contain the authentication token.
+     */
+    public CompletableFuture<String> authenticateAsync() {
+        return tokenManager.getToken();
+    }
 
+    /**
+     * Sends a login request to the authentication endpoint.
+     *
+     * @return A CompletableFuture that will contain the new token.
+     */
+    private CompletableFuture<String> login() {
         String authPayload = String.format("{\"username\":\"%s\",\"password\":\"%s\"}", username, password);
         logger.debug("Auth Payload: " + authPayload);
 
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = authPayload.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseAuthenticationEndpoint + "/api/authenticate/"))
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .timeout(REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(authPayload, StandardCharsets.UTF_8))
+                .build();
+
+        // Logging in has no side effects, so it is retried like an idempotent request
+        return send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8), true, 1)
+                .thenApply(this::handleAuthenticationResponse)
+                .whenComplete((token, e) -> metrics.recordLogin(e == null));
+    }
 
-        int status = connection.getResponseCode();
+    /**
+     * Reads the token out of a response from the authentication endpoint.
+     *
+     * @param response The response from the authentication endpoint.
+     * @return The authentication token.
+     */
+    private String handleAuthenticationResponse(HttpResponse<String> response) {
+        int status = response.statusCode();
         logger.debug("Response Code: " + status);
 
         if (status == HttpURLConnection.HTTP_OK) {
-            try (InputStreamReader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
-                AuthResponse authResponse = objectMapper.readValue(reader, AuthResponse.class);
-                this.token = authResponse.getAccessToken();
+            try {
+                AuthResponse authResponse = objectMapper.readValue(response.body(), AuthResponse.class);
+                if (authResponse == null || authResponse.getAccessToken() == null || authResponse.getAccessToken().isBlank()) {
+                    throw new RuntimeException("Authentication succeeded but the response contained no access token.");
+                }
+                return authResponse.getAccessToken();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         } else if (status == HttpURLConnection.HTTP_UNAUTHORIZED) {
             throw new RuntimeException("Invalid username or password.");
         } else {
-            try (InputStreamReader reader = new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8)) {
-                String errorResponse = new BufferedReader(reader).lines().collect(Collectors.joining("\n"));
-                logger.error("Authentication failed with HTTP status: " + status + ". Error: " + errorResponse);
-                throw new RuntimeException("Authentication failed with HTTP status: " + status + ". Error: " + errorResponse);
-            }
+            logger.error("Authentication failed with HTTP status: " + status + ". Error: " + response.body());
+            throw new RuntimeException("Authentication failed with HTTP status: " + status + ". Error: " + response.body());
         }
     }
 
     /**
-     * Sets up an HttpURLConnection object with the specified URL and HTTP method.
+     * Creates a request builder for the specified URI and HTTP method, carrying the authentication token.
      *
-     * @param url The URL to connect to.
+     * @param uri The URI to send the request to.
      * @param method The HTTP method to use (e.g., "GET", "POST", "PUT", "PATCH").
-     * @return An HttpURLConnection object configured with the specified URL and method.
-     * @throws Exception If an error occurs during connection setup.
-     */
-    private HttpURLConnection setupConnection(URL url, String method) throws Exception {
-        authenticate(); // Ensure we're authenticated before making a request
-
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod(method);
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Authorization", "Bearer " + this.token);
-        connection.setConnectTimeout(10000); // 10 seconds connect timeout
-        connection.setReadTimeout(10000); // 10 seconds read timeout
-        if ("POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)) {
-            connection.setDoOutput(true); // Necessary for POST, PUT, and PATCH
-        }
-        return connection;
+     * @param body The body to send with the request.
+     * @param token The authentication token.
+     * @return An HttpRequest.Builder configured with the specified URI and method.
+     */
+    private HttpRequest.Builder setupRequest(URI uri, String method, HttpRequest.BodyPublisher body, String token) {
+        return HttpRequest.newBuilder(uri)
+                .method(method, body)
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .timeout(REQUEST_TIMEOUT);
     }
 
     /**
@@ -119,14 +210,8 @@ public class HttpConnectionManager {
      * @return A CompletableFuture that, when completed, will contain the response deserialized into the specified type.
      */
     public <T> CompletableFuture<T> get(String endpoint, Class<T> typeOfT) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return executeRequestWithRetry("GET", endpoint, null, typeOfT);
-            } catch (Exception e) {
-                logger.error("Error during GET request", e);
-                throw new RuntimeException(e);
-            }
-        }, Executors.newCachedThreadPool());
+        return executeRequestWithRetry("GET", endpoint, null, typeOfT)
+                .whenComplete((response, e) -> logFailure("GET", e));
     }
 
     /**
@@ -139,14 +224,8 @@ public class HttpConnectionManager {
      * @return A CompletableFuture that will contain the response of the request, deserialized into the specified type.
      */
     public <T> CompletableFuture<T> post(String endpoint, Object data, Class<T> typeOfT) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return executeRequestWithRetry("POST", endpoint, data, typeOfT);
-            } catch (Exception e) {
-                logger.error("Error during POST request", e);
-                throw new RuntimeException(e);
-            }
-        }, Executors.newCachedThreadPool());
+        return executeRequestWithRetry("POST", endpoint, data, typeOfT)
+                .whenComplete((response, e) -> logFailure("POST", e));
     }
 
     /**
@@ -158,14 +237,8 @@ public class HttpConnectionManager {
      * @return A CompletableFuture representing the pending completion of the request. The result is the response deserialized into the specified type.
      */
     public <T> CompletableFuture<T> put(String endpoint, Object data, Class<T> typeOfT) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return executeRequestWithRetry("PUT", endpoint, data, typeOfT);
-            } catch (Exception e) {
-                logger.error("Error during PUT request", e);
-                throw new RuntimeException(e);
-            }
-        }, Executors.newCachedThreadPool());
+        return executeRequestWithRetry("PUT", endpoint, data, typeOfT)
+                .whenComplete((response, e) -> logFailure("PUT", e));
     }
 
     /**
@@ -176,18 +249,12 @@ public class HttpConnectionManager {
      *         or false otherwise.
      */
     public CompletableFuture<Boolean> delete(String endpoint) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                URL url = new URL(baseEndpoint + endpoint);
-                HttpURLConnection connection = setupConnection(url, "DELETE");
-
-                int status = connection.getResponseCode();
-                return status == HttpURLConnection.HTTP_OK;
-            } catch (Exception e) {
-                logger.error("Error during DELETE request", e);
-                throw new RuntimeException(e);
-            }
-        }, Executors.newCachedThreadPool());
+        return authenticateAsync()
+                .thenCompose(token -> send(
+                        setupRequest(URI.create(baseEndpoint + endpoint), "DELETE", HttpRequest.BodyPublishers.noBody(), token).build(),
+                        HttpResponse.BodyHandlers.discarding()))
+                .thenApply(response -> response.statusCode() == HttpURLConnection.HTTP_OK)
+                .whenComplete((response, e) -> logFailure("DELETE", e));
     }
 
     /**
@@ -200,72 +267,83 @@ public class HttpConnectionManager {
      * @return A CompletableFuture representing the pending result of the PATCH request.
      */
     public <T> CompletableFuture<T> patch(String endpoint, Object data, Class<T> typeOfT) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return executeRequestWithRetry("PATCH", endpoint, data, typeOfT);
-            } catch (Exception e) {
-                logger.error("Error during PATCH request", e);
-                throw new RuntimeException(e);
-            }
-        }, Executors.newCachedThreadPool());
+        return executeRequestWithRetry("PATCH", endpoint, data, typeOfT)
+                .whenComplete((response, e) -> logFailure("PATCH", e));
     }
 
     /**
-     * Executes an HTTP request with a retry mechanism in case of an unauthorized response.
+     * Logs a failed request, if the request failed.
+     *
+     * @param method The HTTP method of the request.
+     * @param e The error the request failed with, or null if it succeeded.
+     */
+    private void logFailure(String method, Throwable e) {
+        if (e != null) {
+            logger.error("Error during " + method + " request", unwrap(e));
+        }
+    }
+
+    /**
+     * Executes an HTTP request with a retry mechanism in case of an unauthorized response. Only the token that was
+     * rejected is discarded, so requests rejected at the same time share one login.
      *
      * @param method The HTTP method to be used (e.g., GET, POST).
      * @param endpoint The endpoint to which the request is to be sent.
      * @param data The data to be sent with the request.
      * @param typeOfT The class type of the response expected.
-     * @return The response of the request, deserialized into the specified type.
-     * @throws Exception If an error occurs during the request or retry process.
+     * @return A CompletableFuture that will contain the response of the request, deserialized into the specified type.
      */
-    private <T> T executeRequestWithRetry(String method, String endpoint, Object data, Class<T> typeOfT) throws Exception {
+    private <T> CompletableFuture<T> executeRequestWithRetry(String method, String endpoint, Object data, Class<T> typeOfT) {
+        HttpRequest.BodyPublisher body;
         try {
-            return executeRequest(method, endpoint, data, typeOfT);
-        } catch (RuntimeException e) {
-            if (e.getMessage().contains("HTTP error 401")) { // Check for unauthorized response
-                token = null; // Clear the token
-                authenticate(); // Re-authenticate
-                return executeRequest(method, endpoint, data, typeOfT); // Retry the request
-            } else {
-                throw e;
-            }
+            body = data == null
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(data), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
         }
+
+        return authenticateAsync()
+                .thenCompose(token -> executeRequest(method, endpoint, body, typeOfT, token)
+                        .exceptionallyCompose(e -> {
+                            Throwable cause = unwrap(e);
+                            if (cause instanceof HttpStatusException
+                                    && ((HttpStatusException) cause).getStatusCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                                tokenManager.invalidate(token); // Discard the rejected token
+                                return authenticateAsync() // Re-authenticate and retry the request
+                                        .thenCompose(newToken -> executeRequest(method, endpoint, body, typeOfT, newToken));
+                            }
+                            return CompletableFuture.failedFuture(cause);
+                        }));
     }
 
     /**
-     * Executes an HTTP request to the specified endpoint using the provided method and data.
+     * Executes an HTTP request to the specified endpoint using the provided method and body.
      * Parses the response into the specified type.
      *
      * @param <T> The type of the response object.
      * @param method The HTTP method to use (e.g., "GET", "POST").
      * @param endpoint The endpoint to which the request should be sent.
-     * @param data The data to be sent in the request body (for methods like POST, PUT, PATCH).
+     * @param body The body to send with the request.
      * @param typeOfT The class type of the response object.
-     * @return The parsed response of type T.
-     * @throws Exception If there is an error during the request.
-     */
-    private <T> T executeRequest(String method, String endpoint, Object data, Class<T> typeOfT) throws Exception {
-        URL url = new URL(baseEndpoint + endpoint);
-        HttpURLConnection connection = setupConnection(url, method);
-
-        if (data != null) {
-            String jsonInput = objectMapper.writeValueAsString(data);
-            try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = jsonInput.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
-        }
-
-        int status = connection.getResponseCode();
-        if (status != HttpURLConnection.HTTP_OK) {
-            throw new RuntimeException("HTTP error " + status);
-        }
-
-        try (InputStreamReader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
-            return objectMapper.readValue(reader, typeOfT);
-        }
+     * @param token The authentication token.
+     * @return A CompletableFuture that will contain the parsed response of type T.
+     */
+    private <T> CompletableFuture<T> executeRequest(String method, String endpoint, HttpRequest.BodyPublisher body, Class<T> typeOfT, String token) {
+        return send(
+                        setupRequest(URI.create(baseEndpoint + endpoint), method, body, token).build(),
+                        HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                        throw new HttpStatusException(response.statusCode());
+                    }
+
+                    try {
+                        return objectMapper.readValue(response.body(), typeOfT);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
     }
 
     /**
@@ -277,53 +355,338 @@ public class HttpConnectionManager {
      * @throws Exception If there is an error during the download process.
      */
     public File downloadFile(String downloadURL, String outputDirectoryPath) throws Exception {
+        try {
+            return downloadFileAsync(downloadURL, outputDirectoryPath).join();
+        } catch (CompletionException e) {
+            throw unwrapException(e);
+        }
+    }
+
+    /**
+     * Asynchronously downloads a file from the specified URL and saves it to the given output directory. The request
+     * is sent without blocking; only writing the response body to disk occupies a thread of the executor.
+     *
+     * @param downloadURL The URL from which to download the file.
+     * @param outputDirectoryPath The directory path where the downloaded file will be saved.
+     * @return A CompletableFuture that will contain the downloaded file.
+     */
+    public CompletableFuture<File> downloadFileAsync(String downloadURL, String outputDirectoryPath) {
+        return downloadFileAsync(downloadURL, outputDirectoryPath, null).thenApply(FileDownload::getFile);
+    }
+
+    /**
+     * Asynchronously downloads a file unless it is unchanged since the download described by {@code previous}.
+     * The saved ETag and Last-Modified values are sent as {@code If-None-Match} and {@code If-Modified-Since}; a
+     * 304 response, or a 200 response whose ETag and length match the saved state, leaves the local file untouched.
+     * The saved state is ignored if the local file is missing or its size no longer matches. Interrupted downloads
+     * are resumed, see {@link FileDownloader}.
+     *
+     * @param downloadURL The URL from which to download the file.
+     * @param outputDirectoryPath The directory path where the downloaded file will be saved.
+     * @param previous The state of the previous download of this file, or null to download unconditionally.
+     * @return A CompletableFuture that will contain the outcome of the download.
+     */
+    public CompletableFuture<FileDownload> downloadFileAsync(String downloadURL, String outputDirectoryPath, ZoneState previous) {
+        logger.info(downloadURL);
+        return getFileDownloader().download(downloadURL, outputDirectoryPath, previous);
+    }
+
+    /**
+     * Opens the body of a file download as a stream, without writing anything to disk. The caller must close the
+     * stream.
+     *
+     * @param downloadURL The URL from which to download the file.
+     * @return A CompletableFuture that will contain the response body.
+     */
+    public CompletableFuture<InputStream> openStream(String downloadURL) {
         logger.info(downloadURL);
 
-        authenticate(); // Ensure authentication before making the request
+        return sendAuthorized(URI.create(downloadURL), "GET", request -> {}, ofInputStream())
+                .thenApply(response -> {
+                    if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                        closeQuietly(response);
+                        throw new HttpStatusException(response.statusCode());
+                    }
+                    return response.body();
+                });
+    }
+
+    /**
+     * Asynchronously asks the server for the size of a file with a HEAD request, without downloading it.
+     *
+     * @param downloadURL The URL of the file.
+     * @return A CompletableFuture with the size of the file in bytes, or -1 if the server did not say.
+     */
+    public CompletableFuture<Long> getContentLength(String downloadURL) {
+        return sendAuthorized(URI.create(downloadURL), "HEAD", request -> {}, HttpResponse.BodyHandlers.discarding())
+                .thenApply(response -> {
+                    if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                        throw new HttpStatusException(response.statusCode());
+                    }
+                    return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                });
+    }
+
+    /**
+     * Returns a handler that streams the response body, failing a read with an
+     * {@link java.net.http.HttpTimeoutException} once it has waited for the read timeout without receiving a byte.
+     *
+     * @return the body handler.
+     */
+    HttpResponse.BodyHandler<InputStream> ofInputStream() {
+        Duration timeout = readTimeout;
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodyHandlers.ofInputStream().apply(responseInfo),
+                in -> new IdleTimeoutInputStream(in, timeout));
+    }
+
+    /**
+     * Sends an authenticated request, re-authenticating and retrying once if the token was rejected. Any other
+     * status is returned to the caller to handle.
+     *
+     * @param <T> The type of the response body.
+     * @param uri The URI to send the request to.
+     * @param method The HTTP method to use.
+     * @param customizer Adds request-specific headers to the request.
+     * @param bodyHandler The handler for the response body.
+     * @return A CompletableFuture that will contain the response.
+     */
+    <T> CompletableFuture<HttpResponse<T>> sendAuthorized(URI uri, String method, Consumer<HttpRequest.Builder> customizer, HttpResponse.BodyHandler<T> bodyHandler) {
+        return sendAuthorized(uri, method, customizer, bodyHandler, true);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAuthorized(URI uri, String method, Consumer<HttpRequest.Builder> customizer, HttpResponse.BodyHandler<T> bodyHandler, boolean retryUnauthorized) {
+        return authenticateAsync() // Ensure authentication before making the request
+                .thenCompose(token -> {
+                    HttpRequest.Builder request = setupRequest(uri, method, HttpRequest.BodyPublishers.noBody(), token);
+                    customizer.accept(request);
+                    return send(request.build(), bodyHandler)
+                            .thenCompose(response -> {
+                                if (response.statusCode() == HttpURLConnection.HTTP_UNAUTHORIZED && retryUnauthorized) {
+                                    closeQuietly(response);
+                                    tokenManager.invalidate(token); // Discard the rejected token
+                                    return sendAuthorized(uri, method, customizer, bodyHandler, false);
+                                }
+                                return CompletableFuture.completedFuture(response);
+                            });
+                });
+    }
+
+    /**
+     * Sends a request through the rate limiter, retrying it as the retry policy allows. Every request of this client,
+     * including logins and downloads, is sent through here, so throttling by the server slows down all of them.
+     *
+     * @param <T> The type of the response body.
+     * @param request The request to send.
+     * @param bodyHandler The handler for the response body.
+     * @return A CompletableFuture that will contain the response of the last attempt.
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        return send(request, bodyHandler, RetryPolicy.isIdempotent(request.method()), 1);
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, boolean idempotent, int attempt) {
+        RetryPolicy retryPolicy = this.retryPolicy;
+        RateLimiter rateLimiter = this.rateLimiter;
+        boolean lastAttempt = attempt >= retryPolicy.getMaxAttempts();
+
+        return rateLimiter.acquire(executor)
+                .thenCompose(ignored -> {
+                    long startNanos = System.nanoTime();
+                    return httpClient.sendAsync(request, bodyHandler)
+                            .whenComplete((response, e) -> {
+                                long nanos = System.nanoTime() - startNanos;
+                                if (e == null) {
+                                    metrics.recordResponse(request.method(), request.uri(), response.statusCode(), nanos);
+                                } else {
+                                    metrics.recordError(request.method(), request.uri(), nanos);
+                                }
+                            });
+                })
+                .handle((response, e) -> {
+                    if (e != null) {
+                        Throwable cause = unwrap(e);
+                        if (lastAttempt || !retryPolicy.isRetryable(cause, idempotent)) {
+                            return CompletableFuture.<HttpResponse<T>>failedFuture(cause);
+                        }
+                        Duration delay = retryPolicy.getDelay(attempt, null);
+                        logger.warn("Request to " + request.uri() + " failed: " + cause + ", retrying in "
+                                + delay.toMillis() / 1000.0 + "s (attempt " + attempt + " of " + retryPolicy.getMaxAttempts() + ")");
+                        return retryAfter(delay, request, bodyHandler, idempotent, attempt);
+                    }
+
+                    int status = response.statusCode();
+                    Duration retryAfter = RetryPolicy.getRetryAfter(response);
+                    if (status == 429) {
+                        rateLimiter.onThrottled(retryAfter);
+                    } else if (status < HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                        rateLimiter.onSuccess();
+                    }
+                    if (lastAttempt || !retryPolicy.isRetryable(status, idempotent)) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+
+                    closeQuietly(response);
+                    Duration delay = retryPolicy.getDelay(attempt, retryAfter);
+                    logger.warn("Request to " + request.uri() + " failed with HTTP " + status + ", retrying in "
+                            + delay.toMillis() / 1000.0 + "s (attempt " + attempt + " of " + retryPolicy.getMaxAttempts() + ")");
+                    return retryAfter(delay, request, bodyHandler, idempotent, attempt);
+                })
+                .thenCompose(next -> next);
+    }
 
-        URL url = new URI(downloadURL).toURL();
-        HttpURLConnection connection = setupConnection(url, "GET");
+    private <T> CompletableFuture<HttpResponse<T>> retryAfter(Duration delay, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, boolean idempotent, int attempt) {
+        metrics.recordRetry(request.method(), request.uri());
+        return CompletableFuture.runAsync(() -> {
+                }, CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS, executor))
+                .thenCompose(ignored -> send(request, bodyHandler, idempotent, attempt + 1));
+    }
 
-        int fileLength = connection.getContentLength();
-        if (fileLength == -1) {
-            logger.warn("File size is unknown. Progress will not be shown.");
+    /**
+     * Closes the body of a response that will not be read.
+     *
+     * @param response The response whose body should be closed.
+     */
+    static void closeQuietly(HttpResponse<?> response) {
+        if (response.body() instanceof Closeable) {
+            try {
+                ((Closeable) response.body()).close();
+            } catch (IOException e) {
+                LogManager.getLogger().debug("Failed to close response body: " + e.getMessage());
+            }
         }
+    }
 
-        // Extract the file name from the URL
-        String fileName = new File(url.getPath()).getName() + ".gz";
+    /**
+     * Unwraps the CompletionExceptions that CompletableFuture wraps failures in.
+     *
+     * @param e The exception to unwrap.
+     * @return The underlying cause.
+     */
+    static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
 
-        // Combine the output directory and file name
-        File outputDirectory = new File(outputDirectoryPath);
-        if (!outputDirectory.exists()) {
-            outputDirectory.mkdirs(); // Create the directory if it doesn't exist
+    /**
+     * Unwraps a CompletionException thrown by {@code join()} so synchronous callers see the original exception.
+     *
+     * @param e The exception to unwrap.
+     * @return The underlying exception, or the CompletionException itself if its cause is not an Exception.
+     */
+    private static Exception unwrapException(CompletionException e) {
+        Throwable cause = unwrap(e);
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    /**
+     * Returns the executor that requests are run on.
+     *
+     * @return the shared request executor.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the FileDownloader that downloads are written to disk with, creating it on first use.
+     *
+     * @return the FileDownloader.
+     */
+    public synchronized FileDownloader getFileDownloader() {
+        if (fileDownloader == null) {
+            fileDownloader = new FileDownloader(this);
         }
-        File outputFile = new File(outputDirectory, fileName);
+        return fileDownloader;
+    }
 
-        try (InputStream inputStream = new BufferedInputStream(connection.getInputStream());
-             FileOutputStream fileOutputStream = new FileOutputStream(outputFile)) {
+    /**
+     * Returns the HttpClient that requests are sent through.
+     *
+     * @return the HttpClient.
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
 
-            byte[] buffer = new byte[8192];
-            long totalBytesRead = 0;
-            int bytesRead;
+    /**
+     * Returns the TokenManager that holds the authentication token, e.g. to persist the token across processes.
+     *
+     * @return the TokenManager.
+     */
+    public TokenManager getTokenManager() {
+        return tokenManager;
+    }
 
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                fileOutputStream.write(buffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
 
-                if (fileLength > 0) { // Show progress only if file size is known
-                    int progress = (int) (totalBytesRead * 100 / fileLength);
-                    System.out.print("\rDownloading: " + progress + "%");
-                } else {
-                    System.out.print("\rDownloading: " + totalBytesRead + " bytes");
-                }
-            }
+    /**
+     * Sets the policy that decides which failed requests are retried, and when. Defaults to
+     * {@link RetryPolicy#defaults()}; use {@link RetryPolicy#none()} to disable retries.
+     *
+     * @param retryPolicy the retry policy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Retry policy must not be null");
+        }
+        this.retryPolicy = retryPolicy;
+    }
 
-            System.out.println("\nDownload completed successfully.");
-            return outputFile;
-        } catch (Exception e) {
-            logger.error("Error during file download", e);
-            throw new RuntimeException("File download failed", e);
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter that paces all requests, including logins and downloads. Defaults to
+     * {@link RateLimiter#unlimited()}, which only pauses when the server asks for it.
+     *
+     * @param rateLimiter the rate limiter
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        if (rateLimiter == null) {
+            throw new IllegalArgumentException("Rate limiter must not be null");
+        }
+        this.rateLimiter = rateLimiter;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets how long a read of a response body may wait for data before it fails, so a download that stalls midway is
+     * cut off instead of hanging. Defaults to 10 seconds.
+     *
+     * @param readTimeout the read timeout
+     */
+    public void setReadTimeout(Duration readTimeout) {
+        if (readTimeout == null || readTimeout.isNegative() || readTimeout.isZero()) {
+            throw new IllegalArgumentException("Read timeout must be positive");
         }
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Returns the metrics of this client's requests and downloads, e.g. to register exporters.
+     *
+     * @return the metrics.
+     */
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the user this client authenticates as.
+     *
+     * @return the username.
+     */
+    public String getUsername() {
+        return username;
     }
 
     /**
@@ -332,6 +695,6 @@ public class HttpConnectionManager {
      * @return the current authentication token as a String.
      */
     public String getToken() {
-        return token;
+        return tokenManager.getCurrentToken();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,29 @@
+package com.sidpatchy.czdsclient.IO;
+
+/**
+ * Thrown when the CZDS API answers a request with an unexpected HTTP status.
+ */
+public class HttpStatusException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    /**
+     * Constructs an HttpStatusException for the given status code.
+     *
+     * @param statusCode the HTTP status code returned by the server
+     */
+    public HttpStatusException(int statusCode) {
+        super("HTTP error " + statusCode);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Returns the HTTP status code returned by the server.
+     *
+     * @return the HTTP status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
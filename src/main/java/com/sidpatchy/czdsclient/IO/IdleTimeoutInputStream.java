@@ -0,0 +1,130 @@
+package com.sidpatchy.czdsclient.IO;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails a read that waits longer than a timeout for data, like the read timeout of a socket. The HttpClient only times
+ * out until the response headers arrive; a response body that stalls afterwards would block its reader forever.
+ * <p>
+ * Only time spent blocked in a read counts, so a reader that pauses between reads, e.g. to stay under a bandwidth cap,
+ * is not cut off. A watchdog closes the underlying stream once a read has waited for the timeout, which wakes the
+ * reader, and the read fails with an {@link HttpTimeoutException}.
+ */
+final class IdleTimeoutInputStream extends FilterInputStream {
+    private final long timeoutNanos;
+    private volatile long readStartedAt;
+    private volatile boolean reading;
+    private volatile boolean timedOut;
+    private volatile boolean closed;
+
+    /**
+     * Wraps a stream.
+     *
+     * @param in the stream to read from
+     * @param timeout how long a read may wait for data
+     */
+    IdleTimeoutInputStream(InputStream in, Duration timeout) {
+        super(in);
+        this.timeoutNanos = timeout.toNanos();
+        schedule(timeoutNanos);
+    }
+
+    @Override
+    public int read() throws IOException {
+        begin();
+        try {
+            return end(super.read());
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            reading = false;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        begin();
+        try {
+            return end(super.read(b, off, len));
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            reading = false;
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        begin();
+        try {
+            return super.skip(n);
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            reading = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        super.close();
+    }
+
+    private void begin() throws IOException {
+        if (timedOut) {
+            throw timeout();
+        }
+        readStartedAt = System.nanoTime();
+        reading = true;
+    }
+
+    private int end(int result) throws IOException {
+        // The watchdog closing the stream can look like the end of the body to some readers
+        if (result < 0 && timedOut) {
+            throw timeout();
+        }
+        return result;
+    }
+
+    private IOException translate(IOException e) {
+        if (!timedOut) {
+            return e;
+        }
+        IOException timeout = timeout();
+        timeout.addSuppressed(e);
+        return timeout;
+    }
+
+    private HttpTimeoutException timeout() {
+        return new HttpTimeoutException("No data received for " + Duration.ofNanos(timeoutNanos).toMillis() / 1000.0 + "s");
+    }
+
+    private void schedule(long delayNanos) {
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(this::check);
+    }
+
+    private void check() {
+        if (closed) {
+            return;
+        }
+        long waited = reading ? System.nanoTime() - readStartedAt : 0;
+        if (waited < timeoutNanos) {
+            schedule(timeoutNanos - waited);
+            return;
+        }
+
+        timedOut = true;
+        try {
+            in.close();
+        } catch (IOException e) {
+            // The reader is woken up either way
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically logs the progress of all running downloads. Transfers only bump a counter as bytes arrive; formatting
+ * and logging happen on a background thread at a fixed interval, independent of how many chunks are written.
+ */
+class ProgressReporter {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "czds-download-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Logger logger = LogManager.getLogger(ProgressReporter.class);
+    // Keyed by instance: downloads of files with the same name into different directories are separate transfers
+    private final Set<Transfer> transfers = ConcurrentHashMap.newKeySet();
+    private Duration interval = Duration.ofSeconds(5);
+    private ScheduledFuture<?> task;
+
+    /**
+     * Registers a transfer so its progress is reported until it is finished.
+     *
+     * @param name The name the transfer is reported under.
+     * @param offset The number of bytes already on disk before the transfer started.
+     * @param length The total length of the file, or -1 if unknown.
+     * @return The transfer, to be updated as bytes arrive.
+     */
+    Transfer start(String name, long offset, long length) {
+        Transfer transfer = new Transfer(name, offset, length);
+        transfers.add(transfer);
+        schedule();
+        return transfer;
+    }
+
+    private synchronized void schedule() {
+        if (task == null && !interval.isZero()) {
+            task = SCHEDULER.scheduleAtFixedRate(this::report, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void cancelIfIdle() {
+        if (task != null && transfers.isEmpty()) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private void report() {
+        for (Transfer transfer : transfers) {
+            logger.info(transfer.describe());
+        }
+        cancelIfIdle();
+    }
+
+    /**
+     * Returns the number of transfers being reported.
+     *
+     * @return the number of running transfers.
+     */
+    int getActiveTransfers() {
+        return transfers.size();
+    }
+
+    /**
+     * Checks whether the periodic report is scheduled; it only runs while there are transfers.
+     *
+     * @return true if the report is scheduled.
+     */
+    synchronized boolean isScheduled() {
+        return task != null;
+    }
+
+    Duration getInterval() {
+        return interval;
+    }
+
+    synchronized void setInterval(Duration interval) {
+        this.interval = interval;
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        if (!transfers.isEmpty()) {
+            schedule();
+        }
+    }
+
+    /**
+     * A single running download.
+     */
+    class Transfer {
+        private final String name;
+        private final long offset;
+        private final long length;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong transferred = new AtomicLong();
+
+        private Transfer(String name, long offset, long length) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Records bytes written to disk. Safe to call from several threads, e.g. the segments of one download.
+         *
+         * @param bytes The number of bytes written.
+         */
+        void add(long bytes) {
+            transferred.addAndGet(bytes);
+        }
+
+        /**
+         * Returns the number of bytes transferred in this transfer, not counting the bytes that were already on disk.
+         *
+         * @return the number of bytes transferred.
+         */
+        long getTransferred() {
+            return transferred.get();
+        }
+
+        /**
+         * Stops reporting this transfer.
+         */
+        void finish() {
+            transfers.remove(this);
+            cancelIfIdle();
+        }
+
+        /**
+         * Describes the average rate of this transfer so far, e.g. "85.3 MiB/s".
+         *
+         * @return the formatted rate.
+         */
+        String describeRate() {
+            double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+            return formatBytes((long) (transferred.get() / seconds)) + "/s";
+        }
+
+        String describe() {
+            long done = offset + transferred.get();
+            String rate = describeRate();
+            if (length > 0) {
+                return "Downloading " + name + ": " + (done * 100 / length) + "% (" + formatBytes(done) + " of "
+                        + formatBytes(length) + ", " + rate + ")";
+            }
+            return "Downloading " + name + ": " + formatBytes(done) + " (" + rate + ")";
+        }
+    }
+
+    /**
+     * Formats a byte count for humans, e.g. "1.5 GiB".
+     *
+     * @param bytes The byte count.
+     * @return The formatted byte count.
+     */
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+        return String.format(Locale.ROOT, "%.1f %siB", bytes / (double) (1L << (unit * 10)), "KMGTPE".charAt(unit - 1));
+    }
+}
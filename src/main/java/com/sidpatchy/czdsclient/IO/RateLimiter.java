@@ -0,0 +1,153 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An adaptive token bucket that paces the requests of a client.
+ * <p>
+ * Up to {@code burst} requests may be sent at once; after that, requests are released at the configured rate. Callers
+ * are never blocked: {@link #acquire(Executor)} returns a future that completes when the request may be sent.
+ * <p>
+ * The limiter adapts to the server: when a request is throttled (HTTP 429), the rate is halved and all requests are
+ * held back for the time the server asked for in its {@code Retry-After} header; every successful request then
+ * recovers a small part of the configured rate. Even an unlimited limiter honours {@code Retry-After}, so a throttled
+ * client pauses as a whole instead of every request hammering the server on its own schedule.
+ * <p>
+ * The same bucket can pace bytes rather than requests, see {@link #acquire(long)}.
+ */
+public class RateLimiter {
+    private static final double MIN_RATE_FACTOR = 1.0 / 16;
+    private static final double RECOVERY_FACTOR = 1.0 / 100;
+
+    private final Logger logger = LogManager.getLogger(RateLimiter.class);
+    private final double permitsPerSecond;
+    private final int burst;
+    private double currentRate;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+    private long pausedUntilNanos = lastRefillNanos;
+
+    /**
+     * Constructs a RateLimiter.
+     *
+     * @param permitsPerSecond the sustained number of requests per second, or 0 for no limit
+     * @param burst the number of requests that may be sent at once before the rate applies
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond < 0) {
+            throw new IllegalArgumentException("Rate must not be negative");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.currentRate = permitsPerSecond;
+        this.tokens = burst;
+    }
+
+    /**
+     * Creates a RateLimiter that does not limit the rate, but still pauses when the server asks it to.
+     *
+     * @return the limiter.
+     */
+    public static RateLimiter unlimited() {
+        return new RateLimiter(0, 1);
+    }
+
+    /**
+     * Reserves a permit.
+     *
+     * @param executor the executor to complete delayed permits on
+     * @return a CompletableFuture that completes when the request may be sent.
+     */
+    public CompletableFuture<Void> acquire(Executor executor) {
+        long delayNanos = reserve(1);
+        if (delayNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor));
+    }
+
+    /**
+     * Reserves several permits at once, e.g. one per byte to cap the bandwidth of downloads, blocking the calling
+     * thread until they are available. Meant for threads that are blocked on I/O anyway; a request larger than the
+     * burst is granted, but makes later callers wait until the bucket has paid it off.
+     *
+     * @param permits the number of permits
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void acquire(long permits) throws InterruptedException {
+        long delayNanos = reserve(permits);
+        if (delayNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        }
+    }
+
+    /**
+     * Takes tokens, going into debt if there are not enough, and returns how long the caller must wait for them.
+     */
+    private synchronized long reserve(long permits) {
+        long now = System.nanoTime();
+        long delay = Math.max(0, pausedUntilNanos - now);
+        if (permitsPerSecond == 0) {
+            return delay;
+        }
+
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * currentRate);
+        lastRefillNanos = now;
+        tokens -= permits;
+        if (tokens < 0) {
+            delay = Math.max(delay, (long) (-tokens / currentRate * 1e9));
+        }
+        return delay;
+    }
+
+    /**
+     * Slows down after the server throttled a request.
+     *
+     * @param retryAfter how long the server asked to wait, or null if it did not say
+     */
+    public synchronized void onThrottled(Duration retryAfter) {
+        if (retryAfter != null) {
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + retryAfter.toNanos());
+        }
+        if (permitsPerSecond > 0) {
+            currentRate = Math.max(permitsPerSecond * MIN_RATE_FACTOR, currentRate / 2);
+            logger.warn("Throttled by the server, slowing down to " + String.format("%.2f", currentRate) + " requests per second");
+        }
+    }
+
+    /**
+     * Recovers part of the configured rate after a request succeeded.
+     */
+    public synchronized void onSuccess() {
+        if (currentRate < permitsPerSecond) {
+            currentRate = Math.min(permitsPerSecond, currentRate + permitsPerSecond * RECOVERY_FACTOR);
+        }
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Returns the rate currently applied, which is lower than the configured rate after the server throttled requests.
+     *
+     * @return the current rate in requests per second, or 0 if unlimited.
+     */
+    public synchronized double getCurrentRate() {
+        return currentRate;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+}
@@ -0,0 +1,158 @@
+package com.sidpatchy.czdsclient.IO;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed requests are retried and how long to wait before each retry.
+ * <p>
+ * Throttled requests (HTTP 429) are always retried, as the server did not process them. Server errors (HTTP 500, 502,
+ * 503 and 504) and I/O errors such as reset connections and timeouts are retried for idempotent requests only, so a
+ * POST that may have taken effect is never sent twice; failures to connect are always retried, as nothing was sent
+ * yet. Delays grow exponentially with "full jitter": each delay is a random duration between zero and the exponential
+ * bound, which keeps many clients, or many requests of one client, from retrying in lockstep. A {@code Retry-After}
+ * header sent by the server is always respected as a minimum.
+ */
+public class RetryPolicy {
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(429, 500, 502, 503, 504);
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE", "OPTIONS");
+
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+
+    /**
+     * Constructs a RetryPolicy.
+     *
+     * @param maxAttempts the maximum number of attempts per request, including the first; 1 disables retries
+     * @param baseDelay the upper bound of the delay before the first retry, doubled for every further retry
+     * @param maxDelay the largest upper bound of a delay, not counting {@code Retry-After}
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Creates the default policy: up to 5 attempts, starting at up to 1 second and backing off to up to 1 minute.
+     *
+     * @return the policy.
+     */
+    public static RetryPolicy defaults() {
+        return new RetryPolicy(5, Duration.ofSeconds(1), Duration.ofMinutes(1));
+    }
+
+    /**
+     * Creates a policy that never retries.
+     *
+     * @return the policy.
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+    }
+
+    /**
+     * Checks whether an HTTP method is idempotent, i.e. whether sending a request twice has the same effect as once.
+     *
+     * @param method the HTTP method
+     * @return true if the method is idempotent.
+     */
+    public static boolean isIdempotent(String method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+    /**
+     * Checks whether a response should be retried.
+     *
+     * @param statusCode the status code of the response
+     * @param idempotent whether the request may safely be sent more than once
+     * @return true if the request may be sent again.
+     */
+    public boolean isRetryable(int statusCode, boolean idempotent) {
+        if (statusCode == 429) {
+            return true;
+        }
+        return idempotent && RETRYABLE_STATUS_CODES.contains(statusCode);
+    }
+
+    /**
+     * Checks whether a request that failed without a response should be retried.
+     *
+     * @param error the error the request failed with
+     * @param idempotent whether the request may safely be sent more than once
+     * @return true if the request may be sent again.
+     */
+    public boolean isRetryable(Throwable error, boolean idempotent) {
+        if (error instanceof ConnectException || error instanceof HttpConnectTimeoutException) {
+            return true;
+        }
+        return idempotent && error instanceof IOException;
+    }
+
+    /**
+     * Computes the delay before a retry.
+     *
+     * @param attempt the number of the attempt that failed, starting at 1
+     * @param retryAfter the delay requested by the server, or null
+     * @return the delay.
+     */
+    public Duration getDelay(int attempt, Duration retryAfter) {
+        long boundMillis = baseDelay.toMillis() << Math.min(attempt - 1, 30);
+        if (boundMillis < 0 || boundMillis > maxDelay.toMillis()) {
+            boundMillis = maxDelay.toMillis();
+        }
+        Duration delay = Duration.ofMillis(boundMillis > 0 ? ThreadLocalRandom.current().nextLong(boundMillis + 1) : 0);
+        return retryAfter != null && retryAfter.compareTo(delay) > 0 ? retryAfter : delay;
+    }
+
+    /**
+     * Reads the {@code Retry-After} header of a response, given either in seconds or as an HTTP date.
+     *
+     * @param response the response
+     * @return the requested delay, or null if the header is missing or malformed.
+     */
+    public static Duration getRetryAfter(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try an HTTP date
+        }
+        try {
+            Instant until = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(Instant.now(), until);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getBaseDelay() {
+        return baseDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+}
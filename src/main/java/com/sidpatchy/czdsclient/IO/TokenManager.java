@@ -0,0 +1,356 @@
+package com.sidpatchy.czdsclient.IO;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.StoredToken;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Holds the CZDS access token and manages its lifecycle.
+ * <p>
+ * The expiry is read from the token itself (a JWT with an {@code exp} claim), so the token is refreshed shortly before
+ * it expires rather than after a request has been rejected. Refreshes are single-flight: however many requests need a
+ * token at once, or are rejected with the same token at once, only one login is sent and every caller waits for its
+ * result. While the current token is still valid but due for refresh, callers keep using it and the refresh runs in
+ * the background. A token is never refreshed sooner than {@link #getMinRefreshInterval()} after it was issued, so a
+ * token that appears to expire right away, e.g. because the local clock is off, does not cause a login per request.
+ * <p>
+ * ICANN rate-limits the authentication endpoint, so the token can optionally be persisted to a file, readable only by
+ * its owner, and reused by later processes, e.g. consecutive cron jobs, for as long as it is valid.
+ */
+public class TokenManager {
+    /**
+     * The lifetime assumed for tokens whose expiry cannot be read. CZDS tokens are valid for 24 hours.
+     */
+    private static final Duration DEFAULT_LIFETIME = Duration.ofHours(24);
+
+    private final Logger logger = LogManager.getLogger(TokenManager.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String username;
+    private final Supplier<CompletableFuture<String>> login;
+    private final Clock clock;
+    private final AtomicReference<State> state = new AtomicReference<>(State.EMPTY);
+    private volatile Duration refreshAhead = Duration.ofMinutes(10);
+    private volatile Duration minRefreshInterval = Duration.ofMinutes(1);
+    private volatile Path storeFile;
+
+    /**
+     * Constructs a TokenManager.
+     *
+     * @param username the user the tokens are issued to, used to keep persisted tokens of different users apart
+     * @param login sends a login request and completes with the new token
+     */
+    public TokenManager(String username, Supplier<CompletableFuture<String>> login) {
+        this(username, login, Clock.systemUTC());
+    }
+
+    TokenManager(String username, Supplier<CompletableFuture<String>> login, Clock clock) {
+        this.username = username;
+        this.login = login;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns a valid token, logging in first if there is none or it has expired. If the token expires soon, a
+     * refresh is started in the background and the current token is returned.
+     * <p>
+     * This method does not lock: the token, its expiry and the login in flight form one immutable state that is
+     * replaced by compare-and-set, and the caller that wins the race to start a login is the only one to send it.
+     *
+     * @return A CompletableFuture with the token.
+     */
+    public CompletableFuture<String> getToken() {
+        while (true) {
+            State current = state.get();
+            Instant now = clock.instant();
+
+            if (current.isValid(now)) {
+                if (current.refresh == null && isDueForRefresh(current, now)) {
+                    State refreshing = current.withRefresh(new CompletableFuture<>());
+                    if (state.compareAndSet(current, refreshing)) {
+                        logger.debug("Token expires at " + current.expiresAt + ", refreshing ahead of time");
+                        startLogin(refreshing.refresh);
+                    }
+                }
+                return CompletableFuture.completedFuture(current.token);
+            }
+
+            if (current.refresh != null) {
+                return current.refresh.copy();
+            }
+
+            State refreshing = current.withRefresh(new CompletableFuture<>());
+            if (state.compareAndSet(current, refreshing)) {
+                startLogin(refreshing.refresh);
+                return refreshing.refresh.copy();
+            }
+            // Lost the race against another caller; look again
+        }
+    }
+
+    /**
+     * Checks whether a valid token should be refreshed in the background: once it is within the refresh margin of its
+     * expiry, but not before the minimum refresh interval has passed since it was issued.
+     */
+    private boolean isDueForRefresh(State current, Instant now) {
+        return !now.isBefore(current.expiresAt.minus(refreshAhead))
+                && !now.isBefore(current.issuedAt.plus(minRefreshInterval));
+    }
+
+    /**
+     * Discards the current token unconditionally, so the next caller logs in again.
+     */
+    public void invalidate() {
+        state.updateAndGet(current -> current.withToken(null, Instant.MIN));
+    }
+
+    /**
+     * Discards a token the API rejected, unless it was already replaced. When many requests are rejected at once,
+     * only the first invalidation takes effect, so they all wait for one new login instead of each starting their own.
+     *
+     * @param rejectedToken the token the API rejected
+     */
+    public void invalidate(String rejectedToken) {
+        state.updateAndGet(current -> rejectedToken.equals(current.token) ? current.withToken(null, Instant.MIN) : current);
+    }
+
+    /**
+     * Sends the login for a refresh that this thread installed, and publishes its outcome.
+     */
+    private void startLogin(CompletableFuture<String> refresh) {
+        CompletableFuture<String> login;
+        try {
+            login = this.login.get();
+        } catch (RuntimeException e) {
+            login = CompletableFuture.failedFuture(e);
+        }
+
+        login.whenComplete((newToken, e) -> {
+            if (e != null) {
+                failLogin(refresh, e);
+                return;
+            }
+            // Anything thrown here would be swallowed by whenComplete and leave every caller waiting on the refresh
+            try {
+                if (newToken == null || newToken.isBlank()) {
+                    throw new IllegalStateException("The login response did not contain a token");
+                }
+                Instant issuedAt = clock.instant();
+                Instant expiry = decodeExpiry(newToken, issuedAt);
+                Instant minExpiry = issuedAt.plus(minRefreshInterval);
+                if (expiry.isBefore(minExpiry)) {
+                    logger.warn("The new token expires at " + expiry + ", less than " + minRefreshInterval
+                            + " after it was issued; check the system clock. Using it until " + minExpiry);
+                    expiry = minExpiry;
+                }
+                Instant expiresAt = expiry;
+                state.updateAndGet(current -> current.refresh == refresh
+                        ? new State(newToken, expiresAt, issuedAt, null)
+                        : current);
+                logger.debug("Logged in, token expires at " + expiresAt);
+                storeToken(newToken, expiresAt);
+                refresh.complete(newToken);
+            } catch (RuntimeException failure) {
+                failLogin(refresh, failure);
+            }
+        });
+    }
+
+    /**
+     * Publishes a failed login, so the next caller starts a new one.
+     */
+    private void failLogin(CompletableFuture<String> refresh, Throwable e) {
+        // Keep a token that is still valid, e.g. when a refresh ahead of expiry failed
+        state.updateAndGet(current -> current.refresh == refresh ? current.withRefresh(null) : current);
+        logger.warn("Unable to log in: " + HttpConnectionManager.unwrap(e).getMessage());
+        refresh.completeExceptionally(e);
+    }
+
+    /**
+     * Reads the expiry of a JWT from its {@code exp} claim, without verifying the signature, which is the API's job.
+     *
+     * @param token the token
+     * @param issuedAt when the token was received, for tokens without a readable expiry
+     * @return when the token expires.
+     */
+    Instant decodeExpiry(String token, Instant issuedAt) {
+        String[] parts = token.split("\\.");
+        if (parts.length >= 2) {
+            try {
+                JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+                JsonNode exp = claims.get("exp");
+                if (exp != null && exp.canConvertToLong()) {
+                    return Instant.ofEpochSecond(exp.asLong());
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                logger.debug("Unable to read the expiry of the token: " + e.getMessage());
+            }
+        }
+        return issuedAt.plus(DEFAULT_LIFETIME);
+    }
+
+    /**
+     * Adopts the token stored in the store file, if it belongs to this user, is still valid and no token is held yet.
+     */
+    private void loadStoredToken(Path storeFile) {
+        if (!Files.exists(storeFile)) {
+            return;
+        }
+
+        try {
+            StoredToken stored = objectMapper.readValue(storeFile.toFile(), StoredToken.class);
+            Instant storedExpiry = Instant.ofEpochMilli(stored.getExpiresAt());
+            if (username != null && username.equals(stored.getUsername()) && stored.getAccessToken() != null
+                    && clock.instant().isBefore(storedExpiry)) {
+                State adopted = state.updateAndGet(current -> current.token == null
+                        ? current.withToken(stored.getAccessToken(), storedExpiry)
+                        : current);
+                if (stored.getAccessToken().equals(adopted.token)) {
+                    logger.debug("Reusing the token stored in " + storeFile + ", valid until " + storedExpiry);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable token file " + storeFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the token to the store file, readable and writable by its owner only where the file system supports POSIX
+     * permissions. The file is replaced atomically, so concurrent processes never read a partial token.
+     */
+    private void storeToken(String token, Instant expiresAt) {
+        Path storeFile = this.storeFile;
+        if (storeFile == null) {
+            return;
+        }
+
+        Path tempFile = null;
+        try {
+            Path directory = storeFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            // Temporary files are created readable by their owner only on POSIX file systems
+            tempFile = Files.createTempFile(directory, storeFile.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), new StoredToken(username, token, expiresAt.toEpochMilli()));
+            Files.move(tempFile, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to store the token in " + storeFile + ": " + e.getMessage());
+            if (tempFile != null) {
+                tempFile.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the current token without refreshing it. Mostly present for debug purposes.
+     *
+     * @return the current token, or null if there is none.
+     */
+    public String getCurrentToken() {
+        return state.get().token;
+    }
+
+    /**
+     * Returns when the current token expires.
+     *
+     * @return the expiry, or {@link Instant#MIN} if there is no token.
+     */
+    public Instant getExpiresAt() {
+        return state.get().expiresAt;
+    }
+
+    public Duration getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Sets how long before its expiry the token is refreshed. Defaults to 10 minutes.
+     *
+     * @param refreshAhead the refresh margin
+     */
+    public void setRefreshAhead(Duration refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public Duration getMinRefreshInterval() {
+        return minRefreshInterval;
+    }
+
+    /**
+     * Sets how long a new token is used before it may be replaced. Tokens that claim to expire sooner, or to be due for
+     * refresh right away, are still used for this long instead of logging in again on every request. Defaults to
+     * 1 minute.
+     *
+     * @param minRefreshInterval the minimum time between logins for refreshing the token
+     */
+    public void setMinRefreshInterval(Duration minRefreshInterval) {
+        if (minRefreshInterval == null || minRefreshInterval.isNegative()) {
+            throw new IllegalArgumentException("Minimum refresh interval must not be negative");
+        }
+        this.minRefreshInterval = minRefreshInterval;
+    }
+
+    public Path getStoreFile() {
+        return storeFile;
+    }
+
+    /**
+     * Sets a file to persist the token in, so other processes of the same user can reuse it, and adopts the token
+     * already stored there if it is still valid. Disabled by default.
+     *
+     * @param storeFile the token file, or null to keep the token in memory only
+     */
+    public void setStoreFile(Path storeFile) {
+        this.storeFile = storeFile;
+        if (storeFile != null) {
+            loadStoredToken(storeFile);
+        }
+    }
+
+    /**
+     * The token, its expiry, when this process received it and the login in flight, if any. Replaced as a whole, never
+     * modified.
+     */
+    private static final class State {
+        private static final State EMPTY = new State(null, Instant.MIN, Instant.MIN, null);
+
+        private final String token;
+        private final Instant expiresAt;
+        private final Instant issuedAt;
+        private final CompletableFuture<String> refresh;
+
+        private State(String token, Instant expiresAt, Instant issuedAt, CompletableFuture<String> refresh) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+            this.issuedAt = issuedAt;
+            this.refresh = refresh;
+        }
+
+        private boolean isValid(Instant now) {
+            return token != null && now.isBefore(expiresAt);
+        }
+
+        /**
+         * Replaces the token with one that was not issued to this process, e.g. a stored one.
+         */
+        private State withToken(String token, Instant expiresAt) {
+            return new State(token, expiresAt, Instant.MIN, refresh);
+        }
+
+        private State withRefresh(CompletableFuture<String> refresh) {
+            return new State(token, expiresAt, issuedAt, refresh);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.sidpatchy.czdsclient.IO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.StoredZoneLinks;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Caches the zone download links returned by {@code /czds/downloads/links}, indexed by TLD.
+ * <p>
+ * The links only change when the user is granted or loses access to a zone, so they are fetched once and reused until
+ * the cache expires, however many zones are looked up. Concurrent lookups on an empty or expired cache share a single
+ * request. The links can optionally be kept in a file, so consecutive runs skip the request as well; as a stored copy
+ * may predate a newly approved zone, a lookup that misses in a stored copy fetches the links once more before giving
+ * up.
+ */
+public class ZoneLinkCache {
+    private final Logger logger = LogManager.getLogger(ZoneLinkCache.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String username;
+    private final Supplier<CompletableFuture<List<String>>> fetch;
+    private final Clock clock;
+    private Links links;
+    private CompletableFuture<Links> refresh;
+    private volatile Duration ttl = Duration.ofHours(1);
+    private volatile Path cacheFile;
+
+    /**
+     * Constructs a ZoneLinkCache.
+     *
+     * @param username the user the links belong to, used to keep cached links of different users apart
+     * @param fetch requests the links from the API
+     */
+    public ZoneLinkCache(String username, Supplier<CompletableFuture<List<String>>> fetch) {
+        this(username, fetch, Clock.systemUTC());
+    }
+
+    ZoneLinkCache(String username, Supplier<CompletableFuture<List<String>>> fetch, Clock clock) {
+        this.username = username;
+        this.fetch = fetch;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the download links of all approved zones, fetching them if the cache is empty or expired.
+     *
+     * @return A CompletableFuture with an unmodifiable map from TLD to download URL, in the order the API listed them.
+     */
+    public CompletableFuture<Map<String, String>> getLinks() {
+        return get().thenApply(links -> links.urlsByTld);
+    }
+
+    /**
+     * Looks up the download link of a single zone.
+     *
+     * @param tld the TLD of the zone, e.g. "com"; case and a leading dot are ignored
+     * @return A CompletableFuture with the download URL, or null if the zone is not approved.
+     */
+    public CompletableFuture<String> getUrl(String tld) {
+        String key = normalize(tld);
+        return get().thenCompose(links -> {
+            String url = links.urlsByTld.get(key);
+            if (url != null || !links.stored) {
+                return CompletableFuture.completedFuture(url);
+            }
+            logger.debug("The '." + key + "' zone is missing from the stored links, fetching them again");
+            return refresh(links).thenApply(fresh -> fresh.urlsByTld.get(key));
+        });
+    }
+
+    /**
+     * Discards the cached links, so the next lookup fetches them again.
+     */
+    public synchronized void invalidate() {
+        links = null;
+    }
+
+    private synchronized CompletableFuture<Links> get() {
+        if (links != null && clock.instant().isBefore(links.fetchedAt.plus(ttl))) {
+            return CompletableFuture.completedFuture(links);
+        }
+        return refresh(links);
+    }
+
+    /**
+     * Fetches the links, unless the given copy was already replaced or a fetch is already in flight.
+     */
+    private synchronized CompletableFuture<Links> refresh(Links seen) {
+        if (links != null && links != seen) {
+            return CompletableFuture.completedFuture(links);
+        }
+        if (refresh != null) {
+            return refresh;
+        }
+
+        CompletableFuture<Links> fetching;
+        try {
+            fetching = fetch.get().thenApply(urls -> new Links(urls, clock.instant(), false));
+        } catch (RuntimeException e) {
+            fetching = CompletableFuture.failedFuture(e);
+        }
+        refresh = fetching;
+
+        CompletableFuture<Links> current = fetching;
+        fetching.whenComplete((fetched, e) -> {
+            synchronized (this) {
+                if (refresh == current) {
+                    refresh = null;
+                }
+                if (e == null) {
+                    links = fetched;
+                }
+            }
+            if (e == null) {
+                logger.debug("Fetched the links of " + fetched.urlsByTld.size() + " approved zones");
+                store(fetched);
+            }
+        });
+        return fetching;
+    }
+
+    /**
+     * Adopts the links stored in the cache file, if they belong to this user and no links are held yet.
+     */
+    private void load(Path cacheFile) {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+
+        try {
+            StoredZoneLinks stored = objectMapper.readValue(cacheFile.toFile(), StoredZoneLinks.class);
+            if (username != null && username.equals(stored.getUsername()) && stored.getLinks() != null) {
+                synchronized (this) {
+                    if (links == null) {
+                        links = new Links(stored.getLinks(), Instant.ofEpochMilli(stored.getFetchedAt()), true);
+                        logger.debug("Loaded the links of " + links.urlsByTld.size() + " zones from " + cacheFile);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable zone link cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the links to the cache file. The file is replaced atomically, so concurrent processes never read a
+     * partial file.
+     */
+    private void store(Links links) {
+        Path cacheFile = this.cacheFile;
+        if (cacheFile == null) {
+            return;
+        }
+
+        Path tempFile = null;
+        try {
+            Path directory = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), new StoredZoneLinks(username, links.fetchedAt.toEpochMilli(), List.copyOf(links.urlsByTld.values())));
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to store the zone links in " + cacheFile + ": " + e.getMessage());
+            if (tempFile != null) {
+                tempFile.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Extracts the zone name from a zone download URL, e.g. "com" from ".../czds/downloads/com.zone".
+     *
+     * @param url The zone file URL.
+     * @return The zone name.
+     */
+    public static String getZoneName(String url) {
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        return name.endsWith(".zone") ? name.substring(0, name.length() - ".zone".length()) : name;
+    }
+
+    private static String normalize(String tld) {
+        String key = tld.toLowerCase(Locale.ROOT);
+        return key.startsWith(".") ? key.substring(1) : key;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Sets how long fetched links are reused before they are fetched again. Defaults to 1 hour.
+     *
+     * @param ttl the time to live of the cached links
+     */
+    public void setTtl(Duration ttl) {
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("TTL must not be negative");
+        }
+        this.ttl = ttl;
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Sets a file to keep the links in, so later runs reuse them until they expire, and loads the links already stored
+     * there. Disabled by default.
+     *
+     * @param cacheFile the cache file, or null to keep the links in memory only
+     */
+    public void setCacheFile(Path cacheFile) {
+        this.cacheFile = cacheFile;
+        if (cacheFile != null) {
+            load(cacheFile);
+        }
+    }
+
+    /**
+     * A fetched set of links. Replaced as a whole, never modified.
+     */
+    private static final class Links {
+        private final Map<String, String> urlsByTld;
+        private final Instant fetchedAt;
+        private final boolean stored;
+
+        private Links(List<String> urls, Instant fetchedAt, boolean stored) {
+            Map<String, String> urlsByTld = new LinkedHashMap<>();
+            for (String url : urls) {
+                urlsByTld.put(normalize(getZoneName(url)), url);
+            }
+            this.urlsByTld = Collections.unmodifiableMap(urlsByTld);
+            this.fetchedAt = fetchedAt;
+            this.stored = stored;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.sidpatchy.czdsclient.IO;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.ZoneState;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the ETag, Last-Modified, size and hash of every downloaded zone in a small JSON file next to the zones, so
+ * later runs can ask the server for only the zones that changed.
+ */
+public class ZoneStateStore {
+    public static final String FILE_NAME = ".czds-state.json";
+
+    private final Logger logger = LogManager.getLogger(ZoneStateStore.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path path;
+    private final Map<String, ZoneState> states = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the state store kept in the given download directory, loading any state saved by a previous run.
+     *
+     * @param downloadPath the directory zone files are downloaded to
+     */
+    public ZoneStateStore(String downloadPath) {
+        this.path = new File(downloadPath, FILE_NAME).toPath();
+
+        if (Files.exists(path)) {
+            try {
+                states.putAll(objectMapper.readValue(path.toFile(), new TypeReference<Map<String, ZoneState>>() {}));
+            } catch (IOException e) {
+                logger.warn("Ignoring unreadable zone state file " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the state saved for a zone.
+     *
+     * @param tld the TLD of the zone
+     * @return the saved state, or null if the zone has not been downloaded before.
+     */
+    public ZoneState get(String tld) {
+        return states.get(tld);
+    }
+
+    /**
+     * Records the state of a zone and writes the store to disk.
+     *
+     * @param tld the TLD of the zone
+     * @param state the state of the freshly downloaded zone
+     */
+    public void put(String tld, ZoneState state) {
+        states.put(tld, state);
+        save();
+    }
+
+    /**
+     * Writes the store to disk. The file is written to a temporary file first and then moved into place, so a crash
+     * mid-write never leaves a corrupt store behind.
+     */
+    public synchronized void save() {
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), new TreeMap<>(states));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Failed to save zone state to " + path, e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.sidpatchy.czdsclient.Index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only set of domain names, memory-mapped from a file written by {@link DomainIndexBuilder}.
+ * <p>
+ * Opening an index only maps the file, so it is instant regardless of its size and uses next to no heap; lookups read
+ * the few pages they need through the operating system's page cache, which is shared by every process using the same
+ * index. A lookup hashes the name, checks the optional Bloom filter, binary-searches the sorted hashes and finally
+ * compares the stored name, so there are no false positives.
+ * <p>
+ * File layout, all numbers big-endian:
+ * <pre>
+ * header   magic "CZDSIDX1", version, Bloom hash count, domain count, Bloom filter length in longs, names length
+ * bloom    the Bloom filter bits, if any
+ * hashes   the 64-bit hashes of all domains, sorted
+ * offsets  for every hash, the offset of its name in the names section
+ * names    the names, each prefixed with its length in one byte
+ * </pre>
+ * Instances are safe for concurrent use.
+ */
+public class DomainIndex implements AutoCloseable {
+    static final long MAGIC = 0x435A445349445831L; // "CZDSIDX1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    private final FileChannel channel;
+    private final long count;
+    private final int bloomHashes;
+    private final long bloomBits;
+    private final MappedRegion bloom;
+    private final MappedRegion hashes;
+    private final MappedRegion offsets;
+    private final MappedRegion names;
+
+    private DomainIndex(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) != -1) {
+            // Read the whole header
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC) {
+            throw new IOException("Not a domain index");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported domain index version " + version);
+        }
+        this.bloomHashes = header.getInt();
+        this.count = header.getLong();
+        long bloomWords = header.getLong();
+        long namesLength = header.getLong();
+        this.bloomBits = bloomWords * Long.SIZE;
+
+        long position = HEADER_SIZE;
+        this.bloom = bloomWords > 0 ? new MappedRegion(channel, position, bloomWords * Long.BYTES) : null;
+        position += bloomWords * Long.BYTES;
+        this.hashes = new MappedRegion(channel, position, count * Long.BYTES);
+        position += count * Long.BYTES;
+        this.offsets = new MappedRegion(channel, position, count * Long.BYTES);
+        position += count * Long.BYTES;
+        this.names = new MappedRegion(channel, position, namesLength);
+
+        if (position + namesLength != channel.size()) {
+            throw new IOException("Domain index is truncated or corrupt");
+        }
+    }
+
+    /**
+     * Opens an index file.
+     *
+     * @param file the index file
+     * @return the index.
+     * @throws IOException If the file cannot be read or is not a domain index.
+     */
+    public static DomainIndex open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new DomainIndex(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether the index contains a domain. Case and a trailing dot are ignored.
+     *
+     * @param domain the domain, e.g. "example.com"
+     * @return true if the domain is in the index.
+     */
+    public boolean contains(String domain) {
+        int length = domain.length();
+        if (length > 1 && domain.charAt(length - 1) == '.') {
+            length--;
+        }
+        if (length > 255) {
+            return false;
+        }
+
+        byte[] name = new byte[length];
+        for (int i = 0; i < length; i++) {
+            char c = domain.charAt(i);
+            if (c > 0x7f) {
+                return false; // Zone files hold ASCII (punycode) names only
+            }
+            name[i] = (byte) Character.toLowerCase(c);
+        }
+        return contains(name, 0, length);
+    }
+
+    /**
+     * Checks whether the index contains a domain given as lower-case ASCII bytes without a trailing dot, as passed to
+     * a {@code DomainHandler}, without allocating.
+     *
+     * @param buffer the buffer holding the name
+     * @param offset the offset of the name
+     * @param length the length of the name
+     * @return true if the domain is in the index.
+     */
+    public boolean contains(byte[] buffer, int offset, int length) {
+        long hash = hash(buffer, offset, length);
+        if (bloom != null && !mightContain(hash)) {
+            return false;
+        }
+
+        // Find the first entry with this hash, then compare the names of all entries sharing it
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (hashes.getLong(middle * Long.BYTES) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (long i = low; i < count && hashes.getLong(i * Long.BYTES) == hash; i++) {
+            if (nameEquals(offsets.getLong(i * Long.BYTES), buffer, offset, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mightContain(long hash) {
+        for (int i = 0; i < bloomHashes; i++) {
+            long bit = bloomBit(hash, i, bloomBits);
+            if ((bloom.getLong((bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nameEquals(long position, byte[] buffer, int offset, int length) {
+        if ((names.get(position) & 0xff) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (names.get(position + 1 + i) != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of domains in the index.
+     *
+     * @return the domain count.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Returns whether the index has a Bloom filter in front of the sorted hashes.
+     *
+     * @return true if lookups of absent domains are usually answered by the Bloom filter alone.
+     */
+    public boolean hasBloomFilter() {
+        return bloom != null;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released by the garbage collector, as Java offers no way to unmap.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Hashes a name with 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads the bits of short, similar
+     * names well enough for both the sorted hashes and the Bloom filter.
+     */
+    static long hash(byte[] buffer, int offset, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= buffer[i];
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Derives the i-th Bloom filter bit of a hash by double hashing.
+     */
+    static long bloomBit(long hash, int i, long bits) {
+        long combined = hash + i * ((hash >>> 32) | 1);
+        return (combined & Long.MAX_VALUE) % bits;
+    }
+}
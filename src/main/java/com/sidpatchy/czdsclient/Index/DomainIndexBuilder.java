@@ -0,0 +1,423 @@
+package com.sidpatchy.czdsclient.Index;
+
+import com.sidpatchy.czdsclient.Parser.DomainExtractor;
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a {@link DomainIndex} from zone files, such as those written by {@code DownloadModule}.
+ * <p>
+ * Domains are hashed and buffered in fixed-size runs, which are sorted and spilled to temporary files when full; the
+ * runs are then merged into the index, dropping duplicates. The heap used is bounded by the run size, however many
+ * domains are added, apart from the optional Bloom filter, which is built in memory at about
+ * {@code bloomBitsPerDomain / 8} bytes per domain.
+ * <p>
+ * A builder is meant to be used once and is not thread-safe.
+ */
+public class DomainIndexBuilder {
+    private final Logger logger = LogManager.getLogger(DomainIndexBuilder.class);
+    private final List<Path> runs = new ArrayList<>();
+    private Path tempDirectory;
+    private Path workDirectory;
+    private int runSize = 4 * 1024 * 1024;
+    private int bloomBitsPerDomain = 10;
+
+    private long[] runHashes;
+    private int[] runOffsets;
+    private byte[] runNames;
+    private int runCount;
+    private int runNamesLength;
+
+    /**
+     * Adds the registered domains of a zone file, see {@link DomainExtractor}.
+     *
+     * @param zoneFile the zone file, compressed or not
+     * @return the number of domains added.
+     * @throws IOException If the zone file cannot be read or is malformed, or a run cannot be spilled.
+     */
+    public long addZone(File zoneFile) throws IOException {
+        try (ZoneFileParser parser = ZoneFileParser.open(zoneFile)) {
+            long count = DomainExtractor.extract(parser, this::add);
+            logger.debug("Added " + count + " domains of " + zoneFile + " to the index");
+            return count;
+        }
+    }
+
+    /**
+     * Adds the registered domains of every zone file ({@code *.gz} or {@code *.zone}) in a directory, such as the
+     * download directory.
+     *
+     * @param directory the directory
+     * @return the number of domains added.
+     * @throws IOException If a zone file cannot be read or is malformed, or a run cannot be spilled.
+     */
+    public long addDirectory(File directory) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".gz") || name.endsWith(".zone"));
+        if (files == null) {
+            throw new FileNotFoundException(directory + " is not a directory");
+        }
+
+        long count = 0;
+        for (File file : files) {
+            count += addZone(file);
+        }
+        return count;
+    }
+
+    /**
+     * Adds a single domain. Case and a trailing dot are ignored.
+     *
+     * @param domain the domain, e.g. "example.com"
+     * @throws IOException If a run cannot be spilled.
+     */
+    public void add(String domain) throws IOException {
+        String name = domain.toLowerCase();
+        if (name.length() > 1 && name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+        add(bytes, 0, bytes.length);
+    }
+
+    private void add(byte[] buffer, int offset, int length) throws IOException {
+        if (length > 255) {
+            throw new IllegalArgumentException("Domain names are at most 255 bytes long");
+        }
+        if (runHashes == null) {
+            runHashes = new long[runSize];
+            runOffsets = new int[runSize];
+            runNames = new byte[runSize * 16];
+        }
+        if (runCount == runSize || runNamesLength + 1 + length > runNames.length) {
+            spill();
+        }
+
+        runHashes[runCount] = DomainIndex.hash(buffer, offset, length);
+        runOffsets[runCount] = runNamesLength;
+        runNames[runNamesLength++] = (byte) length;
+        System.arraycopy(buffer, offset, runNames, runNamesLength, length);
+        runNamesLength += length;
+        runCount++;
+    }
+
+    /**
+     * Sorts the buffered run by hash and writes it to a temporary file.
+     */
+    private void spill() throws IOException {
+        if (runCount == 0) {
+            return;
+        }
+        sort(0, runCount - 1);
+        Path run = getWorkDirectory().resolve(runs.size() + ".run");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 64 * 1024))) {
+            for (int i = 0; i < runCount; i++) {
+                int offset = runOffsets[i];
+                int length = runNames[offset] & 0xff;
+                output.writeLong(runHashes[i]);
+                output.write(runNames, offset, length + 1);
+            }
+        }
+        runs.add(run);
+        runCount = 0;
+        runNamesLength = 0;
+    }
+
+    /**
+     * Sorts the run's hashes and name offsets together. Hashes are uniformly distributed, so a plain quicksort with a
+     * middle pivot does not degrade.
+     */
+    private void sort(int low, int high) {
+        while (low < high) {
+            long pivot = runHashes[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (runHashes[i] < pivot) {
+                    i++;
+                }
+                while (runHashes[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long hash = runHashes[i];
+                    runHashes[i] = runHashes[j];
+                    runHashes[j] = hash;
+                    int offset = runOffsets[i];
+                    runOffsets[i] = runOffsets[j];
+                    runOffsets[j] = offset;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(low, j);
+                low = i;
+            } else {
+                sort(i, high);
+                high = j;
+            }
+        }
+    }
+
+    /**
+     * Merges all added domains into an index file. The file is written next to its destination and moved into place
+     * once complete, so readers never see a partial index.
+     *
+     * @param indexFile the index file to write
+     * @return the number of distinct domains in the index.
+     * @throws IOException If the index cannot be written.
+     */
+    public long build(File indexFile) throws IOException {
+        spill();
+        Path target = indexFile.toPath();
+        Path partFile = Path.of(indexFile.getPath() + ".part");
+
+        try {
+            Path hashesFile = getWorkDirectory().resolve("hashes");
+            Path offsetsFile = getWorkDirectory().resolve("offsets");
+            Path namesFile = getWorkDirectory().resolve("names");
+            long count = merge(hashesFile, offsetsFile, namesFile);
+
+            long[] bloom = bloomBitsPerDomain > 0 ? newBloomFilter(count) : new long[0];
+            int bloomHashes = bloomBitsPerDomain > 0 ? Math.max(1, (int) Math.round(bloomBitsPerDomain * Math.log(2))) : 0;
+            if (bloom.length > 0) {
+                fillBloomFilter(bloom, hashesFile, bloomHashes);
+            }
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partFile), 64 * 1024))) {
+                output.writeLong(DomainIndex.MAGIC);
+                output.writeInt(DomainIndex.VERSION);
+                output.writeInt(bloomHashes);
+                output.writeLong(count);
+                output.writeLong(bloom.length);
+                output.writeLong(Files.size(namesFile));
+                output.write(new byte[DomainIndex.HEADER_SIZE - 40]);
+                for (long word : bloom) {
+                    output.writeLong(word);
+                }
+            }
+            try (FileChannel output = FileChannel.open(partFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (Path section : List.of(hashesFile, offsetsFile, namesFile)) {
+                    try (FileChannel input = FileChannel.open(section, StandardOpenOption.READ)) {
+                        long position = 0;
+                        long size = input.size();
+                        while (position < size) {
+                            position += input.transferTo(position, size - position, output);
+                        }
+                    }
+                }
+                output.force(true);
+            }
+            Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.info("Built domain index " + indexFile + " with " + count + " domains");
+            return count;
+        } finally {
+            Files.deleteIfExists(partFile);
+            deleteWorkDirectory();
+        }
+    }
+
+    /**
+     * Merges the sorted runs into the hashes, offsets and names sections, dropping duplicate names.
+     *
+     * @return the number of distinct domains.
+     */
+    private long merge(Path hashesFile, Path offsetsFile, Path namesFile) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> Long.compare(a.hash, b.hash));
+        List<RunReader> readers = new ArrayList<>();
+        try (DataOutputStream hashes = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(hashesFile), 64 * 1024));
+             DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(offsetsFile), 64 * 1024));
+             OutputStream names = new BufferedOutputStream(Files.newOutputStream(namesFile), 64 * 1024)) {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            long count = 0;
+            long namesLength = 0;
+            // The distinct names sharing the current hash; almost always one
+            List<byte[]> sameHash = new ArrayList<>();
+            long currentHash = 0;
+
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                if (sameHash.isEmpty() || reader.hash != currentHash) {
+                    sameHash.clear();
+                    currentHash = reader.hash;
+                }
+                if (!containsName(sameHash, reader.name, reader.length)) {
+                    byte[] name = Arrays.copyOf(reader.name, reader.length);
+                    sameHash.add(name);
+
+                    hashes.writeLong(reader.hash);
+                    offsets.writeLong(namesLength);
+                    names.write(reader.length);
+                    names.write(name);
+                    namesLength += 1 + reader.length;
+                    count++;
+                }
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+            return count;
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static boolean containsName(List<byte[]> names, byte[] name, int length) {
+        for (byte[] candidate : names) {
+            if (Arrays.equals(candidate, 0, candidate.length, name, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long[] newBloomFilter(long count) {
+        long bits = Math.max(Long.SIZE, count * bloomBitsPerDomain);
+        long words = (bits + Long.SIZE - 1) / Long.SIZE;
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Bloom filter too large; lower the bits per domain");
+        }
+        return new long[(int) words];
+    }
+
+    private static void fillBloomFilter(long[] bloom, Path hashesFile, int bloomHashes) throws IOException {
+        long bits = (long) bloom.length * Long.SIZE;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(hashesFile), 64 * 1024))) {
+            long remaining = Files.size(hashesFile) / Long.BYTES;
+            for (long n = 0; n < remaining; n++) {
+                long hash = input.readLong();
+                for (int i = 0; i < bloomHashes; i++) {
+                    long bit = DomainIndex.bloomBit(hash, i, bits);
+                    bloom[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        }
+    }
+
+    private Path getWorkDirectory() throws IOException {
+        if (workDirectory == null) {
+            workDirectory = tempDirectory == null
+                    ? Files.createTempDirectory("czds-index")
+                    : Files.createTempDirectory(tempDirectory, "czds-index");
+        }
+        return workDirectory;
+    }
+
+    private void deleteWorkDirectory() {
+        if (workDirectory == null) {
+            return;
+        }
+        try (var paths = Files.walk(workDirectory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Unable to delete " + workDirectory, e);
+        }
+        workDirectory = null;
+        runs.clear();
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Sets the directory for the sorted runs. Defaults to the system temporary directory.
+     *
+     * @param tempDirectory the directory
+     */
+    public void setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    public int getRunSize() {
+        return runSize;
+    }
+
+    /**
+     * Sets how many domains are sorted in memory before they are spilled to disk. A run takes about 28 bytes of heap
+     * per domain. Defaults to 4 Mi domains, or roughly 112 MiB.
+     *
+     * @param runSize the number of domains per run
+     */
+    public void setRunSize(int runSize) {
+        if (runSize < 1) {
+            throw new IllegalArgumentException("Run size must be at least 1");
+        }
+        if (runHashes != null) {
+            throw new IllegalStateException("The run size cannot be changed after domains were added");
+        }
+        this.runSize = runSize;
+    }
+
+    public int getBloomBitsPerDomain() {
+        return bloomBitsPerDomain;
+    }
+
+    /**
+     * Sets the size of the Bloom filter in bits per domain. 10 bits give about 1% false positives, which then fall
+     * through to the sorted hashes. Defaults to 10; 0 builds no Bloom filter.
+     *
+     * @param bloomBitsPerDomain the bits per domain
+     */
+    public void setBloomBitsPerDomain(int bloomBitsPerDomain) {
+        if (bloomBitsPerDomain < 0) {
+            throw new IllegalArgumentException("Bloom bits per domain must not be negative");
+        }
+        this.bloomBitsPerDomain = bloomBitsPerDomain;
+    }
+
+    /**
+     * Reads a sorted run one entry at a time.
+     */
+    private static class RunReader implements Closeable {
+        private final DataInputStream input;
+        private final byte[] name = new byte[255];
+        private long hash;
+        private int length;
+
+        private RunReader(Path run) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 64 * 1024));
+        }
+
+        private boolean next() throws IOException {
+            try {
+                hash = input.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            length = input.readUnsignedByte();
+            input.readFully(name, 0, length);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
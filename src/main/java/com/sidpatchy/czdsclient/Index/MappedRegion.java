@@ -0,0 +1,43 @@
+package com.sidpatchy.czdsclient.Index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only, memory-mapped region of a file that may be larger than the 2 GiB a single MappedByteBuffer can map.
+ * The region is mapped in 1 GiB segments; the data lives in the page cache, not on the heap.
+ */
+class MappedRegion {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long length;
+
+    MappedRegion(FileChannel channel, long offset, long length) throws IOException {
+        this.length = length;
+        this.segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            long size = Math.min(SEGMENT_SIZE, length - start);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, size);
+        }
+    }
+
+    byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /**
+     * Reads a long. The position must be a multiple of 8, so the long never straddles two segments.
+     */
+    long getLong(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    long length() {
+        return length;
+    }
+}
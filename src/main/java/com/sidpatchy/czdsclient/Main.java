@@ -1,6 +1,20 @@
 package com.sidpatchy.czdsclient;
 
+import com.sidpatchy.czdsclient.Archive.SnapshotStore;
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import com.sidpatchy.czdsclient.Cluster.ShardCoordinator;
+import com.sidpatchy.czdsclient.Daemon.ControlServer;
+import com.sidpatchy.czdsclient.Daemon.SyncDaemon;
+import com.sidpatchy.czdsclient.Daemon.SyncWindow;
+import com.sidpatchy.czdsclient.Diff.ZoneDiff;
+import com.sidpatchy.czdsclient.Export.Column;
+import com.sidpatchy.czdsclient.Export.ColumnarZoneReader;
+import com.sidpatchy.czdsclient.Export.ZoneQuery;
 import com.sidpatchy.czdsclient.IO.CZDSClient;
+import com.sidpatchy.czdsclient.IO.RateLimiter;
+import com.sidpatchy.czdsclient.IO.RetryPolicy;
+import com.sidpatchy.czdsclient.Metrics.JsonExporter;
+import com.sidpatchy.czdsclient.Metrics.PrometheusExporter;
 import org.apache.commons.cli.*;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -9,16 +23,25 @@ import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
 
     private static CZDSClient client;
+    private static final AtomicBoolean clientClosed = new AtomicBoolean();
 
     // For Commandline Arguments
     private static Options options = new Options();
@@ -31,6 +54,31 @@ public class Main {
     private static Option specifyZoneOption;
     private static Option filePathOption;
     private static Option showApprovedTLDsOption;
+    private static Option concurrencyOption;
+    private static Option threadsOption;
+    private static Option incrementalOption;
+    private static Option segmentsOption;
+    private static Option bufferSizeOption;
+    private static Option diffOption;
+    private static Option tokenFileOption;
+    private static Option rateLimitOption;
+    private static Option retriesOption;
+    private static Option linksFileOption;
+    private static Option zoneListOption;
+    private static Option metricsOption;
+    private static Option verifyGzipOption;
+    private static Option hashOption;
+    private static Option daemonOption;
+    private static Option windowOption;
+    private static Option controlPortOption;
+    private static Option controlTokenFileOption;
+    private static Option bandwidthOption;
+    private static Option probeSizesOption;
+    private static Option leaseDirOption;
+    private static Option archiveOption;
+    private static Option retentionOption;
+    private static Option exportOption;
+    private static Option findNameserverOption;
 
     private static String username;
     private static String password;
@@ -48,9 +96,36 @@ public class Main {
         helpOption = new Option("h", "help", false, "Show help");
         versionOption = new Option("v", "version", false, "Show version");
         getAllZonesOption = new Option("a", "all", false, "Download all zones");
-        specifyZoneOption = new Option("z", "zone", true, "Specify a zone file to download");
+        specifyZoneOption = new Option("z", "zone", true, "Specify the zone files to download, as a comma-separated list of TLDs or patterns such as 'xn--*'");
         filePathOption = new Option("f", "path", true, "Specify which directory zone files should be downloaded to -- defaults to './Downloads/'");
         showApprovedTLDsOption = new Option("s", "show-approved", false, "Lists all TLDs you are approved to access");
+        concurrencyOption = new Option("c", "concurrency", true, "Number of zone files to download in parallel -- defaults to 4");
+        incrementalOption = new Option("i", "incremental", false, "Skip zones that have not changed since they were last downloaded");
+        bufferSizeOption = new Option("b", "buffer-size", true, "Size of the download buffer in KiB -- defaults to 1024");
+        segmentsOption = new Option("n", "segments", true, "Number of parallel connections used to download each large zone file -- defaults to 1");
+        threadsOption = new Option("t", "threads", true, "Size of the platform thread pool used for requests -- defaults to one virtual thread per request");
+        diffOption = new Option("x", "diff", true, "Print the records added, removed and changed between two zone files");
+        diffOption.setArgs(2);
+        diffOption.setArgName("old> <new");
+        tokenFileOption = new Option("k", "token-file", true, "File to keep the access token in, so consecutive runs reuse it instead of logging in again");
+        rateLimitOption = new Option("r", "rate-limit", true, "Maximum number of requests per second, including downloads -- defaults to no limit");
+        retriesOption = new Option("e", "retries", true, "Number of times a throttled or failed request is retried -- defaults to 4");
+        linksFileOption = new Option("l", "links-file", true, "File to cache the list of approved zones in, so consecutive runs within an hour reuse it");
+        zoneListOption = new Option("Z", "zone-list", true, "File listing the zone files to download, one TLD or pattern per line");
+        metricsOption = new Option("m", "metrics", true, "File to write metrics to when done, as JSON if it ends in '.json' and in the Prometheus text format otherwise");
+        verifyGzipOption = new Option("g", "verify-gzip", false, "Check the gzip CRC32 and size of every zone file while it downloads, and download corrupt files again");
+        hashOption = new Option("H", "hash", true, "Algorithm to hash downloaded zone files with -- defaults to SHA-256");
+        daemonOption = new Option("D", "daemon", false, "Keep running and sync the zones selected with -a, -z or -Z every day instead of once");
+        windowOption = new Option("w", "window", true, "Daily sync window of the daemon as '[zones=]HH:MM[+jitter minutes]', may be repeated -- defaults to '00:00+60'");
+        controlPortOption = new Option("P", "control-port", true, "Port of the daemon's status, metrics and sync endpoint on localhost -- disabled by default");
+        controlTokenFileOption = new Option("T", "control-token-file", true, "File holding the token the daemon's sync endpoint requires, created with a random token if missing -- defaults to './control.token'");
+        bandwidthOption = new Option("B", "bandwidth", true, "Maximum combined download rate in KiB per second -- defaults to no limit");
+        probeSizesOption = new Option("S", "probe-sizes", false, "Ask the server for the size of zones never downloaded before, so the largest zones start first");
+        leaseDirOption = new Option("L", "lease-dir", true, "Directory shared with other instances syncing the same zones, so each zone is downloaded by only one of them");
+        archiveOption = new Option("A", "archive", true, "Directory to keep dated, deduplicated snapshots of every downloaded zone in");
+        retentionOption = new Option("R", "retention", true, "Number of days of snapshots to keep in the archive -- defaults to keeping all of them");
+        exportOption = new Option("X", "export", true, "Directory to export downloaded zones to in a binary columnar format for fast queries");
+        findNameserverOption = new Option("q", "find-nameserver", true, "Print the domains delegated to a name server, read from the zones exported to the -X directory");
 
         options.addOption(usernameOption);
         options.addOption(passwordOption);
@@ -61,6 +136,31 @@ public class Main {
         options.addOption(specifyZoneOption);
         options.addOption(filePathOption);
         options.addOption(showApprovedTLDsOption);
+        options.addOption(concurrencyOption);
+        options.addOption(threadsOption);
+        options.addOption(incrementalOption);
+        options.addOption(segmentsOption);
+        options.addOption(bufferSizeOption);
+        options.addOption(diffOption);
+        options.addOption(tokenFileOption);
+        options.addOption(rateLimitOption);
+        options.addOption(retriesOption);
+        options.addOption(linksFileOption);
+        options.addOption(zoneListOption);
+        options.addOption(metricsOption);
+        options.addOption(verifyGzipOption);
+        options.addOption(hashOption);
+        options.addOption(daemonOption);
+        options.addOption(windowOption);
+        options.addOption(controlPortOption);
+        options.addOption(controlTokenFileOption);
+        options.addOption(bandwidthOption);
+        options.addOption(probeSizesOption);
+        options.addOption(leaseDirOption);
+        options.addOption(archiveOption);
+        options.addOption(retentionOption);
+        options.addOption(exportOption);
+        options.addOption(findNameserverOption);
 
         if (args.length == 0) {
             formatter.printHelp("CZDS-Client", options);
@@ -87,19 +187,51 @@ public class Main {
         logger.debug("Username: " + username);
         logger.debug("Password: " + password);
 
-        client = new CZDSClient(username, password);
+        int threadPoolSize = cmd.hasOption('t') ? Integer.parseInt(cmd.getOptionValue('t')) : 0;
+        client = new CZDSClient(username, password, CZDSClient.DEFAULT_AUTHENTICATION_ENDPOINT, CZDSClient.DEFAULT_ENDPOINT, threadPoolSize);
 
         if (cmd.hasOption('v')) {
             InputStream input = Main.class.getClassLoader().getResourceAsStream("project.properties");
             Properties properties = new Properties();
             properties.load(input);
             System.out.println(properties.getProperty("version"));
-            System.exit(0);
+            exit(0);
         }
 
         if (cmd.hasOption('h')) {
             formatter.printHelp("ZoneFile-Tools", options);
-            System.exit(0);
+            exit(0);
+        }
+
+        if (cmd.hasOption('k')) {
+            client.getConnectionManager().getTokenManager().setStoreFile(Path.of(cmd.getOptionValue('k')));
+            logger.debug("Token file set to " + cmd.getOptionValue('k'));
+        }
+
+        if (cmd.hasOption('r')) {
+            double rate = Double.parseDouble(cmd.getOptionValue('r'));
+            client.getConnectionManager().setRateLimiter(new RateLimiter(rate, Math.max(1, (int) Math.ceil(rate))));
+            logger.debug("Rate limit set to " + cmd.getOptionValue('r') + " requests per second");
+        }
+
+        if (cmd.hasOption('e')) {
+            RetryPolicy defaults = RetryPolicy.defaults();
+            client.getConnectionManager().setRetryPolicy(new RetryPolicy(Integer.parseInt(cmd.getOptionValue('e')) + 1,
+                    defaults.getBaseDelay(), defaults.getMaxDelay()));
+            logger.debug("Retries set to " + cmd.getOptionValue('e'));
+        }
+
+        if (cmd.hasOption('l')) {
+            client.getDownloader().getLinkCache().setCacheFile(Path.of(cmd.getOptionValue('l')));
+            logger.debug("Zone link cache file set to " + cmd.getOptionValue('l'));
+        }
+
+        if (cmd.hasOption('m')) {
+            Path metricsFile = Path.of(cmd.getOptionValue('m'));
+            client.getConnectionManager().getMetrics().addExporter(metricsFile.toString().endsWith(".json")
+                    ? new JsonExporter(metricsFile)
+                    : new PrometheusExporter(metricsFile));
+            logger.debug("Metrics file set to " + metricsFile);
         }
 
         if (cmd.hasOption('f')) {
@@ -107,23 +239,242 @@ public class Main {
             logger.debug("Download path update to " + cmd.getOptionValue('f'));
         }
 
+        if (cmd.hasOption('c')) {
+            client.getDownloader().setConcurrency(Integer.parseInt(cmd.getOptionValue('c')));
+            logger.debug("Download concurrency updated to " + cmd.getOptionValue('c'));
+        }
+
+        if (cmd.hasOption('i')) {
+            client.getDownloader().setIncremental(true);
+            logger.debug("Incremental sync enabled");
+        }
+
+        if (cmd.hasOption('n')) {
+            client.getConnectionManager().getFileDownloader().setSegments(Integer.parseInt(cmd.getOptionValue('n')));
+            logger.debug("Download segments updated to " + cmd.getOptionValue('n'));
+        }
+
+        if (cmd.hasOption('b')) {
+            client.getConnectionManager().getFileDownloader().setBufferSize(Integer.parseInt(cmd.getOptionValue('b')) * 1024);
+            logger.debug("Download buffer size updated to " + cmd.getOptionValue('b') + " KiB");
+        }
+
+        if (cmd.hasOption('B')) {
+            client.getConnectionManager().getFileDownloader().setBandwidthLimit(Long.parseLong(cmd.getOptionValue('B')) * 1024);
+            logger.debug("Bandwidth limit set to " + cmd.getOptionValue('B') + " KiB/s");
+        }
+
+        if (cmd.hasOption('S')) {
+            client.getDownloader().setProbeSizes(true);
+            logger.debug("Zone size probing enabled");
+        }
+
+        if (cmd.hasOption('A')) {
+            SnapshotStore store = new SnapshotStore(Path.of(cmd.getOptionValue('A')));
+            if (cmd.hasOption('R')) {
+                store.setRetentionDays(Integer.parseInt(cmd.getOptionValue('R')));
+            }
+            client.getDownloader().setSnapshotStore(store);
+            logger.debug("Archiving zones to " + cmd.getOptionValue('A'));
+        }
+
+        if (cmd.hasOption('X')) {
+            client.getDownloader().setExportDirectory(new File(cmd.getOptionValue('X')));
+            logger.debug("Exporting zones to " + cmd.getOptionValue('X'));
+        }
+
+        if (cmd.hasOption('L')) {
+            ShardCoordinator coordinator = new ShardCoordinator(Path.of(cmd.getOptionValue('L')));
+            client.getDownloader().setShardCoordinator(coordinator);
+            logger.debug("Sharing zones with other workers through " + cmd.getOptionValue('L') + " as " + coordinator.getWorkerId());
+        }
+
+        if (cmd.hasOption('g')) {
+            client.getConnectionManager().getFileDownloader().setVerifyGzip(true);
+            logger.debug("Gzip verification enabled");
+        }
+
+        if (cmd.hasOption('H')) {
+            client.getConnectionManager().getFileDownloader().setDigestAlgorithm(cmd.getOptionValue('H'));
+            logger.debug("Download hash algorithm set to " + cmd.getOptionValue('H'));
+        }
+
         if (cmd.hasOption('s')) {
             List<String> approvedTLDs = client.getDownloader().getApprovedTLDs().join();
             System.out.println("Approved TLDs:");
             for (String tld : approvedTLDs) {System.out.println("   - " + tld);}
         }
 
+        if (cmd.hasOption('D')) {
+            runDaemon(cmd);
+            exit(0);
+        }
+
         if (cmd.hasOption('a')) {
-            client.getDownloader().downloadAllApprovedZoneFiles().join();
-            System.exit(0);
+            exit(report(client.getDownloader().downloadAllApprovedZoneFiles().join()));
+        }
+
+        if (cmd.hasOption('x')) {
+            String[] files = cmd.getOptionValues('x');
+            ZoneDiff.Summary summary = new ZoneDiff().compare(new File(files[0]), new File(files[1]), System.out::println);
+            logger.info("Compared " + files[0] + " with " + files[1] + ": " + summary);
+            exit(0);
+        }
+
+        if (cmd.hasOption('q')) {
+            findNameserver(cmd.getOptionValue('q'), new File(cmd.hasOption('X') ? cmd.getOptionValue('X') : "."));
+            exit(0);
+        }
+
+        if (cmd.hasOption('z') || cmd.hasOption('Z')) {
+            exit(report(client.getDownloader().downloadZoneFiles(getSelectedZones(cmd)).join()));
+        }
+
+        exit(0);
+    }
+
+    /**
+     * Prints the domains of every exported zone that are delegated to a name server.
+     *
+     * @param nameserver the name server, e.g. "ns1.example.net"
+     * @param directory the directory holding the exported zones
+     * @throws IOException If an export cannot be read.
+     */
+    private static void findNameserver(String nameserver, File directory) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".zcol"));
+        if (files == null || files.length == 0) {
+            logger.error("No exported zones found in " + directory);
+            return;
+        }
+
+        ZoneQuery query = new ZoneQuery().nameserver(nameserver).columns(Column.OWNER);
+        long count = 0;
+        for (File file : files) {
+            try (ColumnarZoneReader reader = ColumnarZoneReader.open(file)) {
+                count += reader.scan(query, record -> System.out.println(record.getOwner()));
+            }
         }
+        logger.info("Found " + count + " domains using " + nameserver + " in " + files.length + " zones");
+    }
 
+    /**
+     * Returns the zones selected with -z and -Z.
+     *
+     * @param cmd the parsed command line
+     * @return the TLDs and patterns of the zones, empty if none were selected.
+     * @throws IOException If the zone list file cannot be read.
+     */
+    private static List<String> getSelectedZones(CommandLine cmd) throws IOException {
+        List<String> zones = new ArrayList<>();
         if (cmd.hasOption('z')) {
-            client.getDownloader().downloadZoneFile(cmd.getOptionValue('z')).join();
-            System.exit(0);
+            for (String value : cmd.getOptionValues('z')) {
+                zones.addAll(Arrays.asList(value.split(",")));
+            }
+        }
+        if (cmd.hasOption('Z')) {
+            zones.addAll(readZoneList(Path.of(cmd.getOptionValue('Z'))));
+        }
+        return zones;
+    }
+
+    /**
+     * Runs the sync daemon until the JVM is asked to shut down.
+     *
+     * @param cmd the parsed command line
+     * @throws IOException If the zone list cannot be read or the control endpoint cannot be started.
+     */
+    private static void runDaemon(CommandLine cmd) throws IOException {
+        // -a, or no selection at all, syncs every approved zone
+        List<String> zones = cmd.hasOption('a') ? List.of() : getSelectedZones(cmd);
+        SyncDaemon daemon = new SyncDaemon(client);
+        for (String window : cmd.hasOption('w') ? cmd.getOptionValues('w') : new String[] {"00:00+60"}) {
+            daemon.addWindow(SyncWindow.parse(window, zones));
+        }
+        if (cmd.hasOption('P')) {
+            Path tokenFile = Path.of(cmd.hasOption('T') ? cmd.getOptionValue('T') : "control.token");
+            String token = ControlServer.readOrCreateToken(tokenFile);
+            daemon.startControlServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(cmd.getOptionValue('P'))), token);
+            logger.debug("Control token read from " + tokenFile);
+        }
+
+        // exit() would block while the hooks run, so the hook closes the client itself
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.close();
+            closeClient();
+        }));
+        daemon.start();
+        try {
+            daemon.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            daemon.close();
+        }
+    }
+
+    /**
+     * Logs the failures and a summary of a batch download.
+     *
+     * @param results the results of the batch
+     * @return the exit status, 1 if any zone failed.
+     */
+    private static int report(List<ZoneDownloadResult> results) {
+        int failed = 0;
+        int skipped = 0;
+        for (ZoneDownloadResult result : results) {
+            if (result.getStatus() == ZoneDownloadResult.Status.FAILED) {
+                logger.error("Failed to download the '." + result.getTld() + "' zone: " + result.getError().getMessage());
+                failed++;
+            } else if (result.getStatus() == ZoneDownloadResult.Status.NOT_MODIFIED) {
+                skipped++;
+            }
+        }
+        logger.info("Downloaded " + (results.size() - failed - skipped) + " of " + results.size() + " zones, "
+                + skipped + " unchanged, " + failed + " failed.");
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Reads a zone list file. Zones are separated by line breaks, commas or whitespace; everything after a '#' on a
+     * line is a comment.
+     *
+     * @param file the zone list file
+     * @return the TLDs and patterns listed in the file.
+     * @throws IOException If the file cannot be read.
+     */
+    static List<String> readZoneList(Path file) throws IOException {
+        List<String> zones = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            for (String zone : line.split("[,\\s]+")) {
+                if (!zone.isEmpty()) {
+                    zones.add(zone);
+                }
+            }
         }
+        return zones;
+    }
+
+    /**
+     * Closes the client, releasing its threads, and terminates the JVM.
+     *
+     * @param status the exit status
+     */
+    private static void exit(int status) {
+        closeClient();
+        System.exit(status);
+    }
 
-        System.exit(0);
+    /**
+     * Closes the client unless it was closed already. In daemon mode both exit() and the shutdown hook get here, and
+     * closing twice would export the final metrics twice.
+     */
+    private static void closeClient() {
+        if (clientClosed.compareAndSet(false, true)) {
+            client.close();
+        }
     }
 
     private static void setLogLevel(Level level) {
@@ -0,0 +1,203 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a client: the latency and status of every request, retries, logins, in-flight downloads,
+ * bytes received and the throughput of every zone.
+ * <p>
+ * Recording is lock-free and cheap enough for the hot path. The metrics are read by taking a {@link #snapshot()}, which
+ * {@link #export()} hands to every registered {@link MetricsExporter}.
+ */
+public class ClientMetrics {
+    private final Logger logger = LogManager.getLogger(ClientMetrics.class);
+    private final Map<String, RequestMetrics> requests = new ConcurrentHashMap<>();
+    private final LongAdder loginSuccesses = new LongAdder();
+    private final LongAdder loginFailures = new LongAdder();
+    private final AtomicInteger inFlightDownloads = new AtomicInteger();
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final Map<String, LongAdder> downloads = new ConcurrentHashMap<>();
+    private final Map<String, MetricsSnapshot.ZoneStats> zones = new ConcurrentHashMap<>();
+    private final List<MetricsExporter> exporters = new CopyOnWriteArrayList<>();
+
+    /**
+     * Records a response.
+     *
+     * @param method the HTTP method of the request
+     * @param uri the URI of the request
+     * @param status the status code of the response
+     * @param nanos the time until the response headers arrived
+     */
+    public void recordResponse(String method, URI uri, int status, long nanos) {
+        RequestMetrics metrics = getRequestMetrics(method, uri);
+        metrics.latency.observe(nanos);
+        metrics.statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Records a request that failed without a response.
+     *
+     * @param method the HTTP method of the request
+     * @param uri the URI of the request
+     * @param nanos the time until the request failed
+     */
+    public void recordError(String method, URI uri, long nanos) {
+        RequestMetrics metrics = getRequestMetrics(method, uri);
+        metrics.latency.observe(nanos);
+        metrics.errors.increment();
+    }
+
+    /**
+     * Records that a request is retried.
+     *
+     * @param method the HTTP method of the request
+     * @param uri the URI of the request
+     */
+    public void recordRetry(String method, URI uri) {
+        getRequestMetrics(method, uri).retries.increment();
+    }
+
+    /**
+     * Records a login, i.e. a new access token being requested.
+     *
+     * @param success whether the login succeeded
+     */
+    public void recordLogin(boolean success) {
+        (success ? loginSuccesses : loginFailures).increment();
+    }
+
+    /**
+     * Records bytes received by a zone download.
+     *
+     * @param bytes the number of bytes
+     */
+    public void addDownloadedBytes(long bytes) {
+        bytesDownloaded.add(bytes);
+    }
+
+    /**
+     * Records the start of a zone download.
+     */
+    public void downloadStarted() {
+        inFlightDownloads.incrementAndGet();
+    }
+
+    /**
+     * Records the end of a zone download started with {@link #downloadStarted()}.
+     *
+     * @param tld the TLD of the zone
+     * @param status the outcome of the download
+     * @param bytes the size of the downloaded file, or 0 if the download failed
+     * @param nanos the duration of the download
+     * @param error the error the download failed with, or null
+     */
+    public void downloadFinished(String tld, ZoneDownloadResult.Status status, long bytes, long nanos, Throwable error) {
+        inFlightDownloads.decrementAndGet();
+        downloads.computeIfAbsent(status.name(), key -> new LongAdder()).increment();
+        zones.put(tld, new MetricsSnapshot.ZoneStats(status.name(), bytes, nanos / 1e9, System.currentTimeMillis(),
+                error != null ? String.valueOf(error.getMessage()) : null));
+    }
+
+    /**
+     * Takes a snapshot of all metrics. Concurrent updates may or may not be included.
+     *
+     * @return the snapshot.
+     */
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.RequestStats> requestStats = new ArrayList<>();
+        for (RequestMetrics metrics : requests.values()) {
+            Map<Integer, Long> statuses = new TreeMap<>();
+            metrics.statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+            requestStats.add(new MetricsSnapshot.RequestStats(metrics.method, metrics.route, statuses,
+                    metrics.errors.sum(), metrics.retries.sum(), metrics.latency.snapshot()));
+        }
+        requestStats.sort(Comparator.comparing(MetricsSnapshot.RequestStats::getRoute)
+                .thenComparing(MetricsSnapshot.RequestStats::getMethod));
+
+        Map<String, Long> downloadCounts = new TreeMap<>();
+        downloads.forEach((status, count) -> downloadCounts.put(status, count.sum()));
+
+        return new MetricsSnapshot(System.currentTimeMillis(), requestStats, loginSuccesses.sum(), loginFailures.sum(),
+                inFlightDownloads.get(), bytesDownloaded.sum(), downloadCounts, new TreeMap<>(zones));
+    }
+
+    /**
+     * Registers an exporter to be called on every {@link #export()}.
+     *
+     * @param exporter the exporter
+     */
+    public void addExporter(MetricsExporter exporter) {
+        exporters.add(exporter);
+    }
+
+    public void removeExporter(MetricsExporter exporter) {
+        exporters.remove(exporter);
+    }
+
+    /**
+     * Hands a snapshot to every registered exporter. An exporter that fails is logged and does not keep the others
+     * from running.
+     */
+    public void export() {
+        if (exporters.isEmpty()) {
+            return;
+        }
+
+        MetricsSnapshot snapshot = snapshot();
+        for (MetricsExporter exporter : exporters) {
+            try {
+                exporter.export(snapshot);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to export metrics with " + exporter.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private RequestMetrics getRequestMetrics(String method, URI uri) {
+        String route = route(uri);
+        return requests.computeIfAbsent(method + " " + route, key -> new RequestMetrics(method, route));
+    }
+
+    /**
+     * Reduces a URI to its path, replacing the zone name of download URLs with {@code {tld}}, so the number of
+     * distinct routes stays small however many zones are downloaded.
+     *
+     * @param uri the URI of a request
+     * @return the route.
+     */
+    static String route(URI uri) {
+        String path = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+        if (path.endsWith(".zone")) {
+            return path.substring(0, path.lastIndexOf('/') + 1) + "{tld}.zone";
+        }
+        return path;
+    }
+
+    private static final class RequestMetrics {
+        private final String method;
+        private final String route;
+        private final Histogram latency = new Histogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+
+        private RequestMetrics(String method, String route) {
+            this.method = method;
+            this.route = route;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import java.util.Map;
+
+/**
+ * The metrics of a client as exposed over JMX by {@link JmxExporter}.
+ */
+public interface ClientMetricsMXBean {
+    long getRequests();
+
+    long getFailedRequests();
+
+    long getRetries();
+
+    Map<String, Long> getResponsesByStatus();
+
+    long getLoginSuccesses();
+
+    long getLoginFailures();
+
+    long getInFlightDownloads();
+
+    long getBytesDownloaded();
+
+    Map<String, Long> getDownloads();
+
+    Map<String, Double> getZoneBytesPerSecond();
+}
@@ -0,0 +1,121 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets, cheap enough to update on every request from any thread.
+ * <p>
+ * The buckets cover both API calls, which take milliseconds, and zone downloads, which can take an hour, so the same
+ * histogram type fits every request.
+ */
+public class Histogram {
+    /**
+     * The upper bounds of the buckets in seconds. Observations above the last bound are only counted in the total.
+     */
+    public static final double[] BOUNDS = {
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600, 1800, 3600
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records an observation.
+     *
+     * @param nanos the observed duration in nanoseconds
+     */
+    public void observe(long nanos) {
+        double seconds = nanos / 1e9;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (seconds <= BOUNDS[i]) {
+                buckets[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Takes a snapshot of the histogram. Concurrent observations may or may not be included.
+     *
+     * @return the snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            counts[i] = cumulative;
+        }
+        return new Snapshot(counts, Math.max(count.sum(), cumulative), sumNanos.sum() / 1e9);
+    }
+
+    /**
+     * The state of a histogram at one point in time, with cumulative bucket counts as in the Prometheus format.
+     */
+    public static class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final double sum;
+
+        private Snapshot(long[] buckets, long count, double sum) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        public double[] getBounds() {
+            return BOUNDS.clone();
+        }
+
+        /**
+         * Returns the number of observations of at most each bound.
+         *
+         * @return the cumulative counts, indexed like {@link #BOUNDS}.
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sum of all observations.
+         *
+         * @return the sum in seconds.
+         */
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * Estimates a quantile from the buckets, e.g. 0.99 for the 99th percentile.
+         *
+         * @param quantile the quantile, between 0 and 1
+         * @return the upper bound of the bucket holding the quantile in seconds, or infinity if it lies beyond the
+         *         last bucket, or 0 if there are no observations.
+         */
+        public double getQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] >= rank) {
+                    return BOUNDS[i];
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exposes the metrics of a client as an MXBean on the platform MBean server, e.g. for JConsole or a JMX exporter.
+ * <p>
+ * JMX is pulled by its clients, so the MXBean reads the metrics live and {@link #export(MetricsSnapshot)} has nothing
+ * to do. Close the exporter to unregister the MXBean.
+ */
+public final class JmxExporter implements MetricsExporter, ClientMetricsMXBean, AutoCloseable {
+    public static final String DEFAULT_NAME = "com.sidpatchy.czdsclient:type=ClientMetrics";
+
+    private final ClientMetrics metrics;
+    private final ObjectName name;
+
+    /**
+     * Registers the metrics under {@link #DEFAULT_NAME}.
+     *
+     * @param metrics the metrics to expose
+     * @throws JMException If the MXBean cannot be registered, e.g. because the name is taken.
+     */
+    public JmxExporter(ClientMetrics metrics) throws JMException {
+        this(metrics, new ObjectName(DEFAULT_NAME));
+    }
+
+    /**
+     * Registers the metrics under the given name, e.g. to expose several clients in one JVM.
+     *
+     * @param metrics the metrics to expose
+     * @param name the name of the MXBean
+     * @throws JMException If the MXBean cannot be registered, e.g. because the name is taken.
+     */
+    public JmxExporter(ClientMetrics metrics, ObjectName name) throws JMException {
+        this.metrics = metrics;
+        this.name = name;
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+
+    @Override
+    public void export(MetricsSnapshot snapshot) {
+        // Read live by JMX clients
+    }
+
+    @Override
+    public long getRequests() {
+        long requests = 0;
+        for (MetricsSnapshot.RequestStats request : metrics.snapshot().getRequests()) {
+            requests += request.getErrors();
+            for (long count : request.getStatuses().values()) {
+                requests += count;
+            }
+        }
+        return requests;
+    }
+
+    @Override
+    public long getFailedRequests() {
+        long failed = 0;
+        for (MetricsSnapshot.RequestStats request : metrics.snapshot().getRequests()) {
+            failed += request.getErrors();
+            for (Map.Entry<Integer, Long> status : request.getStatuses().entrySet()) {
+                if (status.getKey() >= 400) {
+                    failed += status.getValue();
+                }
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public long getRetries() {
+        long retries = 0;
+        for (MetricsSnapshot.RequestStats request : metrics.snapshot().getRequests()) {
+            retries += request.getRetries();
+        }
+        return retries;
+    }
+
+    @Override
+    public Map<String, Long> getResponsesByStatus() {
+        Map<String, Long> responses = new TreeMap<>();
+        for (MetricsSnapshot.RequestStats request : metrics.snapshot().getRequests()) {
+            request.getStatuses().forEach((status, count) -> responses.merge(String.valueOf(status), count, Long::sum));
+        }
+        return responses;
+    }
+
+    @Override
+    public long getLoginSuccesses() {
+        return metrics.snapshot().getLoginSuccesses();
+    }
+
+    @Override
+    public long getLoginFailures() {
+        return metrics.snapshot().getLoginFailures();
+    }
+
+    @Override
+    public long getInFlightDownloads() {
+        return metrics.snapshot().getInFlightDownloads();
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return metrics.snapshot().getBytesDownloaded();
+    }
+
+    @Override
+    public Map<String, Long> getDownloads() {
+        return metrics.snapshot().getDownloads();
+    }
+
+    @Override
+    public Map<String, Double> getZoneBytesPerSecond() {
+        Map<String, Double> throughput = new TreeMap<>();
+        metrics.snapshot().getZones().forEach((tld, zone) -> throughput.put(tld, zone.getBytesPerSecond()));
+        return throughput;
+    }
+
+    /**
+     * Unregisters the MXBean.
+     */
+    @Override
+    public void close() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes the metrics to a JSON file, replacing it on every export.
+ */
+public class JsonExporter implements MetricsExporter {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file;
+
+    /**
+     * Constructs a JsonExporter.
+     *
+     * @param file the file to write the metrics to
+     */
+    public JsonExporter(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void export(MetricsSnapshot snapshot) throws IOException {
+        MetricsFile.write(file, format(snapshot));
+    }
+
+    /**
+     * Serializes a snapshot.
+     *
+     * @param snapshot the metrics
+     * @return the JSON document.
+     * @throws IOException If the snapshot cannot be serialized.
+     */
+    public byte[] format(MetricsSnapshot snapshot) throws IOException {
+        return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(snapshot);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,17 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import java.io.IOException;
+
+/**
+ * Publishes the metrics of a client, e.g. to a file or a monitoring system. Exporters are registered with
+ * {@link ClientMetrics#addExporter(MetricsExporter)} and called on every {@link ClientMetrics#export()}.
+ */
+public interface MetricsExporter {
+    /**
+     * Publishes a snapshot of the metrics.
+     *
+     * @param snapshot the metrics
+     * @throws IOException If the metrics cannot be published.
+     */
+    void export(MetricsSnapshot snapshot) throws IOException;
+}
@@ -0,0 +1,216 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The metrics of a client at one point in time, as handed to a {@link MetricsExporter}. Serializable with Jackson.
+ */
+public class MetricsSnapshot {
+    private final long timestamp;
+    private final List<RequestStats> requests;
+    private final long loginSuccesses;
+    private final long loginFailures;
+    private final long inFlightDownloads;
+    private final long bytesDownloaded;
+    private final Map<String, Long> downloads;
+    private final Map<String, ZoneStats> zones;
+
+    MetricsSnapshot(long timestamp, List<RequestStats> requests, long loginSuccesses, long loginFailures,
+                    long inFlightDownloads, long bytesDownloaded, Map<String, Long> downloads, Map<String, ZoneStats> zones) {
+        this.timestamp = timestamp;
+        this.requests = requests;
+        this.loginSuccesses = loginSuccesses;
+        this.loginFailures = loginFailures;
+        this.inFlightDownloads = inFlightDownloads;
+        this.bytesDownloaded = bytesDownloaded;
+        this.downloads = downloads;
+        this.zones = zones;
+    }
+
+    /**
+     * Returns when the snapshot was taken.
+     *
+     * @return the time in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the statistics of every kind of request sent so far, sorted by route and method.
+     *
+     * @return the request statistics.
+     */
+    public List<RequestStats> getRequests() {
+        return requests;
+    }
+
+    public long getLoginSuccesses() {
+        return loginSuccesses;
+    }
+
+    public long getLoginFailures() {
+        return loginFailures;
+    }
+
+    public long getInFlightDownloads() {
+        return inFlightDownloads;
+    }
+
+    /**
+     * Returns the number of bytes received by zone downloads, including those of downloads that failed later.
+     *
+     * @return the number of bytes.
+     */
+    public long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    /**
+     * Returns the number of finished zone downloads by outcome.
+     *
+     * @return the counts, keyed by {@code ZoneDownloadResult.Status} name.
+     */
+    public Map<String, Long> getDownloads() {
+        return downloads;
+    }
+
+    /**
+     * Returns the last download of every zone.
+     *
+     * @return the zone statistics, keyed by TLD.
+     */
+    public Map<String, ZoneStats> getZones() {
+        return zones;
+    }
+
+    /**
+     * The statistics of one kind of request, e.g. {@code GET /czds/downloads/{tld}.zone}. Every attempt counts,
+     * including retries.
+     */
+    public static class RequestStats {
+        private final String method;
+        private final String route;
+        private final Map<Integer, Long> statuses;
+        private final long errors;
+        private final long retries;
+        private final Histogram.Snapshot latency;
+
+        RequestStats(String method, String route, Map<Integer, Long> statuses, long errors, long retries, Histogram.Snapshot latency) {
+            this.method = method;
+            this.route = route;
+            this.statuses = statuses;
+            this.errors = errors;
+            this.retries = retries;
+            this.latency = latency;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * Returns the path of the requests, with the zone name of download URLs replaced by {@code {tld}}.
+         *
+         * @return the route.
+         */
+        public String getRoute() {
+            return route;
+        }
+
+        /**
+         * Returns the number of responses by HTTP status.
+         *
+         * @return the counts, keyed by status code.
+         */
+        public Map<Integer, Long> getStatuses() {
+            return statuses;
+        }
+
+        /**
+         * Returns the number of requests that failed without a response, e.g. because the connection was reset.
+         *
+         * @return the number of errors.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * Returns the time until the response headers arrived. For downloads, this excludes reading the body.
+         *
+         * @return the latency histogram.
+         */
+        public Histogram.Snapshot getLatency() {
+            return latency;
+        }
+    }
+
+    /**
+     * The last download of one zone.
+     */
+    public static class ZoneStats {
+        private final String status;
+        private final long bytes;
+        private final double seconds;
+        private final long finishedAt;
+        private final String error;
+
+        ZoneStats(String status, long bytes, double seconds, long finishedAt, String error) {
+            this.status = status;
+            this.bytes = bytes;
+            this.seconds = seconds;
+            this.finishedAt = finishedAt;
+            this.error = error;
+        }
+
+        /**
+         * Returns the outcome of the download.
+         *
+         * @return the {@code ZoneDownloadResult.Status} name.
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the size of the downloaded file.
+         *
+         * @return the size in bytes, or 0 if the download failed.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        /**
+         * Returns the effective throughput of the download, i.e. the file size over the whole duration.
+         *
+         * @return the throughput in bytes per second.
+         */
+        public double getBytesPerSecond() {
+            return seconds > 0 ? bytes / seconds : 0;
+        }
+
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        /**
+         * Returns why the download failed.
+         *
+         * @return the error message, or null if the download did not fail.
+         */
+        public String getError() {
+            return error;
+        }
+    }
+}
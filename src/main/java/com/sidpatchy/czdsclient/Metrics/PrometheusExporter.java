@@ -0,0 +1,141 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Writes the metrics in the Prometheus text exposition format, e.g. for the textfile collector of the node exporter,
+ * replacing the file on every export. {@link #format(MetricsSnapshot)} can also serve the metrics over HTTP.
+ */
+public class PrometheusExporter implements MetricsExporter {
+    private final Path file;
+
+    /**
+     * Constructs a PrometheusExporter.
+     *
+     * @param file the file to write the metrics to, conventionally ending in ".prom"
+     */
+    public PrometheusExporter(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void export(MetricsSnapshot snapshot) throws IOException {
+        MetricsFile.write(file, format(snapshot).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Formats a snapshot in the Prometheus text exposition format.
+     *
+     * @param snapshot the metrics
+     * @return the formatted metrics.
+     */
+    public static String format(MetricsSnapshot snapshot) {
+        StringBuilder out = new StringBuilder();
+
+        header(out, "czds_requests_total", "counter", "Responses received, by method, route and HTTP status.");
+        for (MetricsSnapshot.RequestStats request : snapshot.getRequests()) {
+            for (Map.Entry<Integer, Long> status : request.getStatuses().entrySet()) {
+                sample(out, "czds_requests_total", labels(request) + ",status=\"" + status.getKey() + "\"", status.getValue());
+            }
+        }
+
+        header(out, "czds_request_errors_total", "counter", "Requests that failed without a response.");
+        for (MetricsSnapshot.RequestStats request : snapshot.getRequests()) {
+            sample(out, "czds_request_errors_total", labels(request), request.getErrors());
+        }
+
+        header(out, "czds_request_retries_total", "counter", "Requests that were retried.");
+        for (MetricsSnapshot.RequestStats request : snapshot.getRequests()) {
+            sample(out, "czds_request_retries_total", labels(request), request.getRetries());
+        }
+
+        header(out, "czds_request_duration_seconds", "histogram", "Time until the response headers arrived.");
+        for (MetricsSnapshot.RequestStats request : snapshot.getRequests()) {
+            Histogram.Snapshot latency = request.getLatency();
+            double[] bounds = latency.getBounds();
+            long[] buckets = latency.getBuckets();
+            for (int i = 0; i < bounds.length; i++) {
+                sample(out, "czds_request_duration_seconds_bucket", labels(request) + ",le=\"" + bounds[i] + "\"", buckets[i]);
+            }
+            sample(out, "czds_request_duration_seconds_bucket", labels(request) + ",le=\"+Inf\"", latency.getCount());
+            sample(out, "czds_request_duration_seconds_sum", labels(request), latency.getSum());
+            sample(out, "czds_request_duration_seconds_count", labels(request), latency.getCount());
+        }
+
+        header(out, "czds_logins_total", "counter", "Access tokens requested, by outcome.");
+        sample(out, "czds_logins_total", "outcome=\"success\"", snapshot.getLoginSuccesses());
+        sample(out, "czds_logins_total", "outcome=\"failure\"", snapshot.getLoginFailures());
+
+        header(out, "czds_downloads_in_flight", "gauge", "Zone downloads currently running.");
+        sample(out, "czds_downloads_in_flight", null, snapshot.getInFlightDownloads());
+
+        header(out, "czds_downloaded_bytes_total", "counter", "Bytes received by zone downloads.");
+        sample(out, "czds_downloaded_bytes_total", null, snapshot.getBytesDownloaded());
+
+        header(out, "czds_downloads_total", "counter", "Finished zone downloads, by outcome.");
+        for (Map.Entry<String, Long> downloads : snapshot.getDownloads().entrySet()) {
+            sample(out, "czds_downloads_total", "status=\"" + escape(downloads.getKey()) + "\"", downloads.getValue());
+        }
+
+        header(out, "czds_zone_download_bytes", "gauge", "Size of the last download of each zone.");
+        for (Map.Entry<String, MetricsSnapshot.ZoneStats> zone : snapshot.getZones().entrySet()) {
+            sample(out, "czds_zone_download_bytes", zoneLabels(zone), zone.getValue().getBytes());
+        }
+        header(out, "czds_zone_download_seconds", "gauge", "Duration of the last download of each zone.");
+        for (Map.Entry<String, MetricsSnapshot.ZoneStats> zone : snapshot.getZones().entrySet()) {
+            sample(out, "czds_zone_download_seconds", zoneLabels(zone), zone.getValue().getSeconds());
+        }
+        header(out, "czds_zone_download_bytes_per_second", "gauge", "Throughput of the last download of each zone.");
+        for (Map.Entry<String, MetricsSnapshot.ZoneStats> zone : snapshot.getZones().entrySet()) {
+            sample(out, "czds_zone_download_bytes_per_second", zoneLabels(zone), zone.getValue().getBytesPerSecond());
+        }
+        header(out, "czds_zone_download_timestamp_seconds", "gauge", "When the last download of each zone finished.");
+        for (Map.Entry<String, MetricsSnapshot.ZoneStats> zone : snapshot.getZones().entrySet()) {
+            sample(out, "czds_zone_download_timestamp_seconds", zoneLabels(zone), zone.getValue().getFinishedAt() / 1000.0);
+        }
+        header(out, "czds_zone_download_failed", "gauge", "Whether the last download of each zone failed.");
+        for (Map.Entry<String, MetricsSnapshot.ZoneStats> zone : snapshot.getZones().entrySet()) {
+            sample(out, "czds_zone_download_failed", zoneLabels(zone), zone.getValue().getError() != null ? 1 : 0);
+        }
+
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String labels(MetricsSnapshot.RequestStats request) {
+        return "method=\"" + escape(request.getMethod()) + "\",route=\"" + escape(request.getRoute()) + "\"";
+    }
+
+    private static String zoneLabels(Map.Entry<String, MetricsSnapshot.ZoneStats> zone) {
+        return "tld=\"" + escape(zone.getKey()) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
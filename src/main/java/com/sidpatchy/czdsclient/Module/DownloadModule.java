@@ -1,19 +1,61 @@
 package com.sidpatchy.czdsclient.Module;
 
+import com.sidpatchy.czdsclient.Archive.SnapshotStore;
+import com.sidpatchy.czdsclient.Bean.FileDownload;
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import com.sidpatchy.czdsclient.Bean.ZoneManifest;
+import com.sidpatchy.czdsclient.Bean.ZoneState;
+import com.sidpatchy.czdsclient.Cluster.ShardCoordinator;
+import com.sidpatchy.czdsclient.Export.ColumnarZoneWriter;
 import com.sidpatchy.czdsclient.IO.HttpConnectionManager;
-import com.sidpatchy.czdsclient.Main;
+import com.sidpatchy.czdsclient.IO.HttpStatusException;
+import com.sidpatchy.czdsclient.IO.ZoneLinkCache;
+import com.sidpatchy.czdsclient.IO.ZoneStateStore;
+import com.sidpatchy.czdsclient.Metrics.ClientMetrics;
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+import com.sidpatchy.czdsclient.Parser.ZoneRecordHandler;
+import com.sidpatchy.czdsclient.Pipeline.ZonePipeline;
+import com.sidpatchy.czdsclient.Pipeline.ZoneSink;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 public class DownloadModule {
     private final HttpConnectionManager connectionManager;
     private final String baseEndpoint;
+    private final ZoneLinkCache linkCache;
     private String downloadPath = "./Downloads/";
+    private int concurrency = 4;
+    private boolean incremental = false;
+    private boolean largestFirst = true;
+    private boolean probeSizes = false;
+    private File exportDirectory;
+    private ShardCoordinator shardCoordinator;
+    private SnapshotStore snapshotStore;
+    private ZoneStateStore stateStore;
 
     private Logger logger = LogManager.getLogger(DownloadModule.class);
 
@@ -26,20 +68,21 @@ public class DownloadModule {
     public DownloadModule(HttpConnectionManager connectionManager, String baseEndpoint) {
         this.connectionManager = connectionManager;
         this.baseEndpoint = baseEndpoint;
+        this.linkCache = new ZoneLinkCache(connectionManager.getUsername(), this::getApprovedZoneDownloadUrls);
     }
 
     /**
-     * Retrieves the download URLs for approved zone files.
+     * Retrieves the download URLs for approved zone files from the API. Lookups go through the {@link ZoneLinkCache}
+     * instead, which calls this at most once per TTL.
      *
      * @return A CompletableFuture that, when completed, will contain a List of URLs as Strings
      *         where the approved zone files can be downloaded.
      */
-    private CompletableFuture<List> getApprovedZoneDownloadUrls() {
+    private CompletableFuture<List<String>> getApprovedZoneDownloadUrls() {
         // Specify the endpoint for downloading the links
         String endpoint = "/czds/downloads/links";
 
-        // Call the get method with the expected response type, which in this case would likely be a String
-        return connectionManager.get(endpoint, List.class);
+        return connectionManager.get(endpoint, String[].class).thenApply(List::of);
     }
 
     /**
@@ -48,81 +91,741 @@ public class DownloadModule {
      * @return A CompletableFuture that, when completed, will contain a List of Strings representing the approved TLDs.
      */
     public CompletableFuture<List<String>> getApprovedTLDs() {
-        return getApprovedZoneDownloadUrls().thenApply(urls -> {
-            List<String> tlds = new ArrayList<>();
-            for (Object url : urls) {
-                String urlString = (String) url;
-                String[] parts = urlString.split("/");
-                String zone = parts[parts.length - 1].replace(".zone", "");
-                tlds.add(zone);
-            }
-            return tlds;
-        });
+        return linkCache.getLinks().thenApply(links -> new ArrayList<>(links.keySet()));
     }
 
     /**
-     * Download all approved zone files.
+     * Download all approved zone files, running up to {@link #getConcurrency()} downloads at once.
+     * A failed zone does not abort the rest of the batch; its error is reported in its result instead.
+     * <p>
+     * With a {@link #setShardCoordinator(ShardCoordinator) shard coordinator} set, the zones are split with the other
+     * workers and only the zones this worker downloaded have a result.
      *
-     * @return A list of downloaded files.
+     * @return A CompletableFuture with one result per approved zone, or per zone this worker downloaded when sharded.
      */
-    public CompletableFuture<List<File>> downloadAllApprovedZoneFiles() {
-        return getApprovedZoneDownloadUrls()
-                .thenApply(zones -> {
-                    logger.debug(zones.toString());
+    public CompletableFuture<List<ZoneDownloadResult>> downloadAllApprovedZoneFiles() {
+        return linkCache.getLinks()
+                .thenCompose(links -> {
+                    logger.debug(links.values().toString());
 
-                    if (zones.isEmpty()) {
+                    if (links.isEmpty()) {
                         throw new RuntimeException("You are not authorized to download any TLDs!");
                     }
 
-                    List<File> files = new ArrayList<>();
-                    for (Object zone : zones) {
-                        try {
-                            files.add(connectionManager.downloadFile(zone.toString(), downloadPath));
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
+                    return downloadZones(new ArrayList<>(links.keySet()), links);
+        });
+    }
+
+    /**
+     * Downloads a batch of zones, running up to {@link #getConcurrency()} downloads at once. Zones are given by TLD,
+     * e.g. "com", or by a glob pattern over the approved TLDs, where {@code *} matches any number of characters and
+     * {@code ?} a single one, e.g. "xn--*". The whole batch shares one login, one fetch of the zone links and one
+     * download scheduler. A failed zone, or one that is not approved, does not abort the rest of the batch; its error
+     * is reported in its result instead.
+     *
+     * <p>
+     * With a {@link #setShardCoordinator(ShardCoordinator) shard coordinator} set, the zones are split with the other
+     * workers and only the zones this worker downloaded have a result.
+     *
+     * @param zones The TLDs and patterns of the zones to download. Case and a leading dot are ignored.
+     * @return A CompletableFuture with one result per zone, in the order the zones were given, each zone only once;
+     *         when sharded, only the zones this worker downloaded.
+     */
+    public CompletableFuture<List<ZoneDownloadResult>> downloadZoneFiles(Collection<String> zones) {
+        return linkCache.getLinks()
+                .thenCompose(links -> {
+                    List<String> tlds = resolveZones(zones, links);
+                    for (String tld : tlds) {
+                        if (!links.containsKey(tld)) {
+                            // Stored links may predate a newly approved zone; a miss fetches them again, see ZoneLinkCache
+                            return linkCache.getUrl(tld)
+                                    .thenCompose(url -> linkCache.getLinks())
+                                    .thenCompose(fresh -> downloadZones(tlds, fresh));
                         }
                     }
-                    return files;
+                    return downloadZones(tlds, links);
+                });
+    }
+
+    /**
+     * Expands the glob patterns among the given zones against the approved TLDs and removes duplicates.
+     *
+     * @param zones The TLDs and patterns of the zones.
+     * @param links The download links of the approved zones, by TLD.
+     * @return The TLDs, in the order the zones were given.
+     */
+    private List<String> resolveZones(Collection<String> zones, Map<String, String> links) {
+        Set<String> tlds = new LinkedHashSet<>();
+        for (String zone : zones) {
+            String name = zone.trim().toLowerCase(Locale.ROOT);
+            if (name.startsWith(".")) {
+                name = name.substring(1);
+            }
+            if (name.isEmpty()) {
+                continue;
+            }
+
+            if (name.indexOf('*') < 0 && name.indexOf('?') < 0) {
+                tlds.add(name);
+                continue;
+            }
+            Pattern pattern = toPattern(name);
+            int before = tlds.size();
+            for (String tld : links.keySet()) {
+                if (pattern.matcher(tld).matches()) {
+                    tlds.add(tld);
+                }
+            }
+            if (tlds.size() == before) {
+                logger.warn("No approved zone matches '" + zone + "'");
+            }
+        }
+        return new ArrayList<>(tlds);
+    }
+
+    /**
+     * Converts a glob pattern with {@code *} and {@code ?} wildcards into a regular expression.
+     *
+     * @param glob The glob pattern.
+     * @return The compiled pattern.
+     */
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Downloads the given zones in parallel, bounded by the configured concurrency. Each of the workers picks
+     * the next pending zone once its current download finishes, so no thread is ever parked waiting for a slot.
+     * <p>
+     * Unless disabled with {@link #setLargestFirst(boolean)}, the largest zones are started first: a multi-gigabyte
+     * zone that starts last would otherwise keep the batch running long after every other zone is done, while small
+     * zones at the end fill the gaps left by the large ones.
+     *
+     * @param tlds The TLDs of the zones to download.
+     * @param links The download links of the approved zones, by TLD.
+     * @return A CompletableFuture with one result per TLD, in the same order as the TLDs.
+     */
+    private CompletableFuture<List<ZoneDownloadResult>> downloadZones(List<String> tlds, Map<String, String> links) {
+        CompletableFuture<List<ZoneDownloadResult>> batch;
+        if (!largestFirst || tlds.size() < 2) {
+            Integer[] order = new Integer[tlds.size()];
+            Arrays.setAll(order, i -> i);
+            batch = downloadZones(tlds, links, order);
+        } else {
+            batch = downloadZonesLargestFirst(tlds, links);
+        }
+        return snapshotStore == null ? batch : batch.thenApply(this::applyRetention);
+    }
+
+    private CompletableFuture<List<ZoneDownloadResult>> downloadZonesLargestFirst(List<String> tlds, Map<String, String> links) {
+        return getExpectedSizes(tlds, links).thenCompose(sizes -> {
+            Integer[] order = new Integer[tlds.size()];
+            Arrays.setAll(order, i -> i);
+            // Zones of unknown size go first, as they may well be the largest; the sort is stable otherwise
+            Arrays.sort(order, Comparator.comparingLong((Integer i) -> sizes[i] < 0 ? Long.MAX_VALUE : sizes[i]).reversed());
+            logger.debug("Downloading " + tlds.size() + " zones largest first, starting with " + tlds.get(order[0]));
+            return downloadZones(tlds, links, order);
+        });
+    }
+
+    private CompletableFuture<List<ZoneDownloadResult>> downloadZones(List<String> tlds, Map<String, String> links, Integer[] order) {
+        if (shardCoordinator != null) {
+            return downloadZonesSharded(tlds, links, order);
+        }
+
+        ZoneDownloadResult[] results = new ZoneDownloadResult[tlds.size()];
+        AtomicInteger next = new AtomicInteger();
+
+        int workers = Math.min(concurrency, tlds.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(downloadNext(tlds, links, order, results, next));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> List.of(results));
+    }
+
+    /**
+     * Downloads the next pending zone, then chains onto itself until no zones remain.
+     *
+     * @param tlds The TLDs of the zones to download.
+     * @param links The download links of the approved zones, by TLD.
+     * @param order The indexes of the TLDs in the order they are downloaded in.
+     * @param results The array results are written to, indexed like the TLDs.
+     * @param next The position in {@code order} of the next zone to download, shared between workers.
+     * @return A CompletableFuture that completes once this worker runs out of zones.
+     */
+    private CompletableFuture<Void> downloadNext(List<String> tlds, Map<String, String> links, Integer[] order,
+                                                 ZoneDownloadResult[] results, AtomicInteger next) {
+        int position = next.getAndIncrement();
+        if (position >= order.length) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        int index = order[position];
+        String tld = tlds.get(index);
+        return downloadZone(tld, links.get(tld))
+                .thenCompose(result -> {
+                    results[index] = result;
+                    return downloadNext(tlds, links, order, results, next);
+                });
+    }
+
+    /**
+     * Downloads the given zones together with the other workers sharing the directory of the shard coordinator. The
+     * local workers claim the zones in order and download the ones they win. Zones held by other workers go back into
+     * the queue and are looked at again after the poll interval, until they are done or their worker died and they can
+     * be taken over. A zone whose download fails is released, so another worker may try it.
+     *
+     * @param tlds The TLDs of the zones to download.
+     * @param links The download links of the approved zones, by TLD.
+     * @param order The indexes of the TLDs in the order they are claimed in.
+     * @return A CompletableFuture with the results of the zones downloaded by this worker, in the same order as the
+     *         TLDs. Zones downloaded by other workers have no result.
+     */
+    private CompletableFuture<List<ZoneDownloadResult>> downloadZonesSharded(List<String> tlds, Map<String, String> links, Integer[] order) {
+        ShardCoordinator.Round round;
+        try {
+            round = shardCoordinator.startRound();
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Queue<PendingZone> pending = new ConcurrentLinkedQueue<>();
+        for (int index : order) {
+            pending.add(new PendingZone(index, 0));
+        }
+        ZoneDownloadResult[] results = new ZoneDownloadResult[tlds.size()];
+
+        int workers = Math.min(concurrency, tlds.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(claimNext(tlds, links, round, pending, results));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<ZoneDownloadResult> own = new ArrayList<>();
+            for (ZoneDownloadResult result : results) {
+                if (result != null) {
+                    own.add(result);
+                }
+            }
+            logger.info("Downloaded " + own.size() + " of " + tlds.size() + " zones in this worker, the rest were downloaded by other workers");
+            return own;
         });
     }
 
+    /**
+     * Claims the next pending zone and downloads it if the claim succeeds, then chains onto itself until no zones
+     * remain. Waits if the next zone is one that another worker held and its poll interval has not passed yet.
+     *
+     * @param tlds The TLDs of the zones to download.
+     * @param links The download links of the approved zones, by TLD.
+     * @param round The round of leases.
+     * @param pending The zones still to claim, ordered by when they may be claimed; shared between local workers.
+     * @param results The array results are written to, indexed like the TLDs.
+     * @return A CompletableFuture that completes once this worker runs out of zones.
+     */
+    private CompletableFuture<Void> claimNext(List<String> tlds, Map<String, String> links, ShardCoordinator.Round round,
+                                              Queue<PendingZone> pending, ZoneDownloadResult[] results) {
+        PendingZone zone = pending.poll();
+        if (zone == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long waitNanos = zone.notBefore - System.nanoTime();
+        if (waitNanos > 0) {
+            return CompletableFuture.runAsync(() -> {
+                    }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS, connectionManager.getExecutor()))
+                    .thenCompose(v -> claim(zone, tlds, links, round, pending, results));
+        }
+        return claim(zone, tlds, links, round, pending, results);
+    }
+
+    private CompletableFuture<Void> claim(PendingZone zone, List<String> tlds, Map<String, String> links, ShardCoordinator.Round round,
+                                          Queue<PendingZone> pending, ZoneDownloadResult[] results) {
+        String tld = tlds.get(zone.index);
+        String url = links.get(tld);
+
+        ShardCoordinator.Claim claim;
+        try {
+            // Zones that are not approved fail right away, there is nothing to share
+            claim = url == null ? ShardCoordinator.Claim.CLAIMED : round.tryClaim(tld);
+        } catch (UncheckedIOException e) {
+            results[zone.index] = ZoneDownloadResult.failure(tld, url, e);
+            return claimNext(tlds, links, round, pending, results);
+        }
+
+        if (claim == ShardCoordinator.Claim.DONE) {
+            logger.debug("The '." + tld + "' zone was already downloaded by another worker");
+            return claimNext(tlds, links, round, pending, results);
+        }
+        if (claim == ShardCoordinator.Claim.HELD) {
+            pending.add(new PendingZone(zone.index, System.nanoTime() + round.getPollInterval().toNanos()));
+            return claimNext(tlds, links, round, pending, results);
+        }
+
+        return downloadZone(tld, url)
+                .thenCompose(result -> {
+                    if (url != null) {
+                        if (result.getStatus() == ZoneDownloadResult.Status.FAILED) {
+                            round.release(tld);
+                        } else {
+                            round.complete(tld);
+                        }
+                    }
+                    results[zone.index] = result;
+                    return claimNext(tlds, links, round, pending, results);
+                });
+    }
+
+    /**
+     * Estimates the size of each zone from the previous run: the size recorded in the state store, or else the size of
+     * the zone file left in the download directory. With {@link #setProbeSizes(boolean)} enabled, the server is asked
+     * for the size of the remaining zones with HEAD requests.
+     *
+     * @param tlds The TLDs of the zones.
+     * @param links The download links of the approved zones, by TLD.
+     * @return A CompletableFuture with the expected size of each zone in bytes, indexed like the TLDs; -1 if unknown.
+     *         It never completes exceptionally.
+     */
+    private CompletableFuture<long[]> getExpectedSizes(List<String> tlds, Map<String, String> links) {
+        ZoneStateStore store = getStateStore();
+        long[] sizes = new long[tlds.size()];
+        List<CompletableFuture<Void>> probes = new ArrayList<>();
+
+        for (int i = 0; i < tlds.size(); i++) {
+            String url = links.get(tlds.get(i));
+            ZoneState state = store.get(tlds.get(i));
+            File file = url == null ? null : new File(downloadPath, new File(URI.create(url).getPath()).getName() + ".gz");
+            if (state != null && state.getSize() > 0) {
+                sizes[i] = state.getSize();
+            } else if (file != null && file.isFile()) {
+                sizes[i] = file.length();
+            } else {
+                sizes[i] = -1;
+                if (probeSizes && url != null) {
+                    int index = i;
+                    probes.add(connectionManager.getContentLength(url)
+                            .handle((size, e) -> {
+                                sizes[index] = e == null ? size : -1;
+                                return null;
+                            }));
+                }
+            }
+        }
+
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0])).thenApply(v -> sizes);
+    }
+
+    /**
+     * Downloads a single zone, capturing any failure in the returned result.
+     *
+     * @param tld The TLD of the zone.
+     * @param url The zone file URL to download, or null if the zone is not approved.
+     * @return A CompletableFuture with the result of the download. It never completes exceptionally.
+     */
+    private CompletableFuture<ZoneDownloadResult> downloadZone(String tld, String url) {
+        if (url == null) {
+            return CompletableFuture.completedFuture(ZoneDownloadResult.failure(tld, null,
+                    new RuntimeException("You are not authorized to download the '." + tld + "' TLD!")));
+        }
+        return fetchZone(tld, url)
+                .handle((download, e) -> {
+                    if (e != null) {
+                        logger.error("Failed to download the '." + tld + "' zone", e);
+                        return ZoneDownloadResult.failure(tld, url, e instanceof CompletionException ? e.getCause() : e);
+                    }
+                    return download.isNotModified()
+                            ? ZoneDownloadResult.notModified(tld, url, download.getFile())
+                            : ZoneDownloadResult.success(tld, url, download.getFile());
+                })
+                .thenCompose(this::archive)
+                .thenCompose(this::export);
+    }
+
+    /**
+     * Adds a freshly downloaded zone to the snapshot store, if one is set, as the snapshot of the current UTC day. A
+     * zone that cannot be archived is still reported as downloaded, as the zone file itself is fine.
+     *
+     * @param result The result of the download.
+     * @return A CompletableFuture with the same result, completed once the zone is archived.
+     */
+    private CompletableFuture<ZoneDownloadResult> archive(ZoneDownloadResult result) {
+        SnapshotStore store = snapshotStore;
+        if (store == null || result.getStatus() != ZoneDownloadResult.Status.DOWNLOADED) {
+            return CompletableFuture.completedFuture(result);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                store.add(result.getTld(), LocalDate.now(ZoneOffset.UTC), result.getFile());
+            } catch (IOException e) {
+                logger.error("Failed to archive the '." + result.getTld() + "' zone", e);
+            }
+            return result;
+        }, connectionManager.getExecutor());
+    }
+
+    /**
+     * Writes a freshly downloaded zone to the export directory, if one is set, in the binary columnar format of
+     * {@link ColumnarZoneWriter}. As with archiving, a zone that cannot be exported is still reported as downloaded.
+     *
+     * @param result The result of the download.
+     * @return A CompletableFuture with the same result, completed once the zone is exported.
+     */
+    private CompletableFuture<ZoneDownloadResult> export(ZoneDownloadResult result) {
+        File directory = exportDirectory;
+        if (directory == null || result.getStatus() != ZoneDownloadResult.Status.DOWNLOADED) {
+            return CompletableFuture.completedFuture(result);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                long records = ColumnarZoneWriter.export(result.getFile(), new File(directory, result.getTld() + ".zcol"));
+                logger.debug("Exported " + records + " records of the '." + result.getTld() + "' zone");
+            } catch (IOException e) {
+                logger.error("Failed to export the '." + result.getTld() + "' zone", e);
+            }
+            return result;
+        }, connectionManager.getExecutor());
+    }
+
+    /**
+     * Prunes and compacts the snapshot store after a batch, if it has a retention period.
+     *
+     * @param results The results of the batch, returned as they are.
+     * @return The results.
+     */
+    private List<ZoneDownloadResult> applyRetention(List<ZoneDownloadResult> results) {
+        try {
+            snapshotStore.applyRetention(LocalDate.now(ZoneOffset.UTC));
+        } catch (IOException e) {
+            logger.error("Failed to prune the snapshot store", e);
+        }
+        return results;
+    }
+
+    /**
+     * Downloads a single zone and records it in the client's metrics.
+     *
+     * @param tld The TLD of the zone.
+     * @param url The zone file URL to download.
+     * @return A CompletableFuture with the outcome of the download.
+     */
+    private CompletableFuture<FileDownload> fetchZone(String tld, String url) {
+        ClientMetrics metrics = connectionManager.getMetrics();
+        long startNanos = System.nanoTime();
+        metrics.downloadStarted();
+
+        return startDownload(tld, url)
+                .whenComplete((download, e) -> {
+                    long nanos = System.nanoTime() - startNanos;
+                    if (e != null) {
+                        metrics.downloadFinished(tld, ZoneDownloadResult.Status.FAILED, 0, nanos,
+                                e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    } else if (download.isNotModified()) {
+                        metrics.downloadFinished(tld, ZoneDownloadResult.Status.NOT_MODIFIED, 0, nanos, null);
+                    } else {
+                        metrics.downloadFinished(tld, ZoneDownloadResult.Status.DOWNLOADED, download.getFile().length(), nanos, null);
+                    }
+                });
+    }
+
+    /**
+     * Starts the download of a single zone. In incremental mode the download is conditional on the zone having
+     * changed since the last run, and the state store is updated once a new copy has been written.
+     *
+     * @param tld The TLD of the zone.
+     * @param url The zone file URL to download.
+     * @return A CompletableFuture with the outcome of the download.
+     */
+    private CompletableFuture<FileDownload> startDownload(String tld, String url) {
+        if (!incremental) {
+            return connectionManager.downloadFileAsync(url, downloadPath, null)
+                    .whenComplete((download, e) -> invalidateLinksIfRevoked(e));
+        }
+
+        ZoneStateStore store = getStateStore();
+        return connectionManager.downloadFileAsync(url, downloadPath, store.get(tld))
+                .whenComplete((download, e) -> invalidateLinksIfRevoked(e))
+                .thenApply(download -> {
+                    if (!download.isNotModified()) {
+                        store.put(tld, download.getState());
+                    }
+                    return download;
+                });
+    }
+
+    /**
+     * Discards the cached links if a download was refused because access to the zone was revoked or expired since
+     * the links were fetched.
+     *
+     * @param e The error the download failed with, or null if it succeeded.
+     */
+    private void invalidateLinksIfRevoked(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof HttpStatusException) {
+            int status = ((HttpStatusException) cause).getStatusCode();
+            if (status == HttpURLConnection.HTTP_FORBIDDEN || status == HttpURLConnection.HTTP_NOT_FOUND) {
+                linkCache.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Returns the state store for the current download path, opening it on first use.
+     *
+     * @return The zone state store.
+     */
+    private synchronized ZoneStateStore getStateStore() {
+        if (stateStore == null) {
+            stateStore = new ZoneStateStore(downloadPath);
+        }
+        return stateStore;
+    }
+
     /**
      * Download a specific zone file by its TLD asynchronously.
      * @param tld The TLD for the zone file to download.
      * @return A CompletableFuture with the downloaded file.
      */
     public CompletableFuture<File> downloadZoneFile(String tld) {
-        return getApprovedZoneDownloadUrls().thenApply(zones -> {
-            logger.debug(zones.toString());
-
-            File file = null;
-            boolean foundMatch = false;
-            for (String zone : (List<String>) zones) {
-                String[] parts = zone.split("/");
-                if (parts[parts.length - 1].contains(tld + ".zone")) {
-                    try {
-                        file = connectionManager.downloadFile(zone, downloadPath);
-                        foundMatch = true;
-                        break;
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                }
+        return getZoneDownloadUrl(tld).thenCompose(url -> fetchZone(tld, url).thenApply(FileDownload::getFile));
+    }
+
+    /**
+     * Verifies a previously downloaded zone file against its manifest, hashing it again only if it was modified since
+     * the manifest was written. See {@link com.sidpatchy.czdsclient.IO.FileDownloader#verify(File)}.
+     *
+     * @param tld The TLD of the zone.
+     * @return A CompletableFuture with the manifest of the zone file. It fails if the file is missing or, with gzip
+     *         validation enabled, corrupt.
+     */
+    public CompletableFuture<ZoneManifest> verifyZoneFile(String tld) {
+        File file = new File(downloadPath, tld.toLowerCase(Locale.ROOT) + ".zone.gz");
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return connectionManager.getFileDownloader().verify(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }, connectionManager.getExecutor());
+    }
+
+    /**
+     * Streams a zone straight from the CZDS API into a handler, record by record, without writing it to disk.
+     *
+     * @param tld The TLD of the zone to stream.
+     * @param handler The handler to receive the records. It is called on a thread of the client's executor.
+     * @return A CompletableFuture with the number of records parsed.
+     */
+    public CompletableFuture<Long> streamZoneRecords(String tld, ZoneRecordHandler handler) {
+        return getZoneDownloadUrl(tld)
+                .thenCompose(connectionManager::openStream)
+                .thenApplyAsync(inputStream -> {
+                    try (ZoneFileParser parser = new ZoneFileParser(inputStream)) {
+                        return parser.parse(handler);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, connectionManager.getExecutor());
+    }
 
-            if (!foundMatch) {
+    /**
+     * Downloads a zone once and streams it into several sinks concurrently, e.g. a {@code FileSink} to keep the file,
+     * a {@code DigestSink} to hash it and a {@code RecordParserSink} to process its records, all without re-reading the
+     * zone from disk.
+     * <p>
+     * Every sink occupies a thread of the client's executor until the whole zone is consumed. If the client was built
+     * with a fixed-size executor, it needs at least one thread per sink for each zone processed at the same time;
+     * otherwise the sinks that could not start hold up the download and the pipeline never completes.
+     *
+     * @param tld The TLD of the zone to process.
+     * @param sinks The sinks to receive the zone. Their results can be read from the sinks once the future completes.
+     * @return A CompletableFuture that completes when every sink has consumed the zone. It fails with an
+     *         IllegalStateException if the client's executor is a {@link java.util.concurrent.ThreadPoolExecutor} with
+     *         fewer threads than there are sinks.
+     */
+    public CompletableFuture<Void> processZone(String tld, ZoneSink... sinks) {
+        ZonePipeline pipeline = new ZonePipeline(connectionManager.getExecutor());
+        for (ZoneSink sink : sinks) {
+            pipeline.addSink(sink);
+        }
+        return processZone(tld, pipeline);
+    }
+
+    /**
+     * Downloads a zone once and streams it through a configured pipeline.
+     *
+     * @param tld The TLD of the zone to process.
+     * @param pipeline The pipeline to run.
+     * @return A CompletableFuture that completes when every sink of the pipeline has consumed the zone.
+     */
+    public CompletableFuture<Void> processZone(String tld, ZonePipeline pipeline) {
+        return getZoneDownloadUrl(tld)
+                .thenCompose(connectionManager::openStream)
+                .thenCompose(pipeline::run);
+    }
+
+    /**
+     * Looks up the download URL of a single zone.
+     *
+     * @param tld The TLD of the zone.
+     * @return A CompletableFuture with the download URL. It fails if the zone is not approved.
+     */
+    private CompletableFuture<String> getZoneDownloadUrl(String tld) {
+        return linkCache.getUrl(tld).thenApply(url -> {
+            if (url == null) {
                 throw new RuntimeException("You are not authorized to download the '." + tld + "' TLD!");
             }
-
-            return file;
+            return url;
         });
     }
 
+    /**
+     * Returns the cache of zone download links, e.g. to change its TTL or keep it in a file across runs.
+     *
+     * @return the zone link cache.
+     */
+    public ZoneLinkCache getLinkCache() {
+        return linkCache;
+    }
+
     public String getDownloadPath() {
         return downloadPath;
     }
 
-    public void setDownloadPath(String downloadPath) {
+    public synchronized void setDownloadPath(String downloadPath) {
         this.downloadPath = downloadPath;
+        this.stateStore = null;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the maximum number of zone files downloaded at once by batch downloads.
+     *
+     * @param concurrency the maximum number of parallel downloads, must be at least 1
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.concurrency = concurrency;
+    }
+
+    public boolean isLargestFirst() {
+        return largestFirst;
+    }
+
+    /**
+     * Sets whether batch downloads start with the largest zones, which minimizes the time until the whole batch is
+     * done. Sizes are taken from the previous run, see {@link #setProbeSizes(boolean)} for zones never downloaded
+     * before. Enabled by default; when disabled, zones are downloaded in the order they were given.
+     *
+     * @param largestFirst true to download the largest zones first
+     */
+    public void setLargestFirst(boolean largestFirst) {
+        this.largestFirst = largestFirst;
+    }
+
+    public boolean isProbeSizes() {
+        return probeSizes;
+    }
+
+    /**
+     * Sets whether batch downloads send a HEAD request for every zone whose size is not known from a previous run, so
+     * it can be scheduled by size as well. Disabled by default, as it costs an extra request per new zone.
+     *
+     * @param probeSizes true to ask the server for the size of unknown zones
+     */
+    public void setProbeSizes(boolean probeSizes) {
+        this.probeSizes = probeSizes;
+    }
+
+    public ShardCoordinator getShardCoordinator() {
+        return shardCoordinator;
+    }
+
+    /**
+     * Enables sharded batch downloads: several workers, e.g. on different hosts, that share the directory of the
+     * coordinator split the zones of a batch between them, and the zones of a worker that dies are taken over by the
+     * others. Each batch then only returns the results of the zones this worker downloaded.
+     *
+     * @param shardCoordinator the coordinator shared with the other workers, or null to download every zone locally
+     */
+    public void setShardCoordinator(ShardCoordinator shardCoordinator) {
+        this.shardCoordinator = shardCoordinator;
+    }
+
+    public SnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * Keeps a dated, deduplicated copy of every zone downloaded by a batch in a snapshot store, so older days remain
+     * available after the zone file is overwritten by the next download. Zones that did not change are not archived
+     * again; {@link SnapshotStore#getSnapshot} finds the last copy before a day.
+     *
+     * @param snapshotStore the store to archive zones in, or null to not archive them
+     */
+    public void setSnapshotStore(SnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    public File getExportDirectory() {
+        return exportDirectory;
+    }
+
+    /**
+     * Exports every zone downloaded by a batch to {@code <tld>.zcol} in a directory, in a binary columnar format that
+     * {@link com.sidpatchy.czdsclient.Export.ColumnarZoneReader} queries without parsing the zone file. Zones that did
+     * not change are not exported again.
+     *
+     * @param exportDirectory the directory to export zones to, or null to not export them
+     */
+    public void setExportDirectory(File exportDirectory) {
+        this.exportDirectory = exportDirectory;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Enables or disables incremental sync. When enabled, the ETag, Last-Modified, size and SHA-256 of every
+     * downloaded zone are kept in a state file in the download directory, and zones that are unchanged since the
+     * last download are skipped.
+     *
+     * @param incremental true to skip unchanged zones
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * A zone waiting to be claimed in a sharded batch.
+     */
+    private static final class PendingZone {
+        private final int index;
+        private final long notBefore;
+
+        private PendingZone(int index, long notBefore) {
+            this.index = index;
+            this.notBefore = notBefore;
+        }
     }
 }
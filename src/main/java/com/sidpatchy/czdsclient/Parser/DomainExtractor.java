@@ -0,0 +1,75 @@
+package com.sidpatchy.czdsclient.Parser;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Extracts the registered domains of a zone, i.e. the owners of its NS records other than the zone apex.
+ * <p>
+ * CZDS zone files keep the records of each owner together, so repeated owners are dropped by comparing with the
+ * previous owner, without holding the set of domains in memory.
+ */
+public class DomainExtractor {
+    private DomainExtractor() {
+    }
+
+    /**
+     * Reads the remaining records of a parser and passes each registered domain to the handler, without allocating
+     * per domain.
+     *
+     * @param parser the parser of the zone file
+     * @param handler the handler to receive the domains
+     * @return the number of domains found.
+     * @throws IOException If the zone file cannot be read or is malformed, or the handler fails.
+     */
+    public static long extract(ZoneFileParser parser, DomainHandler handler) throws IOException {
+        byte[] apex = null;
+        byte[] domain = new byte[256];
+        int domainLength = -1;
+        long count = 0;
+
+        while (parser.next()) {
+            ZoneRecord record = parser.getRecord();
+            if (record.getType() == "soa" && apex == null) {
+                apex = Arrays.copyOfRange(record.getOwnerBuffer(), record.getOwnerOffset(), record.getOwnerOffset() + record.getOwnerLength());
+            }
+            if (record.getType() != "ns" || (apex != null && record.ownerEquals(apex))) {
+                continue;
+            }
+
+            byte[] owner = record.getOwnerBuffer();
+            int offset = record.getOwnerOffset();
+            int length = record.getOwnerLength();
+            if (length > 1 && owner[offset + length - 1] == '.') {
+                length--;
+            }
+            if (length == domainLength && matches(owner, offset, domain, length)) {
+                continue;
+            }
+
+            if (domain.length < length) {
+                domain = new byte[length * 2];
+            }
+            for (int i = 0; i < length; i++) {
+                domain[i] = ZoneRecord.toLower(owner[offset + i]);
+            }
+            domainLength = length;
+
+            handler.onDomain(domain, 0, length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Compares a name with the lower-case previous domain, ignoring case.
+     */
+    private static boolean matches(byte[] name, int offset, byte[] domain, int length) {
+        for (int i = 0; i < length; i++) {
+            if (ZoneRecord.toLower(name[offset + i]) != domain[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
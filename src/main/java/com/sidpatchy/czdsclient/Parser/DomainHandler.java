@@ -0,0 +1,20 @@
+package com.sidpatchy.czdsclient.Parser;
+
+import java.io.IOException;
+
+/**
+ * Receives the domain names found by {@link DomainExtractor}.
+ */
+@FunctionalInterface
+public interface DomainHandler {
+    /**
+     * Called once for every domain. The name is lower case ASCII without the trailing dot and is only valid during
+     * the call.
+     *
+     * @param buffer the buffer holding the name
+     * @param offset the offset of the name in the buffer
+     * @param length the length of the name
+     * @throws IOException If the domain cannot be handled; this stops the extraction.
+     */
+    void onDomain(byte[] buffer, int offset, int length) throws IOException;
+}
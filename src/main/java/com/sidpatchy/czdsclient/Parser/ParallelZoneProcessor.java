@@ -0,0 +1,342 @@
+package com.sidpatchy.czdsclient.Parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Processes a zone file on several cores.
+ * <p>
+ * Gzip cannot be inflated in parallel, and a single {@link ZoneFileParser} inflates and parses on one thread, which
+ * caps processing at the speed of one core. This processor splits the work in two stages: the calling thread only
+ * inflates, cutting the inflated text into large blocks on record boundaries, while worker threads parse the blocks in
+ * place and pass the records to the caller's accumulators. Inflating thus overlaps with parsing, and parsing scales
+ * with the number of workers.
+ * <p>
+ * Work is expressed like {@link java.util.stream.Stream#collect(Supplier, BiConsumer, BiConsumer)}: every worker
+ * accumulates into its own container, so no locking is needed, and the containers are combined at the end. Blocks are
+ * never split within a line or between a line and the lines that inherit its owner. {@code $TTL} directives only apply
+ * to the block they appear in; CZDS zone files give every record an explicit TTL.
+ * <p>
+ * With a parallelism of 1 the records are delivered in file order on a single worker, which still moves parsing off the
+ * inflating thread.
+ */
+public class ParallelZoneProcessor {
+    private static final Block END = new Block(new byte[0], 0, -1);
+    private static final long POLL_MILLIS = 100;
+    private static final ThreadFactory WORKER_THREADS = Thread.ofPlatform().name("czds-zone-worker-", 0).daemon().factory();
+
+    private final int parallelism;
+    private final Executor executor;
+    private int blockSize = 4 * 1024 * 1024;
+    private int queueCapacity;
+
+    /**
+     * Constructs a ParallelZoneProcessor with one worker per available processor.
+     */
+    public ParallelZoneProcessor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a ParallelZoneProcessor running its workers on dedicated threads.
+     *
+     * @param parallelism the number of worker threads
+     */
+    public ParallelZoneProcessor(int parallelism) {
+        this(parallelism, runnable -> WORKER_THREADS.newThread(runnable).start());
+    }
+
+    /**
+     * Constructs a ParallelZoneProcessor running its workers on the given executor. Every worker occupies a thread of
+     * the executor until processing completes.
+     *
+     * @param parallelism the number of workers
+     * @param executor the executor to run the workers on
+     */
+    public ParallelZoneProcessor(int parallelism, Executor executor) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.queueCapacity = parallelism * 2;
+    }
+
+    /**
+     * Processes a zone file on disk, such as one written by {@code DownloadModule}.
+     *
+     * @see #collect(InputStream, Supplier, BiConsumer, BinaryOperator)
+     */
+    public <A> A collect(File file, Supplier<A> supplier, BiConsumer<A, ZoneRecord> accumulator,
+                         BinaryOperator<A> combiner) throws IOException {
+        return collect(new FileInputStream(file), supplier, accumulator, combiner);
+    }
+
+    /**
+     * Processes a zone file, accumulating its records into one container per worker and combining the containers.
+     * Inflating runs on the calling thread, which blocks until processing completes. The stream is closed afterwards.
+     *
+     * @param inputStream the zone file, compressed or not
+     * @param supplier creates the container of a worker
+     * @param accumulator adds a record to a container; the record is only valid during the call, see
+     *                    {@link ZoneRecord#copy()}
+     * @param combiner merges two containers
+     * @return the combined container.
+     * @throws IOException If the stream cannot be read or the zone file is malformed.
+     */
+    public <A> A collect(InputStream inputStream, Supplier<A> supplier, BiConsumer<A, ZoneRecord> accumulator,
+                         BinaryOperator<A> combiner) throws IOException {
+        BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(queueCapacity + parallelism + 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<CompletableFuture<A>> workers = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(CompletableFuture.supplyAsync(() -> work(blocks, freeBuffers, failure, supplier, accumulator), executor));
+        }
+
+        try (InputStream inflated = ZoneFileParser.decompress(inputStream)) {
+            split(inflated, blocks, freeBuffers, failure);
+            for (int i = 0; i < parallelism; i++) {
+                if (!offer(blocks, END, failure)) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+
+        A result = null;
+        for (CompletableFuture<A> worker : workers) {
+            try {
+                A container = worker.join();
+                result = result == null ? container : combiner.apply(result, container);
+            } catch (CompletionException e) {
+                failure.compareAndSet(null, e.getCause());
+            }
+        }
+
+        Throwable cause = failure.get();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) cause).getCause();
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause != null) {
+            throw new IOException("Processing of the zone file was interrupted", cause);
+        }
+        return result;
+    }
+
+    /**
+     * Passes every record to a handler, which is called concurrently from all workers and must be thread-safe.
+     *
+     * @param inputStream the zone file, compressed or not
+     * @param handler the handler to receive the records
+     * @return the number of records processed.
+     * @throws IOException If the stream cannot be read or the zone file is malformed.
+     */
+    public long forEach(InputStream inputStream, ZoneRecordHandler handler) throws IOException {
+        return collect(inputStream, () -> new long[1], (count, record) -> {
+            handler.onRecord(record);
+            count[0]++;
+        }, (a, b) -> {
+            a[0] += b[0];
+            return a;
+        })[0];
+    }
+
+    /**
+     * Counts the records of a zone file.
+     *
+     * @param inputStream the zone file, compressed or not
+     * @return the number of records.
+     * @throws IOException If the stream cannot be read or the zone file is malformed.
+     */
+    public long count(InputStream inputStream) throws IOException {
+        return forEach(inputStream, record -> {
+        });
+    }
+
+    /**
+     * Reads the inflated zone into blocks that end on a record boundary and queues them for the workers. Stops reading
+     * as soon as a worker fails, rather than inflating the rest of the zone for nothing.
+     */
+    private void split(InputStream inputStream, BlockingQueue<Block> blocks, BlockingQueue<byte[]> freeBuffers,
+                       AtomicReference<Throwable> failure) throws IOException, InterruptedException {
+        byte[] buffer = takeBuffer(freeBuffers, 0);
+        int limit = 0;
+        long offset = 0;
+
+        while (true) {
+            limit += inputStream.readNBytes(buffer, limit, buffer.length - limit);
+            if (limit < buffer.length) {
+                // readNBytes only returns less than requested at the end of the stream
+                if (limit > 0) {
+                    offer(blocks, new Block(buffer, limit, offset), failure);
+                }
+                return;
+            }
+
+            int cut = findCut(buffer, limit);
+            if (cut < 0) {
+                // A single record larger than the block; grow the block until it fits
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, limit);
+                buffer = grown;
+                continue;
+            }
+
+            byte[] next = takeBuffer(freeBuffers, limit - cut);
+            System.arraycopy(buffer, cut, next, 0, limit - cut);
+            if (!offer(blocks, new Block(buffer, cut, offset), failure)) {
+                return;
+            }
+            offset += cut;
+            limit -= cut;
+            buffer = next;
+        }
+    }
+
+    /**
+     * Finds the last line break that is followed by a line with its own owner, so no record is separated from the
+     * owner it inherits, even across blank lines and comments.
+     *
+     * @return the offset just after the line break, or -1 if the buffer holds no such line break.
+     */
+    private static int findCut(byte[] buffer, int limit) {
+        for (int i = limit - 2; i >= 0; i--) {
+            if (buffer[i] == '\n' && startsOwner(buffer[i + 1])) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a line starting with the given byte names its own owner, rather than being blank, a comment or a
+     * record that inherits the owner of an earlier line.
+     */
+    private static boolean startsOwner(byte b) {
+        return b != ' ' && b != '\t' && b != '\r' && b != '\n' && b != ';';
+    }
+
+    private <A> A work(BlockingQueue<Block> blocks, BlockingQueue<byte[]> freeBuffers, AtomicReference<Throwable> failure,
+                       Supplier<A> supplier, BiConsumer<A, ZoneRecord> accumulator) {
+        try {
+            A container = supplier.get();
+            while (failure.get() == null) {
+                Block block = blocks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (block == END) {
+                    break;
+                } else if (block == null) {
+                    continue;
+                }
+
+                ZoneFileParser parser = new ZoneFileParser(block.data, block.length);
+                try {
+                    while (parser.next()) {
+                        accumulator.accept(container, parser.getRecord());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(new IOException(e.getMessage() + " of the block at inflated offset "
+                            + block.offset, e));
+                }
+                freeBuffers.offer(block.data);
+            }
+            return container;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    private byte[] takeBuffer(BlockingQueue<byte[]> freeBuffers, int minimumLength) {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null || buffer.length <= minimumLength) {
+            buffer = new byte[Math.max(blockSize, minimumLength * 2)];
+        }
+        return buffer;
+    }
+
+    /**
+     * Waits until the block fits in the queue, giving up if processing failed meanwhile.
+     *
+     * @return true if the block was queued, false if processing failed.
+     */
+    private static boolean offer(BlockingQueue<Block> blocks, Block block, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        while (failure.get() == null) {
+            if (blocks.offer(block, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the size of the blocks handed to the workers. Larger blocks mean less coordination but more memory, about
+     * {@code blockSize * (queueCapacity + parallelism)}. Defaults to 4 MiB.
+     *
+     * @param blockSize the block size in bytes
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1024) {
+            throw new IllegalArgumentException("Block size must be at least 1 KiB");
+        }
+        this.blockSize = blockSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets how many inflated blocks may wait for a worker. Defaults to twice the parallelism.
+     *
+     * @param queueCapacity the number of blocks
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * An inflated block of complete lines.
+     */
+    private record Block(byte[] data, int length, long offset) {
+    }
+}
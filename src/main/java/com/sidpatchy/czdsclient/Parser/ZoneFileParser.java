@@ -0,0 +1,393 @@
+package com.sidpatchy.czdsclient.Parser;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the records of a zone file in master file format, as published by CZDS, in constant memory.
+ * <p>
+ * The input may be gzip-compressed (as downloaded) or plain text; compression is detected from the first bytes, so a
+ * downloaded {@code .gz}, a live HTTP response or an already inflated file can all be read directly without a
+ * temporary decompressed copy. Lines are split on the raw bytes and every record is delivered through one reused
+ * {@link ZoneRecord}, so no Strings are allocated unless the caller asks for them.
+ * <p>
+ * The parser supports the subset of the master file format CZDS uses: one record per line, optional TTL and class in
+ * either order, {@code ;} comments, {@code $TTL} defaults and lines that inherit the previous owner by starting with
+ * whitespace. Multi-line records in parentheses and relative names under {@code $ORIGIN} are not expanded.
+ */
+public class ZoneFileParser implements Closeable, Iterable<ZoneRecord> {
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] DIRECTIVE_TTL = "$ttl".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] CLASSES = {
+            "in".getBytes(StandardCharsets.US_ASCII), "ch".getBytes(StandardCharsets.US_ASCII),
+            "hs".getBytes(StandardCharsets.US_ASCII), "cs".getBytes(StandardCharsets.US_ASCII)
+    };
+    private static final String[] CLASS_NAMES = {"in", "ch", "hs", "cs"};
+
+    private final InputStream inputStream;
+    private final ZoneRecord record = new ZoneRecord();
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+    private long lineNumber;
+    private long defaultTtl = -1;
+    private String lastClass = CLASS_NAMES[0];
+    private byte[] lastOwner = new byte[256];
+    private int lastOwnerLength = -1;
+
+    /**
+     * Constructs a parser reading the given stream, inflating it first if it is gzip-compressed.
+     *
+     * @param inputStream the zone file, compressed or not
+     * @throws IOException If the start of the stream cannot be read.
+     */
+    public ZoneFileParser(InputStream inputStream) throws IOException {
+        this.inputStream = decompress(inputStream);
+        this.buffer = new byte[INITIAL_BUFFER_SIZE];
+    }
+
+    /**
+     * Constructs a parser over an already inflated block of a zone file, parsing it in place without copying.
+     *
+     * @param block the block, which must hold complete lines
+     * @param length the number of bytes of the block to parse
+     */
+    ZoneFileParser(byte[] block, int length) {
+        this.inputStream = InputStream.nullInputStream();
+        this.buffer = block;
+        this.limit = length;
+        this.endOfStream = true;
+    }
+
+    /**
+     * Opens a zone file on disk, such as one written by {@code DownloadModule}.
+     *
+     * @param file the zone file, compressed or not
+     * @return the parser.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static ZoneFileParser open(File file) throws IOException {
+        return new ZoneFileParser(new FileInputStream(file));
+    }
+
+    /**
+     * Wraps a stream in a GZIPInputStream if it starts with the gzip magic bytes.
+     *
+     * @param inputStream the stream to inspect
+     * @return a stream of the uncompressed zone file.
+     * @throws IOException If the start of the stream cannot be read.
+     */
+    public static InputStream decompress(InputStream inputStream) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(inputStream, GZIP_BUFFER_SIZE);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered, GZIP_BUFFER_SIZE);
+        }
+        return buffered;
+    }
+
+    /**
+     * Parses every remaining record, passing each to the handler.
+     *
+     * @param handler the handler to receive the records
+     * @return the number of records parsed.
+     * @throws IOException If the stream cannot be read or a line is malformed.
+     */
+    public long parse(ZoneRecordHandler handler) throws IOException {
+        long count = 0;
+        while (next()) {
+            handler.onRecord(record);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return true if a record was read into {@link #getRecord()}, false at the end of the zone file.
+     * @throws IOException If the stream cannot be read or a line is malformed.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int lineEnd = indexOf((byte) '\n', position, limit);
+            if (lineEnd < 0) {
+                if (endOfStream) {
+                    if (position >= limit) {
+                        return false;
+                    }
+                    lineEnd = limit; // Last line without a trailing newline
+                } else {
+                    fill();
+                    continue;
+                }
+            }
+
+            int lineStart = position;
+            position = Math.min(lineEnd + 1, limit);
+            lineNumber++;
+            if (parseLine(lineStart, lineEnd)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the current record. The same instance is returned, and overwritten, for every record.
+     *
+     * @return the current record.
+     */
+    public ZoneRecord getRecord() {
+        return record;
+    }
+
+    /**
+     * Returns the number of the line the current record was read from.
+     *
+     * @return the line number, starting at 1.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns an iterator over the remaining records. Like {@link #getRecord()}, it returns the same reused instance
+     * for every record. I/O errors are rethrown as UncheckedIOException.
+     *
+     * @return the iterator.
+     */
+    @Override
+    public Iterator<ZoneRecord> iterator() {
+        return new Iterator<>() {
+            private boolean advanced;
+            private boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (!advanced) {
+                    try {
+                        hasNext = ZoneFileParser.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    advanced = true;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public ZoneRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                advanced = false;
+                return record;
+            }
+        };
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, grows it if a single line does not fit, and reads more.
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+        }
+
+        int read = inputStream.read(buffer, limit, buffer.length - limit);
+        if (read == -1) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * Parses a single line into the record.
+     *
+     * @param start The first byte of the line.
+     * @param end The end of the line, exclusive, excluding the newline.
+     * @return true if the line held a record, false for blank lines, comments and directives.
+     * @throws IOException If the line is malformed.
+     */
+    private boolean parseLine(int start, int end) throws IOException {
+        end = stripComment(start, end);
+        while (end > start && isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+        if (end == start) {
+            return false;
+        }
+
+        int p = start;
+        if (buffer[p] == '$') {
+            parseDirective(p, end);
+            return false;
+        }
+
+        // Owner, or the previous owner if the line starts with whitespace
+        byte[] ownerBuffer;
+        int ownerOffset;
+        int ownerLength;
+        if (isWhitespace(buffer[p])) {
+            if (lastOwnerLength < 0) {
+                throw malformed("record without an owner");
+            }
+            ownerBuffer = lastOwner;
+            ownerOffset = 0;
+            ownerLength = lastOwnerLength;
+        } else {
+            int ownerEnd = tokenEnd(p, end);
+            ownerBuffer = buffer;
+            ownerOffset = p;
+            ownerLength = ownerEnd - p;
+            rememberOwner(p, ownerLength);
+            p = ownerEnd;
+        }
+
+        // Optional TTL and class, in either order
+        long ttl = defaultTtl;
+        String recordClass = lastClass;
+        int tokenStart;
+        int tokenEnd;
+        while (true) {
+            tokenStart = skipWhitespace(p, end);
+            if (tokenStart == end) {
+                throw malformed("record without a type");
+            }
+            tokenEnd = tokenEnd(tokenStart, end);
+
+            if (isDigit(buffer[tokenStart])) {
+                ttl = parseTtl(tokenStart, tokenEnd);
+            } else {
+                String matchedClass = matchClass(tokenStart, tokenEnd - tokenStart);
+                if (matchedClass == null) {
+                    break;
+                }
+                recordClass = matchedClass;
+                lastClass = matchedClass;
+            }
+            p = tokenEnd;
+        }
+
+        String type = ZoneRecord.internType(buffer, tokenStart, tokenEnd - tokenStart);
+        int rdataStart = skipWhitespace(tokenEnd, end);
+
+        record.set(ownerBuffer, ownerOffset, ownerLength, ttl, recordClass, type, buffer, rdataStart, end - rdataStart);
+        return true;
+    }
+
+    private void parseDirective(int start, int end) throws IOException {
+        int directiveEnd = tokenEnd(start, end);
+        if (ZoneRecord.equalsIgnoreCase(buffer, start, directiveEnd - start, DIRECTIVE_TTL)) {
+            int valueStart = skipWhitespace(directiveEnd, end);
+            defaultTtl = parseTtl(valueStart, tokenEnd(valueStart, end));
+        }
+        // $ORIGIN and $INCLUDE are not used by CZDS and are ignored
+    }
+
+    private long parseTtl(int start, int end) throws IOException {
+        long ttl = 0;
+        for (int i = start; i < end; i++) {
+            if (!isDigit(buffer[i])) {
+                throw malformed("invalid TTL");
+            }
+            ttl = ttl * 10 + (buffer[i] - '0');
+        }
+        return ttl;
+    }
+
+    private String matchClass(int offset, int length) {
+        for (int i = 0; i < CLASSES.length; i++) {
+            if (ZoneRecord.equalsIgnoreCase(buffer, offset, length, CLASSES[i])) {
+                return CLASS_NAMES[i];
+            }
+        }
+        return null;
+    }
+
+    private void rememberOwner(int offset, int length) {
+        if (lastOwner.length < length) {
+            lastOwner = new byte[Math.max(length, lastOwner.length * 2)];
+        }
+        System.arraycopy(buffer, offset, lastOwner, 0, length);
+        lastOwnerLength = length;
+    }
+
+    /**
+     * Finds the start of a {@code ;} comment, ignoring semicolons inside quoted strings and escaped ones such as
+     * {@code \;}.
+     *
+     * @return the end of the line without its comment.
+     */
+    private int stripComment(int start, int end) {
+        boolean quoted = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '\\') {
+                i++; // The escaped byte, which may be a quote, a semicolon or another backslash
+            } else if (b == '"') {
+                quoted = !quoted;
+            } else if (b == ';' && !quoted) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(int from, int end) {
+        while (from < end && isWhitespace(buffer[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private int tokenEnd(int from, int end) {
+        while (from < end && !isWhitespace(buffer[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed zone file, " + reason + " on line " + lineNumber);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
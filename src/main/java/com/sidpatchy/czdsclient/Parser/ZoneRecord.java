@@ -0,0 +1,201 @@
+package com.sidpatchy.czdsclient.Parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single resource record of a zone file.
+ * <p>
+ * Instances handed out by {@link ZoneFileParser} are reused for every record, and their fields point into the parser's
+ * read buffer rather than holding copies, so parsing allocates nothing per record. The byte-level accessors
+ * ({@link #getOwnerBuffer()}, {@link #getOwnerOffset()} etc.) are valid only until the next record is read; the
+ * {@code String} accessors allocate, and {@link #copy()} detaches a record that needs to be kept.
+ */
+public class ZoneRecord {
+    private static final String[] KNOWN_TYPES = {
+            "ns", "ds", "rrsig", "nsec", "nsec3", "nsec3param", "dnskey", "soa", "a", "aaaa", "txt", "cname", "mx",
+            "cds", "cdnskey", "zonemd", "caa", "srv", "ptr"
+    };
+    private static final byte[][] KNOWN_TYPE_BYTES = new byte[KNOWN_TYPES.length][];
+
+    static {
+        for (int i = 0; i < KNOWN_TYPES.length; i++) {
+            KNOWN_TYPE_BYTES[i] = KNOWN_TYPES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private byte[] ownerBuffer;
+    private int ownerOffset;
+    private int ownerLength;
+    private long ttl;
+    private String recordClass;
+    private String type;
+    private byte[] rdataBuffer;
+    private int rdataOffset;
+    private int rdataLength;
+
+    /**
+     * Points this record at a parsed line. The owner usually lives in the same buffer as the record data, but not for
+     * lines that inherit the owner of the previous record.
+     */
+    void set(byte[] ownerBuffer, int ownerOffset, int ownerLength, long ttl, String recordClass, String type,
+             byte[] rdataBuffer, int rdataOffset, int rdataLength) {
+        this.ownerBuffer = ownerBuffer;
+        this.ownerOffset = ownerOffset;
+        this.ownerLength = ownerLength;
+        this.ttl = ttl;
+        this.recordClass = recordClass;
+        this.type = type;
+        this.rdataBuffer = rdataBuffer;
+        this.rdataOffset = rdataOffset;
+        this.rdataLength = rdataLength;
+    }
+
+    /**
+     * Returns the owner name, e.g. "example.com.". Allocates a new String.
+     *
+     * @return the owner name.
+     */
+    public String getOwner() {
+        return new String(ownerBuffer, ownerOffset, ownerLength, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the TTL of the record in seconds.
+     *
+     * @return the TTL, or -1 if the record has no TTL and no $TTL default was set.
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Returns the class of the record in lower case, e.g. "in". The returned String is shared, not allocated.
+     *
+     * @return the class of the record.
+     */
+    public String getRecordClass() {
+        return recordClass;
+    }
+
+    /**
+     * Returns the type of the record in lower case, e.g. "ns". The returned String is interned, so it can be compared
+     * with {@code ==} against string literals, and common types are returned without allocating.
+     *
+     * @return the type of the record.
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the record data, e.g. "ns1.example.net." for an NS record. Allocates a new String.
+     *
+     * @return the record data.
+     */
+    public String getRdata() {
+        return new String(rdataBuffer, rdataOffset, rdataLength, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the buffer the owner offset points into. Only valid until the next record is parsed.
+     *
+     * @return the buffer holding the owner name.
+     */
+    public byte[] getOwnerBuffer() {
+        return ownerBuffer;
+    }
+
+    /**
+     * Returns the buffer the record data offset points into. Only valid until the next record is parsed.
+     *
+     * @return the buffer holding the record data.
+     */
+    public byte[] getRdataBuffer() {
+        return rdataBuffer;
+    }
+
+    public int getOwnerOffset() {
+        return ownerOffset;
+    }
+
+    public int getOwnerLength() {
+        return ownerLength;
+    }
+
+    public int getRdataOffset() {
+        return rdataOffset;
+    }
+
+    public int getRdataLength() {
+        return rdataLength;
+    }
+
+    /**
+     * Checks whether the owner name equals the given ASCII bytes, ignoring case, without allocating.
+     *
+     * @param name the name to compare with
+     * @return true if the owner name matches.
+     */
+    public boolean ownerEquals(byte[] name) {
+        return equalsIgnoreCase(ownerBuffer, ownerOffset, ownerLength, name);
+    }
+
+    /**
+     * Checks whether the owner name ends with the given ASCII suffix, ignoring case, without allocating.
+     *
+     * @param suffix the suffix to look for, e.g. ".com."
+     * @return true if the owner name ends with the suffix.
+     */
+    public boolean ownerEndsWith(byte[] suffix) {
+        return ownerLength >= suffix.length
+                && equalsIgnoreCase(ownerBuffer, ownerOffset + ownerLength - suffix.length, suffix.length, suffix);
+    }
+
+    /**
+     * Returns a detached copy of this record that stays valid after the parser moves on.
+     *
+     * @return the copy.
+     */
+    public ZoneRecord copy() {
+        byte[] copyBuffer = new byte[ownerLength + rdataLength];
+        System.arraycopy(ownerBuffer, ownerOffset, copyBuffer, 0, ownerLength);
+        System.arraycopy(rdataBuffer, rdataOffset, copyBuffer, ownerLength, rdataLength);
+
+        ZoneRecord copy = new ZoneRecord();
+        copy.set(copyBuffer, 0, ownerLength, ttl, recordClass, type, copyBuffer, ownerLength, rdataLength);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return getOwner() + "\t" + ttl + "\t" + recordClass + "\t" + type + "\t" + getRdata();
+    }
+
+    /**
+     * Resolves a record type to its shared lower-case constant, allocating only for types outside the known set.
+     */
+    static String internType(byte[] buffer, int offset, int length) {
+        for (int i = 0; i < KNOWN_TYPE_BYTES.length; i++) {
+            if (equalsIgnoreCase(buffer, offset, length, KNOWN_TYPE_BYTES[i])) {
+                return KNOWN_TYPES[i];
+            }
+        }
+        return new String(buffer, offset, length, StandardCharsets.US_ASCII).toLowerCase().intern();
+    }
+
+    static boolean equalsIgnoreCase(byte[] buffer, int offset, int length, byte[] other) {
+        if (length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (toLower(buffer[offset + i]) != toLower(other[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
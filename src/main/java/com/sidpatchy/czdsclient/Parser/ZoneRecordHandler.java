@@ -0,0 +1,15 @@
+package com.sidpatchy.czdsclient.Parser;
+
+/**
+ * Receives the records of a zone file as they are parsed.
+ */
+@FunctionalInterface
+public interface ZoneRecordHandler {
+    /**
+     * Handles a single record. The record is reused for the next record once this method returns; call
+     * {@link ZoneRecord#copy()} to keep it.
+     *
+     * @param record the record
+     */
+    void onRecord(ZoneRecord record);
+}
@@ -0,0 +1,50 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import com.sidpatchy.czdsclient.Export.ColumnarZoneWriter;
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses the downloaded zone and writes its records in the binary columnar format of {@link ColumnarZoneWriter}.
+ */
+public class ColumnarExportSink implements ZoneSink {
+    private final File file;
+    private final File partFile;
+    private long recordCount;
+
+    /**
+     * Constructs a ColumnarExportSink writing to the given file.
+     *
+     * @param file the file to write the export to
+     */
+    public ColumnarExportSink(File file) {
+        this.file = file;
+        this.partFile = new File(file.getPath() + ".part");
+    }
+
+    @Override
+    public void consume(InputStream inputStream) throws IOException {
+        recordCount = ColumnarZoneWriter.export(new ZoneFileParser(inputStream), file);
+    }
+
+    @Override
+    public void abort(Throwable cause) {
+        partFile.delete();
+    }
+
+    /**
+     * Returns the number of records written.
+     *
+     * @return the record count.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
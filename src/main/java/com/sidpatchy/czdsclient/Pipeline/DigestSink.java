@@ -0,0 +1,65 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Hashes the downloaded zone, e.g. to compare it with a previous download or publish a checksum.
+ */
+public class DigestSink implements ZoneSink {
+    private final MessageDigest digest;
+    private long size;
+    private String hex;
+
+    /**
+     * Constructs a DigestSink using SHA-256.
+     */
+    public DigestSink() {
+        this("SHA-256");
+    }
+
+    /**
+     * Constructs a DigestSink using the given algorithm.
+     *
+     * @param algorithm the name of the digest algorithm, e.g. "SHA-256"
+     */
+    public DigestSink(String algorithm) {
+        try {
+            this.digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown digest algorithm " + algorithm, e);
+        }
+    }
+
+    @Override
+    public void consume(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, bytesRead);
+            size += bytesRead;
+        }
+        hex = HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the digest of the downloaded bytes as lower-case hex.
+     *
+     * @return the digest, or null if the pipeline has not completed.
+     */
+    public String getDigest() {
+        return hex;
+    }
+
+    /**
+     * Returns the number of downloaded bytes.
+     *
+     * @return the size of the download.
+     */
+    public long getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,63 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import com.sidpatchy.czdsclient.Parser.DomainExtractor;
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Extracts the registered domains of the downloaded zone with {@link DomainExtractor} and writes them to a text file,
+ * one per line, in lower case without the trailing dot.
+ */
+public class DomainExtractorSink implements ZoneSink {
+    private final File file;
+    private final File partFile;
+    private long domainCount;
+
+    /**
+     * Constructs a DomainExtractorSink writing to the given file.
+     *
+     * @param file the file to write the domains to
+     */
+    public DomainExtractorSink(File file) {
+        this.file = file;
+        this.partFile = new File(file.getPath() + ".part");
+    }
+
+    @Override
+    public void consume(InputStream inputStream) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+
+        ZoneFileParser parser = new ZoneFileParser(inputStream);
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(partFile.toPath()), 64 * 1024)) {
+            domainCount = DomainExtractor.extract(parser, (buffer, offset, length) -> {
+                outputStream.write(buffer, offset, length);
+                outputStream.write('\n');
+            });
+        }
+        Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void abort(Throwable cause) {
+        partFile.delete();
+    }
+
+    /**
+     * Returns the number of domains written.
+     *
+     * @return the domain count.
+     */
+    public long getDomainCount() {
+        return domainCount;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
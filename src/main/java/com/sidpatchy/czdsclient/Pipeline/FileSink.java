@@ -0,0 +1,49 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the downloaded zone to disk unchanged, like {@code DownloadModule#downloadZoneFile}. The file is written to
+ * a {@code .part} file and moved into place once complete.
+ */
+public class FileSink implements ZoneSink {
+    private final File file;
+    private final File partFile;
+
+    /**
+     * Constructs a FileSink writing to the given file.
+     *
+     * @param file the file to write the zone to, usually ending in {@code .gz}
+     */
+    public FileSink(File file) {
+        this.file = file;
+        this.partFile = new File(file.getPath() + ".part");
+    }
+
+    @Override
+    public void consume(InputStream inputStream) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+
+        try (OutputStream outputStream = Files.newOutputStream(partFile.toPath())) {
+            inputStream.transferTo(outputStream);
+        }
+        Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void abort(Throwable cause) {
+        partFile.delete();
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,39 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+import com.sidpatchy.czdsclient.Parser.ZoneRecordHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Inflates and parses the downloaded zone, passing every record to a handler.
+ */
+public class RecordParserSink implements ZoneSink {
+    private final ZoneRecordHandler handler;
+    private long recordCount;
+
+    /**
+     * Constructs a RecordParserSink passing records to the given handler.
+     *
+     * @param handler the handler to receive the records; called on the sink's thread
+     */
+    public RecordParserSink(ZoneRecordHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void consume(InputStream inputStream) throws IOException {
+        ZoneFileParser parser = new ZoneFileParser(inputStream);
+        recordCount = parser.parse(handler);
+    }
+
+    /**
+     * Returns the number of records parsed.
+     *
+     * @return the record count.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+}
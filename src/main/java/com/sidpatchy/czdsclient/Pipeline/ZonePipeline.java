@@ -0,0 +1,302 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams one download into several {@link ZoneSink}s at once, so a zone can be written to disk, hashed and parsed in
+ * a single pass over the network instead of downloading it first and re-reading it from disk for each consumer.
+ * <p>
+ * A reader task reads the download into chunks and hands every chunk to each sink's bounded queue. Chunks are never
+ * modified after they are read, so all sinks share them without copying. When a queue is full the reader waits, so the
+ * download runs at the speed of the slowest sink and memory use stays at roughly
+ * {@code sinks * queueCapacity * chunkSize}. If any sink fails, the reader stops, the remaining sinks are aborted and
+ * the pipeline completes exceptionally.
+ * <p>
+ * Each sink occupies a thread of the executor for the whole download. The reader runs on a virtual thread of its own,
+ * so it can never be starved by the sinks it feeds, but a sink that has not started yet holds up the download once its
+ * queue is full. A fixed-size executor therefore needs a thread for every sink of every concurrent pipeline; a
+ * {@link ThreadPoolExecutor} with fewer threads than the pipeline has sinks is rejected by {@link #run(InputStream)}.
+ */
+public class ZonePipeline {
+    private static final ChunkQueue.Chunk END = new ChunkQueue.Chunk(new byte[0], 0);
+    private static final Executor READER = runnable -> Thread.ofVirtual().name("czds-zone-pipeline-reader").start(runnable);
+
+    private final Logger logger = LogManager.getLogger(ZonePipeline.class);
+    private final Executor executor;
+    private final List<ZoneSink> sinks = new ArrayList<>();
+    private int chunkSize = 256 * 1024;
+    private int queueCapacity = 16;
+
+    /**
+     * Constructs an empty ZonePipeline.
+     *
+     * @param executor the executor to run the sinks on
+     */
+    public ZonePipeline(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a sink to the pipeline.
+     *
+     * @param sink the sink to add
+     * @return this pipeline.
+     */
+    public ZonePipeline addSink(ZoneSink sink) {
+        sinks.add(sink);
+        return this;
+    }
+
+    /**
+     * Runs the pipeline until the stream is consumed by all sinks. The stream is closed when the pipeline completes.
+     * A pipeline can be run once.
+     *
+     * @param inputStream the download to process, as returned by {@code HttpConnectionManager#openStream}
+     * @return a CompletableFuture that completes when all sinks have finished.
+     * @throws IllegalStateException if the pipeline has no sinks, or its executor is a {@link ThreadPoolExecutor} with
+     *         fewer threads than the pipeline has sinks.
+     */
+    public CompletableFuture<Void> run(InputStream inputStream) {
+        if (sinks.isEmpty()) {
+            throw new IllegalStateException("A pipeline needs at least one sink");
+        }
+        if (executor instanceof ThreadPoolExecutor pool && pool.getMaximumPoolSize() < sinks.size()) {
+            throw new IllegalStateException("A pipeline with " + sinks.size() + " sinks needs an executor with at least "
+                    + sinks.size() + " threads, but it has " + pool.getMaximumPoolSize());
+        }
+
+        List<ChunkQueue> queues = new ArrayList<>();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (ZoneSink sink : sinks) {
+            ChunkQueue queue = new ChunkQueue(queueCapacity);
+            queues.add(queue);
+            tasks.add(CompletableFuture.runAsync(() -> consume(sink, queue), executor));
+        }
+        tasks.add(CompletableFuture.runAsync(() -> read(inputStream, queues), READER));
+
+        // Fail fast: stop the reader and the other sinks as soon as anything fails, keeping the first cause
+        for (CompletableFuture<Void> task : tasks) {
+            task.whenComplete((ignored, e) -> {
+                if (e != null) {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (firstFailure.compareAndSet(null, cause)) {
+                        queues.forEach(queue -> queue.fail(cause));
+                    }
+                }
+            });
+        }
+
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, e) -> {
+                    Throwable cause = firstFailure.get();
+                    if (cause == null && e == null) {
+                        return null;
+                    }
+                    if (cause == null) {
+                        cause = e;
+                    }
+                    for (ZoneSink sink : sinks) {
+                        sink.abort(cause);
+                    }
+                    throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
+                });
+    }
+
+    private void read(InputStream inputStream, List<ChunkQueue> queues) {
+        try (inputStream) {
+            while (true) {
+                byte[] chunk = new byte[chunkSize];
+                int length = inputStream.readNBytes(chunk, 0, chunk.length);
+                if (length == 0) {
+                    break;
+                }
+
+                ChunkQueue.Chunk next = new ChunkQueue.Chunk(chunk, length);
+                boolean anyOpen = false;
+                for (ChunkQueue queue : queues) {
+                    anyOpen |= queue.put(next);
+                }
+                if (!anyOpen) {
+                    logger.debug("All sinks finished early, stopping download");
+                    break;
+                }
+            }
+            for (ChunkQueue queue : queues) {
+                queue.put(END);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    private void consume(ZoneSink sink, ChunkQueue queue) {
+        try (InputStream inputStream = queue.inputStream()) {
+            sink.consume(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            queue.close();
+        }
+    }
+
+    public List<ZoneSink> getSinks() {
+        return List.copyOf(sinks);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the size of the chunks the download is read in. Defaults to 256 KiB.
+     *
+     * @param chunkSize the chunk size in bytes
+     * @return this pipeline.
+     */
+    public ZonePipeline setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets how many chunks each sink may fall behind the download before the download waits for it. Defaults to 16.
+     *
+     * @param queueCapacity the capacity of each sink's queue, in chunks
+     * @return this pipeline.
+     */
+    public ZonePipeline setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * The bounded queue between the reader and one sink.
+     */
+    private static class ChunkQueue {
+        private static final long POLL_MILLIS = 100;
+
+        private final BlockingQueue<Chunk> queue;
+        private volatile boolean closed;
+        private volatile Throwable failure;
+
+        private ChunkQueue(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Waits until the chunk fits in the queue.
+         *
+         * @return false if the sink has stopped reading, so the chunk was dropped.
+         */
+        private boolean put(Chunk chunk) throws InterruptedException, IOException {
+            while (!closed) {
+                if (failure != null) {
+                    throw new IOException("Pipeline failed", failure);
+                }
+                if (queue.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void fail(Throwable cause) {
+            if (failure == null) {
+                failure = cause;
+            }
+        }
+
+        /**
+         * Marks the sink as finished, so the reader stops waiting for it and its buffered chunks can be collected.
+         */
+        private void close() {
+            closed = true;
+            queue.clear();
+        }
+
+        private InputStream inputStream() {
+            return new InputStream() {
+                private Chunk current;
+                private int position;
+
+                @Override
+                public int read() throws IOException {
+                    if (!advance()) {
+                        return -1;
+                    }
+                    return current.data[position++] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (!advance()) {
+                        return -1;
+                    }
+                    int count = Math.min(length, current.length - position);
+                    System.arraycopy(current.data, position, buffer, offset, count);
+                    position += count;
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return current == null || current == END ? 0 : current.length - position;
+                }
+
+                private boolean advance() throws IOException {
+                    while (current == null || (current != END && position == current.length)) {
+                        if (failure != null) {
+                            throw new IOException("Pipeline failed", failure);
+                        }
+                        try {
+                            Chunk next = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                            if (next != null) {
+                                current = next;
+                                position = 0;
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted while waiting for the download", e);
+                        }
+                    }
+                    return current != END;
+                }
+            };
+        }
+
+        private record Chunk(byte[] data, int length) {
+        }
+    }
+}
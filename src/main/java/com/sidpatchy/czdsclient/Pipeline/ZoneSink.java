@@ -0,0 +1,29 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Consumes one copy of a zone as it is downloaded by a {@link ZonePipeline}.
+ * <p>
+ * Every sink of a pipeline runs on its own thread and reads the raw (gzip-compressed) bytes of the download from its
+ * own bounded queue, so slow sinks throttle the download instead of buffering it in memory.
+ */
+public interface ZoneSink {
+    /**
+     * Consumes the zone. The stream holds the bytes exactly as they were downloaded; a sink that returns before the
+     * end of the stream simply stops receiving data.
+     *
+     * @param inputStream the downloaded bytes
+     * @throws IOException If the sink fails; this fails the whole pipeline.
+     */
+    void consume(InputStream inputStream) throws IOException;
+
+    /**
+     * Called if the pipeline fails, so the sink can clean up partial output. The default does nothing.
+     *
+     * @param cause the error that failed the pipeline
+     */
+    default void abort(Throwable cause) {
+    }
+}
@@ -0,0 +1,203 @@
+package com.sidpatchy.czdsclient.Archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackStoreTest {
+    private static final int INDEX_ENTRY_SIZE = 53;
+
+    @TempDir
+    Path root;
+
+    private static byte[] hash(byte[] data) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    /**
+     * Makes chunks of text that compress, each different from the others.
+     */
+    private static List<byte[]> chunks(int count) {
+        Random random = new Random(count);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder chunk = new StringBuilder();
+            while (chunk.length() < 4000) {
+                chunk.append("domain").append(random.nextInt(100_000)).append(".com. 86400 in ns ns1.example.net.\n");
+            }
+            chunks.add(chunk.toString().getBytes());
+        }
+        return chunks;
+    }
+
+    private static void putAll(PackStore store, List<byte[]> chunks, int level) throws Exception {
+        for (byte[] chunk : chunks) {
+            assertTrue(store.put(hash(chunk), chunk.length, PackStore.encode(chunk, chunk.length, level)));
+        }
+        store.sync();
+    }
+
+    private static void assertAllReadable(PackStore store, List<byte[]> chunks) throws Exception {
+        assertEquals(chunks.size(), store.getChunkCount());
+        for (byte[] chunk : chunks) {
+            assertArrayEquals(chunk, store.get(hash(chunk)));
+        }
+    }
+
+    private static void assertLiveReadable(PackStore store, List<byte[]> live) throws Exception {
+        for (byte[] chunk : live) {
+            assertArrayEquals(chunk, store.get(hash(chunk)));
+        }
+    }
+
+    private Path lastPack() throws IOException {
+        try (var files = Files.list(root.resolve("packs"))) {
+            return files.sorted().reduce((first, second) -> second).orElseThrow();
+        }
+    }
+
+    @Test
+    void chunksRoundTripAndAreStoredOnce() throws Exception {
+        List<byte[]> chunks = chunks(50);
+        try (PackStore store = new PackStore(root)) {
+            store.setPackSize(32 * 1024);
+            putAll(store, chunks.subList(0, 25), 6);
+            putAll(store, chunks.subList(25, 50), 0);
+            byte[] again = chunks.get(3);
+            assertFalse(store.put(hash(again), again.length, PackStore.encode(again, again.length, 6)));
+            assertAllReadable(store, chunks);
+        }
+
+        try (PackStore store = new PackStore(root)) {
+            assertAllReadable(store, chunks);
+        }
+    }
+
+    @Test
+    void incompressibleChunkIsStored() {
+        byte[] random = new byte[1000];
+        new Random(1).nextBytes(random);
+
+        byte[] encoded = PackStore.encode(random, random.length, 9);
+
+        assertEquals(PackStore.STORED, encoded[0]);
+        assertEquals(random.length + 1, encoded.length);
+    }
+
+    @Test
+    void entriesMissingFromTheIndexAreRecoveredFromThePacks() throws Exception {
+        List<byte[]> chunks = chunks(20);
+        try (PackStore store = new PackStore(root)) {
+            putAll(store, chunks, 6);
+        }
+
+        // A crash after appending to the pack but before the index: lose five entries and half of a sixth
+        Path index = root.resolve("chunks.idx");
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5 * INDEX_ENTRY_SIZE - INDEX_ENTRY_SIZE / 2);
+        }
+
+        try (PackStore store = new PackStore(root)) {
+            assertAllReadable(store, chunks);
+        }
+        assertEquals(12 + 20L * INDEX_ENTRY_SIZE, Files.size(index));
+    }
+
+    @Test
+    void partlyWrittenChunkAtTheEndOfAPackIsDropped() throws Exception {
+        List<byte[]> chunks = chunks(10);
+        try (PackStore store = new PackStore(root)) {
+            putAll(store, chunks, 6);
+        }
+        Path pack = lastPack();
+        long size = Files.size(pack);
+        byte[] garbage = new byte[100];
+        new Random(2).nextBytes(garbage);
+        // A chunk header claiming more bytes than follow it
+        garbage[33] = 0;
+        garbage[37] = 0x7f;
+        Files.write(pack, garbage, StandardOpenOption.APPEND);
+
+        List<byte[]> more = chunks(11).subList(10, 11);
+        try (PackStore store = new PackStore(root)) {
+            assertEquals(size, Files.size(pack));
+            assertAllReadable(store, chunks);
+            putAll(store, more, 6);
+        }
+
+        try (PackStore store = new PackStore(root)) {
+            List<byte[]> all = new ArrayList<>(chunks);
+            all.addAll(more);
+            assertAllReadable(store, all);
+        }
+    }
+
+    @Test
+    void corruptChunkIsDetected() throws Exception {
+        byte[] chunk = chunks(1).get(0);
+        try (PackStore store = new PackStore(root)) {
+            putAll(store, List.of(chunk), 6);
+        }
+        Path pack = lastPack();
+        byte[] bytes = Files.readAllBytes(pack);
+        // The stored bytes start after the file header and the chunk header
+        for (int i = 12 + 41; i < 12 + 41 + 16; i++) {
+            bytes[i] ^= (byte) 0xA5;
+        }
+        Files.write(pack, bytes);
+
+        try (PackStore store = new PackStore(root)) {
+            assertThrows(IOException.class, () -> store.get(hash(chunk)));
+        }
+    }
+
+    @Test
+    void foreignIndexIsRejected() throws Exception {
+        Files.write(root.resolve("chunks.idx"), "definitely not an index".getBytes());
+
+        assertThrows(IOException.class, () -> new PackStore(root));
+    }
+
+    @Test
+    void compactionKeepsLiveChunksAndDeletesSparsePacks() throws Exception {
+        List<byte[]> chunks = chunks(40);
+        Set<PackStore.ChunkId> live = new HashSet<>();
+        List<byte[]> kept = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i += 4) {
+            live.add(new PackStore.ChunkId(hash(chunks.get(i))));
+            kept.add(chunks.get(i));
+        }
+
+        try (PackStore store = new PackStore(root)) {
+            store.setPackSize(16 * 1024);
+            putAll(store, chunks, 0);
+            long before = store.getSize();
+
+            long freed = store.compact(live);
+
+            assertTrue(freed > 0);
+            assertTrue(store.getSize() < before);
+            // Unused chunks are only dropped from the packs that were rewritten, not from the pack being written to
+            assertTrue(store.getChunkCount() < chunks.size());
+            assertLiveReadable(store, kept);
+        }
+
+        try (PackStore store = new PackStore(root)) {
+            assertLiveReadable(store, kept);
+        }
+    }
+}
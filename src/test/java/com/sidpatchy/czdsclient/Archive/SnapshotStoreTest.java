@@ -0,0 +1,221 @@
+package com.sidpatchy.czdsclient.Archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 1);
+
+    @TempDir
+    Path root;
+
+    /**
+     * Generates a zone of NS records, the same for the same seed.
+     */
+    private static byte[] zone(long seed, int domains) {
+        Random random = new Random(seed);
+        StringBuilder zone = new StringBuilder("com.\t86400\tin\tsoa\ta.gtld-servers.net. nstld.verisign-grs.com. 1 1800 900 604800 86400\n");
+        for (int i = 0; i < domains; i++) {
+            String domain = "domain" + i + "-" + Integer.toString(random.nextInt(1 << 20), 36) + ".com.";
+            zone.append(domain).append("\t172800\tin\tns\tns").append(random.nextInt(4)).append(".example.net.\n");
+        }
+        return zone.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Changes a few records in the middle of a zone.
+     */
+    private static byte[] edit(byte[] zone) {
+        String text = new String(zone, StandardCharsets.US_ASCII);
+        for (int i : new int[]{1000, 5000, 20000}) {
+            text = text.replace("domain" + i + "-", "changed" + i + "-");
+        }
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] exported(SnapshotStore store, Snapshot snapshot, Path target) throws IOException {
+        store.export(snapshot, target);
+        return readAll(new GZIPInputStream(Files.newInputStream(target)));
+    }
+
+    @Test
+    void snapshotRoundTripsFromAnyOffset() throws IOException {
+        byte[] zone = zone(1, 30_000);
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            Snapshot snapshot = store.add("com", DAY, new ByteArrayInputStream(zone));
+
+            assertEquals(zone.length, snapshot.getSize());
+            assertTrue(snapshot.getChunkCount() > 10);
+            assertArrayEquals(zone, readAll(snapshot.open()));
+            for (long position : new long[]{0, 1, 12_345, zone.length / 2, zone.length - 1, zone.length}) {
+                byte[] expected = Arrays.copyOfRange(zone, (int) position, zone.length);
+                assertArrayEquals(expected, readAll(snapshot.open(position)), "from " + position);
+            }
+            assertThrows(IllegalArgumentException.class, () -> snapshot.open(zone.length + 1));
+            assertArrayEquals(zone, exported(store, snapshot, root.resolve("com.zone.gz")));
+        }
+    }
+
+    @Test
+    void gzippedZoneFileIsArchivedUncompressed() throws IOException {
+        byte[] zone = zone(2, 5_000);
+        Path file = root.resolve("com.zone.gz");
+        try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(zone);
+        }
+
+        try (SnapshotStore store = new SnapshotStore(root.resolve("store"))) {
+            Snapshot snapshot = store.add("com", DAY, file.toFile());
+
+            assertArrayEquals(zone, readAll(snapshot.open()));
+        }
+    }
+
+    @Test
+    void unchangedChunksAreSharedBetweenDays() throws IOException {
+        byte[] first = zone(3, 30_000);
+        byte[] second = edit(first);
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            store.add("com", DAY, new ByteArrayInputStream(first));
+            int chunks = store.getChunkCount();
+            long size = store.getStoredSize();
+
+            Snapshot snapshot = store.add("com", DAY.plusDays(1), new ByteArrayInputStream(second));
+
+            // Each edit changes the chunk around it, and maybe the one after it
+            assertTrue(store.getChunkCount() - chunks <= 6, (store.getChunkCount() - chunks) + " new chunks");
+            assertTrue(store.getStoredSize() - size < size / 10);
+            assertArrayEquals(second, readAll(snapshot.open()));
+            assertArrayEquals(first, readAll(store.getSnapshot("com", DAY).open()));
+        }
+    }
+
+    @Test
+    void latestSnapshotOnOrBeforeADayIsReturned() throws IOException {
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            store.add("com", DAY, new ByteArrayInputStream(zone(4, 100)));
+            store.add("com", DAY.plusDays(3), new ByteArrayInputStream(zone(5, 100)));
+            store.add("net", DAY.plusDays(1), new ByteArrayInputStream(zone(6, 100)));
+
+            assertNull(store.getSnapshot("com", DAY.minusDays(1)));
+            assertEquals(DAY, store.getSnapshot("com", DAY.plusDays(2)).getDate());
+            assertEquals(DAY.plusDays(3), store.getSnapshot("com", DAY.plusDays(30)).getDate());
+            assertEquals(List.of("com", "net"), store.getTlds());
+            assertEquals(List.of(DAY, DAY.plusDays(3)), store.getDates("com"));
+        }
+    }
+
+    @Test
+    void storeSurvivesACrashBetweenPackAndIndex() throws IOException {
+        byte[] zone = zone(7, 20_000);
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            store.add("com", DAY, new ByteArrayInputStream(zone));
+        }
+
+        // Lose the end of the index and leave half a chunk at the end of the pack
+        Path index = root.resolve("chunks.idx");
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 200);
+        }
+        Path pack;
+        try (var files = Files.list(root.resolve("packs"))) {
+            pack = files.sorted().reduce((first, second) -> second).orElseThrow();
+        }
+        Files.write(pack, new byte[]{1, 2, 3, 4, 5, 6, 7}, StandardOpenOption.APPEND);
+
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            Snapshot snapshot = store.getSnapshot("com", DAY);
+            assertArrayEquals(zone, exported(store, snapshot, root.resolve("com.zone.gz")));
+
+            byte[] next = edit(zone);
+            store.add("com", DAY.plusDays(1), new ByteArrayInputStream(next));
+            assertArrayEquals(next, readAll(store.getSnapshot("com", DAY.plusDays(1)).open()));
+        }
+    }
+
+    @Test
+    void exportDetectsCorruptChunks() throws IOException {
+        byte[] zone = zone(8, 5_000);
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            store.setCompressionLevel(0);
+            store.add("com", DAY, new ByteArrayInputStream(zone));
+        }
+        Path pack;
+        try (var files = Files.list(root.resolve("packs"))) {
+            pack = files.sorted().reduce((first, second) -> second).orElseThrow();
+        }
+        byte[] bytes = Files.readAllBytes(pack);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(pack, bytes);
+
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            Path target = root.resolve("com.zone.gz");
+            IOException e = assertThrows(IOException.class, () -> store.export(store.getSnapshot("com", DAY), target));
+
+            assertTrue(e.getMessage().contains("corrupt"), e.getMessage());
+            assertFalse(Files.exists(target));
+        }
+    }
+
+    @Test
+    void pruneAndCompactFreeTheChunksOfOldSnapshots() throws IOException {
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            store.setPackSize(64 * 1024);
+            for (int day = 0; day < 4; day++) {
+                store.add("com", DAY.plusDays(day), new ByteArrayInputStream(zone(100 + day, 10_000)));
+            }
+            long size = store.getStoredSize();
+
+            assertEquals(2, store.prune(DAY.plusDays(2)));
+            assertEquals(List.of(DAY.plusDays(2), DAY.plusDays(3)), store.getDates("com"));
+            long freed = store.compact();
+
+            assertTrue(freed > size / 3, freed + " of " + size + " bytes freed");
+            assertTrue(store.getStoredSize() < size);
+            assertArrayEquals(zone(102, 10_000), exported(store, store.getSnapshot("com", DAY.plusDays(2)), root.resolve("a.gz")));
+        }
+
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            assertArrayEquals(zone(103, 10_000), readAll(store.getSnapshot("com", DAY.plusDays(3)).open()));
+            assertEquals(0, store.compact());
+        }
+    }
+
+    @Test
+    void retentionKeepsTheConfiguredNumberOfDays() throws IOException {
+        try (SnapshotStore store = new SnapshotStore(root)) {
+            store.setRetentionDays(2);
+            for (int day = 0; day < 5; day++) {
+                store.add("com", DAY.plusDays(day), new ByteArrayInputStream(zone(200 + day, 1_000)));
+            }
+
+            store.applyRetention(DAY.plusDays(4));
+
+            assertEquals(List.of(DAY.plusDays(3), DAY.plusDays(4)), store.getDates("com"));
+            assertThrows(IllegalArgumentException.class, () -> store.setRetentionDays(-1));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.sidpatchy.czdsclient.Cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs workers as separate JVMs sharing a lease directory, kills one of them while it holds leases and checks that the
+ * others take its zones over, so every zone is completed exactly once.
+ */
+class ShardCoordinatorProcessTest {
+    static final String ROUND = "round";
+    private static final int ZONES = 40;
+    private static final int HELD = 8;
+    private static final int SURVIVORS = 3;
+    private static final long LEASE_TTL_MILLIS = 1000;
+
+    @TempDir
+    Path directory;
+
+    private final List<Process> processes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        processes.forEach(Process::destroyForcibly);
+    }
+
+    private Process start(String name, String... mode) throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                ShardWorker.class.getName(),
+                directory.resolve(name + ".report").toString(), directory.resolve("leases").toString(), Long.toString(LEASE_TTL_MILLIS), Integer.toString(ZONES)));
+        command.addAll(List.of(mode));
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(directory.resolve(name + ".log").toFile())
+                .start();
+        processes.add(process);
+        return process;
+    }
+
+    /**
+     * Returns the lines a worker reported so far. Its log goes elsewhere, so every line is exactly what it reported.
+     */
+    private List<String> output(String name) throws IOException {
+        Path file = directory.resolve(name + ".report");
+        return Files.exists(file) ? Files.readAllLines(file) : List.of();
+    }
+
+    /**
+     * Returns the zones a worker reported to have claimed.
+     */
+    private List<String> claimed(String name) throws IOException {
+        List<String> zones = new ArrayList<>();
+        for (String line : output(name)) {
+            if (line.startsWith("claimed ")) {
+                zones.add(line.substring("claimed ".length()));
+            }
+        }
+        return zones;
+    }
+
+    private String workerId(String name) throws IOException {
+        for (String line : output(name)) {
+            if (line.startsWith("worker ")) {
+                return line.substring("worker ".length());
+            }
+        }
+        return null;
+    }
+
+    private void await(String description, Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.call()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting until " + description);
+            Thread.sleep(50);
+        }
+    }
+
+    private int claimedBySurvivors() throws IOException {
+        int claimed = 0;
+        for (int i = 0; i < SURVIVORS; i++) {
+            claimed += claimed("survivor" + i).size();
+        }
+        return claimed;
+    }
+
+    @Test
+    void zonesOfAKilledWorkerAreTakenOverByTheOthers() throws Exception {
+        Process victim = start("victim", "hold", Integer.toString(HELD));
+        await("the victim holds its zones", () -> output("victim").contains("ready"));
+        assertEquals(HELD, claimed("victim").size());
+
+        List<Process> survivors = new ArrayList<>();
+        for (int i = 0; i < SURVIVORS; i++) {
+            survivors.add(start("survivor" + i, "sync"));
+        }
+        await("the survivors claim the free zones", () -> claimedBySurvivors() == ZONES - HELD);
+        // The victim keeps renewing its leases, so its zones stay out of reach while it lives
+        Thread.sleep(2 * LEASE_TTL_MILLIS);
+        assertEquals(ZONES - HELD, claimedBySurvivors());
+
+        victim.destroyForcibly();
+        assertTrue(victim.waitFor(30, TimeUnit.SECONDS));
+        for (Process survivor : survivors) {
+            assertTrue(survivor.waitFor(30, TimeUnit.SECONDS), "a survivor did not finish");
+            assertEquals(0, survivor.exitValue());
+        }
+
+        Map<String, Integer> claims = new HashMap<>();
+        Set<String> workerIds = new HashSet<>();
+        for (int i = 0; i < SURVIVORS; i++) {
+            String name = "survivor" + i;
+            assertTrue(output(name).contains("done"), name + ": " + output(name));
+            for (String zone : claimed(name)) {
+                claims.merge(zone, 1, Integer::sum);
+            }
+            // The default worker ID ends with the process ID, so workers on one host never share an ID
+            String workerId = workerId(name);
+            assertNotNull(workerId);
+            assertTrue(workerId.endsWith("-" + survivors.get(i).pid()), workerId + " of process " + survivors.get(i).pid());
+            workerIds.add(workerId);
+        }
+        assertEquals(SURVIVORS, workerIds.size());
+        assertTrue(workerId("victim").endsWith("-" + victim.pid()));
+
+        assertEquals(ZONES, claims.size());
+        for (int i = 0; i < ZONES; i++) {
+            assertEquals(1, claims.getOrDefault("zone" + i, 0).intValue(), "zone" + i + " claimed by the survivors");
+            assertTrue(Files.exists(directory.resolve("leases").resolve(ROUND).resolve("zone" + i + ".done")), "zone" + i);
+        }
+    }
+}
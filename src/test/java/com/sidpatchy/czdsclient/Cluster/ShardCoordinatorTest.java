@@ -0,0 +1,182 @@
+package com.sidpatchy.czdsclient.Cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs several coordinators against one lease directory, as separate processes sharing a directory would, and checks
+ * that no zone is ever held by two workers at once.
+ */
+class ShardCoordinatorTest {
+    private static final int WORKERS = 8;
+    private static final int ZONES = 100;
+    private static final String ROUND = "round";
+
+    @TempDir
+    Path directory;
+
+    private final List<ShardCoordinator> coordinators = new ArrayList<>();
+    private final Map<String, AtomicInteger> claims = new ConcurrentHashMap<>();
+    private final Map<String, String> holders = new ConcurrentHashMap<>();
+    private final List<String> conflicts = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        coordinators.forEach(ShardCoordinator::close);
+    }
+
+    private ShardCoordinator coordinator(String workerId, Duration leaseTtl) {
+        ShardCoordinator coordinator = new ShardCoordinator(directory, workerId);
+        coordinator.setLeaseTtl(leaseTtl);
+        coordinators.add(coordinator);
+        return coordinator;
+    }
+
+    private static List<String> zones() {
+        List<String> zones = new ArrayList<>();
+        for (int i = 0; i < ZONES; i++) {
+            zones.add("zone" + i);
+        }
+        return zones;
+    }
+
+    /**
+     * Claims zones until every one of them is done, holding each claimed zone for a moment before completing it.
+     */
+    private void work(ShardCoordinator.Round round, String workerId) throws InterruptedException {
+        List<String> remaining = zones();
+        while (!remaining.isEmpty()) {
+            Collections.shuffle(remaining);
+            for (String tld : new ArrayList<>(remaining)) {
+                ShardCoordinator.Claim claim = round.tryClaim(tld);
+                if (claim == ShardCoordinator.Claim.DONE) {
+                    remaining.remove(tld);
+                } else if (claim == ShardCoordinator.Claim.CLAIMED) {
+                    claims.computeIfAbsent(tld, key -> new AtomicInteger()).incrementAndGet();
+                    String other = holders.putIfAbsent(tld, workerId);
+                    if (other != null) {
+                        conflicts.add(tld + " claimed by " + workerId + " while held by " + other);
+                    }
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                    holders.remove(tld, workerId);
+                    round.complete(tld);
+                    remaining.remove(tld);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts every worker at once and waits for all of them to finish.
+     */
+    private void runWorkers(String roundName, Duration leaseTtl) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(WORKERS)) {
+            for (int i = 0; i < WORKERS; i++) {
+                String workerId = "worker-" + i;
+                ShardCoordinator.Round round = coordinator(workerId, leaseTtl).startRound(roundName);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    work(round, workerId);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private void assertEveryZoneClaimedOnce() {
+        assertEquals(List.of(), conflicts);
+        for (String tld : zones()) {
+            AtomicInteger count = claims.get(tld);
+            assertNotNull(count, tld + " was never claimed");
+            assertEquals(1, count.get(), tld + " was claimed " + count.get() + " times");
+        }
+    }
+
+    @Test
+    void concurrentWorkersClaimEveryZoneExactlyOnce() throws Exception {
+        runWorkers(ROUND, Duration.ofSeconds(10));
+
+        assertEveryZoneClaimedOnce();
+    }
+
+    @Test
+    void expiredLeasesAreTakenOverExactlyOnce() throws Exception {
+        Duration leaseTtl = Duration.ofMillis(300);
+        // Every worker looks at the expired leases at the same time, so repeat to give races a chance
+        for (int i = 0; i < 10; i++) {
+            String roundName = ROUND + i;
+            ShardCoordinator dead = coordinator("dead", leaseTtl);
+            ShardCoordinator.Round deadRound = dead.startRound(roundName);
+            for (String tld : zones()) {
+                assertEquals(ShardCoordinator.Claim.CLAIMED, deadRound.tryClaim(tld));
+            }
+            // The worker dies: its leases are no longer renewed
+            dead.close();
+            Thread.sleep(leaseTtl.toMillis() + 100);
+            claims.clear();
+
+            runWorkers(roundName, leaseTtl);
+
+            assertEveryZoneClaimedOnce();
+        }
+    }
+
+    @Test
+    void heldLeaseIsRenewedUntilReleased() throws Exception {
+        ShardCoordinator.Round holder = coordinator("holder", Duration.ofMillis(150)).startRound(ROUND);
+        ShardCoordinator.Round other = coordinator("other", Duration.ofMillis(150)).startRound(ROUND);
+        assertEquals(ShardCoordinator.Claim.CLAIMED, holder.tryClaim("com"));
+
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(750);
+        while (System.nanoTime() < end) {
+            assertEquals(ShardCoordinator.Claim.HELD, other.tryClaim("com"));
+            Thread.sleep(10);
+        }
+
+        holder.release("com");
+        assertEquals(ShardCoordinator.Claim.CLAIMED, other.tryClaim("com"));
+        other.complete("com");
+        assertEquals(ShardCoordinator.Claim.DONE, holder.tryClaim("com"));
+    }
+
+    @Test
+    void stalledWorkerCannotReleaseTheLeaseOfTheWorkerThatTookOver() throws Exception {
+        ShardCoordinator stalled = coordinator("stalled", Duration.ofMillis(100));
+        ShardCoordinator.Round stalledRound = stalled.startRound(ROUND);
+        ShardCoordinator.Round takeover = coordinator("takeover", Duration.ofSeconds(10)).startRound(ROUND);
+        ShardCoordinator.Round third = coordinator("third", Duration.ofSeconds(10)).startRound(ROUND);
+        assertEquals(ShardCoordinator.Claim.CLAIMED, stalledRound.tryClaim("com"));
+
+        // Stop the heartbeats of the stalled worker and let its lease expire
+        stalled.close();
+        Thread.sleep(200);
+        assertEquals(ShardCoordinator.Claim.CLAIMED, takeover.tryClaim("com"));
+
+        stalledRound.release("com");
+        assertEquals(ShardCoordinator.Claim.HELD, third.tryClaim("com"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.sidpatchy.czdsclient.Cluster;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A worker process for {@link ShardCoordinatorProcessTest}, reporting what it does in a file of its own, as standard
+ * output is shared with the log.
+ * <p>
+ * Arguments: the report file, the lease directory, the lease TTL in milliseconds, the number of zones and either
+ * "hold" followed by a number of zones to claim and then hold until the process is killed, or "sync" to claim and
+ * complete zones until every zone is done.
+ */
+public final class ShardWorker {
+    private static PrintWriter report;
+
+    private ShardWorker() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        report = new PrintWriter(Files.newBufferedWriter(Path.of(args[0]), StandardCharsets.UTF_8), true);
+        ShardCoordinator coordinator = new ShardCoordinator(Path.of(args[1]));
+        coordinator.setLeaseTtl(Duration.ofMillis(Long.parseLong(args[2])));
+        int zones = Integer.parseInt(args[3]);
+        ShardCoordinator.Round round = coordinator.startRound(ShardCoordinatorProcessTest.ROUND);
+        report("worker " + coordinator.getWorkerId());
+
+        if (args[4].equals("hold")) {
+            int held = Integer.parseInt(args[5]);
+            for (int i = 0; i < held; i++) {
+                if (round.tryClaim("zone" + i) == ShardCoordinator.Claim.CLAIMED) {
+                    report("claimed zone" + i);
+                }
+            }
+            report("ready");
+            // The heartbeats keep the leases alive until the process is killed
+            Thread.sleep(Long.MAX_VALUE);
+        }
+
+        List<String> remaining = new ArrayList<>();
+        for (int i = 0; i < zones; i++) {
+            remaining.add("zone" + i);
+        }
+        while (!remaining.isEmpty()) {
+            for (String tld : new ArrayList<>(remaining)) {
+                ShardCoordinator.Claim claim = round.tryClaim(tld);
+                if (claim == ShardCoordinator.Claim.CLAIMED) {
+                    report("claimed " + tld);
+                    round.complete(tld);
+                }
+                if (claim != ShardCoordinator.Claim.HELD) {
+                    remaining.remove(tld);
+                }
+            }
+            Thread.sleep(20);
+        }
+        coordinator.close();
+        report("done");
+        report.close();
+    }
+
+    private static void report(String line) {
+        report.println(line);
+    }
+}
@@ -0,0 +1,115 @@
+package com.sidpatchy.czdsclient.Daemon;
+
+import com.sidpatchy.czdsclient.IO.CZDSClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlServerTest {
+    private static final String TOKEN = "0123456789abcdef";
+
+    @TempDir
+    Path directory;
+
+    private CZDSClient client;
+    private SyncDaemon daemon;
+    private ControlServer server;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Nothing listens there, so a sync that does start fails quickly
+        client = new CZDSClient("user", "password", "http://127.0.0.1:9/", "http://127.0.0.1:9/");
+        daemon = new SyncDaemon(client);
+        daemon.addWindow(new SyncWindow("nightly", List.of("com"), LocalTime.of(2, 0), Duration.ZERO));
+        server = daemon.startControlServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), TOKEN);
+    }
+
+    @AfterEach
+    void tearDown() {
+        daemon.close();
+        client.close();
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path));
+    }
+
+    @Test
+    void statusIsReadableWithoutToken() throws Exception {
+        HttpResponse<String> response = send(request("/status"));
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("nightly"));
+    }
+
+    @Test
+    void syncWithoutValidTokenIsRejected() throws Exception {
+        assertEquals(401, send(request("/sync").POST(HttpRequest.BodyPublishers.noBody())).statusCode());
+        assertEquals(401, send(request("/sync").POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer " + TOKEN + "0")).statusCode());
+        assertEquals(401, send(request("/sync").POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Basic " + TOKEN)).statusCode());
+    }
+
+    @Test
+    void syncFromWebPageIsRejectedEvenWithToken() throws Exception {
+        HttpResponse<String> response = send(request("/sync").POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer " + TOKEN)
+                .header("Origin", "https://example.com"));
+
+        assertEquals(403, response.statusCode());
+    }
+
+    @Test
+    void syncWithTokenStartsTheWindow() throws Exception {
+        HttpResponse<String> unknown = send(request("/sync?window=weekly").POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer " + TOKEN));
+        HttpResponse<String> started = send(request("/sync?window=nightly").POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer " + TOKEN));
+
+        assertEquals(404, unknown.statusCode());
+        assertEquals(202, started.statusCode());
+        assertTrue(started.body().contains("nightly"));
+    }
+
+    @Test
+    void tokenFileIsCreatedOnceAndReused() throws IOException {
+        Path file = directory.resolve("control.token");
+
+        String token = ControlServer.readOrCreateToken(file);
+
+        assertEquals(64, token.length());
+        assertEquals(token, ControlServer.readOrCreateToken(file));
+        assertNotEquals(token, ControlServer.readOrCreateToken(directory.resolve("other.token")));
+    }
+
+    @Test
+    void emptyTokenFileAndBlankTokenAreRejected() throws IOException {
+        Path file = Files.writeString(directory.resolve("control.token"), "\n");
+
+        assertThrows(IOException.class, () -> ControlServer.readOrCreateToken(file));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ControlServer(daemon, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), " "));
+    }
+}
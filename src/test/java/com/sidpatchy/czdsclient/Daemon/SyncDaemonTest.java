@@ -0,0 +1,139 @@
+package com.sidpatchy.czdsclient.Daemon;
+
+import com.sidpatchy.czdsclient.Bean.SyncStatus;
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import com.sidpatchy.czdsclient.IO.CZDSClient;
+import com.sidpatchy.czdsclient.IO.StubApiServer;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncDaemonTest {
+    private static final byte[] ZONE = "com. 86400 IN SOA a. b. 1 2 3 4 5\n".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger zoneRequests = new AtomicInteger();
+    private final CountDownLatch zoneRequested = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private StubApiServer server;
+    private CZDSClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StubApiServer();
+        server.handleJson("/czds/downloads/links", "[\"" + server.getBaseUrl() + "/czds/downloads/com.zone\"]");
+        server.handle("/czds/downloads/", this::serveZone);
+        client = new CZDSClient("user", "password", server.getBaseUrl(), server.getBaseUrl());
+        client.getDownloader().setDownloadPath(directory.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        client.close();
+        server.close();
+    }
+
+    /**
+     * Holds every zone request until the test releases it.
+     */
+    private void serveZone(HttpExchange exchange) throws IOException {
+        zoneRequests.incrementAndGet();
+        zoneRequested.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().add("Content-Length", Integer.toString(ZONE.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, ZONE.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(ZONE);
+        }
+    }
+
+    private static Clock clockAt(String instant) {
+        return Clock.fixed(Instant.parse(instant), ZoneOffset.UTC);
+    }
+
+    @Test
+    void jitterDelaysTheStartByAtMostTheJitter() {
+        SyncDaemon daemon = new SyncDaemon(client, clockAt("2026-10-16T01:00:00Z"));
+        daemon.setZone(ZoneOffset.UTC);
+        for (int i = 0; i < 20; i++) {
+            daemon.addWindow(new SyncWindow("window" + i, List.of("com"), LocalTime.of(2, 0), Duration.ofMinutes(30)));
+        }
+        daemon.addWindow(new SyncWindow("exact", List.of("com"), LocalTime.of(3, 0), Duration.ZERO));
+
+        try {
+            daemon.start();
+
+            long start = Instant.parse("2026-10-16T02:00:00Z").toEpochMilli();
+            for (SyncStatus status : daemon.getStatus()) {
+                if (status.getWindow().equals("exact")) {
+                    assertEquals(Instant.parse("2026-10-16T03:00:00Z").toEpochMilli(), status.getNextRunAt());
+                } else {
+                    assertTrue(status.getNextRunAt() >= start && status.getNextRunAt() <= start + Duration.ofMinutes(30).toMillis(),
+                            status.getWindow() + " scheduled for " + Instant.ofEpochMilli(status.getNextRunAt()));
+                }
+            }
+        } finally {
+            daemon.close();
+        }
+    }
+
+    @Test
+    void windowStillRunningAtItsNextStartIsSkipped() throws Exception {
+        // The clock never moves, so the window comes around again every 50 ms while its first run is held
+        SyncDaemon daemon = new SyncDaemon(client, clockAt("2026-10-16T01:59:59.950Z"));
+        daemon.setZone(ZoneOffset.UTC);
+        daemon.addWindow(new SyncWindow("nightly", List.of("com"), LocalTime.of(2, 0), Duration.ZERO));
+
+        CompletableFuture<List<ZoneDownloadResult>> run;
+        try {
+            daemon.start();
+            assertTrue(zoneRequested.await(10, TimeUnit.SECONDS), "window did not start");
+            Thread.sleep(500);
+
+            assertEquals(1, zoneRequests.get());
+            SyncStatus status = daemon.getStatus().get(0);
+            assertTrue(status.isRunning());
+            assertEquals(1, status.getRuns());
+            run = daemon.syncNow("nightly");
+            assertFalse(run.isDone());
+        } finally {
+            // Stop the schedule before the run finishes, so it is not started again once it is no longer running
+            daemon.close();
+        }
+
+        release.countDown();
+        run.get(10, TimeUnit.SECONDS);
+        assertEquals(1, daemon.getStatus().get(0).getRuns());
+    }
+}
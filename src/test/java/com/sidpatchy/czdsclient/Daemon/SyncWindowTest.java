@@ -0,0 +1,68 @@
+package com.sidpatchy.czdsclient.Daemon;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncWindowTest {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private static ZonedDateTime at(int day, int hour, int minute) {
+        return ZonedDateTime.of(2026, 10, day, hour, minute, 0, 0, UTC);
+    }
+
+    @Test
+    void nextStartIsLaterTheSameDayOrRollsOverToTheNext() {
+        SyncWindow window = new SyncWindow("nightly", List.of(), LocalTime.of(2, 0), Duration.ZERO);
+
+        assertEquals(at(16, 2, 0), window.getNextStart(at(16, 1, 59)));
+        assertEquals(at(17, 2, 0), window.getNextStart(at(16, 2, 0)));
+        assertEquals(at(17, 2, 0), window.getNextStart(at(16, 23, 30)));
+        assertEquals(ZonedDateTime.of(2026, 11, 1, 2, 0, 0, 0, UTC), window.getNextStart(ZonedDateTime.of(2026, 10, 31, 3, 0, 0, 0, UTC)));
+    }
+
+    @Test
+    void nextStartKeepsTheLocalTimeAcrossDaylightSavingTime() {
+        ZoneId berlin = ZoneId.of("Europe/Berlin");
+        SyncWindow window = new SyncWindow("nightly", List.of(), LocalTime.of(4, 0), Duration.ZERO);
+
+        // Clocks go back on 25 October 2026, so the day is 25 hours long
+        ZonedDateTime next = window.getNextStart(ZonedDateTime.of(2026, 10, 24, 5, 0, 0, 0, berlin));
+
+        assertEquals(ZonedDateTime.of(2026, 10, 25, 4, 0, 0, 0, berlin), next);
+    }
+
+    @Test
+    void parseReadsZonesTimeAndJitter() {
+        SyncWindow window = SyncWindow.parse("com,net=02:00+30", List.of("org"));
+
+        assertEquals("com,net=02:00+30", window.getName());
+        assertEquals(List.of("com", "net"), window.getZones());
+        assertEquals(LocalTime.of(2, 0), window.getStart());
+        assertEquals(Duration.ofMinutes(30), window.getJitter());
+    }
+
+    @Test
+    void parseFallsBackToTheDefaultZonesAndNoJitter() {
+        SyncWindow window = SyncWindow.parse(" 23:15 ", List.of("org"));
+
+        assertEquals("23:15", window.getName());
+        assertEquals(List.of("org"), window.getZones());
+        assertEquals(LocalTime.of(23, 15), window.getStart());
+        assertEquals(Duration.ZERO, window.getJitter());
+    }
+
+    @Test
+    void malformedWindowsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SyncWindow.parse("2am", List.of()));
+        assertThrows(IllegalArgumentException.class, () -> SyncWindow.parse("com=02:00+half", List.of()));
+        assertThrows(IllegalArgumentException.class, () -> SyncWindow.parse("02:00+1440", List.of()));
+        assertThrows(IllegalArgumentException.class, () -> SyncWindow.parse("02:00+-5", List.of()));
+    }
+}
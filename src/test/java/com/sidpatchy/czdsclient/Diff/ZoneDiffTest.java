@@ -0,0 +1,131 @@
+package com.sidpatchy.czdsclient.Diff;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneDiffTest {
+    private static final String SOA = "com. 900 in soa a.gtld-servers.net. nstld.verisign-grs.com. ";
+
+    @TempDir
+    Path directory;
+
+    private Path zone(String name, String content) throws IOException {
+        return zone(name, content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private Path zone(String name, byte[] content) throws IOException {
+        Path file = directory.resolve(name);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        Files.write(file, bytes.toByteArray());
+        return file;
+    }
+
+    private static Map<String, ZoneChange> compare(ZoneDiff diff, Path oldZone, Path newZone) throws IOException {
+        Map<String, ZoneChange> changes = new TreeMap<>();
+        ZoneDiff.Summary summary = diff.compare(oldZone.toFile(), newZone.toFile(),
+                change -> assertNull(changes.put(change.getOwner(), change), "owner reported twice"));
+        assertEquals(changes.size(), summary.getAdded() + summary.getRemoved() + summary.getChanged());
+        return changes;
+    }
+
+    @Test
+    void addedRemovedAndChangedOwnersAreReported() throws IOException {
+        Path oldZone = zone("old.gz", SOA + "1 1800 900 604800 86400\n"
+                + "kept.com. 172800 in ns ns1.example.net.\n"
+                + "dropped.com. 172800 in ns ns1.example.net.\n"
+                + "moved.com. 172800 in ns ns1.example.net.\n"
+                + "moved.com. 172800 in ns ns2.example.net.\n");
+        Path newZone = zone("new.gz", SOA + "2 1800 900 604800 86400\n"
+                + "kept.com. 172800 in ns ns1.example.net.\n"
+                + "moved.com. 172800 in ns ns2.example.net.\n"
+                + "moved.com. 172800 in ns ns3.example.org.\n"
+                + "new.com. 172800 in ns ns1.example.net.\n");
+        ZoneDiff diff = new ZoneDiff();
+        diff.setPartitions(4);
+
+        Map<String, ZoneChange> changes = compare(diff, oldZone, newZone);
+
+        assertEquals(List.of("dropped.com.", "moved.com.", "new.com."), List.copyOf(changes.keySet()));
+        assertEquals(ZoneChange.Type.REMOVED, changes.get("dropped.com.").getType());
+        assertEquals(List.of("ns ns1.example.net."), changes.get("dropped.com.").getOldRecords());
+        assertEquals(ZoneChange.Type.ADDED, changes.get("new.com.").getType());
+        assertEquals(List.of("ns ns1.example.net."), changes.get("new.com.").getNewRecords());
+        ZoneChange moved = changes.get("moved.com.");
+        assertEquals(ZoneChange.Type.CHANGED, moved.getType());
+        assertEquals(List.of("ns ns1.example.net.", "ns ns2.example.net."), moved.getOldRecords());
+        assertEquals(List.of("ns ns2.example.net.", "ns ns3.example.org."), moved.getNewRecords());
+    }
+
+    @Test
+    void recordsOfAnOwnerAreMergedWhenNotAdjacent() throws IOException {
+        Path oldZone = zone("old.gz", "a.com. 172800 in ns ns1.example.net.\n"
+                + "b.com. 172800 in ns ns1.example.net.\n"
+                + "a.com. 172800 in ns ns2.example.net.\n");
+        Path newZone = zone("new.gz", "b.com. 172800 in ns ns1.example.net.\n"
+                + "a.com. 172800 in ns ns2.example.net.\n"
+                + "\t172800 in ns ns1.example.net.\n");
+        ZoneDiff diff = new ZoneDiff();
+        diff.setPartitions(3);
+
+        assertTrue(compare(diff, oldZone, newZone).isEmpty());
+    }
+
+    @Test
+    void soaSignaturesTtlsAndCaseAreIgnored() throws IOException {
+        Path oldZone = zone("old.gz", SOA + "1 1800 900 604800 86400\n"
+                + "com. 86400 in rrsig soa 8 1 900 20261020000000 20261013000000 1 com. AAAA\n"
+                + "a.com. 172800 in ns ns1.example.net.\n"
+                + "a.com. 86400 in rrsig ns 8 2 172800 20261020000000 20261013000000 1 com. BBBB\n");
+        Path newZone = zone("new.gz", SOA + "2 1800 900 604800 86400\n"
+                + "com. 86400 in rrsig soa 8 1 900 20261021000000 20261014000000 1 com. CCCC\n"
+                + "A.COM. 3600 IN NS NS1.Example.NET.\n"
+                + "a.com. 86400 in rrsig ns 8 2 172800 20261021000000 20261014000000 1 com. DDDD\n");
+
+        assertTrue(compare(new ZoneDiff(), oldZone, newZone).isEmpty());
+    }
+
+    @Test
+    void ignoredTypesCanBeChanged() throws IOException {
+        Path oldZone = zone("old.gz", SOA + "1 1800 900 604800 86400\n");
+        Path newZone = zone("new.gz", SOA + "2 1800 900 604800 86400\n");
+        ZoneDiff diff = new ZoneDiff();
+        diff.setIgnoredTypes(Set.of());
+
+        Map<String, ZoneChange> changes = compare(diff, oldZone, newZone);
+
+        assertEquals(ZoneChange.Type.CHANGED, changes.get("com.").getType());
+    }
+
+    @Test
+    void nonAsciiBytesAreComparedExactly() throws IOException {
+        // UTF-8 "caf\u00e9.com." and "caf\u00e8.com.", which differ only in their last byte above 127
+        byte[] oldZone = "caf\u00c3\u00a9.com. 172800 in ns ns1.example.net.\nb.com. 172800 in txt \"\u00c9\"\n"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] newZone = "caf\u00c3\u00a8.com. 172800 in ns ns1.example.net.\nb.com. 172800 in txt \"\u00e9\"\n"
+                .getBytes(StandardCharsets.ISO_8859_1);
+
+        Map<String, ZoneChange> changes = compare(new ZoneDiff(), zone("old.gz", oldZone), zone("new.gz", newZone));
+
+        assertEquals(ZoneChange.Type.REMOVED, changes.get("caf\u00c3\u00a9.com.").getType());
+        assertEquals(ZoneChange.Type.ADDED, changes.get("caf\u00c3\u00a8.com.").getType());
+        assertEquals(List.of("txt \"\u00e9\""), changes.get("b.com.").getNewRecords());
+        assertEquals(3, changes.size());
+    }
+}
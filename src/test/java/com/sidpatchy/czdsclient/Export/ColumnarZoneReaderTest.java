@@ -0,0 +1,195 @@
+package com.sidpatchy.czdsclient.Export;
+
+import com.sidpatchy.czdsclient.Parser.ZoneFileParser;
+import com.sidpatchy.czdsclient.Parser.ZoneRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarZoneReaderTest {
+    private static final int DOMAINS = 5_000;
+    private static final int BLOCK_SIZE = 1_000;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Generates a zone with NS, DS and glue records, names in mixed case and a few different TTLs.
+     */
+    private static byte[] zone() {
+        Random random = new Random(1);
+        StringBuilder zone = new StringBuilder("$TTL 86400\n");
+        zone.append("com.\t900\tIN\tSOA\ta.gtld-servers.net. nstld.verisign-grs.com. 1 1800 900 604800 86400\n");
+        for (int i = 0; i < DOMAINS; i++) {
+            String domain = (i % 7 == 0 ? "Domain" : "domain") + i + ".COM.";
+            int provider = random.nextInt(50);
+            zone.append(domain).append("\t172800\tin\tns\tNS1.Provider").append(provider).append(".net.\n");
+            zone.append(domain).append("\t172800\tin\tns\tns2.provider").append(provider).append(".net.\n");
+            if (i % 10 == 0) {
+                zone.append(domain).append("\t86400\tin\tds\t").append(10000 + i).append(" 8 2 ABCDEF").append(i).append('\n');
+            }
+            if (i % 25 == 0) {
+                zone.append("ns1.").append(domain).append("\t172800\tin\ta\t192.0.2.").append(i % 250).append('\n');
+            }
+        }
+        return zone.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns what the export should hold for every record: owner names and name server targets in lower case.
+     */
+    private static List<String> parse(byte[] zone) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (ZoneFileParser parser = new ZoneFileParser(new ByteArrayInputStream(zone))) {
+            while (parser.next()) {
+                ZoneRecord record = parser.getRecord();
+                String rdata = record.getType().equals("ns") ? record.getRdata().toLowerCase(Locale.ROOT) : record.getRdata();
+                records.add(record.getOwner().toLowerCase(Locale.ROOT) + " " + record.getTtl() + " " + record.getRecordClass()
+                        + " " + record.getType() + " " + rdata);
+            }
+        }
+        return records;
+    }
+
+    private File write(byte[] zone, int compressionLevel) throws IOException {
+        File file = directory.resolve("com.col").toFile();
+        try (ZoneFileParser parser = new ZoneFileParser(new ByteArrayInputStream(zone));
+             ColumnarZoneWriter writer = new ColumnarZoneWriter(file, BLOCK_SIZE)) {
+            writer.setCompressionLevel(compressionLevel);
+            while (parser.next()) {
+                writer.write(parser.getRecord());
+            }
+        }
+        return file;
+    }
+
+    private static List<String> scan(ColumnarZoneReader reader, ZoneQuery query) throws IOException {
+        List<String> records = new ArrayList<>();
+        long matches = reader.scan(query, record -> records.add(record.toString()));
+        assertEquals(records.size(), matches);
+        return records;
+    }
+
+    @Test
+    void everyRecordRoundTrips() throws IOException {
+        byte[] zone = zone();
+        List<String> expected = parse(zone);
+        for (int level : new int[]{0, 1, 9}) {
+            File file = write(zone, level);
+
+            try (ColumnarZoneReader reader = ColumnarZoneReader.open(file)) {
+                assertEquals(expected.size(), reader.getRecordCount());
+                assertEquals((expected.size() + BLOCK_SIZE - 1) / BLOCK_SIZE, reader.getBlockCount());
+                assertEquals(expected, scan(reader, new ZoneQuery()), "compression level " + level);
+            }
+            assertFalse(new File(file.getPath() + ".part").exists());
+        }
+    }
+
+    @Test
+    void nameserverQueryFindsTheDelegatedDomains() throws IOException {
+        byte[] zone = zone();
+        Set<String> expected = new HashSet<>();
+        for (String record : parse(zone)) {
+            String[] fields = record.split(" ");
+            if (fields[3].equals("ns") && fields[4].equals("ns1.provider7.net.")) {
+                expected.add(fields[0]);
+            }
+        }
+        assertFalse(expected.isEmpty());
+
+        try (ColumnarZoneReader reader = ColumnarZoneReader.open(write(zone, 1))) {
+            Set<String> owners = new HashSet<>();
+            long matches = reader.scan(new ZoneQuery().nameserver("NS1.provider7.NET").columns(Column.OWNER), record -> {
+                assertNull(record.getRdata());
+                assertNull(record.getType());
+                assertEquals(-1, record.getTtl());
+                owners.add(record.getOwner());
+            });
+
+            assertEquals(expected.size(), matches);
+            assertEquals(expected, owners);
+            assertEquals(0, reader.scan(new ZoneQuery().nameserver("ns1.nowhere.invalid"), record -> fail(record.toString())));
+        }
+    }
+
+    @Test
+    void ownerAndTypeQueriesReturnTheSelectedColumns() throws IOException {
+        byte[] zone = zone();
+        try (ColumnarZoneReader reader = ColumnarZoneReader.open(write(zone, 1))) {
+            List<String> records = scan(reader, new ZoneQuery().owner("DOMAIN70.com"));
+            List<String> expected = new ArrayList<>();
+            for (String record : parse(zone)) {
+                if (record.startsWith("domain70.com. ")) {
+                    expected.add(record);
+                }
+            }
+            assertEquals(expected, records);
+
+            List<String> ds = scan(reader, new ZoneQuery().type("DS").columns(Column.TTL, Column.TYPE));
+            assertEquals(DOMAINS / 10, ds.size());
+            assertEquals("null 86400 null ds null", ds.get(0));
+        }
+    }
+
+    @Test
+    void emptyZoneRoundTrips() throws IOException {
+        File file = write(new byte[0], 1);
+
+        try (ColumnarZoneReader reader = ColumnarZoneReader.open(file)) {
+            assertEquals(0, reader.getRecordCount());
+            assertEquals(0, reader.getBlockCount());
+            assertEquals(List.of(), scan(reader, new ZoneQuery()));
+        }
+    }
+
+    @Test
+    void exportOfAZoneFileMatchesTheParser() throws IOException {
+        byte[] zone = zone();
+        File zoneFile = directory.resolve("com.zone").toFile();
+        Files.write(zoneFile.toPath(), zone);
+        File file = directory.resolve("export.col").toFile();
+
+        assertEquals(parse(zone).size(), ColumnarZoneWriter.export(zoneFile, file));
+        try (ColumnarZoneReader reader = ColumnarZoneReader.open(file)) {
+            assertEquals(parse(zone), scan(reader, new ZoneQuery()));
+        }
+    }
+
+    @Test
+    void truncatedOrForeignFileIsRejected() throws IOException {
+        File file = write(zone(), 1);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        assertThrows(IOException.class, () -> ColumnarZoneReader.open(file));
+
+        Files.write(file.toPath(), "com. 86400 in ns a.gtld-servers.net.\n".repeat(10).getBytes(StandardCharsets.US_ASCII));
+        assertThrows(IOException.class, () -> ColumnarZoneReader.open(file));
+    }
+
+    @Test
+    void invalidSettingsAreRejected() throws IOException {
+        File file = directory.resolve("invalid.col").toFile();
+        assertThrows(IllegalArgumentException.class, () -> new ColumnarZoneWriter(file, 0));
+        try (ColumnarZoneWriter writer = new ColumnarZoneWriter(file)) {
+            assertThrows(IllegalArgumentException.class, () -> writer.setCompressionLevel(10));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ZoneQuery().columns());
+    }
+}
@@ -0,0 +1,443 @@
+package com.sidpatchy.czdsclient.IO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.ZoneManifest;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDownloaderTest {
+    private static final int FILE_SIZE = 256 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private volatile byte[] zone = new byte[FILE_SIZE];
+    private final AtomicInteger fullDownloads = new AtomicInteger();
+    private final List<String> rangeRequests = new CopyOnWriteArrayList<>();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile int rangeStatus = 206;
+    private volatile String etag = "\"v1\"";
+    private volatile int stallAfter = -1;
+    private StubApiServer server;
+    private ExecutorService executor;
+    private HttpConnectionManager connectionManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new Random(1).nextBytes(zone);
+        server = new StubApiServer();
+        server.handle("/czds/downloads/", this::serveZone);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        connectionManager = new HttpConnectionManager("user", "password", server.getBaseUrl(), server.getBaseUrl(), executor);
+        connectionManager.setRetryPolicy(RetryPolicy.none());
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        downloader.setSegments(4);
+        downloader.setMinSegmentSize(16 * 1024);
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private void serveZone(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().add("Content-Length", Integer.toString(zone.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (range != null && ifRange != null) {
+            rangeRequests.add(range + " " + ifRange);
+        }
+        // A range conditional on an older version of the file is answered with the whole current file
+        if (range != null && (ifRange == null || ifRange.equals(etag)) && rangeStatus != 200) {
+            if (rangeStatus == 416) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + zone.length);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            if (rangeStatus != 206) {
+                StubApiServer.send(exchange, rangeStatus, "{}");
+                return;
+            }
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : zone.length - 1;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + zone.length);
+            exchange.sendResponseHeaders(206, end - start + 1);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(zone, start, end - start + 1);
+            }
+            return;
+        }
+
+        fullDownloads.incrementAndGet();
+        exchange.sendResponseHeaders(200, zone.length == 0 ? -1 : zone.length);
+        int stall = stallAfter;
+        if (stall >= 0) {
+            // Send part of the body, then go silent without closing the connection
+            stallAfter = -1;
+            OutputStream body = exchange.getResponseBody();
+            body.write(zone, 0, stall);
+            body.flush();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+            return;
+        }
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(zone);
+        }
+    }
+
+    private Path outputFile() {
+        return directory.resolve("com.zone.gz");
+    }
+
+    private void writePartial(byte[] content, String checkpoint) throws IOException {
+        Files.write(directory.resolve("com.zone.gz.part"), content);
+        Files.writeString(directory.resolve("com.zone.gz.part.json"), checkpoint, StandardCharsets.UTF_8);
+    }
+
+    private static String checkpoint(String etag) {
+        return "{\"etag\":\"" + etag.replace("\"", "\\\"") + "\",\"size\":" + FILE_SIZE + "}";
+    }
+
+    private void assertDownloaded() throws IOException {
+        assertArrayEquals(zone, Files.readAllBytes(outputFile()));
+        assertFalse(Files.exists(directory.resolve("com.zone.gz.part")));
+        assertFalse(Files.exists(directory.resolve("com.zone.gz.part.json")));
+    }
+
+    private Path manifestFile() {
+        return directory.resolve("com.zone.gz.manifest.json");
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Overwrites the file in place with content of the same length and gives it a new modification time.
+     */
+    private void modify(Path file, byte[] content) throws IOException {
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 60_000));
+    }
+
+    private String zoneUrl() {
+        return server.getBaseUrl() + "/czds/downloads/com.zone";
+    }
+
+    @Test
+    void segmentedDownloadAssemblesTheFile() throws Exception {
+        Path file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join().toPath();
+
+        assertArrayEquals(zone, Files.readAllBytes(file));
+        assertEquals(0, fullDownloads.get());
+    }
+
+    @Test
+    void failedSegmentFallsBackToASingleStream() throws Exception {
+        rangeStatus = 503;
+
+        Path file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join().toPath();
+
+        assertArrayEquals(zone, Files.readAllBytes(file));
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void fileTooSmallForTwoSegmentsIsDownloadedInOneStream() throws Exception {
+        zone = Arrays.copyOf(zone, 20 * 1024);
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertTrue(rangeRequests.isEmpty());
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void emptyFileIsDownloadedInOneStream() throws Exception {
+        zone = new byte[0];
+        connectionManager.getFileDownloader().setMinSegmentSize(0);
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertTrue(rangeRequests.isEmpty());
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void forbiddenSegmentDoesNotFallBack() {
+        rangeStatus = 403;
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join());
+
+        assertEquals(403, ((HttpStatusException) e.getCause()).getStatusCode());
+        assertEquals(0, fullDownloads.get());
+    }
+
+    @Test
+    void partialDownloadIsResumedWithARange() throws Exception {
+        connectionManager.getFileDownloader().setSegments(1);
+        writePartial(Arrays.copyOf(zone, FILE_SIZE / 2), checkpoint("\"v1\""));
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertEquals(List.of("bytes=" + FILE_SIZE / 2 + "- \"v1\""), rangeRequests);
+        assertEquals(0, fullDownloads.get());
+    }
+
+    @Test
+    void rejectedRangeDiscardsThePartialAndRestarts() throws Exception {
+        connectionManager.getFileDownloader().setSegments(1);
+        rangeStatus = 416;
+        writePartial(new byte[FILE_SIZE / 2], checkpoint("\"v1\""));
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertEquals(1, rangeRequests.size());
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void fullResponseToARangeRequestRestartsFromZero() throws Exception {
+        connectionManager.getFileDownloader().setSegments(1);
+        rangeStatus = 200;
+        writePartial(new byte[FILE_SIZE / 2], checkpoint("\"v1\""));
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertEquals(1, rangeRequests.size());
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void partialOfAnOlderVersionIsReplaced() throws Exception {
+        connectionManager.getFileDownloader().setSegments(1);
+        etag = "\"v2\"";
+        writePartial(new byte[FILE_SIZE / 2], checkpoint("\"v1\""));
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertEquals(List.of("bytes=" + FILE_SIZE / 2 + "- \"v1\""), rangeRequests);
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void corruptCheckpointStartsOver() throws Exception {
+        connectionManager.getFileDownloader().setSegments(1);
+        writePartial(new byte[FILE_SIZE / 2], "{\"etag\":");
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertTrue(rangeRequests.isEmpty());
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void stalledDownloadIsResumedAfterTheReadTimeout() throws Exception {
+        connectionManager.getFileDownloader().setSegments(1);
+        connectionManager.setReadTimeout(Duration.ofMillis(300));
+        stallAfter = FILE_SIZE / 2;
+
+        connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+        assertDownloaded();
+        assertEquals(List.of("bytes=" + FILE_SIZE / 2 + "- \"v1\""), rangeRequests);
+        assertEquals(1, fullDownloads.get());
+    }
+
+    @Test
+    void downloadWritesAManifestThatVerifyTrusts() throws Exception {
+        File file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+        FileDownloader downloader = connectionManager.getFileDownloader();
+
+        ZoneManifest manifest = downloader.readManifest(file);
+        assertEquals("com.zone.gz", manifest.getFileName());
+        assertEquals(FILE_SIZE, manifest.getSize());
+        assertEquals(file.lastModified(), manifest.getModifiedAt());
+        assertEquals("SHA-256", manifest.getDigestAlgorithm());
+        assertEquals(sha256(zone), manifest.getDigest());
+        assertEquals("\"v1\"", manifest.getEtag());
+        assertFalse(manifest.isGzipVerified());
+        assertEquals(-1, manifest.getUncompressedSize());
+
+        // A manifest matching the file's size and modification time is trusted without hashing the file
+        ObjectMapper objectMapper = new ObjectMapper();
+        manifest.setDigest("trusted");
+        objectMapper.writeValue(manifestFile().toFile(), manifest);
+        assertEquals("trusted", downloader.verify(file).getDigest());
+    }
+
+    @Test
+    void modifiedFileIsHashedAgain() throws Exception {
+        File file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        byte[] modified = zone.clone();
+        modified[FILE_SIZE / 2] ^= 1;
+        modify(file.toPath(), modified);
+
+        ZoneManifest manifest = downloader.verify(file);
+
+        assertEquals(sha256(modified), manifest.getDigest());
+        assertEquals(file.lastModified(), manifest.getModifiedAt());
+        // Validators are carried over from the old manifest
+        assertEquals("\"v1\"", manifest.getEtag());
+        assertEquals(sha256(modified), downloader.readManifest(file).getDigest());
+    }
+
+    @Test
+    void fileWithoutAManifestIsHashed() throws Exception {
+        Path file = outputFile();
+        Files.write(file, zone);
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        downloader.setDigestAlgorithm("SHA-512");
+
+        ZoneManifest manifest = downloader.verify(file.toFile());
+
+        assertEquals("SHA-512", manifest.getDigestAlgorithm());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-512").digest(zone)), manifest.getDigest());
+        assertNull(manifest.getEtag());
+        assertTrue(Files.exists(manifestFile()));
+        assertThrows(IllegalArgumentException.class, () -> downloader.setDigestAlgorithm("NO-SUCH-DIGEST"));
+    }
+
+    @Test
+    void changedDigestAlgorithmHashesAgain() throws Exception {
+        File file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        downloader.setDigestAlgorithm("SHA-512");
+
+        ZoneManifest manifest = downloader.verify(file);
+
+        assertEquals("SHA-512", manifest.getDigestAlgorithm());
+        assertEquals(128, manifest.getDigest().length());
+    }
+
+    @Test
+    void gzipDownloadsAreValidatedAndRecorded() throws Exception {
+        byte[] data = zone;
+        zone = gzip(data);
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        downloader.setVerifyGzip(true);
+
+        for (int segments : new int[] {1, 4}) {
+            downloader.setSegments(segments);
+            File file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+            ZoneManifest manifest = downloader.readManifest(file);
+            assertTrue(manifest.isGzipVerified(), segments + " segments");
+            assertEquals(data.length, manifest.getUncompressedSize(), segments + " segments");
+            assertEquals(sha256(zone), manifest.getDigest(), segments + " segments");
+        }
+    }
+
+    @Test
+    void verifyValidatesGzipWhenTheManifestDidNot() throws Exception {
+        File file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        downloader.setVerifyGzip(true);
+
+        // The random test file is no gzip file; only validation catches that
+        ZipException e = assertThrows(ZipException.class, () -> downloader.verify(file));
+        assertTrue(e.getMessage().startsWith("Not a gzip file"), e.getMessage());
+    }
+
+    @Test
+    void corruptedGzipFileFailsVerification() throws Exception {
+        zone = gzip(zone);
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        downloader.setVerifyGzip(true);
+        File file = connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+        byte[] corrupt = zone.clone();
+        corrupt[corrupt.length - 8] ^= 1;
+        modify(file.toPath(), corrupt);
+
+        ZipException e = assertThrows(ZipException.class, () -> downloader.verify(file));
+        assertTrue(e.getMessage().startsWith("CRC32 mismatch"), e.getMessage());
+    }
+
+    @Test
+    void bandwidthLimitPacesTheDownload() throws Exception {
+        FileDownloader downloader = connectionManager.getFileDownloader();
+        for (int segments : new int[] {1, 4}) {
+            downloader.setSegments(segments);
+            // The bucket starts with one second worth of bytes, the rest of the file is paced
+            downloader.setBandwidthLimit(FILE_SIZE / 2);
+            long start = System.nanoTime();
+
+            connectionManager.downloadFileAsync(zoneUrl(), directory.toString()).join();
+
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            assertTrue(elapsed >= 0.8 && elapsed < 4, segments + " segments: " + elapsed + "s");
+            assertDownloaded();
+        }
+    }
+
+    @Test
+    void negativeBandwidthLimitIsRejected() {
+        FileDownloader downloader = connectionManager.getFileDownloader();
+
+        assertThrows(IllegalArgumentException.class, () -> downloader.setBandwidthLimit(-1));
+        downloader.setBandwidthLimit(0);
+        assertEquals(0, downloader.getBandwidthLimit());
+    }
+}
@@ -0,0 +1,204 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipValidatorTest {
+    private static final byte[] DATA = "com. 86400 IN SOA a.gtld-servers.net. nstld.verisign-grs.com. 1 1800 900 604800 86400\n"
+            .repeat(50).getBytes(StandardCharsets.US_ASCII);
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Builds a gzip member by hand, with the optional header fields selected by {@code flags}.
+     */
+    private static byte[] member(byte[] data, int flags) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[] {0x1f, (byte) 0x8b, 8, (byte) flags, 0, 0, 0, 0, 0, (byte) 0xff});
+        if ((flags & 4) != 0) {
+            byte[] extra = "AB\u0004\u0000data".getBytes(StandardCharsets.ISO_8859_1);
+            out.write(extra.length);
+            out.write(0);
+            out.writeBytes(extra);
+        }
+        if ((flags & 8) != 0) {
+            out.writeBytes("com.zone\u0000".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        if ((flags & 16) != 0) {
+            out.writeBytes("zone file of the .com TLD\u0000".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        if ((flags & 2) != 0) {
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(out.toByteArray());
+            out.write((int) headerCrc.getValue());
+            out.write((int) (headerCrc.getValue() >>> 8));
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(out, crc.getValue());
+        writeInt(out, data.length);
+        return out.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        for (int i = 0; i < 4; i++) {
+            out.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static GzipValidator validate(byte[] file, int chunkSize) throws ZipException {
+        GzipValidator validator = new GzipValidator();
+        for (int offset = 0; offset < file.length; offset += chunkSize) {
+            validator.update(file, offset, Math.min(chunkSize, file.length - offset));
+        }
+        validator.finish();
+        validator.close();
+        return validator;
+    }
+
+    private static ZipException assertInvalid(byte[] file) {
+        return assertThrows(ZipException.class, () -> validate(file, file.length == 0 ? 1 : file.length));
+    }
+
+    @Test
+    void gzipOutputStreamFileIsValid() throws IOException {
+        GzipValidator validator = validate(gzip(DATA), 8192);
+
+        assertEquals(DATA.length, validator.getUncompressedSize());
+        assertEquals(1, validator.getMembers());
+    }
+
+    @Test
+    void optionalHeaderFieldsAreSkippedAtEverySplit() throws ZipException {
+        for (int flags : new int[] {2, 4, 8, 16, 2 | 4 | 8 | 16}) {
+            byte[] file = member(DATA, flags);
+            // Splitting the file at every offset puts a chunk boundary inside every header field
+            for (int split = 1; split < 60; split++) {
+                GzipValidator validator = new GzipValidator();
+                validator.update(file, 0, split);
+                validator.update(file, split, file.length - split);
+                validator.finish();
+                validator.close();
+                assertEquals(DATA.length, validator.getUncompressedSize(), "flags " + flags + ", split at " + split);
+            }
+            assertEquals(DATA.length, validate(file, 1).getUncompressedSize(), "flags " + flags);
+        }
+    }
+
+    @Test
+    void emptyExtraFieldIsAccepted() throws ZipException {
+        byte[] file = member(DATA, 4);
+        // Replace the 8-byte extra field with an empty one
+        byte[] empty = concat(Arrays.copyOf(file, 10), new byte[] {0, 0}, Arrays.copyOfRange(file, 20, file.length));
+
+        assertEquals(DATA.length, validate(empty, 3).getUncompressedSize());
+    }
+
+    @Test
+    void multiMemberFileIsValid() throws IOException {
+        byte[] file = concat(gzip(DATA), member(new byte[0], 8), member(DATA, 2 | 16));
+
+        for (int chunkSize : new int[] {1, 7, 100, file.length}) {
+            GzipValidator validator = validate(file, chunkSize);
+            assertEquals(3, validator.getMembers());
+            assertEquals(2L * DATA.length, validator.getUncompressedSize());
+        }
+    }
+
+    @Test
+    void trailingGarbageIsRejected() throws IOException {
+        ZipException e = assertInvalid(concat(gzip(DATA), "garbage!!!".getBytes(StandardCharsets.US_ASCII)));
+
+        assertTrue(e.getMessage().contains("Trailing garbage"), e.getMessage());
+    }
+
+    @Test
+    void notAGzipFileIsRejected() {
+        assertTrue(assertInvalid(DATA).getMessage().startsWith("Not a gzip file"));
+        assertEquals("Not a gzip file: no data", assertInvalid(new byte[0]).getMessage());
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        byte[] file = gzip(DATA);
+
+        // Cut in the header, in the compressed data and in the trailer
+        for (int length : new int[] {5, 10, file.length / 2, file.length - 1}) {
+            ZipException e = assertInvalid(Arrays.copyOf(file, length));
+            assertTrue(e.getMessage().startsWith("Truncated gzip file"), length + ": " + e.getMessage());
+        }
+        // A second member cut short
+        ZipException e = assertInvalid(concat(file, Arrays.copyOf(file, 20)));
+        assertTrue(e.getMessage().contains("member 2"), e.getMessage());
+    }
+
+    @Test
+    void crcMismatchIsRejected() throws IOException {
+        byte[] file = gzip(DATA);
+        file[file.length - 8] ^= 1;
+
+        assertTrue(assertInvalid(file).getMessage().startsWith("CRC32 mismatch"));
+    }
+
+    @Test
+    void sizeMismatchIsRejected() throws IOException {
+        byte[] file = gzip(DATA);
+        file[file.length - 4] ^= 1;
+
+        assertTrue(assertInvalid(file).getMessage().startsWith("Size mismatch"));
+    }
+
+    @Test
+    void corruptDataIsRejected() throws IOException {
+        byte[] data = new byte[64 * 1024];
+        new Random(1).nextBytes(data);
+        byte[] file = gzip(data);
+        // A stored block of random data: break its length check
+        file[11] ^= 0x55;
+
+        assertThrows(ZipException.class, () -> validate(file, 1000));
+    }
+
+    @Test
+    void unsupportedCompressionMethodIsRejected() throws IOException {
+        byte[] file = gzip(DATA);
+        file[2] = 7;
+
+        assertTrue(assertInvalid(file).getMessage().startsWith("Unsupported gzip compression method"));
+    }
+}
@@ -0,0 +1,208 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpConnectionManagerTest {
+    private StubApiServer server;
+    private ExecutorService executor;
+    private HttpConnectionManager connectionManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubApiServer();
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        connectionManager = new HttpConnectionManager("user", "password", server.getBaseUrl(), server.getBaseUrl(), executor);
+        connectionManager.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(5)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void getLogsInOnceAndDeserializesTheResponse() {
+        server.handleJson("/czds/test", "{\"name\":\"com\",\"size\":42}");
+
+        Map<?, ?> first = connectionManager.get("/czds/test", Map.class).join();
+        Map<?, ?> second = connectionManager.get("/czds/test", Map.class).join();
+
+        assertEquals("com", first.get("name"));
+        assertEquals(42, first.get("size"));
+        assertEquals(first, second);
+        assertEquals(1, server.getLogins());
+    }
+
+    @Test
+    void errorStatusFailsWithHttpStatusException() {
+        server.handle("/czds/missing", exchange -> StubApiServer.send(exchange, 404, "{}"));
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> connectionManager.get("/czds/missing", Map.class).join());
+
+        assertInstanceOf(HttpStatusException.class, e.getCause());
+        assertEquals(404, ((HttpStatusException) e.getCause()).getStatusCode());
+    }
+
+    @Test
+    void serverErrorsAreRetriedBeforeFailing() {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/czds/broken", exchange -> {
+            requests.incrementAndGet();
+            StubApiServer.send(exchange, 503, "{}");
+        });
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> connectionManager.get("/czds/broken", Map.class).join());
+
+        assertEquals(503, ((HttpStatusException) e.getCause()).getStatusCode());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void throttledRequestWaitsForRetryAfter() {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/czds/throttled", exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                StubApiServer.send(exchange, 429, "{}");
+                return;
+            }
+            StubApiServer.send(exchange, 200, "{\"name\":\"com\"}");
+        });
+        connectionManager.setRateLimiter(new RateLimiter(100, 10));
+
+        long start = System.nanoTime();
+        Map<?, ?> result = connectionManager.get("/czds/throttled", Map.class).join();
+
+        assertEquals("com", result.get("name"));
+        assertEquals(2, requests.get());
+        assertTrue(System.nanoTime() - start >= 900_000_000L, "retried before Retry-After elapsed");
+        assertEquals(50, connectionManager.getRateLimiter().getCurrentRate(), 1);
+    }
+
+    @Test
+    void postIsNotRetriedOnServerErrors() {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/czds/broken", exchange -> {
+            requests.incrementAndGet();
+            StubApiServer.send(exchange, 500, "{}");
+        });
+
+        assertThrows(CompletionException.class,
+                () -> connectionManager.post("/czds/broken", Map.of("a", 1), Map.class).join());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void rejectedTokenIsReplacedAndTheRequestRetried() {
+        server.handleJson("/czds/test", "{\"name\":\"com\"}");
+        connectionManager.get("/czds/test", Map.class).join();
+        String firstToken = connectionManager.getTokenManager().getCurrentToken();
+
+        server.revoke();
+        Map<?, ?> result = connectionManager.get("/czds/test", Map.class).join();
+
+        assertEquals("com", result.get("name"));
+        assertEquals(2, server.getLogins());
+        assertNotEquals(firstToken, connectionManager.getTokenManager().getCurrentToken());
+    }
+
+    @Test
+    void rejectedDownloadIsRetriedWithANewToken() throws Exception {
+        server.handle("/czds/downloads/", exchange -> {
+            if (!server.isAuthorized(exchange)) {
+                StubApiServer.send(exchange, 401, "{}");
+                return;
+            }
+            StubApiServer.send(exchange, 200, "zone data");
+        });
+        connectionManager.authenticate();
+        server.revoke();
+
+        try (InputStream stream = connectionManager.openStream(server.getBaseUrl() + "/czds/downloads/com.zone").join()) {
+            assertEquals("zone data", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(2, server.getLogins());
+    }
+
+    @Test
+    void repeatedRejectionIsNotRetriedForever() {
+        AtomicInteger requests = new AtomicInteger();
+        server.handle("/czds/forbidden", exchange -> {
+            requests.incrementAndGet();
+            StubApiServer.send(exchange, 401, "{}");
+        });
+
+        CompletionException e = assertThrows(CompletionException.class,
+                () -> connectionManager.get("/czds/forbidden", Map.class).join());
+
+        assertEquals(401, ((HttpStatusException) e.getCause()).getStatusCode());
+        assertEquals(2, requests.get());
+        assertEquals(2, server.getLogins());
+    }
+
+    @Test
+    void invalidCredentialsFailAuthentication() {
+        server.setLoginStatus(401);
+
+        Exception e = assertThrows(RuntimeException.class, () -> connectionManager.authenticate());
+        assertEquals("Invalid username or password.", e.getMessage());
+    }
+
+    @Test
+    void stalledDownloadFailsWithReadTimeout() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        server.handle("/czds/downloads/", exchange -> {
+            exchange.sendResponseHeaders(200, 1024);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(new byte[100]);
+                out.flush();
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        connectionManager.setReadTimeout(Duration.ofMillis(300));
+
+        try (InputStream stream = connectionManager.openStream(server.getBaseUrl() + "/czds/downloads/com.zone").join()) {
+            long start = System.nanoTime();
+            IOException e = assertThrows(IOException.class, stream::readAllBytes);
+
+            assertInstanceOf(HttpTimeoutException.class, e);
+            assertTrue(System.nanoTime() - start < 5_000_000_000L, "stalled read was not cut off");
+        } finally {
+            released.countDown();
+        }
+    }
+
+    @Test
+    void pausesBetweenReadsDoNotCountTowardsTheReadTimeout() throws Exception {
+        server.handle("/czds/downloads/", exchange -> StubApiServer.send(exchange, 200, "zone data"));
+        connectionManager.setReadTimeout(Duration.ofMillis(200));
+
+        try (InputStream stream = connectionManager.openStream(server.getBaseUrl() + "/czds/downloads/com.zone").join()) {
+            assertEquals('z', stream.read());
+            Thread.sleep(600);
+            assertEquals("one data", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressReporterTest {
+
+    @Test
+    void bytesAreFormattedInBinaryUnits() {
+        assertEquals("0 B", ProgressReporter.formatBytes(0));
+        assertEquals("1023 B", ProgressReporter.formatBytes(1023));
+        assertEquals("1.0 KiB", ProgressReporter.formatBytes(1024));
+        assertEquals("1.5 KiB", ProgressReporter.formatBytes(1536));
+        assertEquals("1024.0 KiB", ProgressReporter.formatBytes(1024 * 1024 - 1));
+        assertEquals("1.0 MiB", ProgressReporter.formatBytes(1024 * 1024));
+        assertEquals("1.5 GiB", ProgressReporter.formatBytes(3L << 29));
+        assertEquals("8.0 EiB", ProgressReporter.formatBytes(Long.MAX_VALUE));
+    }
+
+    @Test
+    void reportIsScheduledWhileTransfersRunAndCancelledOnceIdle() {
+        ProgressReporter reporter = new ProgressReporter();
+        reporter.setInterval(Duration.ofMillis(10));
+        assertFalse(reporter.isScheduled());
+
+        ProgressReporter.Transfer first = reporter.start("com.zone.gz", 0, 100);
+        ProgressReporter.Transfer second = reporter.start("net.zone.gz", 0, 100);
+        assertTrue(reporter.isScheduled());
+
+        first.finish();
+        assertTrue(reporter.isScheduled());
+        second.finish();
+        assertFalse(reporter.isScheduled());
+        assertEquals(0, reporter.getActiveTransfers());
+
+        // A new transfer schedules the report again
+        reporter.start("org.zone.gz", 0, -1).finish();
+        assertFalse(reporter.isScheduled());
+    }
+
+    @Test
+    void zeroIntervalDisablesTheReport() {
+        ProgressReporter reporter = new ProgressReporter();
+        reporter.setInterval(Duration.ZERO);
+
+        ProgressReporter.Transfer transfer = reporter.start("com.zone.gz", 0, 100);
+
+        assertFalse(reporter.isScheduled());
+        transfer.finish();
+    }
+
+    @Test
+    void transfersOfTheSameFileNameAreKeptApart() {
+        ProgressReporter reporter = new ProgressReporter();
+        reporter.setInterval(Duration.ofMillis(10));
+        ProgressReporter.Transfer first = reporter.start("com.zone.gz", 0, 100);
+        ProgressReporter.Transfer second = reporter.start("com.zone.gz", 0, 100);
+        assertEquals(2, reporter.getActiveTransfers());
+
+        first.finish();
+
+        assertEquals(1, reporter.getActiveTransfers());
+        assertTrue(reporter.isScheduled());
+        second.finish();
+        assertEquals(0, reporter.getActiveTransfers());
+        assertFalse(reporter.isScheduled());
+    }
+
+    @Test
+    void progressIncludesBytesAlreadyOnDisk() {
+        ProgressReporter reporter = new ProgressReporter();
+        ProgressReporter.Transfer known = reporter.start("com.zone.gz", 1024, 4096);
+        ProgressReporter.Transfer unknown = reporter.start("net.zone.gz", 0, -1);
+        known.add(1024);
+        known.add(1024);
+        unknown.add(2048);
+
+        assertEquals(2048, known.getTransferred());
+        assertTrue(known.describe().startsWith("Downloading com.zone.gz: 75% (3.0 KiB of 4.0 KiB, "), known.describe());
+        assertTrue(unknown.describe().startsWith("Downloading net.zone.gz: 2.0 KiB ("), unknown.describe());
+        assertTrue(known.describeRate().endsWith("/s"));
+        known.finish();
+        unknown.finish();
+    }
+}
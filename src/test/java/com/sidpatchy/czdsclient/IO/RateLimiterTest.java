@@ -0,0 +1,94 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static double secondsSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    @Test
+    void burstIsImmediateAndTheRestIsPaced() {
+        RateLimiter limiter = new RateLimiter(20, 5);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> permits = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                permits.add(limiter.acquire(executor));
+            }
+
+            for (int i = 0; i < 5; i++) {
+                assertTrue(permits.get(i).isDone(), "permit " + i + " of the burst was delayed");
+            }
+            assertFalse(permits.get(5).isDone());
+            CompletableFuture.allOf(permits.toArray(new CompletableFuture<?>[0])).join();
+            // 20 permits beyond the burst at 20 per second
+            double elapsed = secondsSince(start);
+            assertTrue(elapsed >= 0.9 && elapsed < 3, elapsed + "s");
+        }
+    }
+
+    @Test
+    void throttlingHalvesTheRateDownToAFloorAndSuccessRecoversIt() {
+        RateLimiter limiter = new RateLimiter(16, 1);
+
+        limiter.onThrottled(null);
+        assertEquals(8, limiter.getCurrentRate(), 1e-9);
+        for (int i = 0; i < 10; i++) {
+            limiter.onThrottled(null);
+        }
+        assertEquals(1, limiter.getCurrentRate(), 1e-9);
+
+        limiter.onSuccess();
+        assertEquals(1.16, limiter.getCurrentRate(), 1e-9);
+        for (int i = 0; i < 200; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(16, limiter.getCurrentRate(), 1e-9);
+    }
+
+    @Test
+    void unlimitedLimiterHonoursRetryAfter() {
+        RateLimiter limiter = RateLimiter.unlimited();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            assertTrue(limiter.acquire(executor).isDone());
+
+            limiter.onThrottled(Duration.ofMillis(300));
+            long start = System.nanoTime();
+            limiter.acquire(executor).join();
+
+            assertTrue(secondsSince(start) >= 0.25, secondsSince(start) + "s");
+            assertEquals(0, limiter.getCurrentRate(), 0);
+        }
+    }
+
+    @Test
+    void blockingAcquirePacesBytes() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(200_000, 20_000);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 12; i++) {
+            limiter.acquire(10_000);
+        }
+
+        // 100 KB beyond the burst at 200 KB per second
+        double elapsed = secondsSince(start);
+        assertTrue(elapsed >= 0.45 && elapsed < 2, elapsed + "s");
+    }
+
+    @Test
+    void invalidSettingsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(1, 0));
+    }
+}
@@ -0,0 +1,71 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+    private final RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(1000));
+
+    @Test
+    void throttlingIsAlwaysRetriedAndServerErrorsOnlyWhenIdempotent() {
+        assertTrue(policy.isRetryable(429, false));
+        assertTrue(policy.isRetryable(503, true));
+        assertFalse(policy.isRetryable(503, false));
+        assertFalse(policy.isRetryable(404, true));
+        assertFalse(policy.isRetryable(401, true));
+    }
+
+    @Test
+    void connectFailuresAreAlwaysRetriedAndOtherIoErrorsOnlyWhenIdempotent() {
+        assertTrue(policy.isRetryable(new ConnectException(), false));
+        assertTrue(policy.isRetryable(new HttpTimeoutException("timed out"), true));
+        assertFalse(policy.isRetryable(new IOException("reset"), false));
+        assertFalse(policy.isRetryable(new IllegalStateException(), true));
+    }
+
+    @Test
+    void idempotentMethods() {
+        assertTrue(RetryPolicy.isIdempotent("GET"));
+        assertTrue(RetryPolicy.isIdempotent("HEAD"));
+        assertFalse(RetryPolicy.isIdempotent("POST"));
+        assertFalse(RetryPolicy.isIdempotent("PATCH"));
+    }
+
+    @Test
+    void delaysStayWithinTheExponentialBound() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.getDelay(1, null).toMillis() <= 100);
+            assertTrue(policy.getDelay(3, null).toMillis() <= 400);
+            assertTrue(policy.getDelay(40, null).toMillis() <= 1000);
+        }
+    }
+
+    @Test
+    void delaysAreJittered() {
+        long first = policy.getDelay(4, null).toMillis();
+        for (int i = 0; i < 100; i++) {
+            if (policy.getDelay(4, null).toMillis() != first) {
+                return;
+            }
+        }
+        fail("100 delays were all " + first + " ms");
+    }
+
+    @Test
+    void retryAfterIsAMinimum() {
+        assertEquals(Duration.ofSeconds(30), policy.getDelay(1, Duration.ofSeconds(30)));
+        assertTrue(policy.getDelay(1, Duration.ZERO).toMillis() <= 100);
+    }
+
+    @Test
+    void atLeastOneAttemptIsRequired() {
+        assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0, Duration.ZERO, Duration.ZERO));
+        assertEquals(1, RetryPolicy.none().getMaxAttempts());
+    }
+}
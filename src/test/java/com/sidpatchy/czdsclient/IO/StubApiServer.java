@@ -0,0 +1,166 @@
+package com.sidpatchy.czdsclient.IO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for the CZDS authentication endpoint and API on the loopback interface. Every login issues a
+ * new JWT valid for a day; {@link #revoke()} makes the server reject the current one, as if it had expired early.
+ */
+public final class StubApiServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger logins = new AtomicInteger();
+    private volatile String validToken;
+    private volatile String loginResponse;
+    private volatile long loginDelayMillis;
+    private volatile int loginStatus = 200;
+
+    /**
+     * Starts a server on a free port.
+     *
+     * @throws IOException If the server cannot be started.
+     */
+    public StubApiServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/authenticate/", this::login);
+        server.start();
+    }
+
+    private void login(HttpExchange exchange) throws IOException {
+        int login = logins.incrementAndGet();
+        if (loginDelayMillis > 0) {
+            try {
+                Thread.sleep(loginDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (loginStatus != 200) {
+            send(exchange, loginStatus, "{\"message\":\"Authentication Failed\"}");
+            return;
+        }
+        String response = loginResponse;
+        if (response == null) {
+            String claims = "{\"exp\":" + Instant.now().plusSeconds(86400).getEpochSecond() + ",\"login\":" + login + "}";
+            validToken = "eyJhbGciOiJIUzI1NiJ9."
+                    + Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+                    + ".signature";
+            response = "{\"accessToken\":\"" + validToken + "\",\"message\":\"Authentication Successful\"}";
+        }
+        send(exchange, 200, response);
+    }
+
+    /**
+     * Serves a path with a handler.
+     *
+     * @param path the path prefix to serve
+     * @param handler the handler
+     */
+    public void handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    /**
+     * Serves a path with a fixed JSON body, answering 401 to requests without the current token.
+     *
+     * @param path the path prefix to serve
+     * @param json the body to answer with
+     */
+    public void handleJson(String path, String json) {
+        handle(path, exchange -> {
+            if (!isAuthorized(exchange)) {
+                send(exchange, 401, "{\"message\":\"Unauthorized\"}");
+                return;
+            }
+            send(exchange, 200, json);
+        });
+    }
+
+    /**
+     * Checks whether a request carries the token of the last login.
+     *
+     * @param exchange the request
+     * @return true if the token is current.
+     */
+    public boolean isAuthorized(HttpExchange exchange) {
+        String token = validToken;
+        return token != null && ("Bearer " + token).equals(exchange.getRequestHeaders().getFirst("Authorization"));
+    }
+
+    /**
+     * Rejects the current token from now on; the next login issues a new one.
+     */
+    public void revoke() {
+        validToken = null;
+    }
+
+    /**
+     * Answers every following login with a fixed body instead of a new token, or issues tokens again if null.
+     *
+     * @param loginResponse the JSON body, or null
+     */
+    public void setLoginResponse(String loginResponse) {
+        this.loginResponse = loginResponse;
+    }
+
+    /**
+     * Answers every following login with an error status, or issues tokens again if 200.
+     *
+     * @param loginStatus the HTTP status
+     */
+    public void setLoginStatus(int loginStatus) {
+        this.loginStatus = loginStatus;
+    }
+
+    /**
+     * Delays every login, so concurrent requests pile up behind it.
+     *
+     * @param loginDelayMillis the delay in milliseconds
+     */
+    public void setLoginDelayMillis(long loginDelayMillis) {
+        this.loginDelayMillis = loginDelayMillis;
+    }
+
+    public int getLogins() {
+        return logins.get();
+    }
+
+    /**
+     * Returns the URL to use as both the authentication and the API endpoint.
+     *
+     * @return the base URL.
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
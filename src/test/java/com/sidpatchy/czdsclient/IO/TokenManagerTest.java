@@ -0,0 +1,128 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenManagerTest {
+    private static final Instant NOW = Instant.parse("2026-10-14T00:00:00Z");
+
+    /**
+     * Builds an unsigned JWT with the given expiry.
+     */
+    private static String token(Instant expiresAt) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.US_ASCII)) + "."
+                + encoder.encodeToString(("{\"exp\":" + expiresAt.getEpochSecond() + "}").getBytes(StandardCharsets.US_ASCII))
+                + ".";
+    }
+
+    private static void assertRefreshIsDeferred(Instant expiresAt) {
+        MutableClock clock = new MutableClock(NOW);
+        AtomicInteger logins = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager("user", () -> {
+            logins.incrementAndGet();
+            return CompletableFuture.completedFuture(token(expiresAt));
+        }, clock);
+        tokenManager.setMinRefreshInterval(Duration.ofMinutes(1));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(token(expiresAt), tokenManager.getToken().join());
+                clock.advance(Duration.ofSeconds(5));
+            }
+            assertEquals(1, logins.get());
+
+            clock.advance(Duration.ofSeconds(10));
+            tokenManager.getToken().join();
+            assertEquals(2, logins.get());
+        });
+    }
+
+    @Test
+    void loginWithoutATokenFailsInsteadOfHanging() {
+        AtomicInteger logins = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager("user", () -> {
+            logins.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            CompletionException e = assertThrows(CompletionException.class, () -> tokenManager.getToken().join());
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            // The failed refresh is cleared, so the next caller logs in again instead of waiting on it
+            assertThrows(CompletionException.class, () -> tokenManager.getToken().join());
+        });
+        assertEquals(2, logins.get());
+        assertNull(tokenManager.getCurrentToken());
+    }
+
+    @Test
+    void blankTokenIsRejected() {
+        TokenManager tokenManager = new TokenManager("user", () -> CompletableFuture.completedFuture(" "));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertThrows(CompletionException.class, () -> tokenManager.getToken().join()));
+    }
+
+    @Test
+    void loginRecoversAfterAFailure() {
+        AtomicInteger logins = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager("user", () -> CompletableFuture.completedFuture(
+                logins.incrementAndGet() == 1 ? null : "token"));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertThrows(CompletionException.class, () -> tokenManager.getToken().join());
+            assertEquals("token", tokenManager.getToken().join());
+            assertEquals("token", tokenManager.getToken().join());
+        });
+        assertEquals(2, logins.get());
+    }
+
+    @Test
+    void expiredTokenIsNotRefreshedOnEveryRequest() {
+        assertRefreshIsDeferred(NOW.minus(Duration.ofHours(1)));
+    }
+
+    @Test
+    void tokenDueForRefreshWhenIssuedIsNotRefreshedOnEveryRequest() {
+        assertRefreshIsDeferred(NOW.plus(Duration.ofMinutes(5)));
+    }
+
+    @Test
+    void tokenIsRefreshedAheadOfItsExpiry() {
+        MutableClock clock = new MutableClock(NOW);
+        AtomicInteger logins = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager("user", () -> CompletableFuture.completedFuture(
+                token(NOW.plus(Duration.ofHours(24)).plusSeconds(logins.incrementAndGet()))), clock);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            String first = tokenManager.getToken().join();
+            clock.advance(Duration.ofHours(23).plusMinutes(49));
+            assertEquals(first, tokenManager.getToken().join());
+            assertEquals(1, logins.get());
+
+            clock.advance(Duration.ofMinutes(2));
+            // The refresh runs in the background, the current token is still handed out meanwhile
+            assertEquals(first, tokenManager.getToken().join());
+            assertEquals(2, logins.get());
+            assertNotEquals(first, tokenManager.getToken().join());
+        });
+    }
+
+    @Test
+    void negativeMinRefreshIntervalIsRejected() {
+        TokenManager tokenManager = new TokenManager("user", () -> CompletableFuture.completedFuture("token"));
+
+        assertThrows(IllegalArgumentException.class, () -> tokenManager.setMinRefreshInterval(Duration.ofSeconds(-1)));
+        assertThrows(IllegalArgumentException.class, () -> tokenManager.setMinRefreshInterval(null));
+    }
+}
@@ -0,0 +1,116 @@
+package com.sidpatchy.czdsclient.IO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fires hundreds of concurrent requests at a stub server to check that the lock-free single-flight login of
+ * {@link TokenManager} sends exactly one login however many requests need a token at once.
+ */
+class TokenRefreshStressTest {
+    private static final int REQUESTS = 300;
+    private static final int RESPONSE_JITTER_MILLIS = 500;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * The body served to authorized requests.
+     */
+    static class Zone {
+        public String name;
+    }
+
+    private StubApiServer server;
+    private ExecutorService executor;
+    private HttpConnectionManager connectionManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubApiServer();
+        server.handle("/czds/test", exchange -> {
+            boolean authorized = server.isAuthorized(exchange);
+            // Spread the responses, so some requests are rejected only after the new token was issued
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(RESPONSE_JITTER_MILLIS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StubApiServer.send(exchange, authorized ? 200 : 401, "{\"name\":\"com\"}");
+        });
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        connectionManager = new HttpConnectionManager("user", "password", server.getBaseUrl(), server.getBaseUrl(), executor);
+        connectionManager.setRetryPolicy(new RetryPolicy(5, Duration.ofMillis(10), Duration.ofMillis(100)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private List<CompletableFuture<Zone>> fireRequests() {
+        List<CompletableFuture<Zone>> requests = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            requests.add(connectionManager.get("/czds/test", Zone.class));
+        }
+        return requests;
+    }
+
+    private static void awaitAll(List<CompletableFuture<Zone>> requests) {
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).join();
+        for (CompletableFuture<Zone> request : requests) {
+            assertEquals("com", request.join().name);
+        }
+    }
+
+    @Test
+    void concurrentRequestsWithoutATokenShareOneLogin() {
+        server.setLoginDelayMillis(200);
+
+        assertTimeoutPreemptively(TIMEOUT, () -> awaitAll(fireRequests()));
+        assertEquals(1, server.getLogins());
+    }
+
+    @Test
+    void concurrentRejectionsShareOneLogin() throws Exception {
+        connectionManager.authenticate();
+        String revokedToken = connectionManager.getTokenManager().getCurrentToken();
+        server.revoke();
+        server.setLoginDelayMillis(50);
+
+        assertTimeoutPreemptively(TIMEOUT, () -> awaitAll(fireRequests()));
+        assertEquals(2, server.getLogins());
+        assertNotEquals(revokedToken, connectionManager.getTokenManager().getCurrentToken());
+    }
+
+    @Test
+    void loginWithoutATokenFailsEveryCallerAndRecovers() {
+        server.setLoginResponse("{\"message\":\"Authentication Successful\"}");
+        server.setLoginDelayMillis(200);
+
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            List<CompletableFuture<Zone>> requests = fireRequests();
+            for (CompletableFuture<Zone> request : requests) {
+                CompletionException e = assertThrows(CompletionException.class, request::join);
+                assertFalse(e.getCause() instanceof HttpStatusException, e.getCause().toString());
+            }
+        });
+        int failedLogins = server.getLogins();
+        assertTrue(failedLogins >= 1 && failedLogins < REQUESTS, failedLogins + " logins");
+
+        server.setLoginResponse(null);
+        assertTimeoutPreemptively(TIMEOUT, () -> awaitAll(fireRequests()));
+        assertEquals(failedLogins + 1, server.getLogins());
+    }
+}
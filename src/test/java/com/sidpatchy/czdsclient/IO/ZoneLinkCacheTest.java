@@ -0,0 +1,205 @@
+package com.sidpatchy.czdsclient.IO;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.StoredZoneLinks;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneLinkCacheTest {
+    private static final Instant NOW = Instant.parse("2026-10-14T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final List<String> tlds = new CopyOnWriteArrayList<>(List.of("com", "net"));
+    private final AtomicInteger linkRequests = new AtomicInteger();
+    private volatile CountDownLatch released = new CountDownLatch(0);
+    private StubApiServer server;
+    private ExecutorService executor;
+    private HttpConnectionManager connectionManager;
+    private MutableClock clock;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubApiServer();
+        server.handle("/czds/downloads/links", this::serveLinks);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        connectionManager = new HttpConnectionManager("user", "password", server.getBaseUrl(), server.getBaseUrl(), executor);
+        connectionManager.setRetryPolicy(RetryPolicy.none());
+        clock = new MutableClock(NOW);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private void serveLinks(HttpExchange exchange) throws IOException {
+        linkRequests.incrementAndGet();
+        try {
+            released.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        StubApiServer.send(exchange, 200, json(tlds));
+    }
+
+    private String url(String tld) {
+        return server.getBaseUrl() + "/czds/downloads/" + tld + ".zone";
+    }
+
+    private String json(List<String> tlds) {
+        StringBuilder json = new StringBuilder("[");
+        for (String tld : tlds) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(url(tld)).append('"');
+        }
+        return json.append(']').toString();
+    }
+
+    private ZoneLinkCache newCache(String username) {
+        return new ZoneLinkCache(username,
+                () -> connectionManager.get("/czds/downloads/links", String[].class).thenApply(List::of), clock);
+    }
+
+    private void store(Path cacheFile, String username, Instant fetchedAt, List<String> tlds) throws IOException {
+        List<String> links = new ArrayList<>();
+        for (String tld : tlds) {
+            links.add(url(tld));
+        }
+        new ObjectMapper().writeValue(cacheFile.toFile(), new StoredZoneLinks(username, fetchedAt.toEpochMilli(), links));
+    }
+
+    @Test
+    void linksAreFetchedOnceUntilTheTtlExpires() {
+        ZoneLinkCache cache = newCache("user");
+        cache.setTtl(Duration.ofMinutes(30));
+
+        assertEquals(List.of("com", "net"), List.copyOf(cache.getLinks().join().keySet()));
+        assertEquals(url("com"), cache.getUrl("com").join());
+        assertEquals(url("net"), cache.getUrl(".NET").join());
+        assertNull(cache.getUrl("org").join());
+        clock.advance(Duration.ofMinutes(29));
+        cache.getLinks().join();
+        assertEquals(1, linkRequests.get());
+
+        tlds.add("org");
+        clock.advance(Duration.ofMinutes(1));
+
+        assertEquals(url("org"), cache.getUrl("org").join());
+        assertEquals(2, linkRequests.get());
+    }
+
+    @Test
+    void concurrentLookupsShareOneRequest() {
+        ZoneLinkCache cache = newCache("user");
+        released = new CountDownLatch(1);
+
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            lookups.add(cache.getUrl(i % 2 == 0 ? "com" : "net"));
+        }
+        released.countDown();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < lookups.size(); i++) {
+                assertEquals(url(i % 2 == 0 ? "com" : "net"), lookups.get(i).join());
+            }
+        });
+        assertEquals(1, linkRequests.get());
+    }
+
+    @Test
+    void invalidateFetchesTheLinksAgain() {
+        ZoneLinkCache cache = newCache("user");
+        cache.getLinks().join();
+        tlds.remove("net");
+
+        cache.invalidate();
+
+        assertNull(cache.getUrl("net").join());
+        assertEquals(2, linkRequests.get());
+    }
+
+    @Test
+    void storedLinksAreReusedAcrossInstances() throws Exception {
+        Path cacheFile = directory.resolve("links.json");
+        ZoneLinkCache first = newCache("user");
+        first.setCacheFile(cacheFile);
+        first.getLinks().join();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Files.exists(cacheFile) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        ZoneLinkCache second = newCache("user");
+        second.setCacheFile(cacheFile);
+
+        assertEquals(url("net"), second.getUrl("net").join());
+        assertEquals(1, linkRequests.get());
+    }
+
+    @Test
+    void missInTheStoredLinksFetchesThemOnce() throws Exception {
+        Path cacheFile = directory.resolve("links.json");
+        store(cacheFile, "user", NOW, List.of("com"));
+        ZoneLinkCache cache = newCache("user");
+        cache.setCacheFile(cacheFile);
+
+        assertEquals(url("com"), cache.getUrl("com").join());
+        assertEquals(0, linkRequests.get());
+        assertEquals(url("net"), cache.getUrl("net").join());
+        assertEquals(1, linkRequests.get());
+        // The fetched links are not stored ones, so a zone missing from them is simply not approved
+        assertNull(cache.getUrl("org").join());
+        assertEquals(1, linkRequests.get());
+    }
+
+    @Test
+    void expiredOrForeignStoredLinksAreFetchedAgain() throws Exception {
+        Path cacheFile = directory.resolve("links.json");
+        store(cacheFile, "user", NOW.minus(Duration.ofHours(2)), List.of("com"));
+        ZoneLinkCache expired = newCache("user");
+        expired.setCacheFile(cacheFile);
+
+        assertEquals(2, expired.getLinks().join().size());
+        assertEquals(1, linkRequests.get());
+
+        store(cacheFile, "someone-else", NOW, List.of("com"));
+        ZoneLinkCache foreign = newCache("user");
+        foreign.setCacheFile(cacheFile);
+
+        Map<String, String> links = foreign.getLinks().join();
+        assertEquals(2, links.size());
+        assertEquals(2, linkRequests.get());
+    }
+
+    @Test
+    void negativeTtlIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> newCache("user").setTtl(Duration.ofSeconds(-1)));
+    }
+}
@@ -0,0 +1,137 @@
+package com.sidpatchy.czdsclient.Index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DomainIndexTest {
+    @TempDir
+    Path directory;
+
+    private File build(Set<String> domains, int runSize, int bloomBitsPerDomain) throws IOException {
+        DomainIndexBuilder builder = new DomainIndexBuilder();
+        builder.setTempDirectory(directory);
+        builder.setRunSize(runSize);
+        builder.setBloomBitsPerDomain(bloomBitsPerDomain);
+        for (String domain : domains) {
+            builder.add(domain);
+        }
+        File indexFile = directory.resolve("domains.idx").toFile();
+        assertEquals(domains.size(), builder.build(indexFile));
+        return indexFile;
+    }
+
+    private static Set<String> randomDomains(int count, long seed) {
+        Random random = new Random(seed);
+        Set<String> domains = new HashSet<>();
+        while (domains.size() < count) {
+            domains.add("d" + Long.toString(random.nextLong() & 0xffffffffffL, 36) + ".com");
+        }
+        return domains;
+    }
+
+    @Test
+    void roundTripAcrossSeveralRuns() throws IOException {
+        Set<String> domains = randomDomains(50_000, 1);
+        File indexFile = build(domains, 7_000, 10);
+
+        try (DomainIndex index = DomainIndex.open(indexFile)) {
+            assertEquals(domains.size(), index.size());
+            assertTrue(index.hasBloomFilter());
+            for (String domain : domains) {
+                assertTrue(index.contains(domain), domain);
+            }
+            for (String absent : randomDomains(10_000, 2)) {
+                assertEquals(domains.contains(absent), index.contains(absent), absent);
+            }
+        }
+    }
+
+    @Test
+    void lookupsIgnoreCaseAndTheTrailingDot() throws IOException {
+        File indexFile = build(Set.of("Example.COM.", "xn--bcher-kva.example"), 16, 0);
+
+        try (DomainIndex index = DomainIndex.open(indexFile)) {
+            assertFalse(index.hasBloomFilter());
+            assertTrue(index.contains("example.com"));
+            assertTrue(index.contains("EXAMPLE.com."));
+            assertTrue(index.contains("xn--bcher-kva.example"));
+            assertFalse(index.contains("example.net"));
+            assertFalse(index.contains("bücher.example"));
+            byte[] name = "example.com".getBytes(StandardCharsets.US_ASCII);
+            assertTrue(index.contains(name, 0, name.length));
+        }
+    }
+
+    @Test
+    void duplicatesAreStoredOnce() throws IOException {
+        DomainIndexBuilder builder = new DomainIndexBuilder();
+        builder.setTempDirectory(directory);
+        builder.setRunSize(3);
+        for (int i = 0; i < 10; i++) {
+            builder.add("example.com");
+            builder.add("example.net");
+        }
+        File indexFile = directory.resolve("domains.idx").toFile();
+
+        assertEquals(2, builder.build(indexFile));
+        try (DomainIndex index = DomainIndex.open(indexFile)) {
+            assertEquals(2, index.size());
+        }
+    }
+
+    @Test
+    void zoneFilesContributeTheirRegisteredDomains() throws IOException {
+        Path zone = directory.resolve("example.zone.gz");
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(zone)), StandardCharsets.US_ASCII)) {
+            writer.write("example.\t86400\tin\tsoa\ta.nic.example. noc.nic.example. 1 900 1800 604800 86400\n");
+            writer.write("example.\t86400\tin\tns\ta.nic.example.\n");
+            writer.write("one.example.\t86400\tin\tns\tns1.host.net.\n");
+            writer.write("one.example.\t86400\tin\tns\tns2.host.net.\n");
+            writer.write("two.example.\t86400\tin\tns\tns1.host.net.\n");
+        }
+        DomainIndexBuilder builder = new DomainIndexBuilder();
+        builder.setTempDirectory(directory);
+        assertEquals(2, builder.addZone(zone.toFile()));
+        File indexFile = directory.resolve("domains.idx").toFile();
+        builder.build(indexFile);
+
+        try (DomainIndex index = DomainIndex.open(indexFile)) {
+            assertTrue(index.contains("one.example"));
+            assertTrue(index.contains("two.example"));
+            assertFalse(index.contains("example"));
+        }
+    }
+
+    @Test
+    void truncatedIndexIsRejected() throws IOException {
+        File indexFile = build(randomDomains(1_000, 3), 1_000, 10);
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        assertThrows(IOException.class, () -> DomainIndex.open(indexFile));
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        File file = directory.resolve("not-an-index").toFile();
+        Files.writeString(file.toPath(), "example.com\n".repeat(20));
+
+        assertThrows(IOException.class, () -> DomainIndex.open(file));
+    }
+}
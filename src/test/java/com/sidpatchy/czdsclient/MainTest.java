@@ -0,0 +1,45 @@
+package com.sidpatchy.czdsclient;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MainTest {
+    @TempDir
+    Path directory;
+
+    private List<String> readZoneList(String content) throws IOException {
+        Path file = directory.resolve("zones.txt");
+        Files.writeString(file, content);
+        return Main.readZoneList(file);
+    }
+
+    @Test
+    void zonesAreSeparatedByLinesCommasAndWhitespace() throws IOException {
+        assertEquals(List.of("com", "net", "org", "xn--*", "info", ".biz"),
+                readZoneList("com\nnet,org\n  xn--*\t info , .biz\n"));
+    }
+
+    @Test
+    void commentsAndBlankLinesAreIgnored() throws IOException {
+        assertEquals(List.of("com", "net"),
+                readZoneList("# approved zones\n\ncom # the big one\n   \n#org\nnet,# info\r\n"));
+    }
+
+    @Test
+    void emptyFileListsNoZones() throws IOException {
+        assertEquals(List.of(), readZoneList(""));
+        assertEquals(List.of(), readZoneList("# nothing yet\n,\n"));
+    }
+
+    @Test
+    void missingFileFails() {
+        assertThrows(IOException.class, () -> Main.readZoneList(directory.resolve("missing.txt")));
+    }
+}
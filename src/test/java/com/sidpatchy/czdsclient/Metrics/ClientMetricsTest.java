@@ -0,0 +1,125 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientMetricsTest {
+    private static final URI LINKS = URI.create("https://czds-api.icann.org/czds/downloads/links");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void downloadUrlsShareOneRoute() {
+        assertEquals("/czds/downloads/{tld}.zone", ClientMetrics.route(URI.create("https://czds-download-api.icann.org/czds/downloads/com.zone")));
+        assertEquals("/czds/downloads/links", ClientMetrics.route(LINKS));
+        assertEquals("/", ClientMetrics.route(URI.create("https://czds-api.icann.org")));
+    }
+
+    @Test
+    void requestsAreGroupedByMethodAndRoute() {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.recordResponse("GET", LINKS, 200, TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordResponse("GET", LINKS, 503, TimeUnit.MILLISECONDS.toNanos(10));
+        metrics.recordRetry("GET", LINKS);
+        metrics.recordError("GET", LINKS, TimeUnit.SECONDS.toNanos(10));
+        metrics.recordResponse("GET", URI.create("https://a.example/czds/downloads/com.zone"), 200, 1);
+        metrics.recordResponse("HEAD", URI.create("https://a.example/czds/downloads/net.zone"), 200, 1);
+        metrics.recordResponse("GET", URI.create("https://a.example/czds/downloads/net.zone"), 404, 1);
+
+        List<MetricsSnapshot.RequestStats> requests = metrics.snapshot().getRequests();
+
+        assertEquals(3, requests.size());
+        MetricsSnapshot.RequestStats links = requests.get(0);
+        assertEquals("GET /czds/downloads/links", links.getMethod() + " " + links.getRoute());
+        assertEquals(Map.of(200, 1L, 503, 1L), links.getStatuses());
+        assertEquals(1, links.getErrors());
+        assertEquals(1, links.getRetries());
+        assertEquals(3, links.getLatency().getCount());
+        MetricsSnapshot.RequestStats zones = requests.get(1);
+        assertEquals("GET /czds/downloads/{tld}.zone", zones.getMethod() + " " + zones.getRoute());
+        assertEquals(Map.of(200, 1L, 404, 1L), zones.getStatuses());
+        assertEquals("HEAD", requests.get(2).getMethod());
+    }
+
+    @Test
+    void downloadsAndLoginsAreCounted() {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.recordLogin(true);
+        metrics.recordLogin(false);
+        metrics.recordLogin(true);
+        metrics.downloadStarted();
+        metrics.downloadStarted();
+        metrics.downloadStarted();
+        metrics.addDownloadedBytes(1000);
+        metrics.addDownloadedBytes(500);
+        metrics.downloadFinished("com", ZoneDownloadResult.Status.DOWNLOADED, 1000, TimeUnit.SECONDS.toNanos(4), null);
+        metrics.downloadFinished("net", ZoneDownloadResult.Status.FAILED, 0, TimeUnit.SECONDS.toNanos(1),
+                new IOException("Connection reset"));
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        assertEquals(2, snapshot.getLoginSuccesses());
+        assertEquals(1, snapshot.getLoginFailures());
+        assertEquals(1, snapshot.getInFlightDownloads());
+        assertEquals(1500, snapshot.getBytesDownloaded());
+        assertEquals(Map.of("DOWNLOADED", 1L, "FAILED", 1L), snapshot.getDownloads());
+        MetricsSnapshot.ZoneStats com = snapshot.getZones().get("com");
+        assertEquals("DOWNLOADED", com.getStatus());
+        assertEquals(250, com.getBytesPerSecond(), 1e-9);
+        assertNull(com.getError());
+        assertEquals("Connection reset", snapshot.getZones().get("net").getError());
+        assertEquals(0.0, snapshot.getZones().get("net").getBytesPerSecond());
+    }
+
+    @Test
+    void failingExporterDoesNotStopTheOthers() throws IOException {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.recordLogin(true);
+        AtomicInteger failed = new AtomicInteger();
+        Path file = directory.resolve("metrics").resolve("czds.json");
+        metrics.addExporter(snapshot -> {
+            failed.incrementAndGet();
+            throw new IOException("disk full");
+        });
+        metrics.addExporter(new JsonExporter(file));
+
+        metrics.export();
+
+        assertEquals(1, failed.get());
+        JsonNode json = new ObjectMapper().readTree(file.toFile());
+        assertEquals(1, json.get("loginSuccesses").asLong());
+        assertTrue(json.get("requests").isArray());
+        try (var files = Files.list(file.getParent())) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    @Test
+    void removedExporterIsNotCalled() {
+        ClientMetrics metrics = new ClientMetrics();
+        AtomicInteger exports = new AtomicInteger();
+        MetricsExporter exporter = snapshot -> exports.incrementAndGet();
+        metrics.addExporter(exporter);
+        metrics.export();
+
+        metrics.removeExporter(exporter);
+        metrics.export();
+
+        assertEquals(1, exports.get());
+    }
+}
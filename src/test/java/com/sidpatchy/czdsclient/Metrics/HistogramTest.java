@@ -0,0 +1,96 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    void bucketsAreCumulative() {
+        Histogram histogram = new Histogram();
+        histogram.observe(3 * MILLIS);
+        histogram.observe(5 * MILLIS);
+        histogram.observe(40 * MILLIS);
+        histogram.observe(2000 * MILLIS);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        long[] buckets = snapshot.getBuckets();
+
+        assertEquals(Histogram.BOUNDS.length, buckets.length);
+        // 0.005s is inclusive
+        assertEquals(2, buckets[0]);
+        assertEquals(2, buckets[2]);
+        assertEquals(3, buckets[3]);
+        assertEquals(3, buckets[7]);
+        assertEquals(4, buckets[8]);
+        assertEquals(4, buckets[buckets.length - 1]);
+        assertEquals(4, snapshot.getCount());
+        assertEquals(2.048, snapshot.getSum(), 1e-9);
+    }
+
+    @Test
+    void observationsBeyondTheLastBucketOnlyCountInTheTotal() {
+        Histogram histogram = new Histogram();
+        histogram.observe(TimeUnit.HOURS.toNanos(2));
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.getBuckets()[Histogram.BOUNDS.length - 1]);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(Double.POSITIVE_INFINITY, snapshot.getQuantile(0.5));
+    }
+
+    @Test
+    void quantilesAreTheUpperBoundsOfTheirBuckets() {
+        Histogram histogram = new Histogram();
+        assertEquals(0.0, histogram.snapshot().getQuantile(0.99));
+
+        for (int i = 0; i < 99; i++) {
+            histogram.observe(20 * MILLIS);
+        }
+        histogram.observe(4000 * MILLIS);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0.025, snapshot.getQuantile(0.5));
+        assertEquals(0.025, snapshot.getQuantile(0.99));
+        assertEquals(5.0, snapshot.getQuantile(1));
+    }
+
+    @Test
+    void snapshotsAreCopies() {
+        Histogram histogram = new Histogram();
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        snapshot.getBuckets()[0] = 42;
+        snapshot.getBounds()[0] = 42;
+
+        histogram.observe(MILLIS);
+
+        assertEquals(0, snapshot.getBuckets()[0]);
+        assertEquals(0.005, Histogram.BOUNDS[0]);
+        assertEquals(1, histogram.snapshot().getBuckets()[0]);
+    }
+
+    @Test
+    void concurrentObservationsAreAllCounted() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        histogram.observe(MILLIS);
+                    }
+                });
+            }
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(80_000, snapshot.getCount());
+        assertEquals(80_000, snapshot.getBuckets()[0]);
+    }
+}
@@ -0,0 +1,64 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JmxExporterTest {
+    private static final URI LINKS = URI.create("https://czds-api.icann.org/czds/downloads/links");
+
+    @Test
+    void metricsAreReadLiveThroughTheMBeanServer() throws JMException {
+        ClientMetrics metrics = new ClientMetrics();
+        ObjectName name = new ObjectName("com.sidpatchy.czdsclient:type=ClientMetrics,name=live");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try (JmxExporter exporter = new JmxExporter(metrics, name)) {
+            assertTrue(server.isRegistered(name));
+            assertEquals(0L, server.getAttribute(name, "Requests"));
+
+            metrics.recordResponse("GET", LINKS, 200, 1);
+            metrics.recordResponse("GET", LINKS, 503, 1);
+            metrics.recordError("GET", LINKS, 1);
+            metrics.recordRetry("GET", LINKS);
+            metrics.recordLogin(true);
+            metrics.downloadStarted();
+            metrics.downloadFinished("com", ZoneDownloadResult.Status.DOWNLOADED, 100, TimeUnit.SECONDS.toNanos(1), null);
+
+            assertEquals(3L, server.getAttribute(name, "Requests"));
+            assertEquals(2L, server.getAttribute(name, "FailedRequests"));
+            assertEquals(1L, server.getAttribute(name, "Retries"));
+            assertEquals(1L, server.getAttribute(name, "LoginSuccesses"));
+            assertEquals(0L, server.getAttribute(name, "InFlightDownloads"));
+            assertEquals(Map.of("200", 1L, "503", 1L), exporter.getResponsesByStatus());
+            assertEquals(Map.of("com", 100.0), exporter.getZoneBytesPerSecond());
+        }
+
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void nameCanOnlyBeRegisteredOnce() throws JMException {
+        ObjectName name = new ObjectName("com.sidpatchy.czdsclient:type=ClientMetrics,name=taken");
+
+        JmxExporter exporter = new JmxExporter(new ClientMetrics(), name);
+        try {
+            assertThrows(JMException.class, () -> new JmxExporter(new ClientMetrics(), name));
+        } finally {
+            exporter.close();
+        }
+
+        // Closing again must not fail
+        assertDoesNotThrow(exporter::close);
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
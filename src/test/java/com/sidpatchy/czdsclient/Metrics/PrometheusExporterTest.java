@@ -0,0 +1,94 @@
+package com.sidpatchy.czdsclient.Metrics;
+
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrometheusExporterTest {
+    private static final URI LINKS = URI.create("https://czds-api.icann.org/czds/downloads/links");
+
+    @TempDir
+    Path directory;
+
+    private static List<String> lines(ClientMetrics metrics) {
+        return PrometheusExporter.format(metrics.snapshot()).lines().toList();
+    }
+
+    @Test
+    void everyMetricHasHelpAndType() {
+        List<String> lines = lines(new ClientMetrics());
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.startsWith("# HELP ")) {
+                String name = line.split(" ")[2];
+                assertTrue(lines.get(i + 1).startsWith("# TYPE " + name + " "), lines.get(i + 1));
+            }
+        }
+        assertTrue(lines.contains("czds_downloads_in_flight 0"));
+        assertTrue(lines.contains("czds_logins_total{outcome=\"success\"} 0"));
+    }
+
+    @Test
+    void requestsAreFormattedWithLabelsAndHistogram() {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.recordResponse("GET", LINKS, 200, TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordResponse("GET", LINKS, 200, TimeUnit.MILLISECONDS.toNanos(300));
+        metrics.recordRetry("GET", LINKS);
+
+        List<String> lines = lines(metrics);
+        String labels = "method=\"GET\",route=\"/czds/downloads/links\"";
+
+        assertTrue(lines.contains("czds_requests_total{" + labels + ",status=\"200\"} 2"));
+        assertTrue(lines.contains("czds_request_retries_total{" + labels + "} 1"));
+        assertTrue(lines.contains("czds_request_errors_total{" + labels + "} 0"));
+        assertTrue(lines.contains("czds_request_duration_seconds_bucket{" + labels + ",le=\"0.025\"} 0"));
+        assertTrue(lines.contains("czds_request_duration_seconds_bucket{" + labels + ",le=\"0.05\"} 1"));
+        assertTrue(lines.contains("czds_request_duration_seconds_bucket{" + labels + ",le=\"0.5\"} 2"));
+        assertTrue(lines.contains("czds_request_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2"));
+        assertTrue(lines.contains("czds_request_duration_seconds_sum{" + labels + "} 0.33"));
+        assertTrue(lines.contains("czds_request_duration_seconds_count{" + labels + "} 2"));
+    }
+
+    @Test
+    void zonesAreFormattedWithEscapedLabels() {
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.downloadStarted();
+        metrics.downloadFinished("com", ZoneDownloadResult.Status.DOWNLOADED, 2048, TimeUnit.SECONDS.toNanos(2), null);
+        metrics.downloadStarted();
+        metrics.downloadFinished("a\"b\\c", ZoneDownloadResult.Status.FAILED, 0, 1, new IOException("boom"));
+
+        List<String> lines = lines(metrics);
+
+        assertTrue(lines.contains("czds_zone_download_bytes{tld=\"com\"} 2048"));
+        assertTrue(lines.contains("czds_zone_download_bytes_per_second{tld=\"com\"} 1024"));
+        assertTrue(lines.contains("czds_zone_download_failed{tld=\"com\"} 0"));
+        assertTrue(lines.contains("czds_zone_download_failed{tld=\"a\\\"b\\\\c\"} 1"));
+        assertTrue(lines.contains("czds_downloads_total{status=\"FAILED\"} 1"));
+    }
+
+    @Test
+    void exportReplacesTheFile() throws IOException {
+        Path file = directory.resolve("czds.prom");
+        Files.writeString(file, "stale");
+        ClientMetrics metrics = new ClientMetrics();
+        metrics.addDownloadedBytes(7);
+        metrics.addExporter(new PrometheusExporter(file));
+
+        metrics.export();
+
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        assertFalse(content.contains("stale"));
+        assertTrue(content.contains("czds_downloaded_bytes_total 7\n"));
+    }
+}
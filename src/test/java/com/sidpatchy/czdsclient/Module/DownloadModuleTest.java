@@ -0,0 +1,401 @@
+package com.sidpatchy.czdsclient.Module;
+
+import com.sidpatchy.czdsclient.Bean.ZoneDownloadResult;
+import com.sidpatchy.czdsclient.Bean.ZoneState;
+import com.sidpatchy.czdsclient.IO.HttpConnectionManager;
+import com.sidpatchy.czdsclient.IO.HttpStatusException;
+import com.sidpatchy.czdsclient.IO.RetryPolicy;
+import com.sidpatchy.czdsclient.IO.StubApiServer;
+import com.sidpatchy.czdsclient.IO.ZoneStateStore;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownloadModuleTest {
+    private static final String LAST_MODIFIED = "Wed, 14 Oct 2026 00:00:00 GMT";
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, byte[]> zones = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final Map<String, Integer> refusals = new ConcurrentHashMap<>();
+    private final List<String> conditions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger linkRequests = new AtomicInteger();
+    private final List<String> downloads = new CopyOnWriteArrayList<>();
+    private final Set<String> unknownSizes = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private volatile long zoneDelayMillis;
+    private StubApiServer server;
+    private ExecutorService executor;
+    private HttpConnectionManager connectionManager;
+    private DownloadModule module;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubApiServer();
+        server.handle("/czds/downloads/links", this::serveLinks);
+        server.handle("/czds/downloads/", this::serveZone);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        connectionManager = new HttpConnectionManager("user", "password", server.getBaseUrl(), server.getBaseUrl(), executor);
+        connectionManager.setRetryPolicy(RetryPolicy.none());
+        module = new DownloadModule(connectionManager, server.getBaseUrl());
+        module.setDownloadPath(directory.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private void serveLinks(HttpExchange exchange) throws IOException {
+        linkRequests.incrementAndGet();
+        StringBuilder json = new StringBuilder("[");
+        for (String tld : zones.keySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(server.getBaseUrl()).append("/czds/downloads/").append(tld).append(".zone\"");
+        }
+        StubApiServer.send(exchange, 200, json.append(']').toString());
+    }
+
+    private void serveZone(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring("/czds/downloads/".length());
+        String tld = name.substring(0, name.length() - ".zone".length());
+        byte[] zone = zones.get(tld);
+        Integer refusal = refusals.get(tld);
+        if (refusal != null) {
+            StubApiServer.send(exchange, refusal, "{}");
+            return;
+        }
+        if (zone == null) {
+            StubApiServer.send(exchange, 404, "{}");
+            return;
+        }
+
+        String etag = etags.get(tld);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (ifNoneMatch != null || ifModifiedSince != null) {
+            conditions.add(ifNoneMatch + " " + ifModifiedSince);
+        }
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+        if (etag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            if (unknownSizes.contains(tld)) {
+                StubApiServer.send(exchange, 405, "{}");
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Length", Integer.toString(zone.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        downloads.add(tld);
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            if (zoneDelayMillis > 0) {
+                Thread.sleep(zoneDelayMillis);
+            }
+            exchange.sendResponseHeaders(200, zone.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(zone);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void putZone(String tld, String content, String etag) {
+        zones.put(tld, content.getBytes(StandardCharsets.US_ASCII));
+        etags.put(tld, etag);
+    }
+
+    private ZoneDownloadResult download(String tld) {
+        List<ZoneDownloadResult> results = module.downloadZoneFiles(List.of(tld)).join();
+        assertEquals(1, results.size());
+        return results.get(0);
+    }
+
+    /**
+     * Downloads a batch and returns the TLDs of its results, in order.
+     */
+    private List<String> resolve(Collection<String> zones) {
+        return resultTlds(module.downloadZoneFiles(zones).join());
+    }
+
+    private static List<String> resultTlds(List<ZoneDownloadResult> results) {
+        List<String> tlds = new ArrayList<>();
+        for (ZoneDownloadResult result : results) {
+            tlds.add(result.getTld());
+        }
+        return tlds;
+    }
+
+    private void putZones(String... tlds) {
+        for (String tld : tlds) {
+            putZone(tld, tld + ". 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        }
+    }
+
+    @Test
+    void globsAreExpandedAgainstTheApprovedZones() {
+        putZones("com", "coop", "net", "xn--p1ai", "xn--80asehdb", "xn-q");
+
+        assertEquals(List.of("com", "coop"), resolve(List.of("co*")).stream().sorted().toList());
+        assertEquals(List.of("xn--80asehdb", "xn--p1ai"), resolve(List.of("xn--*")).stream().sorted().toList());
+        assertEquals(List.of("com", "net"), resolve(List.of("???")).stream().sorted().toList());
+        assertEquals(List.of("com"), resolve(List.of("c?m")));
+        assertEquals(6, resolve(List.of("*")).size());
+    }
+
+    @Test
+    void regexMetacharactersInPatternsAreLiteral() {
+        putZones("com", "coop", "net");
+
+        assertEquals(List.of(), resolve(List.of("c.*")));
+        assertEquals(List.of(), resolve(List.of("[cn]*")));
+        assertEquals(List.of(), resolve(List.of("co+*")));
+        assertEquals(List.of(), resolve(List.of("(com|net)?*")));
+    }
+
+    @Test
+    void caseAndLeadingDotsAreIgnoredAndDuplicatesRemoved() {
+        putZones("com", "coop", "net");
+
+        assertEquals(List.of("net", "com"), resolve(List.of(".NET", " Com ", "com", ".c?M")));
+        assertEquals(List.of("com", "coop"), resolve(List.of("COM", ".CO*")));
+    }
+
+    @Test
+    void patternThatMatchesNothingIsSkipped() {
+        putZones("com", "net");
+
+        assertEquals(List.of("net"), resolve(List.of("org*", "net", "")));
+        assertEquals(List.of(), resolve(List.of("x?z")));
+        // A plain TLD is not a pattern, so an unapproved one is reported as a failure instead of skipped
+        List<ZoneDownloadResult> results = module.downloadZoneFiles(List.of("org")).join();
+        assertEquals(1, results.size());
+        assertEquals(ZoneDownloadResult.Status.FAILED, results.get(0).getStatus());
+    }
+
+    @Test
+    void unmodifiedZoneKeepsTheFileAndTheState() throws Exception {
+        putZone("com", "com. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        module.setIncremental(true);
+
+        assertEquals(ZoneDownloadResult.Status.DOWNLOADED, download("com").getStatus());
+        Path file = directory.resolve("com.zone.gz");
+        Path stateFile = directory.resolve(ZoneStateStore.FILE_NAME);
+        byte[] state = Files.readAllBytes(stateFile);
+        FileTime modified = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(file, modified);
+        Files.setLastModifiedTime(stateFile, modified);
+
+        ZoneDownloadResult result = download("com");
+
+        assertEquals(ZoneDownloadResult.Status.NOT_MODIFIED, result.getStatus());
+        assertEquals(List.of("\"v1\" " + LAST_MODIFIED), conditions);
+        assertEquals(zones.get("com").length, Files.size(file));
+        assertEquals(modified, Files.getLastModifiedTime(file));
+        assertArrayEquals(state, Files.readAllBytes(stateFile));
+        assertEquals(modified, Files.getLastModifiedTime(stateFile));
+    }
+
+    @Test
+    void changedZoneIsDownloadedAndUpdatesTheState() throws Exception {
+        putZone("com", "com. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        module.setIncremental(true);
+        download("com");
+        String oldDigest = new ZoneStateStore(directory.toString()).get("com").getDigest();
+
+        putZone("com", "com. 86400 IN SOA a. b. 2 2 3 4 5\nexample.com. 86400 IN NS ns1.example.net.\n", "\"v2\"");
+        ZoneDownloadResult result = download("com");
+
+        assertEquals(ZoneDownloadResult.Status.DOWNLOADED, result.getStatus());
+        assertEquals(List.of("\"v1\" " + LAST_MODIFIED), conditions);
+        assertArrayEquals(zones.get("com"), Files.readAllBytes(directory.resolve("com.zone.gz")));
+        ZoneState state = new ZoneStateStore(directory.toString()).get("com");
+        assertEquals("\"v2\"", state.getEtag());
+        assertEquals(LAST_MODIFIED, state.getLastModified());
+        assertEquals(zones.get("com").length, state.getSize());
+        assertNotEquals(oldDigest, state.getDigest());
+    }
+
+    @Test
+    void stateIsIgnoredWhenTheLocalFileIsMissing() throws Exception {
+        putZone("com", "com. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        module.setIncremental(true);
+        download("com");
+        Files.delete(directory.resolve("com.zone.gz"));
+
+        ZoneDownloadResult result = download("com");
+
+        assertEquals(ZoneDownloadResult.Status.DOWNLOADED, result.getStatus());
+        assertTrue(conditions.isEmpty());
+        assertArrayEquals(zones.get("com"), Files.readAllBytes(directory.resolve("com.zone.gz")));
+    }
+
+    @Test
+    void linksAreFetchedOncePerBatch() {
+        putZone("com", "com. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        putZone("net", "net. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+
+        module.downloadZoneFiles(List.of("com", "net")).join();
+        module.downloadAllApprovedZoneFiles().join();
+
+        assertEquals(1, linkRequests.get());
+    }
+
+    @Test
+    void forbiddenOrMissingZoneDiscardsTheCachedLinks() {
+        putZone("com", "com. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        putZone("net", "net. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        download("com");
+
+        for (int status : new int[] {403, 404}) {
+            int before = linkRequests.get();
+            refusals.put("net", status);
+
+            assertEquals(ZoneDownloadResult.Status.FAILED, download("net").getStatus());
+            download("com");
+
+            assertEquals(before + 1, linkRequests.get());
+        }
+    }
+
+    @Test
+    void otherErrorsKeepTheCachedLinks() {
+        putZone("com", "com. 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        download("com");
+        refusals.put("com", 500);
+
+        assertEquals(ZoneDownloadResult.Status.FAILED, download("com").getStatus());
+        refusals.clear();
+        download("com");
+
+        assertEquals(1, linkRequests.get());
+    }
+
+    @Test
+    void largestZonesAreDownloadedFirst() {
+        putZone("small", "x".repeat(10), "\"v1\"");
+        putZone("unknown", "x".repeat(50), "\"v1\"");
+        putZone("large", "x".repeat(1000), "\"v1\"");
+        putZone("medium", "x".repeat(100), "\"v1\"");
+        unknownSizes.add("unknown");
+        module.setConcurrency(1);
+        module.setProbeSizes(true);
+
+        List<String> tlds = resolve(List.of("small", "unknown", "large", "medium"));
+
+        // Results keep the order the zones were given in, whatever order they were downloaded in
+        assertEquals(List.of("small", "unknown", "large", "medium"), tlds);
+        // A zone of unknown size may be the largest of all, so it goes first
+        assertEquals(List.of("unknown", "large", "medium", "small"), downloads);
+    }
+
+    @Test
+    void sizesAreOnlyProbedWhenEnabled() {
+        putZone("small", "x".repeat(10), "\"v1\"");
+        putZone("large", "x".repeat(1000), "\"v1\"");
+        module.setConcurrency(1);
+
+        resolve(List.of("small", "large"));
+        assertEquals(List.of("small", "large"), downloads);
+
+        // The files of the first run give the sizes now
+        downloads.clear();
+        resolve(List.of("small", "large"));
+        assertEquals(List.of("large", "small"), downloads);
+    }
+
+    @Test
+    void zonesAreDownloadedInTheGivenOrderWhenLargestFirstIsDisabled() {
+        putZone("small", "x".repeat(10), "\"v1\"");
+        putZone("large", "x".repeat(1000), "\"v1\"");
+        module.setConcurrency(1);
+        module.setProbeSizes(true);
+        module.setLargestFirst(false);
+
+        resolve(List.of("small", "large"));
+
+        assertEquals(List.of("small", "large"), downloads);
+    }
+
+    @Test
+    void batchRunsAtMostTheConfiguredNumberOfDownloadsAtOnce() {
+        List<String> tlds = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            putZone("zone" + i, "zone" + i + ". 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+            tlds.add("zone" + i);
+        }
+        zoneDelayMillis = 100;
+        module.setConcurrency(3);
+
+        List<ZoneDownloadResult> results = module.downloadZoneFiles(tlds).join();
+
+        assertEquals(10, results.size());
+        for (ZoneDownloadResult result : results) {
+            assertEquals(ZoneDownloadResult.Status.DOWNLOADED, result.getStatus(), result.getTld());
+        }
+        assertEquals(10, downloads.size());
+        // Held for 100 ms each, the downloads overlap, but never more than three at once
+        assertEquals(3, peakInFlight.get());
+    }
+
+    @Test
+    void failedZoneDoesNotAbortTheBatch() throws IOException {
+        List<String> tlds = List.of("com", "net", "org", "info");
+        for (String tld : tlds) {
+            putZone(tld, tld + ". 86400 IN SOA a. b. 1 2 3 4 5\n", "\"v1\"");
+        }
+        refusals.put("org", 500);
+        module.setConcurrency(2);
+
+        List<ZoneDownloadResult> results = assertDoesNotThrow(() -> module.downloadZoneFiles(tlds).join());
+
+        assertEquals(tlds, resultTlds(results));
+        for (ZoneDownloadResult result : results) {
+            if (result.getTld().equals("org")) {
+                assertEquals(ZoneDownloadResult.Status.FAILED, result.getStatus());
+                assertEquals(500, assertInstanceOf(HttpStatusException.class, result.getError()).getStatusCode());
+                assertFalse(Files.exists(directory.resolve("org.zone.gz")));
+            } else {
+                assertEquals(ZoneDownloadResult.Status.DOWNLOADED, result.getStatus(), result.getTld());
+                assertArrayEquals(zones.get(result.getTld()), Files.readAllBytes(result.getFile().toPath()));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.sidpatchy.czdsclient.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelZoneProcessorTest {
+
+    /**
+     * Generates an uncompressed zone of at least a given size on the fly, ending on a complete record, and counts the
+     * bytes read from it.
+     */
+    private static final class GeneratedZone extends InputStream {
+        private final long size;
+        private long position;
+        private byte[] line = new byte[0];
+        private int linePosition;
+        private long domain;
+
+        GeneratedZone(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) {
+            if (isAtEnd()) {
+                return -1;
+            }
+            int read = 0;
+            while (read < length && !isAtEnd()) {
+                if (linePosition == line.length) {
+                    line = ("dom" + domain + ".com.\t172800\tin\tns\tns" + (domain % 7) + ".example.net.\n"
+                            + "\t172800\tin\tns\tns" + (domain % 5) + ".example.org.\n").getBytes(StandardCharsets.US_ASCII);
+                    linePosition = 0;
+                    domain++;
+                }
+                int n = Math.min(length - read, line.length - linePosition);
+                System.arraycopy(line, linePosition, b, offset + read, n);
+                linePosition += n;
+                read += n;
+                position += n;
+            }
+            return read;
+        }
+
+        private boolean isAtEnd() {
+            return position >= size && linePosition == line.length;
+        }
+
+        long getPosition() {
+            return position;
+        }
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        try (inputStream) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    @Test
+    void parallelRecordsMatchTheSequentialParser() throws IOException {
+        byte[] zone = readAll(new GeneratedZone(2 * 1024 * 1024));
+        List<String> expected = new ArrayList<>();
+        try (ZoneFileParser parser = new ZoneFileParser(new ByteArrayInputStream(zone))) {
+            parser.parse(record -> expected.add(record.toString()));
+        }
+
+        ParallelZoneProcessor processor = new ParallelZoneProcessor(4);
+        processor.setBlockSize(16 * 1024);
+        Set<String> actual = processor.collect(new ByteArrayInputStream(zone), HashSet::new,
+                (set, record) -> set.add(record.toString()), (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                });
+
+        assertEquals(expected.size(), new HashSet<>(expected).size());
+        assertEquals(new HashSet<>(expected), actual);
+    }
+
+    @Test
+    void failingWorkerStopsReadingTheZone() {
+        long size = 512L * 1024 * 1024;
+        GeneratedZone zone = new GeneratedZone(size);
+        ParallelZoneProcessor processor = new ParallelZoneProcessor(2);
+        processor.setBlockSize(64 * 1024);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> processor.forEach(zone, record -> {
+            throw new IllegalStateException("handler failed");
+        }));
+
+        assertEquals("handler failed", e.getMessage());
+        assertTrue(zone.getPosition() < size / 100, "read " + zone.getPosition() + " of " + size + " bytes after the failure");
+    }
+}
@@ -0,0 +1,155 @@
+package com.sidpatchy.czdsclient.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZoneFileParserTest {
+
+    private static List<String> parse(InputStream zone) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (ZoneFileParser parser = new ZoneFileParser(zone)) {
+            parser.parse(record -> records.add(record.toString()));
+        }
+        return records;
+    }
+
+    private static List<String> parse(String zone) throws IOException {
+        return parse(new ByteArrayInputStream(zone.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static byte[] gzip(String zone) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(zone.getBytes(StandardCharsets.US_ASCII));
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void linesStartingWithWhitespaceInheritTheOwner() throws IOException {
+        List<String> records = parse("example.com. 172800 in ns ns1.example.net.\n"
+                + "\t172800\tin\tns\tns2.example.net.\n"
+                + " 3600 in a 192.0.2.1\n"
+                + "other.com. 172800 in ns ns1.example.org.\n");
+
+        assertEquals(List.of(
+                "example.com.\t172800\tin\tns\tns1.example.net.",
+                "example.com.\t172800\tin\tns\tns2.example.net.",
+                "example.com.\t3600\tin\ta\t192.0.2.1",
+                "other.com.\t172800\tin\tns\tns1.example.org."), records);
+    }
+
+    @Test
+    void ttlAndClassMayComeInEitherOrderOrBeOmitted() throws IOException {
+        List<String> records = parse("$TTL 900\n"
+                + "a.com. 3600 IN NS ns1.example.net.\n"
+                + "b.com. IN 7200 NS ns1.example.net.\n"
+                + "c.com. NS ns1.example.net.\n"
+                + "d.com. 60 NS ns1.example.net.\n");
+
+        assertEquals(List.of(
+                "a.com.\t3600\tin\tns\tns1.example.net.",
+                "b.com.\t7200\tin\tns\tns1.example.net.",
+                "c.com.\t900\tin\tns\tns1.example.net.",
+                "d.com.\t60\tin\tns\tns1.example.net."), records);
+    }
+
+    @Test
+    void commentsAreStrippedOutsideQuotesAndEscapes() throws IOException {
+        List<String> records = parse("; a comment line\n"
+                + "\n"
+                + "a.com. 3600 in ns ns1.example.net. ; trailing comment\n"
+                + "a.com. 3600 in txt \"v=spf1 ; -all\" ; comment\n"
+                + "a.com. 3600 in txt \"say \\\"hi\\\"; bye\"\n"
+                + "a.com. 3600 in txt semi\\;colon ; comment\n"
+                + "a.com. 3600 in txt back\\\\ ; comment\n");
+
+        assertEquals(List.of(
+                "a.com.\t3600\tin\tns\tns1.example.net.",
+                "a.com.\t3600\tin\ttxt\t\"v=spf1 ; -all\"",
+                "a.com.\t3600\tin\ttxt\t\"say \\\"hi\\\"; bye\"",
+                "a.com.\t3600\tin\ttxt\tsemi\\;colon",
+                "a.com.\t3600\tin\ttxt\tback\\\\"), records);
+    }
+
+    @Test
+    void crlfLineEndingsAreAccepted() throws IOException {
+        List<String> records = parse("a.com. 3600 in ns ns1.example.net.\r\n\t3600 in ns ns2.example.net.\r\n\r\n");
+
+        assertEquals(List.of(
+                "a.com.\t3600\tin\tns\tns1.example.net.",
+                "a.com.\t3600\tin\tns\tns2.example.net."), records);
+    }
+
+    @Test
+    void finalLineWithoutNewlineIsParsed() throws IOException {
+        List<String> records = parse("a.com. 3600 in ns ns1.example.net.\nb.com. 3600 in ns ns1.example.net.");
+
+        assertEquals(2, records.size());
+        assertEquals("b.com.\t3600\tin\tns\tns1.example.net.", records.get(1));
+    }
+
+    @Test
+    void gzipAndPlainInputGiveTheSameRecords() throws IOException {
+        String zone = "$TTL 86400\ncom. IN SOA a.gtld-servers.net. nstld.verisign-grs.com. 1 1800 900 604800 86400\n"
+                + "example.com. NS ns1.example.net.\n";
+
+        List<String> plain = parse(zone);
+        List<String> compressed = parse(new ByteArrayInputStream(gzip(zone)));
+
+        assertEquals(2, plain.size());
+        assertEquals(plain, compressed);
+    }
+
+    @Test
+    void lineLongerThanTheBufferIsParsed() throws IOException {
+        String rdata = "\"" + "x".repeat(600 * 1024) + "\"";
+        List<String> records = parse("a.com. 3600 in ns ns1.example.net.\n"
+                + "a.com. 3600 in txt " + rdata + "\n"
+                + "b.com. 3600 in ns ns1.example.net.\n");
+
+        assertEquals(3, records.size());
+        assertEquals("a.com.\t3600\tin\ttxt\t" + rdata, records.get(1));
+        assertEquals("b.com.\t3600\tin\tns\tns1.example.net.", records.get(2));
+    }
+
+    @Test
+    void linesSplitAcrossReadsAreReassembled() throws IOException {
+        StringBuilder zone = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            zone.append("dom").append(i).append(".com.\t172800\tin\tns\tns").append(i % 7).append(".example.net.\n");
+        }
+        byte[] bytes = zone.toString().getBytes(StandardCharsets.US_ASCII);
+        // Hands out at most 7 bytes per read, so lines straddle every refill of the buffer
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int offset, int length) throws IOException {
+                return super.read(b, offset, Math.min(length, 7));
+            }
+        };
+
+        List<String> records = parse(trickle);
+
+        assertEquals(20_000, records.size());
+        assertEquals("dom0.com.\t172800\tin\tns\tns0.example.net.", records.get(0));
+        assertEquals("dom19999.com.\t172800\tin\tns\tns0.example.net.", records.get(19_999));
+        assertEquals(parse(zone.toString()), records);
+    }
+
+    @Test
+    void recordWithoutAnOwnerIsRejected() {
+        IOException e = assertThrows(IOException.class, () -> parse("\t3600 in ns ns1.example.net.\n"));
+        assertTrue(e.getMessage().contains("line 1"), e.getMessage());
+    }
+}
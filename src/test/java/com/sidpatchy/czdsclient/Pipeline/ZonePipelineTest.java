@@ -0,0 +1,159 @@
+package com.sidpatchy.czdsclient.Pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZonePipelineTest {
+    @TempDir
+    Path directory;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * An endless download that records how much of it was read and whether it was closed.
+     */
+    private static final class EndlessStream extends InputStream {
+        private final AtomicLong read = new AtomicLong();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public int read() {
+            read.incrementAndGet();
+            return 'x';
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) {
+            Arrays.fill(b, offset, offset + length, (byte) 'x');
+            read.addAndGet(length);
+            return length;
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    @Test
+    void failingSinkAbortsTheOthersAndStopsTheDownload() throws Exception {
+        File file = directory.resolve("com.zone.gz").toFile();
+        EndlessStream download = new EndlessStream();
+        IOException failure = new IOException("sink failed");
+        ZonePipeline pipeline = new ZonePipeline(executor)
+                .setChunkSize(1024)
+                .setQueueCapacity(2)
+                .addSink(new FileSink(file))
+                .addSink(new DigestSink())
+                .addSink(inputStream -> {
+                    inputStream.readNBytes(64 * 1024);
+                    throw failure;
+                });
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> pipeline.run(download).get(10, TimeUnit.SECONDS));
+
+        assertSame(failure, e.getCause().getCause());
+        assertTrue(download.closed.get(), "download was not closed");
+        assertFalse(file.exists());
+        assertFalse(Files.exists(directory.resolve("com.zone.gz.part")), "partial file of the aborted sink was kept");
+    }
+
+    @Test
+    void sinkThatReturnsEarlyDoesNotStallTheOthers() throws Exception {
+        byte[] zone = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(zone);
+        DigestSink digest = new DigestSink();
+        File file = directory.resolve("com.zone.gz").toFile();
+        ZonePipeline pipeline = new ZonePipeline(executor)
+                .setChunkSize(4096)
+                .setQueueCapacity(1)
+                .addSink(inputStream -> inputStream.readNBytes(10))
+                .addSink(digest)
+                .addSink(new FileSink(file));
+
+        CompletableFuture<Void> run = pipeline.run(new ByteArrayInputStream(zone));
+        run.get(10, TimeUnit.SECONDS);
+
+        assertEquals(zone.length, digest.getSize());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(zone)), digest.getDigest());
+        assertEquals(zone.length, file.length());
+    }
+
+    @Test
+    void downloadStopsOnceEverySinkHasReturned() throws Exception {
+        EndlessStream download = new EndlessStream();
+        ZonePipeline pipeline = new ZonePipeline(executor)
+                .setChunkSize(1024)
+                .addSink(inputStream -> inputStream.readNBytes(10))
+                .addSink(inputStream -> inputStream.readNBytes(5000));
+
+        pipeline.run(download).get(10, TimeUnit.SECONDS);
+
+        assertTrue(download.closed.get(), "download was not closed");
+    }
+
+    @Test
+    void sinksCanUseEveryThreadOfAFixedPool() throws Exception {
+        byte[] zone = new byte[1024 * 1024];
+        new Random(2).nextBytes(zone);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            DigestSink[] digests = new DigestSink[4];
+            ZonePipeline pipeline = new ZonePipeline(pool).setChunkSize(4096).setQueueCapacity(1);
+            for (int i = 0; i < digests.length; i++) {
+                digests[i] = new DigestSink();
+                pipeline.addSink(digests[i]);
+            }
+
+            pipeline.run(new ByteArrayInputStream(zone)).get(10, TimeUnit.SECONDS);
+
+            for (DigestSink digest : digests) {
+                assertEquals(zone.length, digest.getSize());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void fixedPoolWithTooFewThreadsIsRejected() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            ZonePipeline pipeline = new ZonePipeline(pool)
+                    .addSink(new DigestSink())
+                    .addSink(new DigestSink())
+                    .addSink(new DigestSink());
+
+            assertThrows(IllegalStateException.class, () -> pipeline.run(new ByteArrayInputStream(new byte[16])));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}